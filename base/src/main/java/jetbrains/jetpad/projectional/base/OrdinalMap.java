@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.base;
+
+/**
+ * Map from small non-negative ints, e.g. ordinals of property specs, to values.
+ * Values are kept in one array ordered by key, and a bitmap of present keys gives the index of a key in it
+ * with a few bit counts. Null values are allowed and are different from absent keys.
+ */
+public final class OrdinalMap {
+  private static final int[] EMPTY_BITMAP = new int[0];
+  private static final int INITIAL_CAPACITY = 2;
+
+  private int[] myBitmap = EMPTY_BITMAP;
+  private Object[] myValues;
+  private int mySize;
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public boolean containsKey(int key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * @return the position of the key's value to be used with valueAt, or -1 if the key is absent
+   */
+  public int indexOf(int key) {
+    checkKey(key);
+    int word = key >>> 5;
+    if (word >= myBitmap.length) return -1;
+    int bit = 1 << (key & 31);
+    if ((myBitmap[word] & bit) == 0) return -1;
+    return rank(word, bit);
+  }
+
+  public Object valueAt(int index) {
+    if (index < 0 || index >= mySize) {
+      throw new IndexOutOfBoundsException("" + index);
+    }
+    return myValues[index];
+  }
+
+  public Object get(int key) {
+    int index = indexOf(key);
+    return index < 0 ? null : myValues[index];
+  }
+
+  public void put(int key, Object value) {
+    checkKey(key);
+    int word = key >>> 5;
+    int bit = 1 << (key & 31);
+    if (word >= myBitmap.length) {
+      int[] newBitmap = new int[word + 1];
+      System.arraycopy(myBitmap, 0, newBitmap, 0, myBitmap.length);
+      myBitmap = newBitmap;
+    }
+
+    int index = rank(word, bit);
+    if ((myBitmap[word] & bit) != 0) {
+      myValues[index] = value;
+      return;
+    }
+
+    if (myValues == null) {
+      myValues = new Object[INITIAL_CAPACITY];
+    } else if (mySize == myValues.length) {
+      Object[] newValues = new Object[mySize * 2];
+      System.arraycopy(myValues, 0, newValues, 0, mySize);
+      myValues = newValues;
+    }
+    System.arraycopy(myValues, index, myValues, index + 1, mySize - index);
+    myValues[index] = value;
+    mySize++;
+    myBitmap[word] |= bit;
+  }
+
+  public void remove(int key) {
+    int index = indexOf(key);
+    if (index < 0) return;
+
+    System.arraycopy(myValues, index + 1, myValues, index, mySize - index - 1);
+    myValues[--mySize] = null;
+    myBitmap[key >>> 5] &= ~(1 << (key & 31));
+  }
+
+  private int rank(int word, int bit) {
+    int result = Integer.bitCount(myBitmap[word] & (bit - 1));
+    for (int i = 0; i < word; i++) {
+      result += Integer.bitCount(myBitmap[i]);
+    }
+    return result;
+  }
+
+  private void checkKey(int key) {
+    if (key < 0) {
+      throw new IllegalArgumentException("" + key);
+    }
+  }
+}
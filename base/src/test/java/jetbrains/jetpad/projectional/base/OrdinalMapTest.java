@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.base;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrdinalMapTest {
+  private OrdinalMap map = new OrdinalMap();
+
+  @Test
+  public void empty() {
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.indexOf(100));
+    assertNull(map.get(0));
+  }
+
+  @Test
+  public void putAndReplace() {
+    map.put(40, "a");
+    map.put(3, "b");
+    map.put(40, "c");
+
+    assertEquals(2, map.size());
+    assertEquals("b", map.get(3));
+    assertEquals("c", map.get(40));
+    assertEquals("b", map.valueAt(map.indexOf(3)));
+  }
+
+  @Test
+  public void nullValue() {
+    map.put(5, null);
+
+    assertTrue(map.containsKey(5));
+    assertNull(map.valueAt(map.indexOf(5)));
+    assertFalse(map.containsKey(6));
+  }
+
+  @Test
+  public void remove() {
+    map.put(1, "a");
+    map.put(31, "b");
+    map.put(32, "c");
+
+    map.remove(31);
+    map.remove(7);
+
+    assertEquals(2, map.size());
+    assertFalse(map.containsKey(31));
+    assertEquals("a", map.get(1));
+    assertEquals("c", map.get(32));
+  }
+
+  @Test
+  public void randomOperations() {
+    Random random = new Random(42);
+    Map<Integer, String> expected = new HashMap<>();
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(100);
+      if (random.nextBoolean()) {
+        map.put(key, "v" + i);
+        expected.put(key, "v" + i);
+      } else {
+        map.remove(key);
+        expected.remove(key);
+      }
+
+      assertEquals(expected.size(), map.size());
+      for (int k = 0; k < 100; k++) {
+        assertEquals(expected.get(k), map.get(k));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeKey() {
+    map.put(-1, "a");
+  }
+}
@@ -18,7 +18,6 @@ package jetbrains.jetpad.cell;
 import com.google.common.base.Objects;
 import jetbrains.jetpad.base.Registration;
 import jetbrains.jetpad.cell.event.CellEventSpec;
-import jetbrains.jetpad.cell.event.EventPriority;
 import jetbrains.jetpad.cell.trait.CellTrait;
 import jetbrains.jetpad.cell.trait.CellTraitEventSpec;
 import jetbrains.jetpad.cell.trait.CellTraitPropertySpec;
@@ -39,7 +38,7 @@ import jetbrains.jetpad.model.property.BaseReadableProperty;
 import jetbrains.jetpad.model.property.Property;
 import jetbrains.jetpad.model.property.PropertyChangeEvent;
 import jetbrains.jetpad.model.property.ReadableProperty;
-import jetbrains.jetpad.model.util.ListMap;
+import jetbrains.jetpad.projectional.base.OrdinalMap;
 import jetbrains.jetpad.values.Color;
 
 import java.util.*;
@@ -77,14 +76,18 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
   }
 
   private CellTrait[] myCellTraits = CellTrait.EMPTY_ARRAY;
+  private Set<CellPropertySpec<?>> myTraitProperties;
+  private boolean myCollectingTraitProperties;
 
   private List<Cell> myChildren;
   private CellContainer myContainer;
   private Cell myParent;
   private Cell myNext;
   private Cell myPrev;
-  private ListMap<CellPropertySpec<?>, Object> myProperties;
+  private OrdinalMap myProperties;
   private Listeners<CellListener> myListeners;
+  private Cell myBatchChild;
+  private int myChildrenModCount;
 
   protected Cell() {
     this(null);
@@ -193,27 +196,26 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
 
   private <EventT extends Event> void dispatchStep(EventT e, CellEventSpec<EventT> spec) {
     if (spec == CellEventSpec.KEY_PRESSED || spec == CellEventSpec.KEY_RELEASED || spec == CellEventSpec.KEY_TYPED) {
-      for (EventPriority p : EventPriority.values()) {
-        for (CellTrait t : myCellTraits) {
-          if (p == EventPriority.LOW) {
-            if (spec == CellEventSpec.KEY_PRESSED) {
-              t.onKeyPressedLowPriority(this, (KeyEvent) e);
-            } else if (spec == CellEventSpec.KEY_RELEASED) {
-              t.onKeyReleasedLowPriority(this, (KeyEvent) e);
-            } else {
-              t.onKeyTypedLowPriority(this, (KeyEvent) e);
-            }
-          } else {
-            if (spec == CellEventSpec.KEY_PRESSED) {
-              t.onKeyPressed(this, (KeyEvent) e);
-            } else if (spec == CellEventSpec.KEY_RELEASED) {
-              t.onKeyReleased(this, (KeyEvent) e);
-            } else {
-              t.onKeyTyped(this, (KeyEvent) e);
-            }
-          }
-          if (e.isConsumed()) return;
+      KeyEvent keyEvent = (KeyEvent) e;
+      for (CellTrait t : myCellTraits) {
+        if (spec == CellEventSpec.KEY_PRESSED) {
+          t.onKeyPressed(this, keyEvent);
+        } else if (spec == CellEventSpec.KEY_RELEASED) {
+          t.onKeyReleased(this, keyEvent);
+        } else {
+          t.onKeyTyped(this, keyEvent);
         }
+        if (e.isConsumed()) return;
+      }
+      for (CellTrait t : myCellTraits) {
+        if (spec == CellEventSpec.KEY_PRESSED) {
+          t.onKeyPressedLowPriority(this, keyEvent);
+        } else if (spec == CellEventSpec.KEY_RELEASED) {
+          t.onKeyReleasedLowPriority(this, keyEvent);
+        } else {
+          t.onKeyTypedLowPriority(this, keyEvent);
+        }
+        if (e.isConsumed()) return;
       }
     } else {
       for (CellTrait t : myCellTraits) {
@@ -240,6 +242,7 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
     newTraits[0] = trait;
     System.arraycopy(myCellTraits, 0, newTraits, 1, myCellTraits.length);
     myCellTraits = newTraits;
+    myTraitProperties = null;
     trait.onAdd(this);
     r.run();
     return new Registration() {
@@ -251,6 +254,7 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
         System.arraycopy(myCellTraits, 0, newTraits, 0, index);
         System.arraycopy(myCellTraits, index + 1, newTraits, index, myCellTraits.length - index - 1);
         myCellTraits = newTraits;
+        myTraitProperties = null;
         r.run();
         trait.onRemove(Cell.this);
       }
@@ -392,10 +396,11 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
   }
 
   public <ValueT> ValueT get(CellPropertySpec<ValueT> prop) {
-    if (myProperties == null || !myProperties.containsKey(prop)) {
+    int index = myProperties == null ? -1 : myProperties.indexOf(prop.ordinal());
+    if (index < 0) {
       return getDefaultValue(prop);
     }
-    return (ValueT) myProperties.get(prop);
+    return (ValueT) myProperties.valueAt(index);
   }
 
   public <ValueT> Registration set(final CellPropertySpec<ValueT> prop, ValueT value) {
@@ -408,15 +413,15 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
     beforePropertySet(prop, event);
 
     if (Objects.equal(value, getDefaultValue(prop))) {
-      myProperties.remove(prop);
+      myProperties.remove(prop.ordinal());
       if (myProperties.isEmpty()) {
         myProperties = null;
       }
     } else {
       if (myProperties == null) {
-        myProperties = new ListMap<>();
+        myProperties = new OrdinalMap();
       }
-      myProperties.put(prop, value);
+      myProperties.put(prop.ordinal(), value);
     }
 
     firePropertyChange(prop, event);
@@ -452,6 +457,11 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
   }
 
   private <ValueT> ValueT getDefaultValue(CellPropertySpec<ValueT> prop) {
+    if (myCellTraits.length == 0) return prop.getDefault(this);
+
+    Set<CellPropertySpec<?>> traitProperties = traitProperties();
+    if (traitProperties != null && !traitProperties.contains(prop)) return prop.getDefault(this);
+
     for (CellTrait t : myCellTraits) {
       Object result = t.get(this, prop);
       if (result == CellTrait.NULL) return null;
@@ -463,6 +473,30 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
     return prop.getDefault(this);
   }
 
+  /**
+   * Properties provided by the traits of this cell. They are collected once per set of traits,
+   * so reads of the other properties don't have to ask every trait. Returns null while the properties are being
+   * collected, e.g. if a trait reads cell properties in provideProperties.
+   */
+  private Set<CellPropertySpec<?>> traitProperties() {
+    if (myTraitProperties == null && !myCollectingTraitProperties) {
+      CellTrait[] traits = myCellTraits;
+      myCollectingTraitProperties = true;
+      try {
+        Set<CellPropertySpec<?>> result = new HashSet<>();
+        for (CellTrait t : traits) {
+          result.addAll(t.getChangedProperties(this));
+        }
+        if (traits == myCellTraits) {
+          myTraitProperties = result;
+        }
+      } finally {
+        myCollectingTraitProperties = false;
+      }
+    }
+    return myTraitProperties;
+  }
+
   public <ValueT> ValueT get(CellTraitPropertySpec<ValueT> prop) {
     ValueT result = getRaw(prop);
     if (result != null) return result;
@@ -516,7 +550,7 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
     if (myProperties == null) return Collections.emptyList();
     List<Cell> result = null;
     for (CellPropertySpec<Cell> ps : POPUP_SPECS) {
-      Cell cell = (Cell) myProperties.get(ps);
+      Cell cell = (Cell) myProperties.get(ps.ordinal());
       if (cell != null) {
         if (result == null) {
           result = new ArrayList<>();
@@ -669,6 +703,21 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
   protected void onChildAdded(CollectionItemEvent<? extends Cell> event) {
   }
 
+  /**
+   * Called once for the cells added with children().addAll(...) after onChildAdded was called for each of them.
+   * If the children were changed by a listener during addAll, the rest of the cells aren't included
+   * and are reported with onChildAdded only.
+   */
+  protected void onChildrenAdded(List<Cell> children) {
+  }
+
+  /**
+   * @return true if the child is being added by children().addAll(...) and will be reported to onChildrenAdded
+   */
+  protected final boolean isAddedInBatch(Cell child) {
+    return myBatchChild == child;
+  }
+
   protected void onBeforeChildRemoved(CollectionItemEvent<Cell> event) {
   }
 
@@ -748,6 +797,7 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
 
     @Override
     protected void beforeItemAdded(int index, Cell item) {
+      myChildrenModCount++;
       attachItem(item, index - 1, index, index);
     }
 
@@ -759,12 +809,14 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
 
     @Override
     protected void beforeItemSet(int index, Cell oldItem, Cell newItem) {
+      myChildrenModCount++;
       detachItem(oldItem, index);
       attachItem(newItem, index - 1, index, index + 1);
     }
 
     @Override
     protected void beforeItemRemoved(int index, Cell item) {
+      myChildrenModCount++;
       detachItem(item, index);
     }
 
@@ -835,6 +887,53 @@ public abstract class Cell implements NavComposite<Cell>, HasVisibility, HasFocu
       myChildren.add(index, element);
     }
 
+    @Override
+    public boolean addAll(Collection<? extends Cell> c) {
+      return addAll(size(), c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Cell> c) {
+      if (index < 0 || index > size()) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (c.isEmpty()) return false;
+
+      List<Cell> toAdd = new ArrayList<>(c);
+      List<Cell> added = new ArrayList<>(toAdd.size());
+      boolean batch = true;
+      int pos = index;
+      try {
+        for (Cell cell : toAdd) {
+          ensureChildrenInitialized();
+          int modCount = myChildrenModCount;
+          myBatchChild = batch ? cell : null;
+          try {
+            myChildren.add(pos, cell);
+          } finally {
+            myBatchChild = null;
+          }
+          if (batch) {
+            added.add(cell);
+          }
+
+          if (myChildrenModCount == modCount + 1) {
+            pos++;
+          } else {
+            //a listener changed the children, so the rest of the cells are reported one by one
+            batch = false;
+            int cellIndex = myChildren == null ? -1 : myChildren.indexOf(cell);
+            pos = cellIndex >= 0 ? cellIndex + 1 : Math.min(pos, size());
+          }
+        }
+      } finally {
+        if (!added.isEmpty()) {
+          onChildrenAdded(Collections.unmodifiableList(added));
+        }
+      }
+      return true;
+    }
+
     private void ensureChildrenInitialized() {
       if (myChildren == null) {
         myChildren = new ChildList();
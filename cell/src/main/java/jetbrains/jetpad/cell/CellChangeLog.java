@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell;
+
+import com.google.common.base.Objects;
+import jetbrains.jetpad.model.collections.CollectionItemEvent;
+import jetbrains.jetpad.model.property.PropertyChangeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes of cells in a container made during a command. Changes are kept in the order they happened,
+ * except that all changes of one property of one cell are merged into the first of them: the merged change goes from
+ * the value before the command to the last value, and is dropped if these values are equal.
+ * When a log is replayed, cells are in their state at the end of the command, not at the time of a change.
+ */
+public final class CellChangeLog {
+  private List<Change> myChanges = new ArrayList<>();
+  private Map<Cell, Map<CellPropertySpec<?>, PropertyChange>> myPropertyChanges;
+
+  CellChangeLog() {
+  }
+
+  public boolean isEmpty() {
+    for (Change change : myChanges) {
+      if (!change.isTrivial()) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Passes the changes to CellContainerListener's change methods in the log order
+   */
+  public void replay(CellContainerListener l) {
+    for (Change change : myChanges) {
+      if (change.isTrivial()) continue;
+      change.replay(l);
+    }
+  }
+
+  void propertyChanged(Cell cell, CellPropertySpec<?> prop, PropertyChangeEvent<?> event) {
+    if (myPropertyChanges == null) {
+      myPropertyChanges = new HashMap<>();
+    }
+    Map<CellPropertySpec<?>, PropertyChange> cellChanges = myPropertyChanges.get(cell);
+    if (cellChanges == null) {
+      cellChanges = new HashMap<>();
+      myPropertyChanges.put(cell, cellChanges);
+    }
+
+    PropertyChange change = cellChanges.get(prop);
+    if (change == null) {
+      change = new PropertyChange(cell, prop, event.getOldValue());
+      cellChanges.put(prop, change);
+      myChanges.add(change);
+    }
+    change.myNewValue = event.getNewValue();
+  }
+
+  void childAdded(Cell parent, CollectionItemEvent<? extends Cell> event) {
+    myChanges.add(new ChildChange(parent, event, true));
+  }
+
+  void childRemoved(Cell parent, CollectionItemEvent<? extends Cell> event) {
+    myChanges.add(new ChildChange(parent, event, false));
+  }
+
+  private abstract static class Change {
+    boolean isTrivial() {
+      return false;
+    }
+
+    abstract void replay(CellContainerListener l);
+  }
+
+  private static class PropertyChange extends Change {
+    private final Cell myCell;
+    private final CellPropertySpec<?> myProp;
+    private final Object myOldValue;
+    private Object myNewValue;
+
+    private PropertyChange(Cell cell, CellPropertySpec<?> prop, Object oldValue) {
+      myCell = cell;
+      myProp = prop;
+      myOldValue = oldValue;
+    }
+
+    @Override
+    boolean isTrivial() {
+      return Objects.equal(myOldValue, myNewValue);
+    }
+
+    @Override
+    void replay(CellContainerListener l) {
+      l.onCellPropertyChanged(myCell, myProp, new PropertyChangeEvent<>(myOldValue, myNewValue));
+    }
+  }
+
+  private static class ChildChange extends Change {
+    private final Cell myParent;
+    private final CollectionItemEvent<? extends Cell> myEvent;
+    private final boolean myAdded;
+
+    private ChildChange(Cell parent, CollectionItemEvent<? extends Cell> event, boolean added) {
+      myParent = parent;
+      myEvent = event;
+      myAdded = added;
+    }
+
+    @Override
+    void replay(CellContainerListener l) {
+      if (myAdded) {
+        l.onChildAdded(myParent, myEvent);
+      } else {
+        l.onChildRemoved(myParent, myEvent);
+      }
+    }
+  }
+}
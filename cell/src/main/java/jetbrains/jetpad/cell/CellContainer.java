@@ -44,6 +44,8 @@ public class CellContainer {
 
   private List<Cell> myPopups = new ArrayList<>();
   private Listeners<CellContainerListener> myListeners = new Listeners<>();
+  private Listeners<CellChangeLogListener> myChangeLogListeners;
+  private CellChangeLog myChangeLog;
   private boolean myInCommand;
   private CellContainerPeer myCellContainerPeer = CellContainerPeer.NULL;
 
@@ -306,6 +308,7 @@ public class CellContainer {
       try {
         r.run();
       } finally {
+        flushChangeLog();
         myListeners.fire(new ListenerCaller<CellContainerListener>() {
           @Override
           public void call(CellContainerListener l) {
@@ -313,6 +316,7 @@ public class CellContainer {
           }
         });
         myInCommand = false;
+        flushChangeLog();
       }
     }
   }
@@ -330,6 +334,12 @@ public class CellContainer {
   }
 
   void cellPropertyChanged(final Cell cell, final CellPropertySpec<?> prop, final PropertyChangeEvent<?> change) {
+    CellChangeLog log = changeLog();
+    if (log != null) {
+      log.propertyChanged(cell, prop, change);
+      afterChangeLogged();
+    }
+
     myListeners.fire(new ListenerCaller<CellContainerListener>() {
       @Override
       public void call(CellContainerListener l) {
@@ -339,6 +349,12 @@ public class CellContainer {
   }
 
   void cellChildAdded(final Cell cell, final CollectionItemEvent<? extends Cell> change) {
+    CellChangeLog log = changeLog();
+    if (log != null) {
+      log.childAdded(cell, change);
+      afterChangeLogged();
+    }
+
     myListeners.fire(new ListenerCaller<CellContainerListener>() {
       @Override
       public void call(CellContainerListener l) {
@@ -348,6 +364,12 @@ public class CellContainer {
   }
 
   void cellChildRemoved(final Cell cell, final CollectionItemEvent<? extends Cell> change) {
+    CellChangeLog log = changeLog();
+    if (log != null) {
+      log.childRemoved(cell, change);
+      afterChangeLogged();
+    }
+
     myListeners.fire(new ListenerCaller<CellContainerListener>() {
       @Override
       public void call(CellContainerListener l) {
@@ -368,6 +390,55 @@ public class CellContainer {
     return myListeners.add(l);
   }
 
+  /**
+   * Adds a listener which receives the changes of cells made during a command as one log after the command.
+   * Changes made outside of commands are delivered at once.
+   */
+  public Registration addChangeLogListener(CellChangeLogListener l) {
+    if (myChangeLogListeners == null) {
+      myChangeLogListeners = new Listeners<>();
+    }
+    final Registration reg = myChangeLogListeners.add(l);
+    return new Registration() {
+      @Override
+      protected void doRemove() {
+        reg.remove();
+        if (myChangeLogListeners.isEmpty()) {
+          myChangeLogListeners = null;
+          myChangeLog = null;
+        }
+      }
+    };
+  }
+
+  private CellChangeLog changeLog() {
+    if (myChangeLogListeners == null) return null;
+    if (myChangeLog == null) {
+      myChangeLog = new CellChangeLog();
+    }
+    return myChangeLog;
+  }
+
+  private void afterChangeLogged() {
+    if (!myInCommand) {
+      flushChangeLog();
+    }
+  }
+
+  private void flushChangeLog() {
+    while (myChangeLog != null && myChangeLogListeners != null) {
+      final CellChangeLog log = myChangeLog;
+      myChangeLog = null;
+      if (log.isEmpty()) continue;
+      myChangeLogListeners.fire(new ListenerCaller<CellChangeLogListener>() {
+        @Override
+        public void call(CellChangeLogListener l) {
+          l.onChanges(log);
+        }
+      });
+    }
+  }
+
   CellContainerPeer getCellContainerPeer() {
     return myCellContainerPeer;
   }
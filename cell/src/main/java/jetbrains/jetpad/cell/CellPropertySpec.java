@@ -18,6 +18,13 @@ package jetbrains.jetpad.cell;
 import com.google.common.base.Function;
 
 public class CellPropertySpec<ValueT> {
+  private static int ourSpecCount;
+
+  private static synchronized int nextOrdinal() {
+    return ourSpecCount++;
+  }
+
+  private final int myOrdinal = nextOrdinal();
   private String myName;
   private Function<Cell, ValueT> myDefaultValue;
 
@@ -44,6 +51,13 @@ public class CellPropertySpec<ValueT> {
     return myName;
   }
 
+  /**
+   * Dense index of the spec among all created specs, cells store their property values by it
+   */
+  int ordinal() {
+    return myOrdinal;
+  }
+
   public ValueT getDefault(Cell c) {
     return myDefaultValue.apply(c);
   }
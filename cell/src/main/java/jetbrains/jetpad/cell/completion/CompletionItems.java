@@ -17,6 +17,7 @@ package jetbrains.jetpad.cell.completion;
 
 import com.google.common.collect.FluentIterable;
 import jetbrains.jetpad.completion.CompletionItem;
+import jetbrains.jetpad.completion.CompletionItemIndex;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,11 +25,22 @@ import java.util.List;
 
 public class CompletionItems {
   private List<CompletionItem> myItems = new ArrayList<>();
+  private CompletionItemIndex myIndex;
 
   public CompletionItems(Iterable<CompletionItem> items) {
     myItems.addAll(FluentIterable.from(items).toList());
   }
 
+  /**
+   * Answers queries with an index, which pays off when the same items are queried many times
+   */
+  public CompletionItems(Iterable<CompletionItem> items, boolean indexed) {
+    this(items);
+    if (indexed) {
+      myIndex = new CompletionItemIndex(myItems);
+    }
+  }
+
   public boolean isEmpty() {
     return myItems.isEmpty();
   }
@@ -38,6 +50,7 @@ public class CompletionItems {
   }
 
   public List<CompletionItem> prefixedBy(String prefix) {
+    if (myIndex != null) return myIndex.prefixedBy(prefix);
     List<CompletionItem> result = new ArrayList<>();
     for (CompletionItem item : getItems()) {
       if (item.isMatchPrefix(prefix)) {
@@ -48,6 +61,7 @@ public class CompletionItems {
   }
 
   public List<CompletionItem> strictlyPrefixedBy(String prefix) {
+    if (myIndex != null) return myIndex.strictlyPrefixedBy(prefix);
     List<CompletionItem> result = new ArrayList<>();
     for (CompletionItem item : getItems()) {
       if (item.isStrictMatchPrefix(prefix)) {
@@ -58,6 +72,7 @@ public class CompletionItems {
   }
 
   public List<CompletionItem> matches(String text) {
+    if (myIndex != null) return reduce(myIndex.matches(text));
     List<CompletionItem> result = new ArrayList<>();
     for (CompletionItem item : getItems()) {
       if (item.isMatch(text)) {
@@ -24,9 +24,13 @@ import jetbrains.jetpad.model.event.ListenerCaller;
 import jetbrains.jetpad.model.event.Listeners;
 import jetbrains.jetpad.model.property.PropertyChangeEvent;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class IndentCell extends Cell {
   private boolean myIndented;
   private Listeners<IndentContainerCellListener> myListeners;
+  private List<Cell> myPendingChildren;
 
   public IndentCell() {
     this(false);
@@ -83,7 +87,22 @@ public class IndentCell extends Cell {
     IndentCell container = indentContainer();
     if (container == null) return;
 
-    container.handleChildAdd(event);
+    Cell child = event.getNewItem();
+    if (isAddedInBatch(child)) {
+      container.addPendingChild(child);
+    } else {
+      container.handleChildAdd(event);
+    }
+  }
+
+  @Override
+  protected void onChildrenAdded(List<Cell> children) {
+    super.onChildrenAdded(children);
+
+    IndentCell container = indentContainer();
+    if (container == null) return;
+
+    container.flushPendingChildren();
   }
 
   @Override
@@ -98,6 +117,7 @@ public class IndentCell extends Cell {
 
   void handleChildAdd(final CollectionItemEvent<? extends Cell> event) {
     checkRootIndent();
+    flushPendingChildren();
 
     if (myListeners == null) return;
     myListeners.fire(new ListenerCaller<IndentContainerCellListener>() {
@@ -108,8 +128,51 @@ public class IndentCell extends Cell {
     });
   }
 
+  /**
+   * Children added by addAll are collected until the batch ends or anything else changes in the container,
+   * so that the listeners see the changes in the same order as they happened
+   */
+  private void addPendingChild(Cell child) {
+    checkRootIndent();
+
+    if (myPendingChildren != null) {
+      Cell last = myPendingChildren.get(myPendingChildren.size() - 1);
+      if (child.getParent() != last.getParent() || child.prevSibling() != last) {
+        flushPendingChildren();
+      }
+    }
+    if (myPendingChildren == null) {
+      myPendingChildren = new ArrayList<>();
+    }
+    myPendingChildren.add(child);
+  }
+
+  private void flushPendingChildren() {
+    if (myPendingChildren == null) return;
+    final List<Cell> children = myPendingChildren;
+    myPendingChildren = null;
+
+    if (myListeners == null) return;
+    myListeners.fire(new ListenerCaller<IndentContainerCellListener>() {
+      @Override
+      public void call(IndentContainerCellListener l) {
+        if (l instanceof IndentContainerCellBatchListener) {
+          ((IndentContainerCellBatchListener) l).childrenAdded(children);
+          return;
+        }
+
+        Cell first = children.get(0);
+        int index = first.getParent().children().indexOf(first);
+        for (Cell child : children) {
+          l.childAdded(new CollectionItemEvent<>(null, child, index++, CollectionItemEvent.EventType.ADD));
+        }
+      }
+    });
+  }
+
   void handleChildRemove(final CollectionItemEvent<Cell> event) {
     checkRootIndent();
+    flushPendingChildren();
 
     if (myListeners == null) return;
     myListeners.fire(new ListenerCaller<IndentContainerCellListener>() {
@@ -122,6 +185,7 @@ public class IndentCell extends Cell {
 
   void handlePropertyChanged(final Cell cell, final CellPropertySpec<?> prop, final PropertyChangeEvent<?> event) {
     checkRootIndent();
+    flushPendingChildren();
 
     if (myListeners == null) return;
     myListeners.fire(new ListenerCaller<IndentContainerCellListener>() {
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.indent;
+
+import jetbrains.jetpad.cell.Cell;
+
+import java.util.List;
+
+/**
+ * Listener which is notified about children added with children().addAll(...) at once.
+ * Other listeners get childAdded for each of them.
+ */
+public interface IndentContainerCellBatchListener extends IndentContainerCellListener {
+  /**
+   * Consecutive children of a cell which were added with children().addAll(...)
+   */
+  void childrenAdded(List<Cell> children);
+}
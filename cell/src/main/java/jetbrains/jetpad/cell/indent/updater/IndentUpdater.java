@@ -35,6 +35,7 @@ public class IndentUpdater<TargetT> {
   private boolean myInitialized;
 
   private Set<Cell> myAttached = new HashSet<>();
+  private PositionIndex<Cell> myPositions = new PositionIndex<>();
 
   public IndentUpdater(
       Cell root,
@@ -56,11 +57,28 @@ public class IndentUpdater<TargetT> {
   }
 
   public void childAdded(Cell child) {
-    childAdded(child, true);
+    childrenAdded(Collections.singletonList(child));
   }
 
-  private void childAdded(Cell child, boolean real) {
-    onChildAdd(child);
+  /**
+   * Adds consecutive children of a cell in one pass. New lines split the line at the insertion point once,
+   * so the cost is linear in the size of the added subtrees.
+   */
+  public void childrenAdded(List<? extends Cell> children) {
+    add(children, true);
+  }
+
+  private void add(List<? extends Cell> cells, boolean real) {
+    if (cells.isEmpty()) return;
+    Insertion insertion = new Insertion(prevPosition(cells.get(0)));
+    for (Cell cell : cells) {
+      add(cell, real, insertion);
+    }
+    insertion.finish();
+  }
+
+  private void add(Cell child, boolean real, Insertion insertion) {
+    insertion.attach(child);
 
     if (real) {
       if (myChildRegistrations.containsKey(child)) {
@@ -72,7 +90,7 @@ public class IndentUpdater<TargetT> {
     if (!isCell(child)) {
       List<Cell> children = child.children();
       for (Cell c : children) {
-        childAdded(c, real);
+        add(c, real, insertion);
       }
     }
   }
@@ -101,7 +119,7 @@ public class IndentUpdater<TargetT> {
     if (item == root()) return;
 
     if (change.getNewValue()) {
-      childAdded(item, false);
+      add(Collections.singletonList(item), false);
     } else {
       myJustBecameInvisible = item;
       try {
@@ -112,70 +130,6 @@ public class IndentUpdater<TargetT> {
     }
   }
 
-  private void onChildAdd(Cell child) {
-    if (!isVisible(child)) return;
-
-    if (isAttached(child)) {
-      throw new IllegalStateException("child " + child + " is already attached");
-    }
-
-    setAttached(child, true);
-
-    Position insertAt = new Position(this, child);
-    Position prevNewLinePos = prevNewLine(insertAt.prev());
-
-    if (isCell(child)) {
-      CellWrapper<TargetT> wrapper = myIndentUpdaterTarget.wrap(child);
-      myWrappers.put(child, wrapper);
-
-      if (prevNewLinePos == null) {
-        Position first = new Position(this, firstLeaf(myRoot));
-        children(children(myTarget).get(0)).add(first.deltaTo(insertAt), wrapper.item());
-      } else {
-        TargetT targetLine = myNewLineToLine.get(prevNewLinePos.get());
-        int indentDelta = indent(prevNewLinePos.get()) > 0 ? 1 : 0;
-        children(targetLine).add(prevNewLinePos.deltaTo(insertAt) - 1 + indentDelta, wrapper.item());
-      }
-    } else if (child instanceof NewLineCell) {
-      Position nextNewLinePos = nextNewLine(insertAt.next());
-
-      TargetT newLine = myIndentUpdaterTarget.newLine();
-      int indent = indent(child);
-
-      if (indent > 0) {
-        TargetT indentItem = myIndentUpdaterTarget.newIndent(indent);
-        children(newLine).add(indentItem);
-      }
-
-      myNewLineToLine.put(child, newLine);
-
-      if (prevNewLinePos == null) {
-        children(myTarget).add(1, newLine);
-      } else {
-        TargetT prevLine = myNewLineToLine.get(prevNewLinePos.get());
-
-        //this is optimization for the initalization case
-        int prevLineIndex = children(myTarget).lastIndexOf(prevLine);
-        children(myTarget).add(prevLineIndex + 1, newLine);
-      }
-
-      Iterator<Position> positions = nextNewLinePos == null ? toEnd(insertAt.next()) : range(insertAt.next(), nextNewLinePos);
-      while (positions.hasNext()) {
-        Cell part = positions.next().get();
-        if (!isCell(part)) continue;
-        CellWrapper<TargetT> wrapper = myWrappers.get(part);
-        TargetT item = wrapper.item();
-
-        if (myIndentUpdaterTarget.parent(item) == null) {
-          throw new IllegalStateException();
-        }
-
-        removeFromParent(item);
-        children(newLine).add(item);
-      }
-    }
-  }
-
   private void onChildRemove(Cell child) {
     if (!isVisible(child)) return;
 
@@ -183,20 +137,15 @@ public class IndentUpdater<TargetT> {
       throw new IllegalStateException("child " + child + " is already detached");
     }
 
-    Position removeAt = new Position(this, child);
-    Position prevNewLinePos = prevNewLine(removeAt.prev());
-
     if (isCell(child)) {
+      Cell prevNewLine = myPositions.newLineBefore(child);
       TargetT line;
-      int index;
-      if (prevNewLinePos == null) {
-        Position first = new Position(this, firstLeaf(myRoot));
+      if (prevNewLine == null) {
         line = children(myTarget).get(0);
-        index = first.deltaTo(removeAt);
       } else {
-        line = myNewLineToLine.get(prevNewLinePos.get());
-        index = prevNewLinePos.deltaTo(removeAt) - 1 + (indent(prevNewLinePos.get()) > 0 ? 1 : 0);
+        line = myNewLineToLine.get(prevNewLine);
       }
+      int index = indexInLine(child, prevNewLine);
 
       TargetT toRemove = children(line).get(index);
 
@@ -208,6 +157,7 @@ public class IndentUpdater<TargetT> {
       children(line).remove(index);
       myWrappers.remove(child).remove();
     } else if (child instanceof NewLineCell) {
+      Cell prevNewLine = myPositions.newLineBefore(child);
       TargetT lineCell = myNewLineToLine.remove(child);
 
       if (lineCell == null) {
@@ -221,10 +171,10 @@ public class IndentUpdater<TargetT> {
       removeFromParent(lineCell);
 
       TargetT mergeWith;
-      if (prevNewLinePos == null) {
+      if (prevNewLine == null) {
         mergeWith = children(myTarget).get(0);
       } else {
-        mergeWith = myNewLineToLine.get(prevNewLinePos.get());
+        mergeWith = myNewLineToLine.get(prevNewLine);
       }
 
       for (TargetT c : new ArrayList<>(children(lineCell))) {
@@ -240,72 +190,23 @@ public class IndentUpdater<TargetT> {
     children(myIndentUpdaterTarget.parent(c)).remove(c);
   }
 
-  private Position prevNewLine(Position from) {
-    Position current = from;
-    while (current != null) {
-      if (current.get() instanceof NewLineCell) {
-        return current;
-      }
-      current = current.prev();
-    }
-    return null;
+  private int indexInLine(Cell cell, Cell prevNewLine) {
+    if (prevNewLine == null) return myPositions.rank(cell);
+    int indentDelta = indent(prevNewLine) > 0 ? 1 : 0;
+    return myPositions.rank(cell) - myPositions.rank(prevNewLine) - 1 + indentDelta;
   }
 
-  private Position nextNewLine(Position from) {
-    Position current = from;
-    while (current != null) {
-      if (current.get() instanceof NewLineCell) {
-        return current;
-      }
-      current = current.next();
+  /**
+   * The last new line among the positions which precede the cell or its subtree
+   */
+  private Cell newLineAtOrBefore(Cell cell) {
+    Position current = new Position(this, cell);
+    while (current != null && !myPositions.contains(current.get())) {
+      current = current.prev();
     }
-    return null;
-  }
-
-  private Iterator<Position> toEnd(final Position pos) {
-    return new Iterator<Position>() {
-      private Position myCurrent = pos;
-
-      @Override
-      public boolean hasNext() {
-        return myCurrent != null;
-      }
-
-      @Override
-      public Position next() {
-        Position result = myCurrent;
-        myCurrent = myCurrent.next();
-        return result;
-      }
-
-      @Override
-      public void remove() {
-        throw new UnsupportedOperationException();
-      }
-    };
-  }
-
-  private Iterator<Position> range(final Position from, final Position to) {
-    return new Iterator<Position>() {
-      private Position myCurrent = from;
-
-      @Override
-      public boolean hasNext() {
-        return !myCurrent.equals(to);
-      }
-
-      @Override
-      public Position next() {
-        Position result = myCurrent;
-        myCurrent = myCurrent.next();
-        return result;
-      }
-
-      @Override
-      public void remove() {
-        throw new UnsupportedOperationException();
-      }
-    };
+    if (current == null) return null;
+    if (current.get() instanceof NewLineCell) return current.get();
+    return myPositions.newLineBefore(current.get());
   }
 
   private int indent(Cell part) {
@@ -313,8 +214,8 @@ public class IndentUpdater<TargetT> {
     Cell current = part.getParent();
     Cell prevCurrent = part;
     while (current != myRoot) {
-      Position prevNewLine = prevNewLine(new Position(this, prevCurrent));
-      if (isIndented(current) && prevNewLine != null && prevNewLine.get().getParent() == current) {
+      Cell prevNewLine = newLineAtOrBefore(prevCurrent);
+      if (isIndented(current) && prevNewLine != null && prevNewLine.getParent() == current) {
         result++;
       }
 
@@ -324,16 +225,6 @@ public class IndentUpdater<TargetT> {
     return result;
   }
 
-  private Cell firstLeaf(Cell item) {
-    if (isCell(item)) return item;
-    for (Cell child : item.children()) {
-      if (isVisible(child) && !isEmptyIndent(child)) {
-        return firstLeaf(child);
-      }
-    }
-    return item;
-  }
-
   Cell root() {
     return myRoot;
   }
@@ -361,26 +252,30 @@ public class IndentUpdater<TargetT> {
   }
 
   private void setAttached(final Cell src, boolean value) {
+    boolean position = isCell(src) || src instanceof NewLineCell;
     if (value) {
       myAttached.add(src);
+      if (position) {
+        myPositions.add(src, prevPosition(src), src instanceof NewLineCell);
+      }
     } else {
       myAttached.remove(src);
+      if (position) {
+        myPositions.remove(src);
+      }
     }
   }
 
-  boolean isCell(Cell source) {
-    return !(source instanceof IndentCell);
-  }
-
-  boolean isEmptyIndent(Cell source) {
-    if (!(source instanceof IndentCell)) return false;
-
-    for (Cell c : source.children()) {
-      if (!isVisible(c)) continue;
-      if (!isEmptyIndent(c)) return false;
+  private Cell prevPosition(Cell cell) {
+    Position current = new Position(this, cell).prev();
+    while (current != null && !myPositions.contains(current.get())) {
+      current = current.prev();
     }
+    return current == null ? null : current.get();
+  }
 
-    return true;
+  boolean isCell(Cell source) {
+    return !(source instanceof IndentCell);
   }
 
   private Registration watch(final Cell child) {
@@ -407,4 +302,77 @@ public class IndentUpdater<TargetT> {
 
   protected void onVisibilityChanged(Cell cell, PropertyChangeEvent<Boolean> event) {
   }
+
+  /**
+   * Insertion point in the target which follows the added positions
+   */
+  private class Insertion {
+    private TargetT myLine;
+    private int myLineIndex;
+    private int myOffset;
+    private List<TargetT> myTail;
+
+    Insertion(Cell prev) {
+      Cell prevNewLine = prev == null || prev instanceof NewLineCell ? prev : myPositions.newLineBefore(prev);
+      Cell nextNewLine;
+      if (prevNewLine == null) {
+        myLine = children(myTarget).get(0);
+        myLineIndex = 0;
+        nextNewLine = myPositions.newLine(0);
+      } else {
+        myLine = myNewLineToLine.get(prevNewLine);
+        myLineIndex = myPositions.newLinesBefore(prevNewLine) + 1;
+        nextNewLine = myPositions.newLine(myLineIndex);
+      }
+
+      int end = nextNewLine == null ? myPositions.size() : myPositions.rank(nextNewLine);
+      int start = prev == null ? 0 : myPositions.rank(prev) + 1;
+      myOffset = children(myLine).size() - (end - start);
+    }
+
+    void attach(Cell child) {
+      if (!isVisible(child)) return;
+
+      if (isAttached(child)) {
+        throw new IllegalStateException("child " + child + " is already attached");
+      }
+
+      setAttached(child, true);
+
+      if (isCell(child)) {
+        CellWrapper<TargetT> wrapper = myIndentUpdaterTarget.wrap(child);
+        myWrappers.put(child, wrapper);
+        children(myLine).add(myOffset++, wrapper.item());
+      } else if (child instanceof NewLineCell) {
+        if (myTail == null) {
+          myTail = new ArrayList<>();
+          List<TargetT> lineChildren = children(myLine);
+          while (lineChildren.size() > myOffset) {
+            myTail.add(lineChildren.remove(lineChildren.size() - 1));
+          }
+          Collections.reverse(myTail);
+        }
+
+        TargetT newLine = myIndentUpdaterTarget.newLine();
+        int indent = indent(child);
+        if (indent > 0) {
+          TargetT indentItem = myIndentUpdaterTarget.newIndent(indent);
+          children(newLine).add(indentItem);
+        }
+
+        myNewLineToLine.put(child, newLine);
+        children(myTarget).add(++myLineIndex, newLine);
+        myLine = newLine;
+        myOffset = children(newLine).size();
+      }
+    }
+
+    void finish() {
+      if (myTail == null) return;
+      List<TargetT> lineChildren = children(myLine);
+      for (TargetT item : myTail) {
+        lineChildren.add(item);
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.indent.updater;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ordered sequence of the positions of an indent updater, i.e. attached cells and new lines, which answers
+ * rank and new line queries in logarithmic time. It's an AVL tree whose nodes keep sizes of their subtrees
+ * and numbers of new lines in them.
+ */
+class PositionIndex<ItemT> {
+  private final Map<ItemT, Node<ItemT>> myNodes = new HashMap<>();
+  private Node<ItemT> myRoot;
+
+  boolean contains(ItemT item) {
+    return myNodes.containsKey(item);
+  }
+
+  int size() {
+    return myNodes.size();
+  }
+
+  /**
+   * @param after item after which the new one is inserted, or null if it's inserted at the start
+   */
+  void add(ItemT item, ItemT after, boolean newLine) {
+    if (myNodes.containsKey(item)) {
+      throw new IllegalStateException("item " + item + " is already indexed");
+    }
+
+    Node<ItemT> node = new Node<>(item, newLine);
+    if (after == null) {
+      if (myRoot == null) {
+        myRoot = node;
+      } else {
+        attach(first(myRoot), node, true);
+      }
+    } else {
+      Node<ItemT> prev = node(after);
+      if (prev.right == null) {
+        attach(prev, node, false);
+      } else {
+        attach(first(prev.right), node, true);
+      }
+    }
+    myNodes.put(item, node);
+  }
+
+  void remove(ItemT item) {
+    Node<ItemT> node = node(item);
+    myNodes.remove(item);
+
+    if (node.left != null && node.right != null) {
+      Node<ItemT> next = first(node.right);
+      node.item = next.item;
+      node.newLine = next.newLine;
+      myNodes.put(node.item, node);
+      node = next;
+    }
+
+    Node<ItemT> parent = node.parent;
+    replace(node, node.left != null ? node.left : node.right);
+    rebalance(parent);
+  }
+
+  int rank(ItemT item) {
+    Node<ItemT> node = node(item);
+    int result = size(node.left);
+    while (node.parent != null) {
+      if (node == node.parent.right) {
+        result += size(node.parent.left) + 1;
+      }
+      node = node.parent;
+    }
+    return result;
+  }
+
+  int newLinesBefore(ItemT item) {
+    Node<ItemT> node = node(item);
+    int result = newLines(node.left);
+    while (node.parent != null) {
+      Node<ItemT> parent = node.parent;
+      if (node == parent.right) {
+        result += newLines(parent.left) + (parent.newLine ? 1 : 0);
+      }
+      node = parent;
+    }
+    return result;
+  }
+
+  /**
+   * @return the last new line before the item, or null if there's none
+   */
+  ItemT newLineBefore(ItemT item) {
+    int count = newLinesBefore(item);
+    if (count == 0) return null;
+    return newLine(count - 1);
+  }
+
+  /**
+   * @return the new line with the index among all new lines, or null if there are fewer new lines
+   */
+  ItemT newLine(int index) {
+    if (myRoot == null || index >= myRoot.newLines) return null;
+
+    int current = index;
+    Node<ItemT> node = myRoot;
+    while (true) {
+      int left = newLines(node.left);
+      if (current < left) {
+        node = node.left;
+        continue;
+      }
+      current -= left;
+      if (node.newLine) {
+        if (current == 0) return node.item;
+        current--;
+      }
+      node = node.right;
+    }
+  }
+
+  ItemT next(ItemT item) {
+    Node<ItemT> node = node(item);
+    if (node.right != null) return first(node.right).item;
+    while (node.parent != null && node == node.parent.right) {
+      node = node.parent;
+    }
+    return node.parent == null ? null : node.parent.item;
+  }
+
+  private Node<ItemT> node(ItemT item) {
+    Node<ItemT> result = myNodes.get(item);
+    if (result == null) {
+      throw new IllegalStateException("item " + item + " isn't indexed");
+    }
+    return result;
+  }
+
+  private Node<ItemT> first(Node<ItemT> node) {
+    Node<ItemT> result = node;
+    while (result.left != null) {
+      result = result.left;
+    }
+    return result;
+  }
+
+  private void attach(Node<ItemT> parent, Node<ItemT> node, boolean left) {
+    node.parent = parent;
+    if (left) {
+      parent.left = node;
+    } else {
+      parent.right = node;
+    }
+    rebalance(parent);
+  }
+
+  private void replace(Node<ItemT> node, Node<ItemT> with) {
+    Node<ItemT> parent = node.parent;
+    if (parent == null) {
+      myRoot = with;
+    } else if (parent.left == node) {
+      parent.left = with;
+    } else {
+      parent.right = with;
+    }
+    if (with != null) {
+      with.parent = parent;
+    }
+  }
+
+  private void rebalance(Node<ItemT> from) {
+    Node<ItemT> node = from;
+    while (node != null) {
+      update(node);
+      int balance = height(node.left) - height(node.right);
+      if (balance > 1) {
+        if (height(node.left.left) < height(node.left.right)) {
+          rotateLeft(node.left);
+        }
+        node = rotateRight(node);
+      } else if (balance < -1) {
+        if (height(node.right.right) < height(node.right.left)) {
+          rotateRight(node.right);
+        }
+        node = rotateLeft(node);
+      }
+      node = node.parent;
+    }
+  }
+
+  private Node<ItemT> rotateRight(Node<ItemT> node) {
+    Node<ItemT> left = node.left;
+    replace(node, left);
+    node.left = left.right;
+    if (node.left != null) {
+      node.left.parent = node;
+    }
+    left.right = node;
+    node.parent = left;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  private Node<ItemT> rotateLeft(Node<ItemT> node) {
+    Node<ItemT> right = node.right;
+    replace(node, right);
+    node.right = right.left;
+    if (node.right != null) {
+      node.right.parent = node;
+    }
+    right.left = node;
+    node.parent = right;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  private void update(Node<ItemT> node) {
+    node.height = Math.max(height(node.left), height(node.right)) + 1;
+    node.size = size(node.left) + size(node.right) + 1;
+    node.newLines = newLines(node.left) + newLines(node.right) + (node.newLine ? 1 : 0);
+  }
+
+  private int height(Node<ItemT> node) {
+    return node == null ? 0 : node.height;
+  }
+
+  private int size(Node<ItemT> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private int newLines(Node<ItemT> node) {
+    return node == null ? 0 : node.newLines;
+  }
+
+  private static class Node<ItemT> {
+    ItemT item;
+    boolean newLine;
+    Node<ItemT> left;
+    Node<ItemT> right;
+    Node<ItemT> parent;
+    int height = 1;
+    int size = 1;
+    int newLines;
+
+    Node(ItemT item, boolean newLine) {
+      this.item = item;
+      this.newLine = newLine;
+      newLines = newLine ? 1 : 0;
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.mappersUtil;
+
+/**
+ * Children of VirtualChildren in source order. Each node keeps the measured height of a child, its mapped item,
+ * and the spacer if the child starts a run of unmapped children. It's an AVL tree whose nodes keep sizes,
+ * sums of known heights and numbers of mapped items and spacers of their subtrees, so offsets of children,
+ * positions in the target and bounds of runs are found in logarithmic time.
+ */
+class VirtualChildIndex<ItemT> {
+  static final int UNKNOWN = -1;
+
+  private static final int MAPPED = 0;
+  private static final int SPACERS = 1;
+  private static final int KNOWN = 2;
+  private static final int KNOWN_SUM = 3;
+
+  private Node<ItemT> myRoot;
+
+  int size() {
+    return size(myRoot);
+  }
+
+  int mappedCount() {
+    return (int) sum(myRoot, MAPPED);
+  }
+
+  int spacerCount() {
+    return (int) sum(myRoot, SPACERS);
+  }
+
+  int knownCount() {
+    return (int) sum(myRoot, KNOWN);
+  }
+
+  long knownSum() {
+    return sum(myRoot, KNOWN_SUM);
+  }
+
+  void clear() {
+    myRoot = null;
+  }
+
+  Node<ItemT> node(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index = " + index + ", size = " + size());
+    }
+
+    Node<ItemT> node = myRoot;
+    int current = index;
+    while (true) {
+      int left = size(node.left);
+      if (current < left) {
+        node = node.left;
+      } else if (current == left) {
+        return node;
+      } else {
+        current -= left + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  /**
+   * Inserts a child with unknown height, which isn't mapped and has no spacer
+   */
+  Node<ItemT> add(int index) {
+    if (index < 0 || index > size()) {
+      throw new IndexOutOfBoundsException("index = " + index + ", size = " + size());
+    }
+
+    Node<ItemT> node = new Node<>();
+    if (myRoot == null) {
+      myRoot = node;
+    } else if (index == size()) {
+      attach(last(myRoot), node, false);
+    } else {
+      Node<ItemT> next = node(index);
+      if (next.left == null) {
+        attach(next, node, true);
+      } else {
+        attach(last(next.left), node, false);
+      }
+    }
+    return node;
+  }
+
+  void remove(int index) {
+    Node<ItemT> node = node(index);
+    Node<ItemT> rebalanceFrom;
+    if (node.left != null && node.right != null) {
+      Node<ItemT> next = first(node.right);
+      if (next.parent == node) {
+        rebalanceFrom = next;
+      } else {
+        rebalanceFrom = next.parent;
+        replace(next, next.right);
+        next.right = node.right;
+        next.right.parent = next;
+      }
+      next.left = node.left;
+      next.left.parent = next;
+      replace(node, next);
+    } else {
+      rebalanceFrom = node.parent;
+      replace(node, node.left != null ? node.left : node.right);
+    }
+    node.left = node.right = node.parent = null;
+    rebalance(rebalanceFrom);
+  }
+
+  void setHeight(Node<ItemT> node, int height) {
+    node.height = height;
+    updateUp(node);
+  }
+
+  void setItem(Node<ItemT> node, ItemT item) {
+    node.item = item;
+    updateUp(node);
+  }
+
+  void setSpacer(Node<ItemT> node, ItemT spacer) {
+    node.spacer = spacer;
+    updateUp(node);
+  }
+
+  int mappedBefore(int index) {
+    return (int) before(index, MAPPED);
+  }
+
+  int spacersBefore(int index) {
+    return (int) before(index, SPACERS);
+  }
+
+  /**
+   * @return index of the k-th mapped child
+   */
+  int mapped(int k) {
+    return select(k, MAPPED);
+  }
+
+  /**
+   * @return index of the child which has the k-th spacer
+   */
+  int spacer(int k) {
+    return select(k, SPACERS);
+  }
+
+  /**
+   * @return offset of the top of the child from the top of the first one
+   */
+  long offset(int index, int unknownHeight) {
+    return before(index, KNOWN_SUM) + (index - before(index, KNOWN)) * (long) unknownHeight;
+  }
+
+  /**
+   * @return index of the first child whose bottom is below the offset, or size() if there's none
+   */
+  int indexAt(long offset, int unknownHeight) {
+    Node<ItemT> node = myRoot;
+    int result = 0;
+    long current = offset;
+    while (node != null) {
+      long left = sum(node.left, KNOWN_SUM) + (size(node.left) - sum(node.left, KNOWN)) * unknownHeight;
+      if (current < left) {
+        node = node.left;
+        continue;
+      }
+      current -= left;
+      int height = node.height == UNKNOWN ? unknownHeight : node.height;
+      if (current < height) {
+        return result + size(node.left);
+      }
+      current -= height;
+      result += size(node.left) + 1;
+      node = node.right;
+    }
+    return result;
+  }
+
+  private long before(int index, int kind) {
+    long result = 0;
+    Node<ItemT> node = myRoot;
+    int current = index;
+    while (node != null) {
+      int left = size(node.left);
+      if (current <= left) {
+        node = node.left;
+      } else {
+        result += sum(node.left, kind) + value(node, kind);
+        current -= left + 1;
+        node = node.right;
+      }
+    }
+    return result;
+  }
+
+  private int select(int k, int kind) {
+    if (k < 0 || k >= sum(myRoot, kind)) {
+      throw new IndexOutOfBoundsException("k = " + k);
+    }
+
+    Node<ItemT> node = myRoot;
+    int result = 0;
+    long current = k;
+    while (true) {
+      long left = sum(node.left, kind);
+      if (current < left) {
+        node = node.left;
+        continue;
+      }
+      current -= left;
+      if (value(node, kind) == 1) {
+        if (current == 0) return result + size(node.left);
+        current--;
+      }
+      result += size(node.left) + 1;
+      node = node.right;
+    }
+  }
+
+  private Node<ItemT> first(Node<ItemT> node) {
+    Node<ItemT> result = node;
+    while (result.left != null) {
+      result = result.left;
+    }
+    return result;
+  }
+
+  private Node<ItemT> last(Node<ItemT> node) {
+    Node<ItemT> result = node;
+    while (result.right != null) {
+      result = result.right;
+    }
+    return result;
+  }
+
+  private void attach(Node<ItemT> parent, Node<ItemT> node, boolean left) {
+    node.parent = parent;
+    if (left) {
+      parent.left = node;
+    } else {
+      parent.right = node;
+    }
+    rebalance(parent);
+  }
+
+  private void replace(Node<ItemT> node, Node<ItemT> with) {
+    Node<ItemT> parent = node.parent;
+    if (parent == null) {
+      myRoot = with;
+    } else if (parent.left == node) {
+      parent.left = with;
+    } else {
+      parent.right = with;
+    }
+    if (with != null) {
+      with.parent = parent;
+    }
+  }
+
+  private void updateUp(Node<ItemT> from) {
+    for (Node<ItemT> node = from; node != null; node = node.parent) {
+      update(node);
+    }
+  }
+
+  private void rebalance(Node<ItemT> from) {
+    Node<ItemT> node = from;
+    while (node != null) {
+      update(node);
+      int balance = level(node.left) - level(node.right);
+      if (balance > 1) {
+        if (level(node.left.left) < level(node.left.right)) {
+          rotateLeft(node.left);
+        }
+        node = rotateRight(node);
+      } else if (balance < -1) {
+        if (level(node.right.right) < level(node.right.left)) {
+          rotateRight(node.right);
+        }
+        node = rotateLeft(node);
+      }
+      node = node.parent;
+    }
+  }
+
+  private Node<ItemT> rotateRight(Node<ItemT> node) {
+    Node<ItemT> left = node.left;
+    replace(node, left);
+    node.left = left.right;
+    if (node.left != null) {
+      node.left.parent = node;
+    }
+    left.right = node;
+    node.parent = left;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  private Node<ItemT> rotateLeft(Node<ItemT> node) {
+    Node<ItemT> right = node.right;
+    replace(node, right);
+    node.right = right.left;
+    if (node.right != null) {
+      node.right.parent = node;
+    }
+    right.left = node;
+    node.parent = right;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  private void update(Node<ItemT> node) {
+    node.level = Math.max(level(node.left), level(node.right)) + 1;
+    node.size = size(node.left) + size(node.right) + 1;
+    node.mapped = (int) (sum(node.left, MAPPED) + sum(node.right, MAPPED) + value(node, MAPPED));
+    node.spacers = (int) (sum(node.left, SPACERS) + sum(node.right, SPACERS) + value(node, SPACERS));
+    node.known = (int) (sum(node.left, KNOWN) + sum(node.right, KNOWN) + value(node, KNOWN));
+    node.knownSum = sum(node.left, KNOWN_SUM) + sum(node.right, KNOWN_SUM) + value(node, KNOWN_SUM);
+  }
+
+  private int level(Node<ItemT> node) {
+    return node == null ? 0 : node.level;
+  }
+
+  private int size(Node<ItemT> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private long sum(Node<ItemT> node, int kind) {
+    if (node == null) return 0;
+    switch (kind) {
+      case MAPPED:
+        return node.mapped;
+      case SPACERS:
+        return node.spacers;
+      case KNOWN:
+        return node.known;
+      default:
+        return node.knownSum;
+    }
+  }
+
+  private long value(Node<ItemT> node, int kind) {
+    switch (kind) {
+      case MAPPED:
+        return node.item != null ? 1 : 0;
+      case SPACERS:
+        return node.spacer != null ? 1 : 0;
+      case KNOWN:
+        return node.height != UNKNOWN ? 1 : 0;
+      default:
+        return node.height != UNKNOWN ? node.height : 0;
+    }
+  }
+
+  static class Node<ItemT> {
+    private int height = UNKNOWN;
+    private ItemT item;
+    private ItemT spacer;
+
+    /**
+     * Height last set to the spacer
+     */
+    int spacerHeight = UNKNOWN;
+
+    /**
+     * Item of an unmapped child which is kept for reuse
+     */
+    ItemT pooled;
+
+    private Node<ItemT> left;
+    private Node<ItemT> right;
+    private Node<ItemT> parent;
+    private int level = 1;
+    private int size = 1;
+    private int mapped;
+    private int spacers;
+    private int known;
+    private long knownSum;
+
+    int getHeight() {
+      return height;
+    }
+
+    ItemT getItem() {
+      return item;
+    }
+
+    ItemT getSpacer() {
+      return spacer;
+    }
+  }
+}
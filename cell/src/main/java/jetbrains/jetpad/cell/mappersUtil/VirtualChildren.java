@@ -0,0 +1,353 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.mappersUtil;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static jetbrains.jetpad.cell.mappersUtil.VirtualChildIndex.UNKNOWN;
+
+/**
+ * Windowed mapping of the children of a vertically laid out cell. Only children which intersect the viewport extended
+ * by the margin are mapped. Runs of the other children are replaced with spacers whose heights are the sum of
+ * the measured heights of their children, or the average measured height for the children which were never mapped.
+ * Mapped children which get farther than two margins from the viewport are unmapped, and spacers are reused.
+ * Items of up to poolSize unmapped children are kept and reused if these children are mapped again.
+ *
+ * Target children are kept in the same order as the children of the source: each target child is either a mapped
+ * child or a spacer. The class doesn't depend on the target representation, so it can be tested with any
+ * target items. Heights and runs are kept in VirtualChildIndex, so the cost of an update depends on the number
+ * of mapped children and not on the number of all children.
+ */
+public abstract class VirtualChildren<ItemT> {
+  private final int myMargin;
+  private final int myDefaultHeight;
+  private final int myPoolSize;
+  private final VirtualChildIndex<ItemT> myIndex = new VirtualChildIndex<>();
+  private final Set<VirtualChildIndex.Node<ItemT>> myPooled = new LinkedHashSet<>();
+  private final List<ItemT> mySpacerPool = new ArrayList<>();
+
+  protected VirtualChildren(int margin, int defaultHeight) {
+    this(margin, defaultHeight, 0);
+  }
+
+  protected VirtualChildren(int margin, int defaultHeight, int poolSize) {
+    if (margin < 0 || defaultHeight <= 0 || poolSize < 0) {
+      throw new IllegalArgumentException("margin = " + margin + ", defaultHeight = " + defaultHeight + ", poolSize = " + poolSize);
+    }
+    myMargin = margin;
+    myDefaultHeight = defaultHeight;
+    myPoolSize = poolSize;
+  }
+
+  protected abstract List<ItemT> targetChildren();
+  protected abstract ItemT mapChild(int index);
+  protected abstract void unmapChild(ItemT item);
+  protected abstract ItemT createSpacer();
+  protected abstract void setSpacerHeight(ItemT spacer, int height);
+  protected abstract int measure(ItemT item);
+
+  protected boolean canUnmap(ItemT item) {
+    return true;
+  }
+
+  public void init(int count) {
+    for (int i = 0; i < count; i++) {
+      myIndex.add(myIndex.size());
+    }
+    if (count > 0) {
+      fixRunStart(0);
+      refreshSpacer(0);
+    }
+  }
+
+  public void dispose() {
+    List<ItemT> target = targetChildren();
+    for (int i = target.size() - 1; i >= 0; i--) {
+      target.remove(i);
+    }
+    for (int k = myIndex.mappedCount() - 1; k >= 0; k--) {
+      unmapChild(myIndex.node(myIndex.mapped(k)).getItem());
+    }
+    for (VirtualChildIndex.Node<ItemT> node : myPooled) {
+      unmapChild(node.pooled);
+    }
+    myIndex.clear();
+    myPooled.clear();
+    mySpacerPool.clear();
+  }
+
+  public void childAdded(int index) {
+    VirtualChildIndex.Node<ItemT> node = myIndex.add(index);
+    if (index + 1 < myIndex.size() && (index == 0 || myIndex.node(index - 1).getItem() != null)) {
+      moveSpacer(myIndex.node(index + 1), node);
+    }
+    map(index);
+  }
+
+  public void childRemoved(int index) {
+    VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+    int position = targetIndex(index);
+    if (node.getItem() != null) {
+      targetChildren().remove(position);
+      unmapChild(node.getItem());
+    } else if (node.pooled != null) {
+      myPooled.remove(node);
+      unmapChild(node.pooled);
+    }
+    ItemT spacer = node.getSpacer();
+    myIndex.remove(index);
+
+    if (spacer == null) {
+      fixRunStart(index);
+    } else if (index < myIndex.size() && myIndex.node(index).getItem() == null) {
+      VirtualChildIndex.Node<ItemT> next = myIndex.node(index);
+      next.spacerHeight = node.spacerHeight;
+      myIndex.setSpacer(next, spacer);
+    } else {
+      targetChildren().remove(position);
+      mySpacerPool.add(spacer);
+    }
+    refreshRun(index - 1);
+    refreshRun(index);
+  }
+
+  public boolean isMapped(int index) {
+    return myIndex.node(index).getItem() != null;
+  }
+
+  public int getMappedCount() {
+    return myIndex.mappedCount();
+  }
+
+  public void ensureMapped(int index) {
+    if (isMapped(index)) return;
+    List<Integer> toMap = new ArrayList<>();
+    toMap.add(index);
+    mapAll(toMap);
+  }
+
+  /**
+   * @param top top of the viewport relative to the top of the first target child
+   * @param bottom bottom of the viewport in the same coordinates
+   * @return true if some children were mapped or unmapped
+   */
+  public boolean update(int top, int bottom) {
+    int mapTop = top - myMargin;
+    int mapBottom = bottom + myMargin;
+    int keepTop = top - 2 * myMargin;
+    int keepBottom = bottom + 2 * myMargin;
+
+    for (int k = 0; k < myIndex.mappedCount(); k++) {
+      VirtualChildIndex.Node<ItemT> node = myIndex.node(myIndex.mapped(k));
+      myIndex.setHeight(node, measure(node.getItem()));
+    }
+    refreshSpacers();
+
+    int estimated = estimatedHeight();
+    List<Integer> toUnmap = new ArrayList<>();
+    for (int k = 0; k < myIndex.mappedCount(); k++) {
+      int index = myIndex.mapped(k);
+      VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+      long y = myIndex.offset(index, estimated);
+      if ((y + node.getHeight() <= keepTop || y >= keepBottom) && canUnmap(node.getItem())) {
+        toUnmap.add(index);
+      }
+    }
+
+    List<Integer> toMap = new ArrayList<>();
+    int index = myIndex.indexAt(mapTop, estimated);
+    long y = index < myIndex.size() ? myIndex.offset(index, estimated) : 0;
+    for (; index < myIndex.size() && y < mapBottom; index++) {
+      VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+      int height = node.getHeight() == UNKNOWN ? estimated : node.getHeight();
+      if (node.getItem() == null && y + height > mapTop) {
+        toMap.add(index);
+      }
+      y += height;
+    }
+
+    for (int i : toUnmap) {
+      unmap(i);
+    }
+    mapAll(toMap);
+    trimPool();
+    return !toMap.isEmpty() || !toUnmap.isEmpty();
+  }
+
+  private void mapAll(List<Integer> indices) {
+    if (indices.isEmpty()) return;
+    for (int index : indices) {
+      map(index);
+    }
+    for (int index : indices) {
+      VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+      myIndex.setHeight(node, measure(node.getItem()));
+    }
+    refreshSpacers();
+  }
+
+  private void map(int index) {
+    VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+    ItemT item;
+    if (node.pooled != null) {
+      item = node.pooled;
+      node.pooled = null;
+      myPooled.remove(node);
+    } else {
+      item = mapChild(index);
+    }
+
+    int position = targetIndex(index);
+    ItemT spacer = node.getSpacer();
+    int spacerHeight = node.spacerHeight;
+    if (spacer != null) {
+      myIndex.setSpacer(node, null);
+    }
+    myIndex.setItem(node, item);
+    targetChildren().add(position, item);
+
+    if (spacer == null) {
+      fixRunStart(index + 1);
+    } else if (index + 1 < myIndex.size() && myIndex.node(index + 1).getItem() == null) {
+      VirtualChildIndex.Node<ItemT> next = myIndex.node(index + 1);
+      next.spacerHeight = spacerHeight;
+      myIndex.setSpacer(next, spacer);
+    } else {
+      targetChildren().remove(position + 1);
+      mySpacerPool.add(spacer);
+    }
+    refreshRun(index - 1);
+    refreshRun(index + 1);
+  }
+
+  private void unmap(int index) {
+    VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+    ItemT item = node.getItem();
+    int position = targetIndex(index);
+    targetChildren().remove(position);
+    myIndex.setItem(node, null);
+    release(node, item);
+
+    VirtualChildIndex.Node<ItemT> next = index + 1 < myIndex.size() ? myIndex.node(index + 1) : null;
+    if (index > 0 && myIndex.node(index - 1).getItem() == null) {
+      if (next != null && next.getSpacer() != null) {
+        targetChildren().remove(position);
+        mySpacerPool.add(next.getSpacer());
+        myIndex.setSpacer(next, null);
+      }
+    } else if (next != null && next.getSpacer() != null) {
+      moveSpacer(next, node);
+    } else {
+      fixRunStart(index);
+    }
+    refreshRun(index);
+  }
+
+  private void release(VirtualChildIndex.Node<ItemT> node, ItemT item) {
+    if (myPoolSize == 0) {
+      unmapChild(item);
+      return;
+    }
+
+    node.pooled = item;
+    myPooled.add(node);
+  }
+
+  /**
+   * Unmaps the children which were released first, so that the pool isn't larger than poolSize. It's called after
+   * an update maps new children, so the items released by the same update don't push out the reused ones.
+   */
+  private void trimPool() {
+    Iterator<VirtualChildIndex.Node<ItemT>> eldest = myPooled.iterator();
+    while (myPooled.size() > myPoolSize) {
+      VirtualChildIndex.Node<ItemT> node = eldest.next();
+      eldest.remove();
+      unmapChild(node.pooled);
+      node.pooled = null;
+    }
+  }
+
+  /**
+   * Moves the spacer between adjacent children without changing the target
+   */
+  private void moveSpacer(VirtualChildIndex.Node<ItemT> from, VirtualChildIndex.Node<ItemT> to) {
+    ItemT spacer = from.getSpacer();
+    if (spacer == null) return;
+    myIndex.setSpacer(from, null);
+    to.spacerHeight = from.spacerHeight;
+    myIndex.setSpacer(to, spacer);
+  }
+
+  /**
+   * Adds or removes the spacer of the child, so that it has one if and only if it starts a run of unmapped children
+   */
+  private void fixRunStart(int index) {
+    if (index < 0 || index >= myIndex.size()) return;
+
+    VirtualChildIndex.Node<ItemT> node = myIndex.node(index);
+    boolean runStart = node.getItem() == null && (index == 0 || myIndex.node(index - 1).getItem() != null);
+    if (runStart && node.getSpacer() == null) {
+      ItemT spacer = mySpacerPool.isEmpty() ? createSpacer() : mySpacerPool.remove(mySpacerPool.size() - 1);
+      targetChildren().add(targetIndex(index), spacer);
+      node.spacerHeight = UNKNOWN;
+      myIndex.setSpacer(node, spacer);
+    } else if (!runStart && node.getSpacer() != null) {
+      targetChildren().remove(targetIndex(index));
+      mySpacerPool.add(node.getSpacer());
+      myIndex.setSpacer(node, null);
+    }
+  }
+
+  private int targetIndex(int index) {
+    return myIndex.mappedBefore(index) + myIndex.spacersBefore(index);
+  }
+
+  private void refreshSpacers() {
+    for (int k = 0; k < myIndex.spacerCount(); k++) {
+      refreshSpacer(myIndex.spacer(k));
+    }
+  }
+
+  /**
+   * Updates the spacer of the run of unmapped children which contains the child
+   */
+  private void refreshRun(int index) {
+    if (index < 0 || index >= myIndex.size() || myIndex.node(index).getItem() != null) return;
+    refreshSpacer(myIndex.spacer(myIndex.spacersBefore(index + 1) - 1));
+  }
+
+  private void refreshSpacer(int start) {
+    VirtualChildIndex.Node<ItemT> node = myIndex.node(start);
+    int mappedBefore = myIndex.mappedBefore(start);
+    int end = mappedBefore < myIndex.mappedCount() ? myIndex.mapped(mappedBefore) : myIndex.size();
+    int estimated = estimatedHeight();
+    int height = (int) (myIndex.offset(end, estimated) - myIndex.offset(start, estimated));
+    if (height != node.spacerHeight) {
+      node.spacerHeight = height;
+      setSpacerHeight(node.getSpacer(), height);
+    }
+  }
+
+  private int estimatedHeight() {
+    int count = myIndex.knownCount();
+    if (count == 0) return myDefaultHeight;
+    return (int) (myIndex.knownSum() / count);
+  }
+}
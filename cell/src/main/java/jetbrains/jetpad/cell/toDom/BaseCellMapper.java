@@ -145,6 +145,9 @@ abstract class BaseCellMapper<SourceT extends Cell> extends Mapper<SourceT, Elem
     myChildTargets.remove(index);
   }
 
+  void ensureMapped(Cell child) {
+  }
+
   @Override
   public final void onEvent(PropertyChangeEvent<Cell> event) {
     myPopupManager.onEvent(event);
@@ -160,6 +160,17 @@ public class CellContainerToDomMapper extends Mapper<CellContainer, Element> {
     this(source, target, false);
   }
 
+  /**
+   * Children of vertical cells which are farther than margin from the browser window aren't mapped
+   * until they are scrolled to or requested by the cell container. Should be called before attach.
+   */
+  public void setVirtualizationMargin(int margin) {
+    if (margin < 0) {
+      throw new IllegalArgumentException("margin = " + margin);
+    }
+    myCellToDomContext.virtualizationMargin = margin;
+  }
+
   @Override
   protected void onAttach(MappingContext ctx) {
     super.onAttach(ctx);
@@ -324,7 +335,15 @@ public class CellContainerToDomMapper extends Mapper<CellContainer, Element> {
   }
 
   private Mapper<? extends Cell, ? extends Element> getMapper(Cell cell) {
-    return (Mapper<? extends Cell, ? extends Element>) rootMapper().getDescendantMapper(cell);
+    BaseCellMapper<?> result = (BaseCellMapper<?>) rootMapper().getDescendantMapper(cell);
+    if (result != null || myCellToDomContext.virtualizationMargin < 0) return result;
+
+    Cell parent = cell.getParent();
+    if (parent == null) return null;
+    BaseCellMapper<?> parentMapper = (BaseCellMapper<?>) getMapper(parent);
+    if (parentMapper == null) return null;
+    parentMapper.ensureMapped(cell);
+    return (BaseCellMapper<?>) rootMapper().getDescendantMapper(cell);
   }
 
   private Element getElement(Cell cell) {
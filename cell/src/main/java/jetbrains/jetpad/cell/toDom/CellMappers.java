@@ -31,6 +31,9 @@ class CellMappers {
     }
 
     if (source instanceof VerticalCell) {
+      if (ctx.virtualizationMargin >= 0) {
+        return new VirtualVerticalCellMapper((VerticalCell) source, ctx, ctx.virtualizationMargin);
+      }
       return new VerticalCellMapper((VerticalCell) source, ctx);
     }
 
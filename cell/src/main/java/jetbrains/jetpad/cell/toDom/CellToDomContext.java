@@ -22,6 +22,7 @@ import jetbrains.jetpad.cell.mappersUtil.CellMapperContext;
 class CellToDomContext extends CellMapperContext<Element> {
   final boolean eventsDisabled;
   final Element focusElement;
+  int virtualizationMargin = -1;
 
   CellToDomContext(Element rootElement, boolean eventsDisabled) {
     super(rootElement);
@@ -24,7 +24,7 @@ import jetbrains.jetpad.base.Registration;
 import jetbrains.jetpad.cell.Cell;
 import jetbrains.jetpad.cell.CellPropertySpec;
 import jetbrains.jetpad.cell.indent.IndentCell;
-import jetbrains.jetpad.cell.indent.IndentContainerCellListener;
+import jetbrains.jetpad.cell.indent.IndentContainerCellBatchListener;
 import jetbrains.jetpad.cell.indent.IndentUtil;
 import jetbrains.jetpad.cell.indent.updater.CellWrapper;
 import jetbrains.jetpad.cell.indent.updater.IndentUpdater;
@@ -133,17 +133,20 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell> {
   protected void onAttach(MappingContext ctx) {
     super.onAttach(ctx);
 
-    for (Cell child : getSource().children()) {
-      myIndentUpdater.childAdded(child);
-    }
+    myIndentUpdater.childrenAdded(getSource().children());
     myIndentUpdater.initialized();
 
-    myRegistration = getSource().addListener(new IndentContainerCellListener() {
+    myRegistration = getSource().addListener(new IndentContainerCellBatchListener() {
       @Override
       public void childAdded(CollectionItemEvent<? extends Cell> event) {
         myIndentUpdater.childAdded(event.getNewItem());
       }
 
+      @Override
+      public void childrenAdded(List<Cell> children) {
+        myIndentUpdater.childrenAdded(children);
+      }
+
       @Override
       public void childRemoved(CollectionItemEvent<? extends Cell> event) {
         myIndentUpdater.childRemoved(event.getOldItem());
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.toDom;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.event.logical.shared.ResizeEvent;
+import com.google.gwt.event.logical.shared.ResizeHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.DOM;
+import com.google.gwt.user.client.Window;
+import jetbrains.jetpad.cell.Cell;
+import jetbrains.jetpad.cell.CellContainer;
+import jetbrains.jetpad.cell.VerticalCell;
+import jetbrains.jetpad.cell.mappersUtil.VirtualChildren;
+import jetbrains.jetpad.mapper.Mapper;
+import jetbrains.jetpad.mapper.MappingContext;
+import jetbrains.jetpad.model.composite.Composites;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps only those children of a vertical cell which intersect the browser window extended by the margin.
+ * Runs of the other children are represented with spacer divs, and children which get far from the window
+ * are unmapped. Children which contain the focused cell are never unmapped.
+ *
+ * Mappers of unmapped children aren't detached right away: up to MAPPER_POOL_SIZE of them are kept with their
+ * elements and reused when the user scrolls back to their cells. A mapper is bound to its source cell, so it
+ * can't be reused for another one.
+ */
+class VirtualVerticalCellMapper extends VerticalCellMapper {
+  private static final int DEFAULT_ESTIMATED_HEIGHT = 16;
+  private static final int MAPPER_POOL_SIZE = 200;
+
+  private final int myMargin;
+  private Set<BaseCellMapper<?>> myMappers;
+  private List<Node> myTargets;
+  private VirtualChildren<Element> myChildren;
+  private HandlerRegistration myScrollReg;
+  private HandlerRegistration myResizeReg;
+  private boolean myUpdateScheduled;
+
+  VirtualVerticalCellMapper(VerticalCell source, CellToDomContext ctx, int margin) {
+    super(source, ctx);
+    myMargin = margin;
+  }
+
+  @Override
+  protected boolean isAutoChildManagement() {
+    return false;
+  }
+
+  @Override
+  protected void onAttach(MappingContext ctx) {
+    super.onAttach(ctx);
+
+    myMappers = createChildSet();
+    myTargets = divWrappedElementChildren(getTarget());
+    myChildren = createChildren();
+    myChildren.init(getSource().children().size());
+
+    myScrollReg = Window.addWindowScrollHandler(new Window.ScrollHandler() {
+      @Override
+      public void onWindowScroll(Window.ScrollEvent event) {
+        scheduleUpdate();
+      }
+    });
+    myResizeReg = Window.addResizeHandler(new ResizeHandler() {
+      @Override
+      public void onResize(ResizeEvent event) {
+        scheduleUpdate();
+      }
+    });
+    scheduleUpdate();
+  }
+
+  @Override
+  protected void onDetach() {
+    myScrollReg.removeHandler();
+    myResizeReg.removeHandler();
+    myChildren.dispose();
+    myChildren = null;
+    super.onDetach();
+  }
+
+  @Override
+  void childAdded(int index, Cell child) {
+    myChildren.childAdded(index);
+    scheduleUpdate();
+  }
+
+  @Override
+  void childRemoved(int index, Cell child) {
+    myChildren.childRemoved(index);
+    scheduleUpdate();
+  }
+
+  @Override
+  void ensureMapped(Cell child) {
+    int index = getSource().children().indexOf(child);
+    if (index != -1) {
+      myChildren.ensureMapped(index);
+    }
+  }
+
+  private void scheduleUpdate() {
+    if (myUpdateScheduled) return;
+    myUpdateScheduled = true;
+    Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
+      @Override
+      public void execute() {
+        myUpdateScheduled = false;
+        if (!isAttached()) return;
+        int top = Window.getScrollTop() - getTarget().getAbsoluteTop();
+        myChildren.update(top, top + Window.getClientHeight());
+      }
+    });
+  }
+
+  private VirtualChildren<Element> createChildren() {
+    return new VirtualChildren<Element>(myMargin, DEFAULT_ESTIMATED_HEIGHT, MAPPER_POOL_SIZE) {
+      private final List<Element> myTargetChildren = new AbstractList<Element>() {
+        @Override
+        public Element get(int index) {
+          return (Element) myTargets.get(index);
+        }
+
+        @Override
+        public void add(int index, Element element) {
+          myTargets.add(index, element);
+        }
+
+        @Override
+        public Element remove(int index) {
+          Element result = get(index);
+          myTargets.remove(index);
+          return result;
+        }
+
+        @Override
+        public int size() {
+          return myTargets.size();
+        }
+      };
+
+      @Override
+      protected List<Element> targetChildren() {
+        return myTargetChildren;
+      }
+
+      @Override
+      protected Element mapChild(int index) {
+        BaseCellMapper<? extends Cell> mapper = getContext().apply(getSource().children().get(index));
+        myMappers.add(mapper);
+        return mapper.getTarget();
+      }
+
+      @Override
+      protected void unmapChild(Element item) {
+        myMappers.remove(mapperOf(item));
+      }
+
+      @Override
+      protected Element createSpacer() {
+        return DOM.createDiv();
+      }
+
+      @Override
+      protected void setSpacerHeight(Element spacer, int height) {
+        spacer.getStyle().setHeight(height, Style.Unit.PX);
+      }
+
+      @Override
+      protected int measure(Element item) {
+        return item.getParentElement().getOffsetHeight();
+      }
+
+      @Override
+      protected boolean canUnmap(Element item) {
+        CellContainer container = getSource().getContainer();
+        Cell focused = container == null ? null : container.focusedCell.get();
+        if (focused == null) return true;
+        Cell child = mapperOf(item).getSource();
+        return !Composites.isDescendant(child, focused);
+      }
+    };
+  }
+
+  private Mapper<? extends Cell, ? extends Element> mapperOf(Element target) {
+    return getContext().findMapper(target);
+  }
+}
@@ -120,6 +120,12 @@ class BaseCellMapper<SourceT extends Cell, TargetT extends View> extends Mapper<
     getTarget().children().remove(index);
   }
 
+  /**
+   * Called for a child which doesn't have a mapper yet
+   */
+  void ensureMapped(Cell child) {
+  }
+
   @Override
   public final void onEvent(PropertyChangeEvent<Cell> event) {
     myPopupManager.onEvent(event);
@@ -61,6 +61,19 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
     myContext = new CellToViewContext(getTarget(), myTargetView, myPopupView);
   }
 
+  /**
+   * Children of vertical cells and leaves of indent cells which are farther than margin from the visible rect
+   * of the view container, or from the scroll view of the scroll cell which contains them, aren't mapped until
+   * they are scrolled to or requested by the cell container, and are unmapped when they get farther than two margins
+   * from it. Should be called before attach.
+   */
+  public void setVirtualizationMargin(int margin) {
+    if (margin < 0) {
+      throw new IllegalArgumentException("margin = " + margin);
+    }
+    myContext.virtualizationMargin = margin;
+  }
+
   @Override
   protected void onAttach(MappingContext ctx) {
     super.onAttach(ctx);
@@ -116,11 +129,15 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
               myContext.focused.set(event.getNewValue());
               for (TextCell cell : myWithCaret) {
                 BaseCellMapper<?, ?> mapper = (BaseCellMapper<?, ?>) rootMapper().getDescendantMapper(cell);
-                mapper.refreshProperties();
+                if (mapper != null) {
+                  mapper.refreshProperties();
+                }
               }
               for (Cell cell : myHighlighted) {
                 BaseCellMapper<?, ?> mapper = (BaseCellMapper<?, ?>) rootMapper().getDescendantMapper(cell);
-                mapper.refreshProperties();
+                if (mapper != null) {
+                  mapper.refreshProperties();
+                }
               }
             }
           }),
@@ -132,17 +149,16 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
   }
 
   private CellContainerPeer createContainerPeer() {
-    final RootCellMapper rootMapper = rootMapper();
     return new CellContainerPeer() {
       @Override
       public int getCaretAt(TextCell tv, int x) {
-        TextView textView = (TextView) rootMapper.getDescendantMapper(tv).getTarget();
+        TextView textView = (TextView) mapperFor(tv).getTarget();
         return textView.getCaretAt(x);
       }
 
       @Override
       public int getCaretOffset(TextCell tv, int caret) {
-        Mapper<? super TextCell, ?> mapper = rootMapper.getDescendantMapper(tv);
+        BaseCellMapper<?, ?> mapper = mapperFor(tv);
         if (mapper == null) {
           throw new IllegalStateException("Can't find a mapper for " + tv);
         }
@@ -156,8 +172,8 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
       }
 
       private Rectangle calculateBounds(Cell cell) {
+        BaseCellMapper<?, ?> descendantMapper = mapperFor(cell);
         getTarget().container().root().validate();
-        BaseCellMapper<?, ? extends View> descendantMapper = (BaseCellMapper<?, ? extends View>) rootMapper.getDescendantMapper(cell);
 
         if (descendantMapper == null) {
           if (cell instanceof NewLineCell) {
@@ -174,7 +190,7 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
 
       @Override
       public void scrollTo(Rectangle rect, Cell cell) {
-        BaseCellMapper<?, ? extends View> mapper = (BaseCellMapper<?, ? extends View>) rootMapper.getDescendantMapper(cell);
+        BaseCellMapper<?, ?> mapper = mapperFor(cell);
         if (mapper == null) return;
         mapper.getTarget().scrollTo(rect);
       }
@@ -221,7 +237,7 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
       }
 
       private View getViewFor(Cell cell) {
-        Mapper<? super Cell, ?> mapper = rootMapper.getDescendantMapper(cell);
+        BaseCellMapper<?, ?> mapper = mapperFor(cell);
         if (mapper == null) return null;
         return (View) mapper.getTarget();
       }
@@ -232,6 +248,35 @@ public class CellContainerToViewMapper extends Mapper<CellContainer, View> {
     return (RootCellMapper) getDescendantMapper(getSource().root);
   }
 
+  private BaseCellMapper<?, ?> mapperFor(Cell cell) {
+    if (myContext.virtualizationMargin < 0) {
+      return (BaseCellMapper<?, ?>) rootMapper().getDescendantMapper(cell);
+    }
+
+    //scheduled updates of virtualized mappers run on validation, they shouldn't unmap the cell after it's returned
+    ViewContainer container = getTarget().container();
+    if (container != null) {
+      container.root().validate();
+    }
+    return ensureMapped(cell);
+  }
+
+  private BaseCellMapper<?, ?> ensureMapped(Cell cell) {
+    BaseCellMapper<?, ?> result = (BaseCellMapper<?, ?>) rootMapper().getDescendantMapper(cell);
+    if (result != null) return result;
+
+    //cells inside of an indent cell are mapped by the mapper of the root indent cell
+    Cell parent = cell.getParent();
+    while (parent instanceof IndentCell && !((IndentCell) parent).isRootIndent()) {
+      parent = parent.getParent();
+    }
+    if (parent == null) return null;
+    BaseCellMapper<?, ?> parentMapper = ensureMapped(parent);
+    if (parentMapper == null) return null;
+    parentMapper.ensureMapped(cell);
+    return (BaseCellMapper<?, ?>) rootMapper().getDescendantMapper(cell);
+  }
+
   private ViewTrait createRedistpatchTrait() {
     final View targetView = myTargetView;
     final CellContainer cellContainer = getSource();
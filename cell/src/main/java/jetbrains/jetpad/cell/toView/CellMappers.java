@@ -26,6 +26,9 @@ class CellMappers {
     }
 
     if (cell instanceof VerticalCell) {
+      if (ctx.virtualizationMargin >= 0) {
+        return new VirtualVerticalCellMapper((VerticalCell) cell, ctx, ctx.virtualizationMargin);
+      }
       return new VerticalCellMapper((VerticalCell) cell, ctx);
     }
 
@@ -22,6 +22,7 @@ import jetbrains.jetpad.projectional.view.View;
 class CellToViewContext extends CellMapperContext<View> {
   final View targetView;
   final View popupView;
+  int virtualizationMargin = -1;
 
   CellToViewContext(View rootView, View targetView, View popupView) {
     super(rootView);
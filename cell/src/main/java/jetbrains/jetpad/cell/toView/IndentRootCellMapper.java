@@ -19,14 +19,17 @@ import com.google.common.base.Strings;
 import jetbrains.jetpad.base.Handler;
 import jetbrains.jetpad.base.Registration;
 import jetbrains.jetpad.cell.Cell;
+import jetbrains.jetpad.cell.CellContainer;
 import jetbrains.jetpad.cell.CellPropertySpec;
 import jetbrains.jetpad.cell.indent.IndentCell;
-import jetbrains.jetpad.cell.indent.IndentContainerCellListener;
+import jetbrains.jetpad.cell.indent.IndentContainerCellBatchListener;
 import jetbrains.jetpad.cell.indent.IndentUtil;
 import jetbrains.jetpad.cell.indent.updater.CellWrapper;
 import jetbrains.jetpad.cell.indent.updater.IndentUpdater;
 import jetbrains.jetpad.cell.indent.updater.IndentUpdaterTarget;
 import jetbrains.jetpad.cell.mappersUtil.*;
+import jetbrains.jetpad.geometry.Rectangle;
+import jetbrains.jetpad.geometry.Vector;
 import jetbrains.jetpad.mapper.Mapper;
 import jetbrains.jetpad.mapper.MappingContext;
 import jetbrains.jetpad.model.collections.CollectionItemEvent;
@@ -38,19 +41,52 @@ import jetbrains.jetpad.projectional.view.TextView;
 import jetbrains.jetpad.projectional.view.VerticalView;
 import jetbrains.jetpad.projectional.view.View;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lays out the leaves of an indent cell in lines. If virtualization is on, leaves are mapped only in the lines which
+ * intersect the visible area extended by the margin, and unmapped when their lines get farther than two margins
+ * from it unless they contain the focused cell. Other leaves are represented with placeholders which have
+ * the measured size of the leaf, or an estimated height if the leaf was never mapped. The lines themselves
+ * are always created, because their layout is maintained by IndentUpdater for the whole indent cell.
+ */
 class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
+  private static final int DEFAULT_ESTIMATED_HEIGHT = 16;
+
+  private final int myMargin;
   private IndentUpdater<View> myIndentUpdater;
   private ObservableSet<BaseCellMapper<?, ?>> myCellMappers;
   private Registration myRegistration;
 
+  private Map<Cell, Leaf> myLeaves;
+  private Map<View, Leaf> myLeafViews;
+  private Set<Leaf> myMappedLeaves;
+  private VisibleAreaTracker myTracker;
+  private int myEstimatedHeight = DEFAULT_ESTIMATED_HEIGHT;
+
   IndentRootCellMapper(IndentCell source, CellToViewContext ctx) {
     super(source, new VerticalView(), ctx);
 
     myCellMappers = createChildSet();
+    myMargin = ctx.virtualizationMargin;
+    if (isVirtual()) {
+      myLeaves = new HashMap<>();
+      myLeafViews = new HashMap<>();
+      myMappedLeaves = new LinkedHashSet<>();
+      myTracker = new VisibleAreaTracker(getTarget()) {
+        @Override
+        protected boolean update(Rectangle visibleArea) {
+          return updateLeaves(visibleArea);
+        }
+      };
+    }
 
     myIndentUpdater = new IndentUpdater<View>(getSource(), getTarget(),
         new IndentUpdaterTarget<View>() {
@@ -67,35 +103,15 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
           }
 
           @Override
-          public CellWrapper<View> wrap(final Cell cell) {
-            final BaseCellMapper<? extends Cell, ? extends View> mapper = getContext().apply(cell);
-
-            CounterUtil.updateOnAdd(getSource(), cell, mapper);
-
-            mapper.setAncestorBackground(AncestorUtil.getAncestorBackground(getSource(), cell));
-
-            myCellMappers.add(mapper);
-
-            return new CellWrapper<View>() {
-              boolean myRemoved = false;
-
-              @Override
-              public View item() {
-                return mapper.getTarget();
-              }
-
-              @Override
-              public void remove() {
-                if (myRemoved) {
-                  throw new IllegalStateException();
-                }
-
-                CounterUtil.updateOnRemove(getSource(), cell, mapper);
-                myCellMappers.remove(mapper);
-
-                myRemoved = true;
-              }
-            };
+          public CellWrapper<View> wrap(Cell cell) {
+            Leaf leaf = new Leaf(cell);
+            if (isVirtual()) {
+              myLeaves.put(cell, leaf);
+              leaf.setView(new Placeholder(new Vector(0, myEstimatedHeight), myEstimatedHeight));
+            } else {
+              leaf.map();
+            }
+            return leaf;
           }
 
           @Override
@@ -112,6 +128,7 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
       @Override
       protected void onVisibilityChanged(Cell cell, PropertyChangeEvent<Boolean> event) {
         myIndentUpdater.visibilityChanged(cell, event);
+        scheduleUpdate();
       }
     };
   }
@@ -130,16 +147,24 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
   protected void onAttach(MappingContext ctx) {
     super.onAttach(ctx);
 
-    for (Cell child : getSource().children()) {
-      myIndentUpdater.childAdded(child);
-    }
+    myIndentUpdater.childrenAdded(getSource().children());
     myIndentUpdater.initialized();
+    if (isVirtual()) {
+      myTracker.attach();
+    }
 
-    myRegistration = getSource().addListener(new IndentContainerCellListener() {
+    myRegistration = getSource().addListener(new IndentContainerCellBatchListener() {
       @Override
       public void childAdded(CollectionItemEvent<? extends Cell> event) {
         Cell cell = event.getNewItem();
         myIndentUpdater.childAdded(cell);
+        scheduleUpdate();
+      }
+
+      @Override
+      public void childrenAdded(List<Cell> children) {
+        myIndentUpdater.childrenAdded(children);
+        scheduleUpdate();
       }
 
       @Override
@@ -154,6 +179,7 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
           updateCounters(cell, prop, event);
         } else if (prop == Cell.VISIBLE) {
           myIndentUpdater.visibilityChanged(cell, (PropertyChangeEvent<Boolean>) event);
+          scheduleUpdate();
         } else if (Cell.isPopupProp(prop)) {
           IndentRootCellMapper.this.onEvent((PropertyChangeEvent<Cell>) event);
         } else if (prop == Cell.BACKGROUND) {
@@ -167,6 +193,7 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
           public void handle(Cell item) {
             BaseCellMapper<?, ?> mapper = (BaseCellMapper<?, ?>) getDescendantMapper(item);
             if (mapper == null) {
+              if (isVirtual()) return;
               throw new IllegalStateException();
             }
             if (CounterUtil.update(mapper, prop, event)) {
@@ -181,6 +208,7 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
           @Override
           public void handle(Cell item) {
             BaseCellMapper<?, ?> mapper = (BaseCellMapper<?, ?>) getDescendantMapper(item);
+            if (mapper == null) return;
             mapper.setAncestorBackground(AncestorUtil.getAncestorBackground(getSource(), item));
             mapper.refreshProperties();
           }
@@ -191,6 +219,10 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
 
   @Override
   protected void onDetach() {
+    if (isVirtual()) {
+      myTracker.detach();
+    }
+
     List<Cell> children = getSource().children();
     for (int i = children.size() - 1; i >= 0; i--) {
       Cell c = children.get(i);
@@ -202,6 +234,87 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
     super.onDetach();
   }
 
+  @Override
+  void ensureMapped(Cell cell) {
+    if (!isVirtual()) return;
+    Leaf leaf = myLeaves.get(cell);
+    if (leaf != null && leaf.myMapper == null) {
+      leaf.map();
+    }
+  }
+
+  private boolean isVirtual() {
+    return myMargin >= 0;
+  }
+
+  /**
+   * Placeholders of the added leaves are mapped when the container is validated
+   */
+  private void scheduleUpdate() {
+    if (isVirtual()) {
+      myTracker.scheduleUpdate();
+    }
+  }
+
+  private boolean updateLeaves(Rectangle visibleArea) {
+    int top = visibleArea.origin.y;
+    int bottom = top + visibleArea.dimension.y;
+    boolean changed = false;
+
+    int heightSum = 0;
+    int heightCount = 0;
+    for (Leaf leaf : new ArrayList<>(myMappedLeaves)) {
+      View line = leaf.myView.getParent();
+      if (line == null) continue;
+      Rectangle lineBounds = line.getBounds();
+      boolean far = lineBounds.origin.y + lineBounds.dimension.y <= top - 2 * myMargin || lineBounds.origin.y >= bottom + 2 * myMargin;
+      if (far && canUnmap(leaf)) {
+        leaf.unmap();
+        changed = true;
+      } else {
+        heightSum += leaf.myView.getBounds().dimension.y;
+        heightCount++;
+      }
+    }
+    if (heightCount > 0) {
+      myEstimatedHeight = Math.max(1, heightSum / heightCount);
+    }
+
+    int mapTop = top - myMargin;
+    int mapBottom = bottom + myMargin;
+    List<View> lines = getTarget().children();
+    int from = 0;
+    int to = lines.size();
+    while (from < to) {
+      int middle = (from + to) / 2;
+      Rectangle bounds = lines.get(middle).getBounds();
+      if (bounds.origin.y + bounds.dimension.y <= mapTop) {
+        from = middle + 1;
+      } else {
+        to = middle;
+      }
+    }
+    for (int i = from; i < lines.size(); i++) {
+      View line = lines.get(i);
+      if (line.getBounds().origin.y >= mapBottom) break;
+      List<View> items = line.children();
+      for (int j = 0; j < items.size(); j++) {
+        Leaf leaf = myLeafViews.get(items.get(j));
+        if (leaf != null && leaf.myMapper == null) {
+          leaf.map();
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  private boolean canUnmap(Leaf leaf) {
+    CellContainer container = getSource().getContainer();
+    Cell focused = container == null ? null : container.focusedCell.get();
+    return focused == null || !Composites.isDescendant(leaf.myCell, focused);
+  }
+
   @Override
   protected PopupManager createPopupManager() {
     return new BasePopupManager<View>() {
@@ -235,4 +348,99 @@ class IndentRootCellMapper extends BaseCellMapper<IndentCell, VerticalView> {
       }
     };
   }
-}
\ No newline at end of file
+
+  private class Leaf implements CellWrapper<View> {
+    private final Cell myCell;
+    private BaseCellMapper<? extends Cell, ? extends View> myMapper;
+    private View myView;
+    private boolean myRemoved;
+
+    private Leaf(Cell cell) {
+      myCell = cell;
+    }
+
+    @Override
+    public View item() {
+      return myView;
+    }
+
+    @Override
+    public void remove() {
+      if (myRemoved) {
+        throw new IllegalStateException();
+      }
+
+      if (myMapper != null) {
+        CounterUtil.updateOnRemove(getSource(), myCell, myMapper);
+        myCellMappers.remove(myMapper);
+      }
+      if (isVirtual()) {
+        myLeaves.remove(myCell);
+        myLeafViews.remove(myView);
+        myMappedLeaves.remove(this);
+      }
+
+      myRemoved = true;
+    }
+
+    private void map() {
+      myMapper = getContext().apply(myCell);
+
+      CounterUtil.updateOnAdd(getSource(), myCell, myMapper);
+
+      myMapper.setAncestorBackground(AncestorUtil.getAncestorBackground(getSource(), myCell));
+
+      myCellMappers.add(myMapper);
+
+      setView(myMapper.getTarget());
+      if (isVirtual()) {
+        myMappedLeaves.add(this);
+      }
+    }
+
+    private void unmap() {
+      View view = myView;
+      setView(new Placeholder(view.getBounds().dimension, view.baseLine()));
+      myMappedLeaves.remove(this);
+
+      CounterUtil.updateOnRemove(getSource(), myCell, myMapper);
+      myCellMappers.remove(myMapper);
+      myMapper = null;
+    }
+
+    /**
+     * Replaces the current view of the leaf in its line
+     */
+    private void setView(View view) {
+      if (myView != null) {
+        View line = myView.getParent();
+        if (line != null) {
+          int index = line.children().indexOf(myView);
+          line.children().remove(index);
+          line.children().add(index, view);
+        }
+      }
+      if (isVirtual()) {
+        myLeafViews.remove(myView);
+        myLeafViews.put(view, this);
+      }
+      myView = view;
+    }
+  }
+
+  private static class Placeholder extends View {
+    private final Vector myDimension;
+    private final int myBaseLine;
+
+    private Placeholder(Vector dimension, int baseLine) {
+      myDimension = dimension;
+      myBaseLine = baseLine;
+    }
+
+    @Override
+    protected void doValidate(ValidationContext ctx) {
+      super.doValidate(ctx);
+      ctx.bounds(myDimension, myBaseLine);
+    }
+  }
+}
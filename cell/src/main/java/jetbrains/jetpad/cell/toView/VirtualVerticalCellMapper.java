@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.toView;
+
+import jetbrains.jetpad.cell.Cell;
+import jetbrains.jetpad.cell.CellContainer;
+import jetbrains.jetpad.cell.VerticalCell;
+import jetbrains.jetpad.cell.mappersUtil.VirtualChildren;
+import jetbrains.jetpad.geometry.Rectangle;
+import jetbrains.jetpad.geometry.Vector;
+import jetbrains.jetpad.mapper.Mapper;
+import jetbrains.jetpad.mapper.MappingContext;
+import jetbrains.jetpad.model.collections.set.ObservableSet;
+import jetbrains.jetpad.model.composite.Composites;
+import jetbrains.jetpad.projectional.view.RectView;
+import jetbrains.jetpad.projectional.view.View;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Maps only those children of a vertical cell which intersect the visible area extended by the margin.
+ * Runs of the other children are represented with empty spacer views, and children which get farther than
+ * two margins from the visible area are unmapped unless they contain the focused cell. Children are mapped
+ * after a command or a change of the visible area, or when a cell inside them is requested by the cell container.
+ */
+class VirtualVerticalCellMapper extends VerticalCellMapper {
+  private static final int DEFAULT_ESTIMATED_HEIGHT = 16;
+
+  private final int myMargin;
+  private ObservableSet<BaseCellMapper<?, ?>> myMappers;
+  private VirtualChildren<View> myChildren;
+  private VisibleAreaTracker myTracker;
+
+  VirtualVerticalCellMapper(VerticalCell source, CellToViewContext ctx, int margin) {
+    super(source, ctx);
+    myMargin = margin;
+  }
+
+  @Override
+  protected boolean isAutoChildManagement() {
+    return false;
+  }
+
+  @Override
+  protected void onAttach(MappingContext ctx) {
+    super.onAttach(ctx);
+
+    myMappers = createChildSet();
+    myChildren = createChildren();
+    myChildren.init(getSource().children().size());
+
+    myTracker = new VisibleAreaTracker(getTarget()) {
+      @Override
+      protected boolean update(Rectangle visibleArea) {
+        int top = visibleArea.origin.y - getTarget().getBounds().origin.y;
+        return myChildren.update(top, top + visibleArea.dimension.y);
+      }
+    };
+    myTracker.attach();
+  }
+
+  @Override
+  protected void onDetach() {
+    myTracker.detach();
+    myChildren.dispose();
+    myChildren = null;
+    super.onDetach();
+  }
+
+  @Override
+  void childAdded(int index, Cell child) {
+    myChildren.childAdded(index);
+  }
+
+  @Override
+  void childRemoved(int index, Cell child) {
+    myChildren.childRemoved(index);
+  }
+
+  @Override
+  void ensureMapped(Cell child) {
+    if (myChildren == null) return;
+    int index = getSource().children().indexOf(child);
+    if (index != -1) {
+      myChildren.ensureMapped(index);
+    }
+  }
+
+  private VirtualChildren<View> createChildren() {
+    return new VirtualChildren<View>(myMargin, DEFAULT_ESTIMATED_HEIGHT) {
+      private final List<View> myTargetChildren = new AbstractList<View>() {
+        @Override
+        public View get(int index) {
+          return getTarget().children().get(index);
+        }
+
+        @Override
+        public void add(int index, View view) {
+          getTarget().children().add(index, view);
+        }
+
+        @Override
+        public View remove(int index) {
+          return getTarget().children().remove(index);
+        }
+
+        @Override
+        public int size() {
+          return getTarget().children().size();
+        }
+      };
+
+      @Override
+      protected List<View> targetChildren() {
+        return myTargetChildren;
+      }
+
+      @Override
+      protected View mapChild(int index) {
+        BaseCellMapper<? extends Cell, ? extends View> mapper = getContext().apply(getSource().children().get(index));
+        myMappers.add(mapper);
+        return mapper.getTarget();
+      }
+
+      @Override
+      protected void unmapChild(View item) {
+        myMappers.remove((BaseCellMapper<?, ?>) mapperOf(item));
+      }
+
+      @Override
+      protected View createSpacer() {
+        RectView result = new RectView();
+        result.background().set(null);
+        return result;
+      }
+
+      @Override
+      protected void setSpacerHeight(View spacer, int height) {
+        ((RectView) spacer).dimension().set(new Vector(0, height));
+      }
+
+      @Override
+      protected int measure(View item) {
+        item.validate();
+        return item.visible().get() ? item.getBounds().dimension.y : 0;
+      }
+
+      @Override
+      protected boolean canUnmap(View item) {
+        CellContainer container = getSource().getContainer();
+        Cell focused = container == null ? null : container.focusedCell.get();
+        if (focused == null) return true;
+        return !Composites.isDescendant(mapperOf(item).getSource(), focused);
+      }
+    };
+  }
+
+  private Mapper<? extends Cell, ? extends View> mapperOf(View target) {
+    return getContext().findMapper(target);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.toView;
+
+import jetbrains.jetpad.base.Registration;
+import jetbrains.jetpad.geometry.Rectangle;
+import jetbrains.jetpad.model.event.EventHandler;
+import jetbrains.jetpad.model.property.PropertyChangeEvent;
+import jetbrains.jetpad.projectional.view.ScrollView;
+import jetbrains.jetpad.projectional.view.View;
+import jetbrains.jetpad.projectional.view.ViewContainer;
+import jetbrains.jetpad.projectional.view.ViewContainerAdapter;
+import jetbrains.jetpad.projectional.view.ViewPropertySpec;
+
+/**
+ * Updates virtualized mappers of a view after commands, changes of the visible rect and changes of scroll offsets.
+ * The visible area is the visible rect of the view container clipped by the scrolling ancestors of the view,
+ * so the children of a scroll cell are mapped only when they are inside its scroll view. Updates run when
+ * the container is valid, and are repeated while they change the views.
+ */
+abstract class VisibleAreaTracker {
+  private static final int MAX_UPDATE_ITERATIONS = 10;
+
+  private final View myView;
+  private Registration myRegistration = Registration.EMPTY;
+  private Registration myContainerRegistration = Registration.EMPTY;
+  private boolean myAttached;
+  private boolean myUpdateScheduled;
+
+  VisibleAreaTracker(View view) {
+    myView = view;
+  }
+
+  /**
+   * @param visibleArea visible area in absolute coordinates
+   * @return true if views were added or removed, so the update should be repeated after validation
+   */
+  protected abstract boolean update(Rectangle visibleArea);
+
+  void attach() {
+    myAttached = true;
+    myRegistration = myView.attachEvents().addHandler(new EventHandler<Object>() {
+      @Override
+      public void onEvent(Object event) {
+        attachToContainer();
+      }
+    });
+    if (myView.isAttached()) {
+      attachToContainer();
+    }
+  }
+
+  void detach() {
+    myAttached = false;
+    myUpdateScheduled = false;
+    myRegistration.remove();
+    myRegistration = Registration.EMPTY;
+    myContainerRegistration.remove();
+    myContainerRegistration = Registration.EMPTY;
+  }
+
+  void scheduleUpdate() {
+    ViewContainer container = myView.container();
+    if (container != null) {
+      scheduleUpdate(container);
+    }
+  }
+
+  private void attachToContainer() {
+    myContainerRegistration.remove();
+    final ViewContainer container = myView.container();
+    myContainerRegistration = container.addListener(new ViewContainerAdapter() {
+      @Override
+      public void onAfterCommand() {
+        scheduleUpdate(container);
+      }
+
+      @Override
+      public void onVisibleRectChanged() {
+        scheduleUpdate(container);
+      }
+
+      @Override
+      public void onPropertySet(View view, ViewPropertySpec<?> prop, PropertyChangeEvent<?> event) {
+        if (prop == ScrollView.OFFSET) {
+          scheduleUpdate(container);
+        }
+      }
+
+      @Override
+      public void onViewDetached(View view) {
+        if (view == myView) {
+          myContainerRegistration.remove();
+          myContainerRegistration = Registration.EMPTY;
+        }
+      }
+    });
+    scheduleUpdate(container);
+  }
+
+  private void scheduleUpdate(final ViewContainer container) {
+    if (myUpdateScheduled) return;
+    myUpdateScheduled = true;
+    container.whenValid(new Runnable() {
+      @Override
+      public void run() {
+        myUpdateScheduled = false;
+        if (!myAttached || myView.container() != container) return;
+        runUpdates(container);
+      }
+    });
+  }
+
+  private void runUpdates(ViewContainer container) {
+    for (int i = 0; i < MAX_UPDATE_ITERATIONS; i++) {
+      container.root().validate();
+      Rectangle visible = visibleArea(container);
+      if (visible == null || !update(visible)) return;
+    }
+  }
+
+  private Rectangle visibleArea(ViewContainer container) {
+    Rectangle result = container.visibleRect();
+    for (View current = myView.getParent(); current != null; current = current.getParent()) {
+      if (current instanceof ScrollView && ((ScrollView) current).scroll().get()) {
+        result = result.intersect(current.getBounds());
+        if (result == null) return null;
+      }
+    }
+    return result;
+  }
+}
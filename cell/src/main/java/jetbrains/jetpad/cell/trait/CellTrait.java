@@ -138,6 +138,10 @@ public abstract class CellTrait {
     return result.get();
   }
 
+  /**
+   * The set of provided properties must stay the same while the trait is added to a cell. Cells rely on it
+   * to fire property changes on trait addition and removal and to skip traits which don't provide a property.
+   */
   protected void provideProperties(Cell cell, PropertyCollector collector) {
   }
 
@@ -28,13 +28,12 @@ import jetbrains.jetpad.model.property.PropertyChangeEvent;
 import jetbrains.jetpad.values.Color;
 
 import java.util.Arrays;
-import java.util.Collections;
 
 public class CellFactory {
   private static final CellTraitPropertySpec<Cell> PLACEHOLDER_CELL = new CellTraitPropertySpec<>("placeholderCell");
 
   public static Cell to(Cell target, Cell... cells) {
-    Collections.addAll(target.children(), cells);
+    target.children().addAll(Arrays.asList(cells));
     return target;
   }
 
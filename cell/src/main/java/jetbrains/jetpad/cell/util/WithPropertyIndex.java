@@ -17,6 +17,8 @@ package jetbrains.jetpad.cell.util;
 
 import com.google.common.base.Objects;
 import jetbrains.jetpad.cell.Cell;
+import jetbrains.jetpad.cell.CellChangeLog;
+import jetbrains.jetpad.cell.CellChangeLogListener;
 import jetbrains.jetpad.cell.CellContainer;
 import jetbrains.jetpad.cell.CellContainerAdapter;
 import jetbrains.jetpad.cell.CellPropertySpec;
@@ -46,13 +48,16 @@ public abstract class WithPropertyIndex {
   }
 
   private ObservableSet<Cell> myWithProperty = new ObservableHashSet<>();
+  private CellContainer myContainer;
   private Registration myReg;
+  private Registration myRemoveReg;
 
-  protected void init(CellContainer cellContainer) {
-    myReg = cellContainer.addListener(new CellContainerAdapter() {
+  protected void init(final CellContainer cellContainer) {
+    myContainer = cellContainer;
+    final CellContainerAdapter listener = new CellContainerAdapter() {
       @Override
       public void onCellPropertyChanged(Cell cell, CellPropertySpec<?> prop, PropertyChangeEvent<?> change) {
-        if (!isProp(prop)) return;
+        if (!isProp(prop) || cell.getContainer() != myContainer) return;
 
         if (isNonTrivialValue(cell)) {
           myWithProperty.add(cell);
@@ -63,9 +68,19 @@ public abstract class WithPropertyIndex {
 
       @Override
       public void onChildAdded(Cell parent, CollectionItemEvent<? extends Cell> change) {
-        onAdd(change.getNewItem());
+        Cell cell = change.getNewItem();
+        if (cell.getContainer() != myContainer) return;
+        onAdd(cell);
       }
-
+    };
+    myReg = cellContainer.addChangeLogListener(new CellChangeLogListener() {
+      @Override
+      public void onChanges(CellChangeLog log) {
+        log.replay(listener);
+      }
+    });
+    // a removed subtree can be changed without notifications before the log is replayed, so removals aren't deferred
+    myRemoveReg = cellContainer.addListener(new CellContainerAdapter() {
       @Override
       public void onChildRemoved(Cell parent, CollectionItemEvent<? extends Cell> change) {
         onRemove(change.getOldItem());
@@ -97,13 +112,12 @@ public abstract class WithPropertyIndex {
       onRemove(child);
     }
 
-    if (isNonTrivialValue(cell)) {
-      myWithProperty.remove(cell);
-    }
+    myWithProperty.remove(cell);
   }
 
   public void dispose() {
     myWithProperty.clear();
     myReg.remove();
+    myRemoveReg.remove();
   }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell;
+
+import jetbrains.jetpad.model.collections.CollectionItemEvent;
+import jetbrains.jetpad.model.property.PropertyChangeEvent;
+import jetbrains.jetpad.test.BaseTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CellChangeLogTest extends BaseTestCase {
+  private static final CellPropertySpec<String> NAME = new CellPropertySpec<>("name");
+
+  private CellContainer container = new CellContainer();
+  private TextCell cell = new TextCell();
+  private List<CellChangeLog> logs = new ArrayList<>();
+  private List<String> changes = new ArrayList<>();
+
+  @Before
+  public void init() {
+    container.root.children().add(cell);
+    container.addChangeLogListener(new CellChangeLogListener() {
+      @Override
+      public void onChanges(CellChangeLog log) {
+        logs.add(log);
+        log.replay(new CellContainerAdapter() {
+          @Override
+          public void onCellPropertyChanged(Cell cell, CellPropertySpec<?> prop, PropertyChangeEvent<?> change) {
+            changes.add(prop + ":" + change.getOldValue() + "->" + change.getNewValue());
+          }
+
+          @Override
+          public void onChildAdded(Cell parent, CollectionItemEvent<? extends Cell> change) {
+            changes.add("added:" + change.getIndex());
+          }
+
+          @Override
+          public void onChildRemoved(Cell parent, CollectionItemEvent<? extends Cell> change) {
+            changes.add("removed:" + change.getIndex());
+          }
+        });
+      }
+    });
+  }
+
+  @Test
+  public void changeOutsideOfCommandIsDeliveredAtOnce() {
+    cell.set(NAME, "a");
+
+    assertEquals(1, logs.size());
+    assertEquals(Arrays.asList("name:null->a"), changes);
+  }
+
+  @Test
+  public void changesOfCommandAreDeliveredOnce() {
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        cell.set(NAME, "a");
+        container.root.children().add(new TextCell());
+        cell.set(NAME, "ab");
+
+        assertTrue(logs.isEmpty());
+      }
+    });
+
+    assertEquals(1, logs.size());
+    assertEquals(Arrays.asList("name:null->ab", "added:1"), changes);
+  }
+
+  @Test
+  public void revertedPropertyChangeIsDropped() {
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        cell.set(NAME, "a");
+        cell.set(NAME, null);
+      }
+    });
+
+    assertTrue(logs.isEmpty());
+  }
+
+  @Test
+  public void changesInAfterCommandAreDelivered() {
+    container.addListener(new CellContainerAdapter() {
+      @Override
+      public void onAfterCommand() {
+        cell.set(NAME, "b");
+      }
+    });
+
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        container.root.children().remove(0);
+        container.root.children().add(cell);
+      }
+    });
+
+    assertEquals(2, logs.size());
+    assertEquals(Arrays.asList("removed:0", "added:0", "name:null->b"), changes);
+  }
+}
@@ -252,6 +252,18 @@ public class CellTest extends BaseTestCase {
     verify(listener).onEvent(new PropertyChangeEvent<>("xxx", null));
   }
 
+  @Test
+  public void traitPropertiesAfterTraitChanges() {
+    TextCell cell = new TextCell();
+    assertNull(cell.get(TestTrait.NAME));
+
+    Registration reg = cell.addTrait(new TestTrait());
+    assertEquals("xxx", cell.get(TestTrait.NAME));
+
+    reg.remove();
+    assertNull(cell.get(TestTrait.NAME));
+  }
+
   @Test
   public void cellTraitPropSet() {
     CellTraitPropertySpec<String> testProp = new CellTraitPropertySpec<String>("testProp");
@@ -16,12 +16,16 @@
 package jetbrains.jetpad.cell.indent;
 
 import jetbrains.jetpad.cell.Cell;
+import jetbrains.jetpad.cell.CellAdapter;
 import jetbrains.jetpad.cell.CellContainer;
+import jetbrains.jetpad.cell.CellPropertySpec;
 import jetbrains.jetpad.cell.HorizontalCell;
 import jetbrains.jetpad.cell.TextCell;
 import jetbrains.jetpad.cell.toView.CellContainerToViewMapper;
+import jetbrains.jetpad.model.collections.CollectionItemEvent;
 import jetbrains.jetpad.model.collections.list.ObservableList;
 import jetbrains.jetpad.model.composite.Composites;
+import jetbrains.jetpad.model.property.PropertyChangeEvent;
 import jetbrains.jetpad.projectional.view.TextView;
 import jetbrains.jetpad.projectional.view.View;
 import jetbrains.jetpad.projectional.view.ViewContainer;
@@ -29,7 +33,9 @@ import jetbrains.jetpad.test.BaseTestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static jetbrains.jetpad.cell.util.CellFactory.*;
 import static org.junit.Assert.assertEquals;
@@ -119,6 +125,86 @@ public class IndentUpdaterTest extends BaseTestCase {
     assertTarget("[['a'], ['b'], ['c']]");
   }
 
+  @Test
+  public void batchInsertWithNewLinesInTheMiddle() {
+    children.addAll(Arrays.asList(text("a"), text("b"), newLine(), text("c")));
+
+    children.addAll(1, Arrays.asList(text("x"), newLine(), text("y"), indent(true, newLine(), text("z"))));
+
+    assertTarget("[['a', 'x'], ['y'], ['  ', 'z', 'b'], ['c']]");
+  }
+
+  @Test
+  public void batchInsertWithInvisibleCells() {
+    Cell invisible = text("x");
+    invisible.visible().set(false);
+    children.addAll(Arrays.asList(text("a"), text("b")));
+
+    children.addAll(1, Arrays.asList(invisible, newLine(), text("y")));
+
+    assertTarget("[['a'], ['y', 'b']]");
+  }
+
+  @Test
+  public void addDuringBatchInsert() {
+    final Cell a = text("a");
+    indentCell.addListener(new CellAdapter() {
+      @Override
+      public void onChildAdded(CollectionItemEvent<? extends Cell> event) {
+        if (event.getNewItem() == a) {
+          children.add(0, text("z"));
+        }
+      }
+    });
+
+    children.addAll(Arrays.asList(a, newLine(), text("b")));
+
+    assertTarget("[['z', 'a'], ['b']]");
+  }
+
+  @Test
+  public void removeDuringBatchInsert() {
+    final Cell a = text("a");
+    final Cell b = text("b");
+    indentCell.addListener(new CellAdapter() {
+      @Override
+      public void onChildAdded(CollectionItemEvent<? extends Cell> event) {
+        if (event.getNewItem() == b) {
+          children.remove(a);
+        }
+      }
+    });
+
+    children.addAll(Arrays.asList(a, b, text("c")));
+
+    assertEquals(2, children.size());
+    assertEquals(b, children.get(0));
+    assertTarget("[['b', 'c']]");
+  }
+
+  @Test
+  public void batchInsertReportedPerChild() {
+    final List<Cell> added = new ArrayList<>();
+    indentCell.addListener(new IndentContainerCellListener() {
+      @Override
+      public void childAdded(CollectionItemEvent<? extends Cell> event) {
+        added.add(event.getNewItem());
+      }
+
+      @Override
+      public void childRemoved(CollectionItemEvent<? extends Cell> event) {
+      }
+
+      @Override
+      public void propertyChanged(Cell cell, CellPropertySpec<?> prop, PropertyChangeEvent<?> event) {
+      }
+    });
+
+    children.addAll(Arrays.asList(text("a"), newLine(), text("b")));
+
+    assertEquals(children, added);
+  }
+
   @Test
   public void deleteAtFirstPosition() {
     children.addAll(Arrays.asList(text("a"), text("b")));
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.indent.updater;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PositionIndexTest {
+  private PositionIndex<String> index = new PositionIndex<>();
+  private List<String> expected = new ArrayList<>();
+
+  @Test
+  public void empty() {
+    assertEquals(0, index.size());
+    assertFalse(index.contains("a"));
+  }
+
+  @Test
+  public void ranksAndNewLines() {
+    add(0, "a");
+    add(1, "nl1");
+    add(2, "b");
+    add(3, "c");
+    add(1, "d");
+
+    assertEquals(3, index.rank("b"));
+    assertEquals(1, index.rank("d"));
+    assertNull(index.newLineBefore("d"));
+    assertNull(index.newLineBefore("nl1"));
+    assertEquals("nl1", index.newLineBefore("c"));
+    assertEquals(1, index.newLinesBefore("c"));
+    assertEquals("b", index.next("nl1"));
+    assertNull(index.next("c"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void duplicateAdd() {
+    add(0, "a");
+    add(1, "a");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void removeUnknown() {
+    index.remove("a");
+  }
+
+  @Test
+  public void randomOperations() {
+    Random random = new Random(239);
+    int next = 0;
+    for (int i = 0; i < 3000; i++) {
+      if (expected.isEmpty() || random.nextInt(3) != 0) {
+        String item = (random.nextInt(4) == 0 ? "nl" : "c") + next++;
+        add(random.nextInt(expected.size() + 1), item);
+      } else {
+        String item = expected.remove(random.nextInt(expected.size()));
+        index.remove(item);
+        assertFalse(index.contains(item));
+      }
+
+      if (i % 100 == 0) {
+        assertConsistent();
+      }
+    }
+    assertConsistent();
+
+    while (!expected.isEmpty()) {
+      index.remove(expected.remove(expected.size() / 2));
+    }
+    assertEquals(0, index.size());
+  }
+
+  private void add(int position, String item) {
+    index.add(item, position == 0 ? null : expected.get(position - 1), item.startsWith("nl"));
+    expected.add(position, item);
+  }
+
+  private void assertConsistent() {
+    assertEquals(expected.size(), index.size());
+    String lastNewLine = null;
+    int newLines = 0;
+    for (int i = 0; i < expected.size(); i++) {
+      String item = expected.get(i);
+      assertEquals(i, index.rank(item));
+      assertEquals(lastNewLine, index.newLineBefore(item));
+      assertEquals(newLines, index.newLinesBefore(item));
+      assertEquals(i + 1 < expected.size() ? expected.get(i + 1) : null, index.next(item));
+      if (item.startsWith("nl")) {
+        assertEquals(item, index.newLine(newLines));
+        lastNewLine = item;
+        newLines++;
+      }
+    }
+    assertNull(index.newLine(newLines));
+  }
+}
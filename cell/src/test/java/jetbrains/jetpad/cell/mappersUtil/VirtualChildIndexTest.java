@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.mappersUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static jetbrains.jetpad.cell.mappersUtil.VirtualChildIndex.UNKNOWN;
+import static org.junit.Assert.*;
+
+public class VirtualChildIndexTest {
+  private static final int ESTIMATED = 7;
+
+  private VirtualChildIndex<String> index = new VirtualChildIndex<>();
+  private List<VirtualChildIndex.Node<String>> nodes = new ArrayList<>();
+
+  @Test
+  public void empty() {
+    assertEquals(0, index.size());
+    assertEquals(0, index.mappedCount());
+    assertEquals(0, index.indexAt(10, ESTIMATED));
+  }
+
+  @Test
+  public void offsets() {
+    for (int i = 0; i < 4; i++) {
+      add(i);
+    }
+    index.setHeight(nodes.get(1), 20);
+    index.setHeight(nodes.get(3), 0);
+
+    assertEquals(ESTIMATED + 20, index.offset(2, ESTIMATED));
+    assertEquals(0, index.indexAt(ESTIMATED - 1, ESTIMATED));
+    assertEquals(1, index.indexAt(ESTIMATED, ESTIMATED));
+    assertEquals(2, index.indexAt(ESTIMATED + 20, ESTIMATED));
+    assertEquals(4, index.indexAt(2 * ESTIMATED + 20, ESTIMATED));
+    assertEquals(20, index.knownSum());
+    assertEquals(2, index.knownCount());
+  }
+
+  @Test
+  public void mappedAndSpacers() {
+    for (int i = 0; i < 5; i++) {
+      add(i);
+    }
+    index.setItem(nodes.get(1), "a");
+    index.setItem(nodes.get(3), "b");
+    index.setSpacer(nodes.get(2), "s");
+
+    assertEquals(2, index.mappedCount());
+    assertEquals(3, index.mapped(1));
+    assertEquals(2, index.spacer(0));
+    assertEquals(1, index.mappedBefore(3));
+    assertEquals(1, index.spacersBefore(3));
+    assertEquals(0, index.spacersBefore(2));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void nodeOutOfBounds() {
+    add(0);
+    index.node(1);
+  }
+
+  @Test
+  public void randomOperations() {
+    Random random = new Random(239);
+    int next = 0;
+    for (int i = 0; i < 3000; i++) {
+      int op = random.nextInt(5);
+      if (nodes.isEmpty() || op < 2) {
+        add(random.nextInt(nodes.size() + 1));
+      } else if (op == 2) {
+        int position = random.nextInt(nodes.size());
+        index.remove(position);
+        nodes.remove(position);
+      } else if (op == 3) {
+        index.setHeight(nodes.get(random.nextInt(nodes.size())), random.nextInt(3) == 0 ? UNKNOWN : random.nextInt(50));
+      } else {
+        VirtualChildIndex.Node<String> node = nodes.get(random.nextInt(nodes.size()));
+        if (random.nextBoolean()) {
+          index.setItem(node, node.getItem() == null ? "c" + next++ : null);
+        } else {
+          index.setSpacer(node, node.getSpacer() == null ? "s" + next++ : null);
+        }
+      }
+
+      if (i % 100 == 0) {
+        assertConsistent();
+      }
+    }
+    assertConsistent();
+
+    while (!nodes.isEmpty()) {
+      index.remove(nodes.size() / 2);
+      nodes.remove(nodes.size() / 2);
+    }
+    assertEquals(0, index.size());
+  }
+
+  private void add(int position) {
+    nodes.add(position, index.add(position));
+  }
+
+  private void assertConsistent() {
+    assertEquals(nodes.size(), index.size());
+    long offset = 0;
+    int mapped = 0;
+    int spacers = 0;
+    for (int i = 0; i < nodes.size(); i++) {
+      VirtualChildIndex.Node<String> node = nodes.get(i);
+      assertSame(node, index.node(i));
+      assertEquals(offset, index.offset(i, ESTIMATED));
+      assertEquals(mapped, index.mappedBefore(i));
+      assertEquals(spacers, index.spacersBefore(i));
+
+      int height = node.getHeight() == UNKNOWN ? ESTIMATED : node.getHeight();
+      if (height > 0) {
+        assertEquals(i, index.indexAt(offset, ESTIMATED));
+        assertEquals(i, index.indexAt(offset + height - 1, ESTIMATED));
+      }
+      if (node.getItem() != null) {
+        assertEquals(i, index.mapped(mapped++));
+      }
+      if (node.getSpacer() != null) {
+        assertEquals(i, index.spacer(spacers++));
+      }
+      offset += height;
+    }
+    assertEquals(nodes.size(), index.indexAt(offset, ESTIMATED));
+    assertEquals(mapped, index.mappedCount());
+    assertEquals(spacers, index.spacerCount());
+  }
+}
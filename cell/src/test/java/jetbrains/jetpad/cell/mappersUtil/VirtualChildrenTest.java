@@ -0,0 +1,350 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.cell.mappersUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VirtualChildrenTest {
+  private static final int HEIGHT = 10;
+
+  private List<String> source = new ArrayList<>();
+  private List<Item> target = new ArrayList<>();
+  private TestVirtualChildren children = new TestVirtualChildren();
+
+  @Before
+  public void init() {
+    for (int i = 0; i < 1000; i++) {
+      source.add("c" + i);
+    }
+    children.init(source.size());
+  }
+
+  @Test
+  public void initiallyNothingMapped() {
+    assertEquals(0, children.getMappedCount());
+    assertEquals(1, target.size());
+    assertEquals(1000 * HEIGHT, target.get(0).height);
+  }
+
+  @Test
+  public void visibleChildrenMapped() {
+    children.update(0, 100);
+
+    assertEquals(10, children.getMappedCount());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(children.isMapped(i));
+    }
+    assertFalse(children.isMapped(10));
+    assertConsistent();
+  }
+
+  @Test
+  public void scrolling() {
+    children.update(0, 100);
+    children.update(5000, 5100);
+
+    assertEquals(10, children.getMappedCount());
+    assertTrue(children.isMapped(500));
+    assertTrue(children.isMapped(509));
+    assertFalse(children.isMapped(0));
+    assertEquals(10, children.unmapped);
+    assertConsistent();
+  }
+
+  @Test
+  public void margin() {
+    target.clear();
+    children = new TestVirtualChildren(50);
+    children.init(source.size());
+
+    children.update(1000, 1100);
+    assertEquals(20, children.getMappedCount());
+    assertFalse(children.isMapped(94));
+    assertTrue(children.isMapped(95));
+    assertTrue(children.isMapped(114));
+    assertFalse(children.isMapped(115));
+    assertConsistent();
+
+    children.update(1040, 1140);
+    assertEquals(24, children.getMappedCount());
+    assertEquals(0, children.unmapped);
+    assertTrue(children.isMapped(95));
+    assertTrue(children.isMapped(118));
+    assertConsistent();
+
+    children.update(1200, 1300);
+    assertEquals(15, children.unmapped);
+    assertFalse(children.isMapped(109));
+    assertTrue(children.isMapped(110));
+    assertTrue(children.isMapped(134));
+    assertEquals(25, children.getMappedCount());
+    assertConsistent();
+  }
+
+  @Test
+  public void spacersReused() {
+    for (int top = 0; top < 1000 * HEIGHT; top += 300) {
+      children.update(top, top + 100);
+      assertConsistent();
+    }
+    assertTrue(children.spacersCreated <= 3);
+  }
+
+  @Test
+  public void estimatedHeightFromMeasured() {
+    for (int i = 0; i < 4; i++) {
+      children.heights.put("c" + i, 30);
+    }
+    children.update(0, 40);
+
+    assertEquals(4, children.getMappedCount());
+    assertEquals(996 * 30, target.get(4).height);
+    assertConsistent();
+  }
+
+  @Test
+  public void pinnedChildNotUnmapped() {
+    children.update(0, 100);
+    children.pinned = "c3";
+    children.update(5000, 5100);
+
+    assertTrue(children.isMapped(3));
+    assertEquals(11, children.getMappedCount());
+    assertConsistent();
+  }
+
+  @Test
+  public void ensureMapped() {
+    children.ensureMapped(700);
+
+    assertTrue(children.isMapped(700));
+    assertEquals(3, target.size());
+    assertConsistent();
+  }
+
+  @Test
+  public void addAndRemove() {
+    children.update(0, 100);
+
+    add(5, "a");
+    add(500, "b");
+    add(0, "c");
+    add(source.size(), "d");
+    remove(3);
+    remove(600);
+    remove(502);
+    assertConsistent();
+
+    children.update(4000, 4100);
+    assertConsistent();
+
+    while (!source.isEmpty()) {
+      remove(source.size() / 2);
+      assertConsistent();
+    }
+    assertTrue(target.isEmpty());
+  }
+
+  @Test
+  public void itemsOfUnmappedChildrenReused() {
+    target.clear();
+    children = new TestVirtualChildren(0, 10);
+    children.init(source.size());
+
+    children.update(0, 100);
+    children.update(5000, 5100);
+    assertEquals(0, children.unmapped);
+    children.update(0, 100);
+
+    assertEquals(20, children.mapped);
+    assertEquals(0, children.unmapped);
+    assertTrue(children.isMapped(0));
+    assertConsistent();
+
+    children.update(3000, 3100);
+    assertEquals(10, children.unmapped);
+    assertConsistent();
+  }
+
+  @Test
+  public void pooledItemOfRemovedChildUnmapped() {
+    target.clear();
+    children = new TestVirtualChildren(0, 10);
+    children.init(source.size());
+
+    children.update(0, 100);
+    children.update(5000, 5100);
+    remove(3);
+
+    assertEquals(1, children.unmapped);
+    children.update(0, 100);
+    assertEquals(source.get(3), target.get(3).name);
+    assertConsistent();
+  }
+
+  @Test
+  public void randomOperations() {
+    target.clear();
+    children = new TestVirtualChildren(20, 30);
+    children.init(source.size());
+
+    Random random = new Random(239);
+    for (int i = 0; i < 1000; i++) {
+      int op = random.nextInt(10);
+      if (op == 0) {
+        add(random.nextInt(source.size() + 1), "n" + i);
+      } else if (op == 1 && !source.isEmpty()) {
+        remove(random.nextInt(source.size()));
+      } else if (op == 2 && !source.isEmpty()) {
+        children.ensureMapped(random.nextInt(source.size()));
+      } else if (op == 3 && !source.isEmpty()) {
+        children.heights.put(source.get(random.nextInt(source.size())), random.nextInt(3 * HEIGHT));
+      } else {
+        int top = random.nextInt((source.size() + 1) * HEIGHT);
+        children.update(top, top + 100);
+      }
+      assertConsistent();
+    }
+  }
+
+  @Test
+  public void dispose() {
+    children.update(0, 100);
+    children.dispose();
+
+    assertTrue(target.isEmpty());
+    assertEquals(10, children.unmapped);
+  }
+
+  private void add(int index, String name) {
+    source.add(index, name);
+    children.childAdded(index);
+  }
+
+  private void remove(int index) {
+    source.remove(index);
+    children.childRemoved(index);
+  }
+
+  private void assertConsistent() {
+    int index = 0;
+    int height = 0;
+    Item previous = null;
+    for (Item item : target) {
+      if (item.spacer) {
+        assertTrue(previous == null || !previous.spacer);
+        int end = index;
+        while (end < source.size() && !children.isMapped(end)) {
+          end++;
+        }
+        assertTrue(end > index);
+        index = end;
+      } else {
+        assertTrue(children.isMapped(index));
+        assertEquals(source.get(index), item.name);
+        index++;
+      }
+      height += item.height;
+      previous = item;
+    }
+    assertEquals(source.size(), index);
+    if (children.heights.isEmpty()) {
+      assertEquals(source.size() * HEIGHT, height);
+    }
+  }
+
+  private static class Item {
+    final String name;
+    final boolean spacer;
+    int height;
+
+    Item(String name, boolean spacer, int height) {
+      this.name = name;
+      this.spacer = spacer;
+      this.height = height;
+    }
+  }
+
+  private class TestVirtualChildren extends VirtualChildren<Item> {
+    final Map<String, Integer> heights = new HashMap<>();
+    String pinned;
+    int spacersCreated;
+    int mapped;
+    int unmapped;
+
+    TestVirtualChildren() {
+      this(0);
+    }
+
+    TestVirtualChildren(int margin) {
+      super(margin, HEIGHT);
+    }
+
+    TestVirtualChildren(int margin, int poolSize) {
+      super(margin, HEIGHT, poolSize);
+    }
+
+    @Override
+    protected List<Item> targetChildren() {
+      return target;
+    }
+
+    @Override
+    protected Item mapChild(int index) {
+      mapped++;
+      String name = source.get(index);
+      return new Item(name, false, heights.containsKey(name) ? heights.get(name) : HEIGHT);
+    }
+
+    @Override
+    protected void unmapChild(Item item) {
+      unmapped++;
+    }
+
+    @Override
+    protected Item createSpacer() {
+      spacersCreated++;
+      return new Item(null, true, 0);
+    }
+
+    @Override
+    protected void setSpacerHeight(Item spacer, int height) {
+      spacer.height = height;
+    }
+
+    @Override
+    protected int measure(Item item) {
+      if (heights.containsKey(item.name)) {
+        item.height = heights.get(item.name);
+      }
+      return item.height;
+    }
+
+    @Override
+    protected boolean canUnmap(Item item) {
+      return !item.name.equals(pinned);
+    }
+  }
+}
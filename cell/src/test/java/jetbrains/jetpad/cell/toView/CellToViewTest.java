@@ -15,21 +15,39 @@
  */
 package jetbrains.jetpad.cell.toView;
 
+import jetbrains.jetpad.base.Registration;
+import jetbrains.jetpad.cell.CellContainer;
+import jetbrains.jetpad.cell.ScrollCell;
+import jetbrains.jetpad.cell.VerticalCell;
+import jetbrains.jetpad.cell.indent.IndentCell;
+import jetbrains.jetpad.cell.indent.NewLineCell;
 import jetbrains.jetpad.cell.trait.CellTrait;
 import jetbrains.jetpad.cell.view.CellView;
 import jetbrains.jetpad.event.MouseEvent;
 import jetbrains.jetpad.cell.Cell;
 import jetbrains.jetpad.cell.TextCell;
+import jetbrains.jetpad.geometry.Rectangle;
+import jetbrains.jetpad.geometry.Vector;
+import jetbrains.jetpad.mapper.Mappers;
+import jetbrains.jetpad.projectional.view.ScrollView;
+import jetbrains.jetpad.projectional.view.TextView;
+import jetbrains.jetpad.projectional.view.View;
 import jetbrains.jetpad.projectional.view.ViewContainer;
+import jetbrains.jetpad.projectional.view.spi.NullViewContainerPeer;
 import jetbrains.jetpad.test.BaseTestCase;
 import org.junit.Before;
 import org.junit.Test;
 
-import static org.junit.Assert.assertFalse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 public class CellToViewTest extends BaseTestCase {
   private ViewContainer targetViewContainer = new ViewContainer();
   private CellView cellView = new CellView();
+  private ViewContainer virtualContainer;
+  private Rectangle visibleRect = new Rectangle(0, 0, 100, 100);
 
   @Before
   public void init() {
@@ -54,6 +72,153 @@ public class CellToViewTest extends BaseTestCase {
     assertFalse(cellView.isAttached());
   }
 
+  @Test
+  public void virtualizedVerticalCell() {
+    VerticalCell vertical = new VerticalCell();
+    for (int i = 0; i < 1000; i++) {
+      vertical.children().add(new TextCell("line " + i));
+    }
+    Registration reg = attachVirtualized(vertical);
+
+    int mapped = textViewCount(virtualContainer.contentRoot());
+    assertTrue(mapped > 0 && mapped < 100);
+
+    int lineHeight = vertical.children().get(0).getBounds().dimension.y;
+    assertEquals(999 * lineHeight, vertical.children().get(999).getBounds().origin.y);
+    assertEquals(mapped + 1, textViewCount(virtualContainer.contentRoot()));
+
+    for (int i = 0; i < vertical.children().size(); i++) {
+      assertEquals(i * lineHeight, vertical.children().get(i).getBounds().origin.y);
+    }
+    assertEquals(1000, textViewCount(virtualContainer.contentRoot()));
+
+    scrollTo(500 * lineHeight);
+    assertTrue(textViewCount(virtualContainer.contentRoot()) < 100);
+    assertTrue(hasTextView(virtualContainer.contentRoot(), "line 505"));
+    assertFalse(hasTextView(virtualContainer.contentRoot(), "line 0"));
+    assertEquals(999 * lineHeight, vertical.children().get(999).getBounds().origin.y);
+
+    vertical.children().add(500, new TextCell("inserted"));
+    vertical.children().remove(0);
+    vertical.children().remove(998);
+    for (int i = 0; i < vertical.children().size(); i++) {
+      assertEquals(i * lineHeight, vertical.children().get(i).getBounds().origin.y);
+    }
+
+    scrollTo(0);
+    assertTrue(textViewCount(virtualContainer.contentRoot()) < 100);
+    assertTrue(hasTextView(virtualContainer.contentRoot(), "line 1"));
+
+    reg.remove();
+  }
+
+  @Test
+  public void virtualizedScrollCell() {
+    VerticalCell vertical = new VerticalCell();
+    for (int i = 0; i < 1000; i++) {
+      vertical.children().add(new TextCell("line " + i));
+    }
+    ScrollCell scroll = new ScrollCell();
+    scroll.scroll().set(true);
+    scroll.maxDimension().set(new Vector(100, 50));
+    scroll.children().add(vertical);
+    visibleRect = new Rectangle(0, 0, 1000, 1000);
+    Registration reg = attachVirtualized(scroll);
+
+    int mapped = textViewCount(virtualContainer.contentRoot());
+    assertTrue(mapped > 0 && mapped < 20);
+
+    int lineHeight = vertical.children().get(0).getBounds().dimension.y;
+    ScrollView scrollView = find(virtualContainer.contentRoot(), ScrollView.class);
+    scrollView.offset().set(new Vector(0, -500 * lineHeight));
+    virtualContainer.root().validate();
+
+    assertTrue(textViewCount(virtualContainer.contentRoot()) < 20);
+    assertTrue(hasTextView(virtualContainer.contentRoot(), "line 502"));
+    assertFalse(hasTextView(virtualContainer.contentRoot(), "line 0"));
+
+    reg.remove();
+  }
+
+  @Test
+  public void virtualizedIndentCell() {
+    IndentCell indent = new IndentCell();
+    List<TextCell> lines = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      IndentCell line = new IndentCell();
+      TextCell text = new TextCell("line " + i);
+      line.children().add(text);
+      line.children().add(new NewLineCell());
+      indent.children().add(line);
+      lines.add(text);
+    }
+    Registration reg = attachVirtualized(indent);
 
+    int mapped = textViewCount(virtualContainer.contentRoot());
+    assertTrue(mapped > 0 && mapped < 100);
 
-}
\ No newline at end of file
+    int lineHeight = lines.get(0).getBounds().dimension.y;
+    for (int i = 0; i < lines.size(); i++) {
+      assertEquals(i * lineHeight, lines.get(i).getBounds().origin.y);
+    }
+    assertEquals(1000, textViewCount(virtualContainer.contentRoot()));
+
+    scrollTo(500 * lineHeight);
+    assertTrue(textViewCount(virtualContainer.contentRoot()) < 100);
+    assertTrue(hasTextView(virtualContainer.contentRoot(), "line 505"));
+    assertFalse(hasTextView(virtualContainer.contentRoot(), "line 0"));
+    assertEquals(999 * lineHeight, lines.get(999).getBounds().origin.y);
+
+    reg.remove();
+  }
+
+  private Registration attachVirtualized(Cell cell) {
+    virtualContainer = new ViewContainer();
+    virtualContainer.setPeer(new NullViewContainerPeer() {
+      @Override
+      public Rectangle visibleRect() {
+        return visibleRect;
+      }
+    });
+
+    CellContainer cellContainer = new CellContainer();
+    cellContainer.root.children().add(cell);
+
+    CellContainerToViewMapper mapper = new CellContainerToViewMapper(cellContainer, virtualContainer.root(), virtualContainer.contentRoot(), virtualContainer.decorationRoot());
+    mapper.setVirtualizationMargin(0);
+    Registration reg = Mappers.attachRoot(mapper);
+    virtualContainer.root().validate();
+    return reg;
+  }
+
+  private void scrollTo(int y) {
+    visibleRect = new Rectangle(0, y, 100, 100);
+    virtualContainer.visibleRectChanged();
+    virtualContainer.root().validate();
+  }
+
+  private boolean hasTextView(View view, String text) {
+    if (view instanceof TextView && text.equals(((TextView) view).text().get())) return true;
+    for (View child : view.children()) {
+      if (hasTextView(child, text)) return true;
+    }
+    return false;
+  }
+
+  private <ViewT extends View> ViewT find(View view, Class<ViewT> viewClass) {
+    if (viewClass.isInstance(view)) return viewClass.cast(view);
+    for (View child : view.children()) {
+      ViewT result = find(child, viewClass);
+      if (result != null) return result;
+    }
+    return null;
+  }
+
+  private int textViewCount(View view) {
+    int result = view instanceof TextView ? 1 : 0;
+    for (View child : view.children()) {
+      result += textViewCount(child);
+    }
+    return result;
+  }
+}
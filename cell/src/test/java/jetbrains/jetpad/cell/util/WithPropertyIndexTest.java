@@ -98,6 +98,57 @@ public class WithPropertyIndexTest extends BaseTestCase {
     assertIndex(c1, c2);
   }
 
+  @Test
+  public void removeAndUnsetInCommand() {
+    setProp(a);
+    initIndex();
+
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        container.root.children().clear();
+        unsetProp(a);
+      }
+    });
+
+    assertIndex();
+  }
+
+  @Test
+  public void removeFromRemovedInCommand() {
+    setProp(a);
+    initIndex();
+
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        Cell parent = a.getParent();
+        container.root.children().clear();
+        parent.children().remove(a);
+      }
+    });
+
+    assertIndex();
+  }
+
+  @Test
+  public void addAndRemoveInCommand() {
+    initIndex();
+
+    final Cell c1 = label("c1");
+    setProp(c1);
+
+    container.executeCommand(new Runnable() {
+      @Override
+      public void run() {
+        a.children().add(c1);
+        a.children().remove(c1);
+      }
+    });
+
+    assertIndex();
+  }
+
   @Test
   public void dispose() {
     initIndex();
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.completion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Index of completion items for prefix and exact queries. Items with a match key are kept in a sorted map, so a query
+ * takes time proportional to the number of results. Other items are checked one by one as before.
+ * Results are in the order in which the items were added.
+ */
+public final class CompletionItemIndex {
+  private static final Comparator<Entry> BY_ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry e1, Entry e2) {
+      return e1.myOrder < e2.myOrder ? -1 : (e1.myOrder == e2.myOrder ? 0 : 1);
+    }
+  };
+
+  private final TreeMap<String, List<Entry>> myKeyed = new TreeMap<>();
+  private final List<Entry> myOthers = new ArrayList<>();
+  private long myNextOrder;
+  private int mySize;
+
+  public CompletionItemIndex() {
+  }
+
+  public CompletionItemIndex(Iterable<? extends CompletionItem> items) {
+    for (CompletionItem item : items) {
+      add(item);
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public void add(CompletionItem item) {
+    Entry entry = new Entry(item, myNextOrder++);
+    String key = matchKey(item);
+    if (key == null) {
+      myOthers.add(entry);
+    } else {
+      List<Entry> entries = myKeyed.get(key);
+      if (entries == null) {
+        entries = new ArrayList<>(1);
+        myKeyed.put(key, entries);
+      }
+      entries.add(entry);
+    }
+    mySize++;
+  }
+
+  /**
+   * Removes the last added occurrence of the item
+   */
+  public boolean remove(CompletionItem item) {
+    String key = matchKey(item);
+    List<Entry> entries = key == null ? myOthers : myKeyed.get(key);
+    if (entries == null) return false;
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      if (entries.get(i).myItem == item) {
+        entries.remove(i);
+        if (entries.isEmpty() && key != null) {
+          myKeyed.remove(key);
+        }
+        mySize--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void clear() {
+    myKeyed.clear();
+    myOthers.clear();
+    mySize = 0;
+  }
+
+  /**
+   * Items for which isMatchPrefix(prefix) is true
+   */
+  public List<CompletionItem> prefixedBy(String prefix) {
+    List<Entry> result = new ArrayList<>();
+    for (List<Entry> entries : withPrefix(prefix).values()) {
+      result.addAll(entries);
+    }
+    for (Entry entry : myOthers) {
+      if (entry.myItem.isMatchPrefix(prefix)) {
+        result.add(entry);
+      }
+    }
+    return items(result);
+  }
+
+  /**
+   * Items for which isStrictMatchPrefix(prefix) is true
+   */
+  public List<CompletionItem> strictlyPrefixedBy(String prefix) {
+    List<Entry> result = new ArrayList<>();
+    for (Map.Entry<String, List<Entry>> keyEntries : withPrefix(prefix).entrySet()) {
+      if (keyEntries.getKey().length() > prefix.length()) {
+        result.addAll(keyEntries.getValue());
+      }
+    }
+    for (Entry entry : myOthers) {
+      if (entry.myItem.isStrictMatchPrefix(prefix)) {
+        result.add(entry);
+      }
+    }
+    return items(result);
+  }
+
+  /**
+   * Items for which isMatch(text) is true
+   */
+  public List<CompletionItem> matches(String text) {
+    List<Entry> result = new ArrayList<>();
+    List<Entry> keyed = myKeyed.get(text);
+    if (keyed != null) {
+      result.addAll(keyed);
+    }
+    for (Entry entry : myOthers) {
+      if (entry.myItem.isMatch(text)) {
+        result.add(entry);
+      }
+    }
+    return items(result);
+  }
+
+  private SortedMap<String, List<Entry>> withPrefix(String prefix) {
+    if (prefix.isEmpty()) return myKeyed;
+    char last = prefix.charAt(prefix.length() - 1);
+    if (last == Character.MAX_VALUE) {
+      SortedMap<String, List<Entry>> result = new TreeMap<>();
+      for (Map.Entry<String, List<Entry>> keyEntries : myKeyed.tailMap(prefix).entrySet()) {
+        if (!keyEntries.getKey().startsWith(prefix)) break;
+        result.put(keyEntries.getKey(), keyEntries.getValue());
+      }
+      return result;
+    }
+    String upperBound = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+    return myKeyed.subMap(prefix, upperBound);
+  }
+
+  private List<CompletionItem> items(List<Entry> entries) {
+    if (entries.isEmpty()) return new ArrayList<>();
+    Collections.sort(entries, BY_ORDER);
+    List<CompletionItem> result = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      result.add(entry.myItem);
+    }
+    return result;
+  }
+
+  private static String matchKey(CompletionItem item) {
+    if (item instanceof KeyedCompletionItem) {
+      return ((KeyedCompletionItem) item).getMatchKey();
+    }
+    return null;
+  }
+
+  private static class Entry {
+    private final CompletionItem myItem;
+    private final long myOrder;
+
+    private Entry(CompletionItem item, long order) {
+      myItem = item;
+      myOrder = order;
+    }
+  }
+}
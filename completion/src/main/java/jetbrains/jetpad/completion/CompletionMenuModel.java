@@ -15,20 +15,47 @@
  */
 package jetbrains.jetpad.completion;
 
-import com.google.common.base.Function;
+import jetbrains.jetpad.model.collections.CollectionAdapter;
 import jetbrains.jetpad.model.collections.CollectionItemEvent;
 import jetbrains.jetpad.model.collections.list.ObservableArrayList;
 import jetbrains.jetpad.model.collections.list.ObservableList;
 import jetbrains.jetpad.model.event.EventHandler;
 import jetbrains.jetpad.model.property.*;
-import jetbrains.jetpad.model.transform.Transformers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 public class CompletionMenuModel {
   private static final int CHUNK_SIZE = 60;
   private static final int DISTANCE_FROM_END_TO_LOAD = 10;
 
+  private static final Comparator<CompletionItem> ORDER = new Comparator<CompletionItem>() {
+    @Override
+    public int compare(CompletionItem c1, CompletionItem c2) {
+      String text = "";
+
+      int delta = c2.getSortPriority() - c1.getSortPriority();
+      if (delta != 0) {
+        return delta;
+      }
+
+      String t1 = c1.visibleText(text);
+      String t2 = c2.visibleText(text);
+      if (c1.isMatch(text) && !c2.isMatch(text)) {
+        return -1;
+      }
+      if (!c1.isMatch(text) && c2.isMatch(text)) {
+        return 1;
+      }
+      return t1.compareTo(t2);
+    }
+  };
+
   public final Property<String> text = new ValueProperty<>();
   public final ObservableList<CompletionItem> items = new ObservableArrayList<>();
   public final Property<CompletionItem> selectedItem = new ValueProperty<>();
@@ -40,8 +67,10 @@ public class CompletionMenuModel {
   private int myChunkSize;
   private int myDistanceFromEndToLoad;
 
+  private final CompletionItemIndex myIndex = new CompletionItemIndex();
+  private int myMatchCount;
 
-  public final ObservableList<CompletionItem> visibleItems;
+  public final ObservableList<CompletionItem> visibleItems = new ObservableArrayList<>();
 
 
   public CompletionMenuModel() {
@@ -53,51 +82,26 @@ public class CompletionMenuModel {
     myDistanceFromEndToLoad = distanceFromEnd;
     visibleCount = new ValueProperty<>(myChunkSize);
 
-    visibleItems = Transformers.filter(new Function<CompletionItem, ReadableProperty<Boolean>>() {
+    items.addListener(new CollectionAdapter<CompletionItem>() {
       @Override
-      public ReadableProperty<Boolean> apply(final CompletionItem input) {
-        return new DerivedProperty<Boolean>(text) {
-          @Override
-          public Boolean doGet() {
-            return input.isMatchPrefix(text.get() == null ? "" : text.get());
-          }
+      public void onItemAdded(CollectionItemEvent<? extends CompletionItem> event) {
+        itemAdded(event.getNewItem());
+      }
 
-          @Override
-          public String getPropExpr() {
-            return "isMatchPrefix(" + text.getPropExpr() + ", " + input + ")";
-          }
-        };
+      @Override
+      public void onItemRemoved(CollectionItemEvent<? extends CompletionItem> event) {
+        itemRemoved(event.getOldItem());
       }
-    }).andThen(
-      Transformers.sortBy(new Function<CompletionItem, ReadableProperty<CompletionItem>>() {
-        @Override
-        public ReadableProperty<CompletionItem> apply(final CompletionItem input) {
-          return Properties.constant(input);
-        }
-      }, new Comparator<CompletionItem>() {
-        @Override
-        public int compare(CompletionItem c1, CompletionItem c2) {
-          String text = "";
-
-          int delta = c2.getSortPriority() - c1.getSortPriority();
-          if (delta != 0) {
-            return delta;
-          }
+    });
 
-          String t1 = c1.visibleText(text);
-          String t2 = c2.visibleText(text);
-          if (c1.isMatch(text) && !c2.isMatch(text)) {
-            return -1;
-          }
-          if (!c1.isMatch(text) && c2.isMatch(text)) {
-            return 1;
-          }
-          return t1.compareTo(t2);
-        }
-      })
-    ).andThen(
-      Transformers.<CompletionItem>firstN(visibleCount)
-    ).transform(items).getTarget();
+    EventHandler<Object> update = new EventHandler<Object>() {
+      @Override
+      public void onEvent(Object event) {
+        updateVisibleItems();
+      }
+    };
+    text.addHandler(update);
+    visibleCount.addHandler(update);
 
     visibleItems.addHandler(new EventHandler<CollectionItemEvent<? extends CompletionItem>>() {
       @Override
@@ -129,6 +133,108 @@ public class CompletionMenuModel {
     });
   }
 
+  private String prefix() {
+    return text.get() == null ? "" : text.get();
+  }
+
+  private void itemAdded(CompletionItem item) {
+    myIndex.add(item);
+    if (!item.isMatchPrefix(prefix())) return;
+    myMatchCount++;
+
+    int index = upperBound(item);
+    if (index >= visibleCount.get()) return;
+    visibleItems.add(index, item);
+    if (visibleItems.size() > visibleCount.get()) {
+      visibleItems.remove(visibleItems.size() - 1);
+    }
+  }
+
+  private void itemRemoved(CompletionItem item) {
+    myIndex.remove(item);
+    if (!item.isMatchPrefix(prefix())) return;
+    myMatchCount--;
+
+    int index = visibleItems.lastIndexOf(item);
+    if (index == -1) return;
+    if (myMatchCount > visibleItems.size() - 1) {
+      updateVisibleItems();
+    } else {
+      visibleItems.remove(index);
+    }
+  }
+
+  private int upperBound(CompletionItem item) {
+    int low = 0;
+    int high = visibleItems.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ORDER.compare(visibleItems.get(middle), item) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private void updateVisibleItems() {
+    List<CompletionItem> matching = myIndex.prefixedBy(prefix());
+    myMatchCount = matching.size();
+    List<CompletionItem> target = firstInOrder(matching, visibleCount.get());
+
+    Set<CompletionItem> targetSet = new HashSet<>(target);
+    for (int i = 0; i < target.size(); i++) {
+      CompletionItem item = target.get(i);
+      while (i < visibleItems.size() && visibleItems.get(i) != item && !targetSet.contains(visibleItems.get(i))) {
+        visibleItems.remove(i);
+      }
+      if (i == visibleItems.size() || visibleItems.get(i) != item) {
+        visibleItems.add(i, item);
+      }
+    }
+    while (visibleItems.size() > target.size()) {
+      visibleItems.remove(visibleItems.size() - 1);
+    }
+  }
+
+  /**
+   * The first count items in ORDER, selected without sorting all of them. Equal items keep their relative order.
+   */
+  private static List<CompletionItem> firstInOrder(final List<CompletionItem> items, int count) {
+    if (items.size() <= count) {
+      Collections.sort(items, ORDER);
+      return items;
+    }
+    if (count == 0) {
+      return new ArrayList<>();
+    }
+
+    Comparator<Integer> byOrder = new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        int result = ORDER.compare(items.get(i1), items.get(i2));
+        return result != 0 ? result : i1.compareTo(i2);
+      }
+    };
+    PriorityQueue<Integer> first = new PriorityQueue<>(count + 1, Collections.reverseOrder(byOrder));
+    for (int i = 0; i < items.size(); i++) {
+      if (first.size() == count && byOrder.compare(i, first.peek()) > 0) continue;
+      first.add(i);
+      if (first.size() > count) {
+        first.poll();
+      }
+    }
+
+    List<Integer> indices = new ArrayList<>(first);
+    Collections.sort(indices, byOrder);
+    List<CompletionItem> result = new ArrayList<>(count);
+    for (Integer i : indices) {
+      result.add(items.get(i));
+    }
+    return result;
+  }
+
   public void up() {
     CompletionItem selected = selectedItem.get();
     if (selected == null) {
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.completion;
+
+/**
+ * Completion item which matches a single text, its match key: isMatch(text) is true only for the key itself and
+ * isStrictMatchPrefix(text) only for its proper prefixes. CompletionItemIndex looks such items up by the key
+ * instead of checking them one by one.
+ */
+public interface KeyedCompletionItem extends CompletionItem {
+  /**
+   * @return the key, which doesn't change while the item is used, or null if the item matches differently
+   */
+  String getMatchKey();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.completion;
+
+import javax.annotation.Nonnull;
+
+/**
+ * SimpleCompletionItem which CompletionItemIndex looks up by its matching text. Matching is case sensitive
+ * and can't be changed in subclasses, so that it agrees with the key.
+ */
+public abstract class KeyedSimpleCompletionItem extends SimpleCompletionItem implements KeyedCompletionItem {
+  private final String myMatchKey;
+
+  protected KeyedSimpleCompletionItem(@Nonnull String matchingText) {
+    this(matchingText, matchingText);
+  }
+
+  protected KeyedSimpleCompletionItem(@Nonnull String matchingText, @Nonnull String visibleText) {
+    super(matchingText, visibleText);
+    myMatchKey = matchingText;
+  }
+
+  @Override
+  public String getMatchKey() {
+    return myMatchKey;
+  }
+
+  @Override
+  protected final boolean isCaseSensitive() {
+    return true;
+  }
+
+  @Override
+  public final boolean isStrictMatchPrefix(String text) {
+    return super.isStrictMatchPrefix(text);
+  }
+
+  @Override
+  public final boolean isMatch(String text) {
+    return super.isMatch(text);
+  }
+}
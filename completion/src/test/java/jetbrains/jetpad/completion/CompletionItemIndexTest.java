@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.completion;
+
+import jetbrains.jetpad.base.Runnables;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompletionItemIndexTest {
+  private CompletionItemIndex index = new CompletionItemIndex();
+
+  @Test
+  public void prefixedByKeepsAddOrder() {
+    add("abc", "b", "ab", "abd", "a");
+    assertEquals(Arrays.asList("abc", "ab", "abd"), texts(index.prefixedBy("ab")));
+  }
+
+  @Test
+  public void emptyPrefix() {
+    add("b", "a");
+    assertEquals(Arrays.asList("b", "a"), texts(index.prefixedBy("")));
+  }
+
+  @Test
+  public void strictlyPrefixedBy() {
+    add("ab", "a", "abc");
+    assertEquals(Arrays.asList("ab", "abc"), texts(index.strictlyPrefixedBy("a")));
+  }
+
+  @Test
+  public void matches() {
+    add("a", "ab", "a");
+    assertEquals(Arrays.asList("a", "a"), texts(index.matches("a")));
+    assertTrue(index.matches("b").isEmpty());
+  }
+
+  @Test
+  public void unkeyedItemsAreChecked() {
+    add("ab");
+    index.add(createCaseInsensitive("AC"));
+    add("ad");
+
+    assertEquals(Arrays.asList("ab", "AC", "ad"), texts(index.prefixedBy("a")));
+    assertEquals(Arrays.asList("AC"), texts(index.matches("ac")));
+  }
+
+  @Test
+  public void simpleItemsAreChecked() {
+    add("ab");
+    index.add(new SimpleCompletionItem("x") {
+      @Override
+      public boolean isMatch(String text) {
+        return "ax".equals(text);
+      }
+
+      @Override
+      public Runnable complete(String text) {
+        return Runnables.EMPTY;
+      }
+    });
+
+    assertEquals(Arrays.asList("x"), texts(index.matches("ax")));
+    assertEquals(Arrays.asList("x"), texts(index.prefixedBy("ax")));
+  }
+
+  @Test
+  public void remove() {
+    CompletionItem item = createItem("ab");
+    add("a");
+    index.add(item);
+
+    assertTrue(index.remove(item));
+    assertFalse(index.remove(item));
+    assertEquals(1, index.size());
+    assertTrue(index.prefixedBy("ab").isEmpty());
+  }
+
+  @Test
+  public void prefixEndingWithMaxChar() {
+    String prefix = "a" + Character.MAX_VALUE;
+    add(prefix + "b", "b", prefix);
+    assertEquals(Arrays.asList(prefix + "b", prefix), texts(index.prefixedBy(prefix)));
+  }
+
+  private void add(String... texts) {
+    for (String text : texts) {
+      index.add(createItem(text));
+    }
+  }
+
+  private List<String> texts(List<CompletionItem> items) {
+    List<String> result = new ArrayList<>();
+    for (CompletionItem item : items) {
+      result.add(item.visibleText(""));
+    }
+    return result;
+  }
+
+  private CompletionItem createItem(String text) {
+    return new KeyedSimpleCompletionItem(text) {
+      @Override
+      public Runnable complete(String text) {
+        return Runnables.EMPTY;
+      }
+    };
+  }
+
+  private CompletionItem createCaseInsensitive(String text) {
+    return new SimpleCompletionItem(text) {
+      @Override
+      protected boolean isCaseSensitive() {
+        return false;
+      }
+
+      @Override
+      public Runnable complete(String text) {
+        return Runnables.EMPTY;
+      }
+    };
+  }
+}
@@ -86,6 +86,42 @@ public class CompletionMenuTest {
     assertEquals(6, model.visibleItems.size());
   }
 
+  @Test
+  public void itemAddedWhileFiltered() {
+    model.text.set("a");
+    model.items.add(createItem("ab"));
+    model.items.add(createItem("b"));
+
+    assertEquals(3, model.visibleItems.size());
+    assertSame(model.items.get(3), model.visibleItems.get(2));
+  }
+
+  @Test
+  public void removedVisibleItemIsReplaced() {
+    model = new CompletionMenuModel(2, 0);
+    for (String s : Arrays.asList("c", "a", "b")) {
+      model.items.add(createItem(s));
+    }
+    assertEquals(2, model.visibleItems.size());
+
+    model.items.remove(1);
+
+    assertEquals(2, model.visibleItems.size());
+    assertEquals("b", model.visibleItems.get(0).visibleText(""));
+    assertEquals("c", model.visibleItems.get(1).visibleText(""));
+  }
+
+  @Test
+  public void textChangeKeepsOrder() {
+    model.text.set("a");
+    model.text.set("");
+
+    assertEquals(3, model.visibleItems.size());
+    assertEquals("aa", model.visibleItems.get(0).visibleText(""));
+    assertEquals("bbb", model.visibleItems.get(2).visibleText(""));
+    assertSelected("aa");
+  }
+
   private void assertSelected(String text) {
     assertEquals(text, model.selectedItem.get().visibleText(""));
   }
@@ -15,59 +15,329 @@
  */
 package jetbrains.jetpad.projectional.diagram.algorithm.orthogonal;
 
-import jetbrains.jetpad.geometry.Segment;
 import jetbrains.jetpad.geometry.Vector;
 
 import java.util.*;
 
+/**
+ * Finds points where lines going in the same direction diverge. A point is a diverge point if it starts
+ * a segment of some line, and the segments starting at it or passing through it go in different directions.
+ *
+ * Lines can be added and removed incrementally. Vertices and segments are indexed by coordinate, so
+ * only the points lying on the changed segments are updated.
+ */
 public class DivergePointsFinder {
-  public List<Vector> find(Set<List<Vector>> lines) {
-    List<Vector> divergePoints = new ArrayList<>();
+  private final Map<List<Vector>, Integer> myLines = new HashMap<>();
+
+  private final Map<Vector, PointInfo> myPoints = new HashMap<>();
+  private final TreeMap<Integer, TreeSet<Integer>> myPointsByX = new TreeMap<>();
+  private final Map<Integer, TreeSet<Integer>> myPointsByY = new HashMap<>();
+
+  private final Map<Edge, Integer> myEdges = new HashMap<>();
+  private final Map<Integer, Set<Edge>> myVerEdges = new HashMap<>();
+  private final Map<Integer, Set<Edge>> myHorEdges = new HashMap<>();
+  private final Set<Edge> myOtherEdges = new HashSet<>();
+
+  private final Set<Vector> myDivergePoints = new LinkedHashSet<>();
 
-    Map<Vector, List<Vector>> directions = new HashMap<>();
+  public List<Vector> find(Set<List<Vector>> lines) {
+    clear();
     for (List<Vector> line: lines) {
-      Vector prev = null;
-      for (Vector p: line) {
-        if (prev != null) {
-          if (!directions.containsKey(prev)) {
-            directions.put(prev, new ArrayList<Vector>());
-          }
-          directions.get(prev).add(p.sub(prev));
-        }
-        prev = p;
+      add(line);
+    }
+    return getDivergePoints();
+  }
+
+  public List<Vector> getDivergePoints() {
+    return new ArrayList<>(myDivergePoints);
+  }
+
+  public boolean isEmpty() {
+    return myLines.isEmpty();
+  }
+
+  public void add(List<Vector> line) {
+    List<Vector> key = new ArrayList<>(line);
+    Integer count = myLines.get(key);
+    myLines.put(key, count == null ? 1 : count + 1);
+
+    for (int i = 1; i < key.size(); i++) {
+      Vector start = key.get(i - 1);
+      Vector end = key.get(i);
+      if (start.equals(end)) continue;
+      Edge edge = new Edge(start, end);
+      addOwnDirection(start, edge.myDirection);
+      addEdge(edge);
+    }
+  }
+
+  /**
+   * @param line a line equal to one of the added lines
+   */
+  public void remove(List<Vector> line) {
+    Integer count = myLines.get(line);
+    if (count == null) {
+      throw new IllegalArgumentException("Unknown line " + line);
+    }
+    if (count == 1) {
+      myLines.remove(line);
+    } else {
+      myLines.put(line, count - 1);
+    }
+
+    for (int i = 1; i < line.size(); i++) {
+      Vector start = line.get(i - 1);
+      Vector end = line.get(i);
+      if (start.equals(end)) continue;
+      Edge edge = new Edge(start, end);
+      removeEdge(edge);
+      removeOwnDirection(start, edge.myDirection);
+    }
+  }
+
+  public void clear() {
+    myLines.clear();
+    myPoints.clear();
+    myPointsByX.clear();
+    myPointsByY.clear();
+    myEdges.clear();
+    myVerEdges.clear();
+    myHorEdges.clear();
+    myOtherEdges.clear();
+    myDivergePoints.clear();
+  }
+
+  private void addOwnDirection(Vector p, Vector direction) {
+    PointInfo info = myPoints.get(p);
+    if (info == null) {
+      info = new PointInfo();
+      myPoints.put(p, info);
+      addToIndex(myPointsByX, p.x, p.y);
+      addToIndex(myPointsByY, p.y, p.x);
+      for (Edge edge: getEdgesThrough(p)) {
+        info.add(edge.myDirection);
       }
     }
-    for (List<Vector> line: lines) {
-      Vector prev = null;
-      for (Vector p: line) {
-        if (prev != null) {
-          Segment s = new Segment(prev, p);
-          for (Vector dirP: directions.keySet()) {
-            if (p.equals(dirP) || prev.equals(dirP)) continue;
-            if (s.contains(dirP)) {
-              directions.get(dirP).add(p.sub(dirP));
-            }
-          }
-        }
-        prev = p;
+    info.myOwnCount++;
+    info.add(direction);
+    updateStatus(p, info);
+  }
+
+  private void removeOwnDirection(Vector p, Vector direction) {
+    PointInfo info = myPoints.get(p);
+    info.remove(direction);
+    if (--info.myOwnCount > 0) {
+      updateStatus(p, info);
+      return;
+    }
+    myPoints.remove(p);
+    removeFromIndex(myPointsByX, p.x, p.y);
+    removeFromIndex(myPointsByY, p.y, p.x);
+    myDivergePoints.remove(p);
+  }
+
+  private void addEdge(Edge edge) {
+    Integer count = myEdges.get(edge);
+    if (count != null) {
+      myEdges.put(edge, count + 1);
+      return;
+    }
+    myEdges.put(edge, 1);
+    getEdgeBucket(edge, true).add(edge);
+    for (Vector p: getPointsInside(edge)) {
+      PointInfo info = myPoints.get(p);
+      info.add(edge.myDirection);
+      updateStatus(p, info);
+    }
+  }
+
+  private void removeEdge(Edge edge) {
+    int count = myEdges.get(edge);
+    if (count > 1) {
+      myEdges.put(edge, count - 1);
+      return;
+    }
+    myEdges.remove(edge);
+    Set<Edge> bucket = getEdgeBucket(edge, false);
+    bucket.remove(edge);
+    if (bucket.isEmpty() && bucket != myOtherEdges) {
+      if (edge.isVertical()) {
+        myVerEdges.remove(edge.myStart.x);
+      } else {
+        myHorEdges.remove(edge.myStart.y);
       }
     }
+    for (Vector p: getPointsInside(edge)) {
+      PointInfo info = myPoints.get(p);
+      info.remove(edge.myDirection);
+      updateStatus(p, info);
+    }
+  }
 
-    for (Vector p: directions.keySet()) {
-      List<Vector> dirs = directions.get(p);
-      boolean isDevergePoint = false;
-      for (int i = 0; i < dirs.size(); i++) {
-        for (int j = i + 1; j < dirs.size(); j++) {
-          Vector v1 = dirs.get(i);
-          Vector v2 = dirs.get(j);
-          isDevergePoint |= !(v1.isParallel(v2) && v1.dotProduct(v2) > 0);
+  private Set<Edge> getEdgeBucket(Edge edge, boolean create) {
+    Map<Integer, Set<Edge>> buckets;
+    int coord;
+    if (edge.isVertical()) {
+      buckets = myVerEdges;
+      coord = edge.myStart.x;
+    } else if (edge.isHorizontal()) {
+      buckets = myHorEdges;
+      coord = edge.myStart.y;
+    } else {
+      return myOtherEdges;
+    }
+    Set<Edge> bucket = buckets.get(coord);
+    if (bucket == null && create) {
+      bucket = new HashSet<>();
+      buckets.put(coord, bucket);
+    }
+    return bucket;
+  }
+
+  private List<Edge> getEdgesThrough(Vector p) {
+    List<Edge> result = new ArrayList<>();
+    collectEdgesThrough(myVerEdges.get(p.x), p, result);
+    collectEdgesThrough(myHorEdges.get(p.y), p, result);
+    collectEdgesThrough(myOtherEdges, p, result);
+    return result;
+  }
+
+  private void collectEdgesThrough(Set<Edge> edges, Vector p, List<Edge> result) {
+    if (edges == null) return;
+    for (Edge edge: edges) {
+      if (edge.containsInside(p)) {
+        result.add(edge);
+      }
+    }
+  }
+
+  private List<Vector> getPointsInside(Edge edge) {
+    List<Vector> result = new ArrayList<>();
+    Vector start = edge.myStart;
+    Vector end = edge.myEnd;
+    int minX = Math.min(start.x, end.x);
+    int maxX = Math.max(start.x, end.x);
+    int minY = Math.min(start.y, end.y);
+    int maxY = Math.max(start.y, end.y);
+    if (edge.isVertical()) {
+      TreeSet<Integer> ys = myPointsByX.get(start.x);
+      if (ys != null) {
+        for (int y: ys.subSet(minY, false, maxY, false)) {
+          result.add(new Vector(start.x, y));
+        }
+      }
+    } else if (edge.isHorizontal()) {
+      TreeSet<Integer> xs = myPointsByY.get(start.y);
+      if (xs != null) {
+        for (int x: xs.subSet(minX, false, maxX, false)) {
+          result.add(new Vector(x, start.y));
+        }
+      }
+    } else {
+      for (Map.Entry<Integer, TreeSet<Integer>> entry: myPointsByX.subMap(minX, false, maxX, false).entrySet()) {
+        for (int y: entry.getValue().subSet(minY, false, maxY, false)) {
+          Vector p = new Vector(entry.getKey(), y);
+          if (edge.containsInside(p)) {
+            result.add(p);
+          }
         }
       }
-      if (isDevergePoint) {
-        divergePoints.add(p);
+    }
+    return result;
+  }
+
+  private void updateStatus(Vector p, PointInfo info) {
+    if (info.myDirections.size() > 1) {
+      myDivergePoints.add(p);
+    } else {
+      myDivergePoints.remove(p);
+    }
+  }
+
+  private static void addToIndex(Map<Integer, TreeSet<Integer>> index, int key, int value) {
+    TreeSet<Integer> values = index.get(key);
+    if (values == null) {
+      values = new TreeSet<>();
+      index.put(key, values);
+    }
+    values.add(value);
+  }
+
+  private static void removeFromIndex(Map<Integer, TreeSet<Integer>> index, int key, int value) {
+    TreeSet<Integer> values = index.get(key);
+    values.remove(value);
+    if (values.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      int t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  private static class PointInfo {
+    private int myOwnCount;
+    private final Map<Vector, Integer> myDirections = new HashMap<>(4);
+
+    private void add(Vector direction) {
+      Integer count = myDirections.get(direction);
+      myDirections.put(direction, count == null ? 1 : count + 1);
+    }
+
+    private void remove(Vector direction) {
+      int count = myDirections.get(direction);
+      if (count == 1) {
+        myDirections.remove(direction);
+      } else {
+        myDirections.put(direction, count - 1);
       }
     }
+  }
+
+  private static class Edge {
+    private final Vector myStart;
+    private final Vector myEnd;
+    private final Vector myDirection;
+
+    private Edge(Vector start, Vector end) {
+      myStart = start;
+      myEnd = end;
+      Vector d = end.sub(start);
+      int g = gcd(Math.abs(d.x), Math.abs(d.y));
+      myDirection = new Vector(d.x / g, d.y / g);
+    }
+
+    private boolean isVertical() {
+      return myStart.x == myEnd.x;
+    }
+
+    private boolean isHorizontal() {
+      return myStart.y == myEnd.y;
+    }
 
-    return divergePoints;
+    private boolean containsInside(Vector p) {
+      if (p.equals(myStart) || p.equals(myEnd)) return false;
+      if (p.x < Math.min(myStart.x, myEnd.x) || p.x > Math.max(myStart.x, myEnd.x)) return false;
+      if (p.y < Math.min(myStart.y, myEnd.y) || p.y > Math.max(myStart.y, myEnd.y)) return false;
+      return (long) (p.x - myStart.x) * myDirection.y == (long) (p.y - myStart.y) * myDirection.x;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Edge)) return false;
+      Edge edge = (Edge) o;
+      return myStart.equals(edge.myStart) && myEnd.equals(edge.myEnd);
+    }
+
+    @Override
+    public int hashCode() {
+      return myStart.hashCode() * 31 + myEnd.hashCode();
+    }
   }
-}
\ No newline at end of file
+}
@@ -17,10 +17,11 @@ package jetbrains.jetpad.projectional.diagram.algorithm.orthogonal;
 
 import jetbrains.jetpad.geometry.*;
 import jetbrains.jetpad.geometry.Vector;
-import jetbrains.jetpad.projectional.diagram.algorithm.graph.WeightedGraph;
-import jetbrains.jetpad.projectional.diagram.algorithm.path.ShortestPath;
+import jetbrains.jetpad.projectional.diagram.algorithm.graph.OrthogonalGraph;
+import jetbrains.jetpad.projectional.diagram.algorithm.path.OrthogonalShortestPath;
 import jetbrains.jetpad.projectional.diagram.algorithm.util.FreeSegmentsUtil;
 import jetbrains.jetpad.projectional.diagram.algorithm.util.IntGeomUtil;
+import jetbrains.jetpad.projectional.diagram.algorithm.util.DynamicIntervalTree;
 
 import java.util.*;
 
@@ -31,15 +32,29 @@ public class OrthogonalRouteWithObstacles {
 
   private int myMinDistToForbiddenSegment = 0;
 
-  private List<Rectangle> myObstacles;
+  private List<Rectangle> myObstacles = new ArrayList<>();
+  private Map<Rectangle, List<Integer>> myObstacleIds = new HashMap<>();
+  private DynamicIntervalTree myObstaclesByX = new DynamicIntervalTree();
+  private DynamicIntervalTree myObstaclesByY = new DynamicIntervalTree();
+  private int myRemovedObstacles;
+
   private Map<MyLine, List<Segment>> mySegmentsMap = new LinkedHashMap<>();
+  private Map<MyLine, Integer> myLineSources = new HashMap<>();
+  private TreeMap<Integer, MyLine> myVerLines = new TreeMap<>();
+  private TreeMap<Integer, MyLine> myHorLines = new TreeMap<>();
+
   private List<Segment> myForbiddenSegments = new ArrayList<>();
+  private TreeMap<Integer, List<Integer>> myVerForbiddenSegments = new TreeMap<>();
+  private TreeMap<Integer, List<Integer>> myHorForbiddenSegments = new TreeMap<>();
+  private int myRemovedForbiddenSegments;
 
   private Vector myStart;
   private Vector myEnd;
   private List<Segment> myEndpointSegments;
   private Set<MyLine> myEndpointLines;
 
+  private final OrthogonalShortestPath myShortestPath = new OrthogonalShortestPath();
+
   private long myBuildInitTime = 0;
   private long myBuildLazyTime = 0;
   private long myInitRoutingTime = 0;
@@ -76,8 +91,42 @@ public class OrthogonalRouteWithObstacles {
   }
 
   public OrthogonalRouteWithObstacles(List<Rectangle> obstacles) {
-    myObstacles = Collections.unmodifiableList(obstacles);
-    initObstaclesSegments();
+    addObstacles(obstacles);
+  }
+
+  /**
+   * Creates an independent copy of the obstacles, lines and forbidden segments. Different copies may be used
+   * for routing in different threads.
+   */
+  public OrthogonalRouteWithObstacles copy() {
+    OrthogonalRouteWithObstacles copy = new OrthogonalRouteWithObstacles();
+    copy.myMinDistToForbiddenSegment = myMinDistToForbiddenSegment;
+    copy.myObstacles.addAll(myObstacles);
+    for (Map.Entry<Rectangle, List<Integer>> entry: myObstacleIds.entrySet()) {
+      copy.myObstacleIds.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    copy.myObstaclesByX = myObstaclesByX.copy();
+    copy.myObstaclesByY = myObstaclesByY.copy();
+    copy.myRemovedObstacles = myRemovedObstacles;
+
+    for (Map.Entry<MyLine, List<Segment>> entry: mySegmentsMap.entrySet()) {
+      copy.mySegmentsMap.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    copy.myLineSources.putAll(myLineSources);
+    copy.myVerLines.putAll(myVerLines);
+    copy.myHorLines.putAll(myHorLines);
+
+    copy.myForbiddenSegments.addAll(myForbiddenSegments);
+    copyIndex(myVerForbiddenSegments, copy.myVerForbiddenSegments);
+    copyIndex(myHorForbiddenSegments, copy.myHorForbiddenSegments);
+    copy.myRemovedForbiddenSegments = myRemovedForbiddenSegments;
+    return copy;
+  }
+
+  private static void copyIndex(Map<Integer, List<Integer>> from, Map<Integer, List<Integer>> to) {
+    for (Map.Entry<Integer, List<Integer>> entry: from.entrySet()) {
+      to.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
   }
 
   public List<Vector> findRoute(Vector start, Vector end) {
@@ -108,17 +157,138 @@ public class OrthogonalRouteWithObstacles {
     myAdditionalLinesTime += System.currentTimeMillis() - time;
   }
 
+  /**
+   * Removes lines added with addAdditionalLines
+   */
+  public void removeAdditionalLines(List<Segment> additionalLines) {
+    long time = System.currentTimeMillis();
+
+    for (Segment s: additionalLines) {
+      if (s.start.x == s.end.x) {
+        removeLine(s.start.x, true);
+      } else {
+        removeLine(s.start.y, false);
+      }
+    }
+
+    myAdditionalLinesTime += System.currentTimeMillis() - time;
+  }
+
   public void addForbiddenSegments(List<Segment> forbiddenSegments) {
     long time = System.currentTimeMillis();
 
     for (Segment fs: forbiddenSegments) {
       removeForbiddenSegment(fs);
     }
-    myForbiddenSegments.addAll(forbiddenSegments);
+    for (Segment fs: forbiddenSegments) {
+      myForbiddenSegments.add(fs);
+      indexForbiddenSegment(myForbiddenSegments.size() - 1);
+    }
+
+    myForbiddenSegmentsTime += System.currentTimeMillis() - time;
+  }
+
+  /**
+   * Removes segments added with addForbiddenSegments. The lines near them are rebuilt.
+   */
+  public void removeForbiddenSegments(List<Segment> forbiddenSegments) {
+    long time = System.currentTimeMillis();
+
+    Set<MyLine> affectedLines = new LinkedHashSet<>();
+    for (Segment fs: forbiddenSegments) {
+      boolean ver = isVertical(fs);
+      int coord = ver ? fs.start.x : fs.start.y;
+      TreeMap<Integer, List<Integer>> index = ver ? myVerForbiddenSegments : myHorForbiddenSegments;
+      List<Integer> atCoord = index.get(coord);
+      int position = -1;
+      if (atCoord != null) {
+        for (int i = 0; i < atCoord.size(); i++) {
+          if (fs.equals(myForbiddenSegments.get(atCoord.get(i)))) {
+            position = i;
+            break;
+          }
+        }
+      }
+      if (position == -1) {
+        throw new IllegalArgumentException("Unknown forbidden segment " + fs);
+      }
+
+      myForbiddenSegments.set(atCoord.remove(position), null);
+      if (atCoord.isEmpty()) {
+        index.remove(coord);
+      }
+      myRemovedForbiddenSegments++;
+      affectedLines.addAll(linesNear(ver ? myVerLines : myHorLines, coord).values());
+    }
+    if (2 * myRemovedForbiddenSegments > myForbiddenSegments.size()) {
+      compactForbiddenSegments();
+    }
+    refreshLines(affectedLines);
 
     myForbiddenSegmentsTime += System.currentTimeMillis() - time;
   }
 
+  public void addObstacles(List<Rectangle> obstacles) {
+    long time = System.currentTimeMillis();
+
+    for (Rectangle r: obstacles) {
+      indexObstacle(r);
+    }
+
+    Set<MyLine> crossedLines = new LinkedHashSet<>();
+    for (Rectangle r: obstacles) {
+      collectCrossedLines(r, crossedLines);
+    }
+    refreshLines(crossedLines);
+    for (Rectangle r: obstacles) {
+      addLine(r.origin.x, true);
+      addLine(r.origin.y, false);
+      addLine(r.origin.x + r.dimension.x, true);
+      addLine(r.origin.y + r.dimension.y, false);
+    }
+
+    myInitTime += System.currentTimeMillis() - time;
+  }
+
+  /**
+   * Removes obstacles added with addObstacles or passed to the constructor. The lines crossing them are rebuilt.
+   */
+  public void removeObstacles(List<Rectangle> obstacles) {
+    long time = System.currentTimeMillis();
+
+    for (Rectangle r: obstacles) {
+      List<Integer> ids = myObstacleIds.get(r);
+      if (ids == null) {
+        throw new IllegalArgumentException("Unknown obstacle " + r);
+      }
+      int id = ids.remove(0);
+      if (ids.isEmpty()) {
+        myObstacleIds.remove(r);
+      }
+      myObstacles.set(id, null);
+      myObstaclesByX.remove(id);
+      myObstaclesByY.remove(id);
+      myRemovedObstacles++;
+    }
+    if (2 * myRemovedObstacles > myObstacles.size()) {
+      compactObstacles();
+    }
+
+    for (Rectangle r: obstacles) {
+      removeLine(r.origin.x, true);
+      removeLine(r.origin.y, false);
+      removeLine(r.origin.x + r.dimension.x, true);
+      removeLine(r.origin.y + r.dimension.y, false);
+    }
+    Set<MyLine> crossedLines = new LinkedHashSet<>();
+    for (Rectangle r: obstacles) {
+      collectCrossedLines(r, crossedLines);
+    }
+    refreshLines(crossedLines);
+
+    myInitTime += System.currentTimeMillis() - time;
+  }
+
   public void setMinDistToForbiddenSegment(int minDistToForbiddenSegment) {
     myMinDistToForbiddenSegment = minDistToForbiddenSegment;
   }
@@ -160,63 +330,70 @@ public class OrthogonalRouteWithObstacles {
     if (myEndpointLines.contains(line)) return;
     myEndpointLines.add(line);
 
-    List<Vector> freeSegments = getFreeSegments(line);
+    myEndpointSegments.addAll(createSegments(line));
+  }
 
-    ArrayList<Segment> segments = new ArrayList<>(freeSegments.size());
-    if (ver) {
-      for (Vector seg: freeSegments) {
-        segments.add(new Segment(new Vector(coord, seg.x), new Vector(coord, seg.y)));
-      }
-    } else {
-      for (Vector seg: freeSegments) {
-        segments.add(new Segment(new Vector(seg.x, coord), new Vector(seg.y, coord)));
-      }
+  private void removeForbiddenSegment(Segment fs) {
+    boolean ver = isVertical(fs);
+    int coord = ver ? fs.start.x : fs.start.y;
+    Vector occupied = ver ? getYVector(fs) : getXVector(fs);
+    for (MyLine line: linesNear(ver ? myVerLines : myHorLines, coord).values()) {
+      removeSegment(line, occupied);
     }
-    myEndpointSegments.addAll(segments);
   }
 
-  private void removeForbiddenSegment(Segment fs) {
-    for (MyLine line: mySegmentsMap.keySet()) {
-      if (isVertical(fs) && line.ver && fitsMinDist(fs.start.x, line.coord)) {
-        List<Segment> newSegments = new ArrayList<>();
-        for (Segment s: mySegmentsMap.get(line)) {
-          Vector vs = getYVector(s);
-          ArrayList<Vector> list = new ArrayList<>();
-          list.add(vs);
-          Vector vfs = getYVector(fs);
-          for (Vector v: FreeSegmentsUtil.removeSegment(list, vfs)) {
-            newSegments.add(new Segment(new Vector(s.start.x, v.x), new Vector(s.start.x, v.y)));
-          }
-        }
-        mySegmentsMap.put(line, newSegments);
-      } else if (!isVertical(fs) && !line.ver && fitsMinDist(fs.start.y, line.coord)) {
-        List<Segment> newSegments = new ArrayList<>();
-        for (Segment s: mySegmentsMap.get(line)) {
-          Vector vs = getXVector(s);
-          ArrayList<Vector> list = new ArrayList<>();
-          list.add(vs);
-          Vector vfs = getXVector(fs);
-          for (Vector v: FreeSegmentsUtil.removeSegment(list, vfs)) {
-            newSegments.add(new Segment(new Vector(v.x, s.start.y), new Vector(v.y, s.start.y)));
-          }
-        }
-        mySegmentsMap.put(line, newSegments);
+  private SortedMap<Integer, MyLine> linesNear(TreeMap<Integer, MyLine> lines, int coord) {
+    return lines.subMap(coord - myMinDistToForbiddenSegment, true, coord + myMinDistToForbiddenSegment, true);
+  }
+
+  /**
+   * The same as FreeSegmentsUtil.removeSegment, but only the free segments overlapping the occupied one are replaced.
+   * Free segments of a line are sorted and don't overlap, so both their starts and their ends are non-decreasing.
+   */
+  private void removeSegment(MyLine line, Vector occupied) {
+    List<Segment> segments = mySegmentsMap.get(line);
+    int first = 0;
+    int last = segments.size();
+    while (first < last) {
+      int mid = (first + last) / 2;
+      if (getVector(line, segments.get(mid)).y <= occupied.x) {
+        first = mid + 1;
+      } else {
+        last = mid;
+      }
+    }
+
+    List<Segment> newSegments = new ArrayList<>(2);
+    int end = first;
+    while (end < segments.size()) {
+      Vector free = getVector(line, segments.get(end));
+      if (free.x >= occupied.y) break;
+      if (free.x <= occupied.x) {
+        newSegments.add(createSegment(line, free.x, occupied.x));
+      }
+      if (occupied.y <= free.y) {
+        newSegments.add(createSegment(line, occupied.y, free.y));
       }
+      end++;
     }
+    if (first == end) return;
+
+    segments.subList(first, end).clear();
+    segments.addAll(first, newSegments);
+  }
+
+  private Vector getVector(MyLine line, Segment s) {
+    return line.ver ? getYVector(s) : getXVector(s);
   }
 
-  private boolean intersects(MyLine line, Segment forbiddenSegment) {
+  private Segment createSegment(MyLine line, int from, int to) {
     if (line.ver) {
-      return isVertical(forbiddenSegment) && fitsMinDist(forbiddenSegment.start.x, line.coord);
+      return new Segment(new Vector(line.coord, from), new Vector(line.coord, to));
     } else {
-      return !isVertical(forbiddenSegment) && fitsMinDist(forbiddenSegment.start.y, line.coord);
+      return new Segment(new Vector(from, line.coord), new Vector(to, line.coord));
     }
   }
 
-  private boolean fitsMinDist(int x1, int x2) {
-    return Math.abs(x1 - x2) <= myMinDistToForbiddenSegment;
-  }
-
   private Vector getXVector(Segment s) {
     return new Vector(Math.min(s.start.x, s.end.x), Math.max(s.start.x, s.end.x));
   }
@@ -233,20 +410,34 @@ public class OrthogonalRouteWithObstacles {
     final GraphBuilder builder = new GraphBuilder();
     final Set<MyLine> addedLines = new HashSet<>();
     builder.buildGraph();
-    List<Integer> numPath = new ShortestPath().getPathMinWeight(new WeightedGraph<Integer>() {
+    int[] numPath = myShortestPath.findPath(new OrthogonalGraph() {
       @Override
-      public Iterable<Integer> getEdgeWeights(Integer node) {
+      public int getEdgeCount(int node) {
         addLine(node);
-        return builder.segmentsGraphLen.get(node);
+        return builder.edgeCounts[node];
       }
 
       @Override
-      public Iterable<Integer> getEdges(Integer node) {
-        addLine(node);
-        return builder.segmentsGraph.get(node);
+      public int getEdge(int node, int index) {
+        return builder.edges[node][index];
+      }
+
+      @Override
+      public int getEdgeWeight(int node, int index) {
+        return builder.edgeWeights[node][index];
       }
 
-      private void addLine(Integer node) {
+      @Override
+      public int getX(int node) {
+        return builder.points.get(node).x;
+      }
+
+      @Override
+      public int getY(int node) {
+        return builder.points.get(node).y;
+      }
+
+      private void addLine(int node) {
         if (!LAZY_GRAPH_BUILD) return;
 
         long time = System.currentTimeMillis();
@@ -262,70 +453,142 @@ public class OrthogonalRouteWithObstacles {
     }, 0, 1);
 
     if (numPath == null) return null;
-    List<Vector> path = new ArrayList<>(numPath.size());
-    for (Integer num: numPath) {
+    List<Vector> path = new ArrayList<>(numPath.length);
+    for (int num: numPath) {
       path.add(builder.points.get(num));
     }
     return path;
   }
 
-  private void initObstaclesSegments() {
-    long time = System.currentTimeMillis();
+  private void indexObstacle(Rectangle r) {
+    int id = myObstacles.size();
+    myObstacles.add(r);
+    List<Integer> ids = myObstacleIds.get(r);
+    if (ids == null) {
+      ids = new ArrayList<>(1);
+      myObstacleIds.put(r, ids);
+    }
+    ids.add(id);
+    myObstaclesByX.add(id, r.origin.x, r.origin.x + r.dimension.x);
+    myObstaclesByY.add(id, r.origin.y, r.origin.y + r.dimension.y);
+  }
 
-    if (!mySegmentsMap.isEmpty()) {
-      throw new IllegalStateException();
+  private void compactObstacles() {
+    List<Rectangle> obstacles = myObstacles;
+    myObstacles = new ArrayList<>();
+    myObstacleIds.clear();
+    myObstaclesByX.clear();
+    myObstaclesByY.clear();
+    myRemovedObstacles = 0;
+    for (Rectangle r: obstacles) {
+      if (r == null) continue;
+      indexObstacle(r);
     }
-    for (Rectangle r: myObstacles) {
-      addLine(r.origin.x, true);
-      addLine(r.origin.y, false);
-      addLine(r.origin.x + r.dimension.x, true);
-      addLine(r.origin.y + r.dimension.y, false);
+  }
+
+  private void indexForbiddenSegment(int i) {
+    Segment fs = myForbiddenSegments.get(i);
+    TreeMap<Integer, List<Integer>> index = isVertical(fs) ? myVerForbiddenSegments : myHorForbiddenSegments;
+    int coord = isVertical(fs) ? fs.start.x : fs.start.y;
+    List<Integer> atCoord = index.get(coord);
+    if (atCoord == null) {
+      atCoord = new ArrayList<>(1);
+      index.put(coord, atCoord);
     }
+    atCoord.add(i);
+  }
 
-    myInitTime += System.currentTimeMillis() - time;
+  private void compactForbiddenSegments() {
+    List<Segment> forbiddenSegments = myForbiddenSegments;
+    myForbiddenSegments = new ArrayList<>();
+    myVerForbiddenSegments.clear();
+    myHorForbiddenSegments.clear();
+    myRemovedForbiddenSegments = 0;
+    for (Segment fs: forbiddenSegments) {
+      if (fs == null) continue;
+      myForbiddenSegments.add(fs);
+      indexForbiddenSegment(myForbiddenSegments.size() - 1);
+    }
+  }
+
+  private void collectCrossedLines(Rectangle r, Set<MyLine> lines) {
+    lines.addAll(myVerLines.subMap(r.origin.x, false, r.origin.x + r.dimension.x, false).values());
+    lines.addAll(myHorLines.subMap(r.origin.y, false, r.origin.y + r.dimension.y, false).values());
+  }
+
+  private void refreshLines(Collection<MyLine> lines) {
+    for (MyLine line: lines) {
+      if (mySegmentsMap.containsKey(line)) {
+        mySegmentsMap.put(line, createSegments(line));
+      }
+    }
   }
 
   private void addLine(int c, boolean vertical) {
     MyLine line = new MyLine(vertical, c);
-    if (mySegmentsMap.containsKey(line)) return;
+    Integer sources = myLineSources.get(line);
+    myLineSources.put(line, sources == null ? 1 : sources + 1);
+    if (sources != null) return;
 
-    List<Vector> freeSegments = getFreeSegments(line);
+    mySegmentsMap.put(line, createSegments(line));
+    (vertical ? myVerLines : myHorLines).put(c, line);
+  }
 
-    ArrayList<Segment> segments = new ArrayList<>(freeSegments.size());
-    if (vertical) {
-      for (Vector seg: freeSegments) {
-        segments.add(new Segment(new Vector(c, seg.x), new Vector(c, seg.y)));
-      }
-    } else {
-      for (Vector seg: freeSegments) {
-        segments.add(new Segment(new Vector(seg.x, c), new Vector(seg.y, c)));
-      }
+  private void removeLine(int c, boolean vertical) {
+    MyLine line = new MyLine(vertical, c);
+    Integer sources = myLineSources.get(line);
+    if (sources == null) {
+      throw new IllegalArgumentException("Unknown line " + c);
+    }
+    if (sources > 1) {
+      myLineSources.put(line, sources - 1);
+      return;
     }
-    mySegmentsMap.put(line, segments);
+
+    myLineSources.remove(line);
+    mySegmentsMap.remove(line);
+    (vertical ? myVerLines : myHorLines).remove(c);
+  }
+
+  private List<Segment> createSegments(MyLine line) {
+    List<Vector> freeSegments = getFreeSegments(line);
+    List<Segment> segments = new ArrayList<>(freeSegments.size());
+    for (Vector seg: freeSegments) {
+      segments.add(createSegment(line, seg.x, seg.y));
+    }
+    return segments;
   }
 
   private List<Vector> getFreeSegments(MyLine line) {
     List<Vector> freeSegments = new ArrayList<>();
     freeSegments.add(new Vector(-INF, INF));
-    for (Rectangle r: myObstacles) {
+
+    //obstacles and forbidden segments are subtracted in the order in which they were added
+    List<Integer> obstacles = new ArrayList<>();
+    (line.ver ? myObstaclesByX : myObstaclesByY).stab(line.coord, obstacles);
+    Collections.sort(obstacles);
+    for (int i: obstacles) {
+      Rectangle r = myObstacles.get(i);
       if (line.ver) {
-        if (r.origin.x < line.coord && line.coord < r.origin.x + r.dimension.x) {
-          freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, new Vector(r.origin.y, r.origin.y + r.dimension.y));
-        }
+        freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, new Vector(r.origin.y, r.origin.y + r.dimension.y));
       } else {
-        if (r.origin.y < line.coord && line.coord < r.origin.y + r.dimension.y) {
-          freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, new Vector(r.origin.x, r.origin.x + r.dimension.x));
-        }
+        freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, new Vector(r.origin.x, r.origin.x + r.dimension.x));
       }
     }
 
-    for (Segment fs: myForbiddenSegments) {
-      if (intersects(line, fs)) {
-        if (line.ver) {
-          freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, getYVector(fs));
-        } else {
-          freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, getXVector(fs));
-        }
+    List<Integer> forbidden = new ArrayList<>();
+    TreeMap<Integer, List<Integer>> forbiddenIndex = line.ver ? myVerForbiddenSegments : myHorForbiddenSegments;
+    int d = myMinDistToForbiddenSegment;
+    for (List<Integer> atCoord: forbiddenIndex.subMap(line.coord - d, true, line.coord + d, true).values()) {
+      forbidden.addAll(atCoord);
+    }
+    Collections.sort(forbidden);
+    for (int i: forbidden) {
+      Segment fs = myForbiddenSegments.get(i);
+      if (line.ver) {
+        freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, getYVector(fs));
+      } else {
+        freeSegments = FreeSegmentsUtil.removeSegment(freeSegments, getXVector(fs));
       }
     }
     return freeSegments;
@@ -333,8 +596,14 @@ public class OrthogonalRouteWithObstacles {
 
   //test method
   void setObstacles(List<Rectangle> obstacles) {
-    myObstacles = Collections.unmodifiableList(obstacles);
-    initObstaclesSegments();
+    List<Rectangle> current = new ArrayList<>();
+    for (Rectangle r: myObstacles) {
+      if (r != null) {
+        current.add(r);
+      }
+    }
+    removeObstacles(current);
+    addObstacles(obstacles);
   }
 
   private class MyLine {
@@ -368,8 +637,9 @@ public class OrthogonalRouteWithObstacles {
   }
 
   private class GraphBuilder {
-    private List<List<Integer>> segmentsGraph = new ArrayList<>();
-    private List<List<Integer>> segmentsGraphLen = new ArrayList<>();
+    private int[][] edges = new int[16][];
+    private int[][] edgeWeights = new int[16][];
+    private int[] edgeCounts = new int[16];
     Map<Vector, Integer> pointToNum = new HashMap<>();
     List<Vector> points = new ArrayList<>();
 
@@ -503,11 +773,9 @@ public class OrthogonalRouteWithObstacles {
             throw new IllegalStateException();
           }
 
-          segmentsGraph.get(numI).add(numJ);
-          segmentsGraph.get(numJ).add(numI);
           int len = (int) points.get(i).sub(points.get(j)).length();
-          segmentsGraphLen.get(numI).add(len);
-          segmentsGraphLen.get(numJ).add(len);
+          addEdge(numI, numJ, len);
+          addEdge(numJ, numI, len);
         }
       }
     }
@@ -526,8 +794,26 @@ public class OrthogonalRouteWithObstacles {
       if (pointToNum.containsKey(v)) return;
       pointToNum.put(v, pointToNum.size());
       points.add(v);
-      segmentsGraph.add(new ArrayList<Integer>());
-      segmentsGraphLen.add(new ArrayList<Integer>());
+
+      int num = points.size() - 1;
+      if (num == edgeCounts.length) {
+        edges = Arrays.copyOf(edges, 2 * num);
+        edgeWeights = Arrays.copyOf(edgeWeights, 2 * num);
+        edgeCounts = Arrays.copyOf(edgeCounts, 2 * num);
+      }
+      edges[num] = new int[4];
+      edgeWeights[num] = new int[4];
+    }
+
+    private void addEdge(int from, int to, int weight) {
+      int count = edgeCounts[from];
+      if (count == edges[from].length) {
+        edges[from] = Arrays.copyOf(edges[from], 2 * count);
+        edgeWeights[from] = Arrays.copyOf(edgeWeights[from], 2 * count);
+      }
+      edges[from][count] = to;
+      edgeWeights[from][count] = weight;
+      edgeCounts[from] = count + 1;
     }
   }
 }
\ No newline at end of file
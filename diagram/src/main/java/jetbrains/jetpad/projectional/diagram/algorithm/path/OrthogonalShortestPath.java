@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.path;
+
+import jetbrains.jetpad.projectional.diagram.algorithm.graph.OrthogonalGraph;
+
+import java.util.Arrays;
+
+/**
+ * A* search for a path with the minimal number of edges (bends of the route), and the minimal weight among such paths.
+ * The number of edges takes precedence over weight, like in ShortestPath.getPathMinWeight. The heuristic is
+ * the Manhattan distance to the target and the number of bends the target requires, which is exact for weights
+ * not less than the Manhattan length of edges.
+ * Node state is kept in int arrays indexed by node, and open nodes are kept in an indexed binary heap.
+ */
+public class OrthogonalShortestPath {
+  private static final int UNREACHED = -1;
+  private static final int CLOSED = -2;
+
+  private OrthogonalGraph myGraph;
+  private int myTargetX;
+  private int myTargetY;
+
+  private int[] myEdgeCount = new int[0];
+  private int[] myWeight = new int[0];
+  private int[] myHopsEstimate = new int[0];
+  private int[] myWeightEstimate = new int[0];
+  private int[] myPrev = new int[0];
+  private int[] myHeapIndex = new int[0];
+
+  private int[] myHeap = new int[16];
+  private int myHeapSize;
+
+  /**
+   * @return nodes of the path from 'from' to 'to', or null if there is no path
+   */
+  public int[] findPath(OrthogonalGraph graph, int from, int to) {
+    myGraph = graph;
+    myTargetX = graph.getX(to);
+    myTargetY = graph.getY(to);
+    myHeapSize = 0;
+    Arrays.fill(myHeapIndex, UNREACHED);
+
+    try {
+      reach(from, UNREACHED, 0, 0);
+      while (myHeapSize > 0) {
+        int cur = poll();
+        if (cur == to) {
+          return restorePath(from, to);
+        }
+
+        int hops = myEdgeCount[cur] + 1;
+        int count = graph.getEdgeCount(cur);
+        for (int i = 0; i < count; i++) {
+          int next = graph.getEdge(cur, i);
+          ensureCapacity(next);
+          if (myHeapIndex[next] == CLOSED) continue;
+
+          int weight = myWeight[cur] + graph.getEdgeWeight(cur, i);
+          if (myHeapIndex[next] == UNREACHED) {
+            reach(next, cur, hops, weight);
+          } else if (hops < myEdgeCount[next] || (hops == myEdgeCount[next] && weight < myWeight[next])) {
+            myPrev[next] = cur;
+            myEdgeCount[next] = hops;
+            myWeight[next] = weight;
+            estimate(next);
+            siftUp(myHeapIndex[next]);
+          }
+        }
+      }
+      return null;
+    } finally {
+      myGraph = null;
+    }
+  }
+
+  private void reach(int node, int prev, int hops, int weight) {
+    ensureCapacity(node);
+    myPrev[node] = prev;
+    myEdgeCount[node] = hops;
+    myWeight[node] = weight;
+    estimate(node);
+
+    if (myHeapSize == myHeap.length) {
+      myHeap = Arrays.copyOf(myHeap, 2 * myHeap.length);
+    }
+    myHeap[myHeapSize] = node;
+    myHeapIndex[node] = myHeapSize;
+    siftUp(myHeapSize++);
+  }
+
+  private void estimate(int node) {
+    int dx = Math.abs(myGraph.getX(node) - myTargetX);
+    int dy = Math.abs(myGraph.getY(node) - myTargetY);
+    int hopsLeft = dx == 0 && dy == 0 ? 0 : (dx == 0 || dy == 0 ? 1 : 2);
+    myHopsEstimate[node] = myEdgeCount[node] + hopsLeft;
+    myWeightEstimate[node] = myWeight[node] + dx + dy;
+  }
+
+  private int poll() {
+    int result = myHeap[0];
+    myHeapIndex[result] = CLOSED;
+    myHeapSize--;
+    if (myHeapSize > 0) {
+      myHeap[0] = myHeap[myHeapSize];
+      myHeapIndex[myHeap[0]] = 0;
+      siftDown(0);
+    }
+    return result;
+  }
+
+  private void siftUp(int index) {
+    int node = myHeap[index];
+    while (index > 0) {
+      int parent = (index - 1) >> 1;
+      if (!less(node, myHeap[parent])) break;
+      move(myHeap[parent], index);
+      index = parent;
+    }
+    move(node, index);
+  }
+
+  private void siftDown(int index) {
+    int node = myHeap[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= myHeapSize) break;
+      if (child + 1 < myHeapSize && less(myHeap[child + 1], myHeap[child])) {
+        child++;
+      }
+      if (!less(myHeap[child], node)) break;
+      move(myHeap[child], index);
+      index = child;
+    }
+    move(node, index);
+  }
+
+  private void move(int node, int index) {
+    myHeap[index] = node;
+    myHeapIndex[node] = index;
+  }
+
+  private boolean less(int n1, int n2) {
+    if (myHopsEstimate[n1] != myHopsEstimate[n2]) return myHopsEstimate[n1] < myHopsEstimate[n2];
+    if (myWeightEstimate[n1] != myWeightEstimate[n2]) return myWeightEstimate[n1] < myWeightEstimate[n2];
+    //nodes are numbered in the order they are found, which is close to the order of the breadth-first search
+    return n1 < n2;
+  }
+
+  private void ensureCapacity(int node) {
+    if (node < myHeapIndex.length) return;
+    int oldLength = myHeapIndex.length;
+    int length = Math.max(node + 1, 2 * oldLength);
+    myEdgeCount = Arrays.copyOf(myEdgeCount, length);
+    myWeight = Arrays.copyOf(myWeight, length);
+    myHopsEstimate = Arrays.copyOf(myHopsEstimate, length);
+    myWeightEstimate = Arrays.copyOf(myWeightEstimate, length);
+    myPrev = Arrays.copyOf(myPrev, length);
+    myHeapIndex = Arrays.copyOf(myHeapIndex, length);
+    Arrays.fill(myHeapIndex, oldLength, length, UNREACHED);
+  }
+
+  private int[] restorePath(int from, int to) {
+    int length = 1;
+    for (int cur = to; cur != from; cur = myPrev[cur]) {
+      length++;
+    }
+    int[] path = new int[length];
+    int cur = to;
+    for (int i = length - 1; i >= 0; i--) {
+      path[i] = cur;
+      cur = myPrev[cur];
+    }
+    return path;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interval tree over open int intervals (low, high) which supports additions and removals.
+ * Intervals are kept in static IntervalTrees of decreasing sizes: added intervals are merged with the trees
+ * which are not larger than them, so an interval is rebuilt O(log n) times. Removed intervals are skipped
+ * by queries until there are more of them than of the present ones, then the trees are rebuilt.
+ * Intervals are identified by ids chosen by the caller.
+ */
+public class DynamicIntervalTree {
+  private List<Block> myBlocks = new ArrayList<>();
+  private Map<Integer, Block> myLocations = new HashMap<>();
+  private List<Integer> myAddedIds = new ArrayList<>();
+  private List<Integer> myAddedLows = new ArrayList<>();
+  private List<Integer> myAddedHighs = new ArrayList<>();
+  private int myIndexedCount;
+  private int myRemovedCount;
+
+  public void add(int id, int low, int high) {
+    if (myLocations.containsKey(id)) {
+      throw new IllegalArgumentException("Duplicate id " + id);
+    }
+    myLocations.put(id, null);
+    myAddedIds.add(id);
+    myAddedLows.add(low);
+    myAddedHighs.add(high);
+  }
+
+  public void remove(int id) {
+    if (!myLocations.containsKey(id)) {
+      throw new IllegalArgumentException("Unknown id " + id);
+    }
+    Block block = myLocations.remove(id);
+    if (block == null) {
+      int i = myAddedIds.lastIndexOf(id);
+      myAddedIds.remove(i);
+      myAddedLows.remove(i);
+      myAddedHighs.remove(i);
+    } else {
+      myRemovedCount++;
+    }
+  }
+
+  public int size() {
+    return myLocations.size();
+  }
+
+  public void clear() {
+    myBlocks.clear();
+    myLocations.clear();
+    myAddedIds.clear();
+    myAddedLows.clear();
+    myAddedHighs.clear();
+    myIndexedCount = 0;
+    myRemovedCount = 0;
+  }
+
+  /**
+   * Adds to the result the ids of the intervals with low < point < high, in no particular order
+   */
+  public void stab(int point, List<Integer> result) {
+    index();
+    List<Integer> found = new ArrayList<>();
+    for (Block block : myBlocks) {
+      found.clear();
+      block.myTree.stab(point, found);
+      for (int i : found) {
+        int id = block.myIds[i];
+        if (myLocations.get(id) == block) {
+          result.add(id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a copy which shares the trees with this one. Different copies may be used in different threads.
+   */
+  public DynamicIntervalTree copy() {
+    index();
+    DynamicIntervalTree copy = new DynamicIntervalTree();
+    copy.myBlocks.addAll(myBlocks);
+    copy.myLocations.putAll(myLocations);
+    copy.myIndexedCount = myIndexedCount;
+    copy.myRemovedCount = myRemovedCount;
+    return copy;
+  }
+
+  private void index() {
+    if (myRemovedCount > myIndexedCount - myRemovedCount) {
+      List<Block> blocks = myBlocks;
+      myBlocks = new ArrayList<>();
+      merge(blocks);
+      return;
+    }
+    if (myAddedIds.isEmpty()) return;
+
+    int size = myAddedIds.size();
+    int from = myBlocks.size();
+    while (from > 0 && myBlocks.get(from - 1).myIds.length <= size) {
+      from--;
+      size += myBlocks.get(from).myIds.length;
+    }
+    List<Block> merged = new ArrayList<>(myBlocks.subList(from, myBlocks.size()));
+    myBlocks.subList(from, myBlocks.size()).clear();
+    merge(merged);
+  }
+
+  /**
+   * Replaces the given blocks and the added intervals with one block of their present intervals
+   */
+  private void merge(List<Block> blocks) {
+    List<Integer> ids = new ArrayList<>(myAddedIds);
+    List<Integer> lows = new ArrayList<>(myAddedLows);
+    List<Integer> highs = new ArrayList<>(myAddedHighs);
+    for (Block block : blocks) {
+      for (int i = 0; i < block.myIds.length; i++) {
+        if (myLocations.get(block.myIds[i]) != block) {
+          myRemovedCount--;
+          continue;
+        }
+        ids.add(block.myIds[i]);
+        lows.add(block.myLows[i]);
+        highs.add(block.myHighs[i]);
+      }
+      myIndexedCount -= block.myIds.length;
+    }
+    myAddedIds.clear();
+    myAddedLows.clear();
+    myAddedHighs.clear();
+    if (ids.isEmpty()) return;
+
+    Block block = new Block(toArray(ids), toArray(lows), toArray(highs));
+    myBlocks.add(block);
+    myIndexedCount += ids.size();
+    for (int id : ids) {
+      myLocations.put(id, block);
+    }
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = list.get(i);
+    }
+    return result;
+  }
+
+  private static class Block {
+    private final int[] myIds;
+    private final int[] myLows;
+    private final int[] myHighs;
+    private final IntervalTree myTree;
+
+    private Block(int[] ids, int[] lows, int[] highs) {
+      myIds = ids;
+      myLows = lows;
+      myHighs = highs;
+      myTree = new IntervalTree(lows, highs);
+    }
+  }
+}
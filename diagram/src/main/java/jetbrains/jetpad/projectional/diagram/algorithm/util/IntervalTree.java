@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static centered interval tree over open int intervals (low, high). A stabbing query takes O(log n + k) time.
+ * Intervals are identified by their indices in the arrays passed to the constructor.
+ */
+public class IntervalTree {
+  private final int[] myLows;
+  private final int[] myHighs;
+  private final Node myRoot;
+
+  public IntervalTree(int[] lows, int[] highs) {
+    if (lows.length != highs.length) {
+      throw new IllegalArgumentException();
+    }
+    myLows = lows;
+    myHighs = highs;
+
+    List<Integer> ids = new ArrayList<>(lows.length);
+    for (int i = 0; i < lows.length; i++) {
+      if (lows[i] < highs[i]) {
+        ids.add(i);
+      }
+    }
+    myRoot = build(ids);
+  }
+
+  /**
+   * Adds to the result the indices of the intervals with low < point < high, in no particular order
+   */
+  public void stab(int point, List<Integer> result) {
+    long doubledPoint = 2L * point;
+    Node node = myRoot;
+    while (node != null) {
+      if (doubledPoint < node.myDoubledCenter) {
+        for (int id : node.myByLow) {
+          if (myLows[id] >= point) break;
+          result.add(id);
+        }
+        node = node.myLeft;
+      } else if (doubledPoint > node.myDoubledCenter) {
+        for (int id : node.myByHigh) {
+          if (myHighs[id] <= point) break;
+          result.add(id);
+        }
+        node = node.myRight;
+      } else {
+        for (int id : node.myByLow) {
+          result.add(id);
+        }
+        node = null;
+      }
+    }
+  }
+
+  private Node build(List<Integer> ids) {
+    if (ids.isEmpty()) return null;
+
+    //in doubled coordinates the midpoint of a non-empty interval lies strictly inside it,
+    //so the interval with the median midpoint contains the center and every node makes progress
+    long[] midpoints = new long[ids.size()];
+    for (int i = 0; i < ids.size(); i++) {
+      int id = ids.get(i);
+      midpoints[i] = (long) myLows[id] + myHighs[id];
+    }
+    Arrays.sort(midpoints);
+    long center = midpoints[midpoints.length / 2];
+
+    List<Integer> left = new ArrayList<>();
+    List<Integer> right = new ArrayList<>();
+    List<Integer> middle = new ArrayList<>();
+    for (int id : ids) {
+      if (2L * myHighs[id] <= center) {
+        left.add(id);
+      } else if (2L * myLows[id] >= center) {
+        right.add(id);
+      } else {
+        middle.add(id);
+      }
+    }
+
+    Node node = new Node(center, sorted(middle, myLows, true), sorted(middle, myHighs, false));
+    node.myLeft = build(left);
+    node.myRight = build(right);
+    return node;
+  }
+
+  private static int[] sorted(List<Integer> ids, int[] keys, boolean ascending) {
+    long[] packed = new long[ids.size()];
+    for (int i = 0; i < packed.length; i++) {
+      int id = ids.get(i);
+      long key = ascending ? keys[id] : ~keys[id];
+      packed[i] = (key << 32) | id;
+    }
+    Arrays.sort(packed);
+    int[] result = new int[packed.length];
+    for (int i = 0; i < packed.length; i++) {
+      result[i] = (int) packed[i];
+    }
+    return result;
+  }
+
+  private static class Node {
+    private final long myDoubledCenter;
+    private final int[] myByLow;
+    private final int[] myByHigh;
+    private Node myLeft;
+    private Node myRight;
+
+    private Node(long doubledCenter, int[] byLow, int[] byHigh) {
+      myDoubledCenter = doubledCenter;
+      myByLow = byLow;
+      myByHigh = byHigh;
+    }
+  }
+}
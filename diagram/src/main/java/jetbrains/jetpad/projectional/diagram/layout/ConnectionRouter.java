@@ -19,4 +19,10 @@ import jetbrains.jetpad.projectional.diagram.view.DiagramView;
 
 public interface ConnectionRouter {
   void findRoutes(DiagramView view);
+
+  /**
+   * @return true if the last findRoutes left some connections unrouted, so it should be called again later.
+   * Routers which always route everything return false.
+   */
+  boolean hasPostponedConnections();
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Not available in GWT
+ */
+public class ForkJoinRoutingExecutor implements RoutingExecutor {
+  private final ForkJoinPool myPool;
+
+  public ForkJoinRoutingExecutor() {
+    this(new ForkJoinPool());
+  }
+
+  public ForkJoinRoutingExecutor(ForkJoinPool pool) {
+    myPool = pool;
+  }
+
+  @Override
+  public int getParallelism() {
+    return myPool.getParallelism();
+  }
+
+  @Override
+  public void runAll(List<? extends Runnable> tasks) {
+    List<ForkJoinTask<?>> submitted = new ArrayList<>(tasks.size());
+    for (Runnable task : tasks) {
+      submitted.add(myPool.submit(task));
+    }
+    for (ForkJoinTask<?> task : submitted) {
+      task.join();
+    }
+  }
+}
@@ -27,14 +27,63 @@ import jetbrains.jetpad.projectional.view.View;
 
 import java.util.*;
 
+/**
+ * Keeps the routing graph between calls of findRoutes and updates it only with the obstacles and connections
+ * which have changed since the previous call.
+ */
 public class OrthogonalRouter implements ConnectionRouter {
   private static final boolean SHOW_INFO = false;
 
   private static final int DIST_FROM_OBSTACLE = 20;
   private static final int DIST_BETWEEN_EDGES = 10;
+  private static final int MIN_CONNECTIONS_PER_TASK = 4;
+
+  private DiagramView myDiagramView;
+  private OrthogonalRouteWithObstacles myRouter;
+  private final Map<View, Rectangle> myObstacles = new HashMap<>();
+  private final Map<Connection, RoutedConnection> myRoutedConnections = new HashMap<>();
+  private final Set<Connection> myPostponedConnections = new HashSet<>();
+  private int myBudget;
+  private RoutingExecutor myExecutor;
+
+  /**
+   * Routes connections of different inputs concurrently with the executor. All of them are routed against
+   * the state of the previous call, then the results are committed in the same order as in sequential routing.
+   * The routes which conflict with the connections committed before them are routed again.
+   * When there are too few invalid connections to give each task several of them, routing is sequential.
+   * Concurrently found routes don't go through {@link #routeConnection}, only the rerouted ones do.
+   * @param executor executor or null for sequential routing
+   */
+  public void setExecutor(RoutingExecutor executor) {
+    myExecutor = executor;
+  }
+
+  /**
+   * Limits the time spent on routing in one call of findRoutes. When the budget is exhausted, the remaining
+   * connections are laid out with straight segments and routed in one of the next calls.
+   * @param millis time limit, 0 means no limit
+   */
+  public void setBudget(int millis) {
+    myBudget = millis;
+  }
+
+  /**
+   * @return true if some connections were laid out without routing because of the budget
+   */
+  @Override
+  public boolean hasPostponedConnections() {
+    return !myPostponedConnections.isEmpty();
+  }
 
   @Override
   public void findRoutes(DiagramView diagramView) {
+    if (myDiagramView != diagramView) {
+      myDiagramView = diagramView;
+      myRouter = null;
+      myObstacles.clear();
+      myRoutedConnections.clear();
+      myPostponedConnections.clear();
+    }
     Set<Rectangle> invalidChildrenRects = new HashSet<>();
     for (View child : getItems(diagramView)) {
       boolean valid = child.valid().get();
@@ -54,6 +103,11 @@ public class OrthogonalRouter implements ConnectionRouter {
       }
     }
 
+    //postponed connections are rerouted alone, without their already routed siblings
+    for (Connection c: myPostponedConnections) {
+      c.view().invalidate();
+    }
+
     for (Connection c: diagramView.connections) {
       if (!isValid(c)) continue;
       if (intersects((PolyLineConnection) c, invalidChildrenRects)) {
@@ -77,46 +131,179 @@ public class OrthogonalRouter implements ConnectionRouter {
   }
 
   private void reroute(DiagramView diagramView) {
-    List<Segment> forbiddenSegments = new ArrayList<>();
-    List<Segment> additionalLines = new ArrayList<>();
-    for (Connection c: diagramView.connections) {
-      if (isValid(c)) {
-        getAdditionalInfo(forbiddenSegments, additionalLines, ((PolyLineConnection) c).getSegments());
-      }
-    }
+    long totalTime = System.currentTimeMillis();
 
-    List<Rectangle> obstacleRects = new ArrayList<>();
-    for(View f: getItems(diagramView)) {
-      obstacleRects.add(getLayoutBounds(f.bounds().get()));
+    if (myRouter == null) {
+      myRouter = new OrthogonalRouteWithObstacles();
+      myRouter.setMinDistToForbiddenSegment(DIST_BETWEEN_EDGES - 1);
     }
-    long totalTime = System.currentTimeMillis();
+    updateObstacles(diagramView);
+    updateConnections(diagramView);
 
-    OrthogonalRouteWithObstacles router = new OrthogonalRouteWithObstacles(obstacleRects);
-    router.setMinDistToForbiddenSegment(DIST_BETWEEN_EDGES - 1);
-    router.addForbiddenSegments(forbiddenSegments);
-    router.addAdditionalLines(additionalLines);
+    List<List<Connection>> invalidConnections = getInvalidConnections(diagramView);
+    List<List<Vector>> concurrentPaths = null;
+    ForbiddenSegmentsIndex committed = null;
+    if (myExecutor != null) {
+      concurrentPaths = routeConcurrently(invalidConnections);
+    }
+    if (concurrentPaths != null) {
+      committed = new ForbiddenSegmentsIndex();
+    }
 
-    Map<View,List<Connection>> connMap = ConnectionUtil.getInputToConnectionsMap(diagramView);
-    for (View input: connMap.keySet()) {
-      List<Segment> inputForbiddenSegments = new ArrayList<>();
-      List<Segment> inputAdditionalLines = new ArrayList<>();
-      for (Connection c: connMap.get(input)) {
-        if (isValid(c)) continue;
-        List<Vector> path = routeConnection((PolyLineConnection) c, router);
-        getAdditionalInfo(inputForbiddenSegments, inputAdditionalLines, IntGeomUtil.getSegments(path));
+    boolean routedAny = false;
+    int next = 0;
+    for (List<Connection> connections: invalidConnections) {
+      List<RoutedConnection> routed = new ArrayList<>();
+      for (Connection c: connections) {
+        PolyLineConnection connection = (PolyLineConnection) c;
+        List<Vector> path = null;
+        if (concurrentPaths != null) {
+          List<Vector> concurrentPath = concurrentPaths.get(next++);
+          if (concurrentPath != null && !committed.conflicts(concurrentPath)) {
+            path = applyRoute(connection, concurrentPath);
+            myPostponedConnections.remove(c);
+            routedAny = true;
+          }
+        }
+        if (path == null) {
+          //at least one connection is routed, so that postponed connections are eventually routed
+          if (routedAny && myBudget > 0 && System.currentTimeMillis() - totalTime > myBudget) {
+            path = simpleLayout(connection);
+            myPostponedConnections.add(c);
+          } else {
+            path = routeConnection(connection, myRouter);
+            myPostponedConnections.remove(c);
+            routedAny = true;
+          }
+        }
+        RoutedConnection routedConnection = new RoutedConnection(connection.getSegments(), IntGeomUtil.getSegments(path));
+        myRoutedConnections.put(c, routedConnection);
+        routed.add(routedConnection);
+      }
+      for (RoutedConnection rc: routed) {
+        rc.register();
+        if (committed != null) {
+          committed.addAll(rc.myForbiddenSegments);
+        }
       }
-      router.addForbiddenSegments(inputForbiddenSegments);
-      router.addAdditionalLines(inputAdditionalLines);
     }
 
     if (SHOW_INFO) {
       System.out.println("total time =           " + (System.currentTimeMillis() - totalTime));
-      System.out.println("init time =            " + router.getInitTime());
-      System.out.println("init routing time =    " + router.getInitRoutingTime());
-      System.out.println("init build graph time =     " + router.getBuildInitTime());
-      System.out.println("lazy build graph time =     " + router.getBuildLazyTime());
-      System.out.println("add lines time =       " + router.getAdditionalLinesTime());
-      System.out.println("forbid segments time = " + router.getForbiddenSegmentsTime());
+      System.out.println("init time =            " + myRouter.getInitTime());
+      System.out.println("init routing time =    " + myRouter.getInitRoutingTime());
+      System.out.println("init build graph time =     " + myRouter.getBuildInitTime());
+      System.out.println("lazy build graph time =     " + myRouter.getBuildLazyTime());
+      System.out.println("add lines time =       " + myRouter.getAdditionalLinesTime());
+      System.out.println("forbid segments time = " + myRouter.getForbiddenSegmentsTime());
+    }
+  }
+
+  /**
+   * Invalid connections grouped by input in the order of routing. Postponed connections go first,
+   * so that they are routed before the budget of the call is exhausted.
+   */
+  private List<List<Connection>> getInvalidConnections(DiagramView diagramView) {
+    List<List<Connection>> result = new ArrayList<>();
+    List<List<Connection>> rest = new ArrayList<>();
+    for (List<Connection> connections: ConnectionUtil.getInputToConnectionsMap(diagramView).values()) {
+      List<Connection> invalid = new ArrayList<>();
+      for (Connection c: connections) {
+        if (!isValid(c) && myPostponedConnections.contains(c)) {
+          invalid.add(c);
+        }
+      }
+      boolean postponed = !invalid.isEmpty();
+      for (Connection c: connections) {
+        if (!isValid(c) && !myPostponedConnections.contains(c)) {
+          invalid.add(c);
+        }
+      }
+      if (postponed) {
+        result.add(invalid);
+      } else if (!invalid.isEmpty()) {
+        rest.add(invalid);
+      }
+    }
+    result.addAll(rest);
+    return result;
+  }
+
+  /**
+   * @return routes of the invalid connections in the order of routing, or null if they should be routed sequentially
+   */
+  private List<List<Vector>> routeConcurrently(List<List<Connection>> invalidConnections) {
+    List<Vector> starts = new ArrayList<>();
+    List<Vector> ends = new ArrayList<>();
+    for (List<Connection> connections: invalidConnections) {
+      for (Connection c: connections) {
+        starts.add(getStart((PolyLineConnection) c));
+        ends.add(getEnd((PolyLineConnection) c));
+      }
+    }
+
+    int n = starts.size();
+    int taskCount = Math.min(myExecutor.getParallelism(), n / MIN_CONNECTIONS_PER_TASK);
+    if (taskCount < 2) return null;
+
+    List<RoutingTask> tasks = new ArrayList<>();
+    for (int i = 0; i < taskCount; i++) {
+      int from = (int) ((long) i * n / taskCount);
+      int to = (int) ((long) (i + 1) * n / taskCount);
+      tasks.add(new RoutingTask(myRouter.copy(), starts.subList(from, to), ends.subList(from, to)));
+    }
+    myExecutor.runAll(tasks);
+
+    List<List<Vector>> paths = new ArrayList<>(n);
+    for (RoutingTask task: tasks) {
+      paths.addAll(task.myPaths);
+    }
+    return paths;
+  }
+
+  private void updateObstacles(DiagramView diagramView) {
+    List<Rectangle> removed = new ArrayList<>();
+    List<Rectangle> added = new ArrayList<>();
+    Set<View> items = new HashSet<>();
+    for (View f: getItems(diagramView)) {
+      items.add(f);
+      Rectangle rect = getLayoutBounds(f.bounds().get());
+      Rectangle oldRect = myObstacles.put(f, rect);
+      if (rect.equals(oldRect)) continue;
+      if (oldRect != null) {
+        removed.add(oldRect);
+      }
+      added.add(rect);
+    }
+    for (Iterator<Map.Entry<View, Rectangle>> it = myObstacles.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<View, Rectangle> entry = it.next();
+      if (!items.contains(entry.getKey())) {
+        removed.add(entry.getValue());
+        it.remove();
+      }
+    }
+    myRouter.removeObstacles(removed);
+    myRouter.addObstacles(added);
+  }
+
+  private void updateConnections(DiagramView diagramView) {
+    Set<Connection> connections = new HashSet<>(diagramView.connections);
+    for (Iterator<Map.Entry<Connection, RoutedConnection>> it = myRoutedConnections.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Connection, RoutedConnection> entry = it.next();
+      Connection c = entry.getKey();
+      RoutedConnection routed = entry.getValue();
+      if (connections.contains(c) && isValid(c) && routed.mySegments.equals(((PolyLineConnection) c).getSegments())) continue;
+      routed.unregister();
+      it.remove();
+    }
+    myPostponedConnections.retainAll(connections);
+
+    for (Connection c: diagramView.connections) {
+      if (!isValid(c) || myRoutedConnections.containsKey(c)) continue;
+      List<Segment> segments = ((PolyLineConnection) c).getSegments();
+      RoutedConnection routed = new RoutedConnection(segments, segments);
+      routed.register();
+      myRoutedConnections.put(c, routed);
     }
   }
 
@@ -152,17 +339,29 @@ public class OrthogonalRouter implements ConnectionRouter {
     return res;
   }
 
+  /**
+   * Routes a connection on the current state of the router. With an executor, it's called only for the connections
+   * whose concurrently found routes conflict with the ones committed before them.
+   */
   protected List<Vector> routeConnection(PolyLineConnection connection, OrthogonalRouteWithObstacles router) {
-    Vector startShift = getEndpointShift(connection.fromView().get(), new Vector(DIST_FROM_OBSTACLE, 0));
-    Vector endShift = getEndpointShift(connection.toView().get(), new Vector(-DIST_FROM_OBSTACLE, 0));
-    Vector start = connection.getFrom().add(startShift);
-    Vector e = connection.getTo().add(endShift);
-
-    List<Vector> path = router.findRoute(start, e);
+    List<Vector> path = router.findRoute(getStart(connection), getEnd(connection));
     if (path == null) {
       return simpleLayout(connection);
     }
+    return applyRoute(connection, path);
+  }
+
+  private Vector getStart(PolyLineConnection connection) {
+    Vector startShift = getEndpointShift(connection.fromView().get(), new Vector(DIST_FROM_OBSTACLE, 0));
+    return connection.getFrom().add(startShift);
+  }
 
+  private Vector getEnd(PolyLineConnection connection) {
+    Vector endShift = getEndpointShift(connection.toView().get(), new Vector(-DIST_FROM_OBSTACLE, 0));
+    return connection.getTo().add(endShift);
+  }
+
+  private List<Vector> applyRoute(PolyLineConnection connection, List<Vector> path) {
     path.add(0, connection.getFrom());
     path.add(connection.getTo());
     connection.update(path.toArray(new Vector[path.size()]));
@@ -212,6 +411,98 @@ public class OrthogonalRouter implements ConnectionRouter {
     return Arrays.asList(points);
   }
 
+  private class RoutedConnection {
+    private final List<Segment> mySegments;
+    private final List<Segment> myForbiddenSegments = new ArrayList<>();
+    private final List<Segment> myAdditionalLines = new ArrayList<>();
+    private boolean myRegistered;
+
+    private RoutedConnection(List<Segment> segments, List<Segment> path) {
+      mySegments = new ArrayList<>(segments);
+      getAdditionalInfo(myForbiddenSegments, myAdditionalLines, path);
+    }
+
+    private void register() {
+      myRouter.addForbiddenSegments(myForbiddenSegments);
+      myRouter.addAdditionalLines(myAdditionalLines);
+      myRegistered = true;
+    }
+
+    private void unregister() {
+      if (!myRegistered) return;
+      myRouter.removeForbiddenSegments(myForbiddenSegments);
+      myRouter.removeAdditionalLines(myAdditionalLines);
+      myRegistered = false;
+    }
+  }
+
+  private static class RoutingTask implements Runnable {
+    private final OrthogonalRouteWithObstacles myRouter;
+    private final List<Vector> myStarts;
+    private final List<Vector> myEnds;
+    private final List<List<Vector>> myPaths = new ArrayList<>();
+
+    private RoutingTask(OrthogonalRouteWithObstacles router, List<Vector> starts, List<Vector> ends) {
+      myRouter = router;
+      myStarts = starts;
+      myEnds = ends;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < myStarts.size(); i++) {
+        myPaths.add(myRouter.findRoute(myStarts.get(i), myEnds.get(i)));
+      }
+    }
+  }
+
+  /**
+   * Forbidden segments committed during one call, used to check routes found against the previous state
+   */
+  static class ForbiddenSegmentsIndex {
+    private final TreeMap<Integer, List<Segment>> myVertical = new TreeMap<>();
+    private final TreeMap<Integer, List<Segment>> myHorizontal = new TreeMap<>();
+
+    void addAll(List<Segment> segments) {
+      for (Segment s: segments) {
+        boolean ver = s.start.x == s.end.x;
+        TreeMap<Integer, List<Segment>> index = ver ? myVertical : myHorizontal;
+        int coord = ver ? s.start.x : s.start.y;
+        List<Segment> atCoord = index.get(coord);
+        if (atCoord == null) {
+          atCoord = new ArrayList<>(1);
+          index.put(coord, atCoord);
+        }
+        atCoord.add(s);
+      }
+    }
+
+    /**
+     * A route conflicts with a forbidden segment if one of its segments is near the forbidden one and parallel to it,
+     * and they overlap by more than a point, in the same way the router removes forbidden segments from lines.
+     */
+    boolean conflicts(List<Vector> path) {
+      int d = DIST_BETWEEN_EDGES - 1;
+      for (int i = 1; i < path.size(); i++) {
+        Vector start = path.get(i - 1);
+        Vector end = path.get(i);
+        boolean ver = start.x == end.x;
+        int coord = ver ? start.x : start.y;
+        int from = ver ? Math.min(start.y, end.y) : Math.min(start.x, end.x);
+        int to = ver ? Math.max(start.y, end.y) : Math.max(start.x, end.x);
+        TreeMap<Integer, List<Segment>> index = ver ? myVertical : myHorizontal;
+        for (List<Segment> atCoord: index.subMap(coord - d, true, coord + d, true).values()) {
+          for (Segment s: atCoord) {
+            int sFrom = ver ? Math.min(s.start.y, s.end.y) : Math.min(s.start.x, s.end.x);
+            int sTo = ver ? Math.max(s.start.y, s.end.y) : Math.max(s.start.x, s.end.x);
+            if (Math.max(from, sFrom) < Math.min(to, sTo)) return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
   private boolean intersects(PolyLineConnection connection, Set<Rectangle> obstacles) {
     for (Segment s: connection.getSegments()) {
       for (Rectangle rect: obstacles) {
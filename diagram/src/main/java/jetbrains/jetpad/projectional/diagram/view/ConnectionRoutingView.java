@@ -39,6 +39,7 @@ public class ConnectionRoutingView extends DiagramView implements DecorationCont
   private Map<View, List<Vector>> myOldPositions = new HashMap<>();
 
   private RoutingViewConfiguration myConfiguration;
+  private boolean myReroutingScheduled;
 
   public ConnectionRoutingView(ConnectionRouter router) {
     this(router, getDefaultConfiguration());
@@ -154,6 +155,28 @@ public class ConnectionRoutingView extends DiagramView implements DecorationCont
     myRouter.findRoutes(this);
     invalidateDecorations();
     super.doValidate(ctx);
+
+    if (myRouter.hasPostponedConnections()) {
+      scheduleRerouting();
+    }
+  }
+
+  private void scheduleRerouting() {
+    if (myReroutingScheduled || container() == null) return;
+    myReroutingScheduled = true;
+    container().getEdt().schedule(0, new Runnable() {
+      @Override
+      public void run() {
+        myReroutingScheduled = false;
+        if (container() == null) return;
+        container().executeCommand(new Runnable() {
+          @Override
+          public void run() {
+            invalidate();
+          }
+        });
+      }
+    });
   }
 
   private void invalidateDecorations() {
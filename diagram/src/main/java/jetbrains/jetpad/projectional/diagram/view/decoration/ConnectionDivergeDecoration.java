@@ -23,18 +23,19 @@ import jetbrains.jetpad.projectional.diagram.view.ConnectionUtil;
 import jetbrains.jetpad.projectional.diagram.view.DiagramView;
 import jetbrains.jetpad.projectional.diagram.view.PolyLineConnection;
 import jetbrains.jetpad.projectional.view.GroupView;
+import jetbrains.jetpad.projectional.view.View;
 import jetbrains.jetpad.projectional.view.RectView;
 import jetbrains.jetpad.values.Color;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public class ConnectionDivergeDecoration extends GroupView {
   private static final int DIVERGE_SIZE = 3;
 
   private DecorationContainer<DiagramView> myContainer;
+  private final Map<View, DivergePointsFinder> myFinders = new LinkedHashMap<>();
+  private final Map<Connection, View> myInputs = new HashMap<>();
+  private final Map<Connection, List<Vector>> myLines = new HashMap<>();
 
   public ConnectionDivergeDecoration(DecorationContainer<DiagramView> container) {
     myContainer = container;
@@ -48,25 +49,60 @@ public class ConnectionDivergeDecoration extends GroupView {
   }
 
   private void update() {
-    children().clear();
-    for (List<Connection> connections: ConnectionUtil.getInputToConnectionsMap(myContainer.getDecoratedView()).values()) {
-      Set<List<Vector>> lines = new HashSet<>();
-      for (Connection connection: connections) {
-        List<Vector> line = new ArrayList<>();
-        for (Segment s: ((PolyLineConnection) connection).getSegments()) {
-          if (line.size() == 0) {
-            line.add(s.start);
-          }
-          line.add(s.end);
+    Set<Connection> connections = new HashSet<>();
+    for (Map.Entry<View, List<Connection>> entry: ConnectionUtil.getInputToConnectionsMap(myContainer.getDecoratedView()).entrySet()) {
+      View input = entry.getKey();
+      for (Connection connection: entry.getValue()) {
+        connections.add(connection);
+        List<Vector> line = getLine((PolyLineConnection) connection);
+        if (myInputs.get(connection) == input && line.equals(myLines.get(connection))) continue;
+
+        removeLine(connection);
+        DivergePointsFinder finder = myFinders.get(input);
+        if (finder == null) {
+          finder = new DivergePointsFinder();
+          myFinders.put(input, finder);
         }
-        lines.add(line);
+        finder.add(line);
+        myInputs.put(connection, input);
+        myLines.put(connection, line);
+      }
+    }
+    for (Connection connection: new ArrayList<>(myLines.keySet())) {
+      if (!connections.contains(connection)) {
+        removeLine(connection);
       }
-      for(Vector point: new DivergePointsFinder().find(lines)) {
+    }
+
+    children().clear();
+    for (DivergePointsFinder finder: myFinders.values()) {
+      for (Vector point: finder.getDivergePoints()) {
         addDivergeMark(point);
       }
     }
   }
 
+  private List<Vector> getLine(PolyLineConnection connection) {
+    List<Vector> line = new ArrayList<>();
+    for (Segment s: connection.getSegments()) {
+      if (line.size() == 0) {
+        line.add(s.start);
+      }
+      line.add(s.end);
+    }
+    return line;
+  }
+
+  private void removeLine(Connection connection) {
+    View input = myInputs.remove(connection);
+    if (input == null) return;
+    DivergePointsFinder finder = myFinders.get(input);
+    finder.remove(myLines.remove(connection));
+    if (finder.isEmpty()) {
+      myFinders.remove(input);
+    }
+  }
+
   private void addDivergeMark(Vector v) {
     RectView r = new RectView();
     r.moveTo(v.sub(new Vector(DIVERGE_SIZE, DIVERGE_SIZE)));
@@ -78,6 +78,74 @@ public class DivergePointsFinderTest {
     assertEquals(new Vector(10, 10), points.get(0));
   }
 
+  @Test
+  public void divergeOnPassingSegment() {
+    List<Vector> l1 = create();
+    l1.add(new Vector(0, 0));
+    l1.add(new Vector(20, 0));
+    List<Vector> l2 = create();
+    l2.add(new Vector(10, 0));
+    l2.add(new Vector(10, 10));
+
+    List<Vector> points = new DivergePointsFinder().find(lines);
+    assertTrue(points.size() == 1);
+    assertEquals(new Vector(10, 0), points.get(0));
+  }
+
+  @Test
+  public void removeLine() {
+    List<Vector> l1 = create();
+    l1.add(new Vector(0, 0));
+    l1.add(new Vector(10, 0));
+    l1.add(new Vector(10, 10));
+    List<Vector> l2 = create();
+    l2.add(new Vector(0, 0));
+    l2.add(new Vector(10, 0));
+    l2.add(new Vector(10, -10));
+
+    DivergePointsFinder finder = new DivergePointsFinder();
+    finder.add(l1);
+    finder.add(l2);
+    assertTrue(finder.getDivergePoints().size() == 1);
+
+    finder.remove(l2);
+    assertTrue(finder.getDivergePoints().isEmpty());
+
+    finder.remove(l1);
+    assertTrue(finder.isEmpty());
+  }
+
+  @Test
+  public void addLineThroughPoint() {
+    List<Vector> l1 = new ArrayList<>();
+    l1.add(new Vector(10, 0));
+    l1.add(new Vector(10, 10));
+    List<Vector> l2 = new ArrayList<>();
+    l2.add(new Vector(10, -10));
+    l2.add(new Vector(10, 20));
+
+    DivergePointsFinder finder = new DivergePointsFinder();
+    finder.add(l1);
+    finder.add(l2);
+    assertTrue(finder.getDivergePoints().isEmpty());
+
+    List<Vector> l3 = new ArrayList<>();
+    l3.add(new Vector(10, 20));
+    l3.add(new Vector(10, -10));
+    finder.add(l3);
+    List<Vector> points = finder.getDivergePoints();
+    assertTrue(points.size() == 1);
+    assertEquals(new Vector(10, 0), points.get(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void removeUnknownLine() {
+    List<Vector> l1 = new ArrayList<>();
+    l1.add(new Vector(0, 0));
+    l1.add(new Vector(10, 0));
+    new DivergePointsFinder().remove(l1);
+  }
+
   private List<Vector> create() {
     List<Vector> list = new ArrayList<>();
     lines.add(list);
@@ -166,6 +166,86 @@ public class OrthogonalRouteWithObstaclesTest {
     assertEquals(e, r.get(3));
   }
 
+  @Test
+  public void forbiddenSegmentWithinMinDist() {
+    Vector s = new Vector(100, 0);
+    Vector e = new Vector(200, 0);
+    o.setMinDistToForbiddenSegment(1);
+    o.setObstacles(Arrays.asList(new Rectangle(110, -1, 80, 2)));
+    o.addForbiddenSegments(Arrays.asList(new Segment(new Vector(300, -2), new Vector(-100, -2))));
+    List<Vector> r = o.findRoute(s, e);
+
+    assertTrue(r.size() == 4);
+    assertEquals(s, r.get(0));
+    assertEquals(new Vector(100, 1), r.get(1));
+    assertEquals(new Vector(200, 1), r.get(2));
+    assertEquals(e, r.get(3));
+  }
+
+  @Test
+  public void removeObstacle() {
+    Vector s = new Vector(100, 0);
+    Vector e = new Vector(200, 0);
+    Rectangle rect = new Rectangle(110, -1, 80, 80);
+    o.addObstacles(Arrays.asList(rect));
+    assertTrue(o.findRoute(s, e).size() == 4);
+
+    o.removeObstacles(Arrays.asList(rect));
+    List<Vector> r = o.findRoute(s, e);
+
+    assertTrue(r.size() == 2);
+    assertEquals(s, r.get(0));
+    assertEquals(e, r.get(1));
+  }
+
+  @Test
+  public void copyIsIndependent() {
+    Vector s = new Vector(100, 0);
+    Vector e = new Vector(200, 0);
+    Rectangle rect = new Rectangle(110, -1, 80, 80);
+    o.addObstacles(Arrays.asList(rect));
+    OrthogonalRouteWithObstacles copy = o.copy();
+    o.removeObstacles(Arrays.asList(rect));
+
+    assertTrue(copy.findRoute(s, e).size() == 4);
+    assertTrue(o.findRoute(s, e).size() == 2);
+  }
+
+  @Test
+  public void moveObstacle() {
+    Vector s = new Vector(100, 0);
+    Vector e = new Vector(200, 0);
+    Rectangle rect = new Rectangle(110, -1, 80, 80);
+    o.addObstacles(Arrays.asList(rect));
+    o.removeObstacles(Arrays.asList(rect));
+    o.addObstacles(Arrays.asList(new Rectangle(110, -79, 80, 80)));
+    List<Vector> r = o.findRoute(s, e);
+
+    assertTrue(r.size() == 4);
+    assertEquals(new Vector(100, 1), r.get(1));
+    assertEquals(new Vector(200, 1), r.get(2));
+  }
+
+  @Test
+  public void removeForbiddenSegment() {
+    Vector s = new Vector(100, 0);
+    Vector e = new Vector(200, 0);
+    o.setObstacles(Arrays.asList(new Rectangle(110, -1, 80, 2)));
+    List<Segment> forbidden = Arrays.asList(new Segment(new Vector(300, -1), new Vector(-100, -1)));
+    o.addForbiddenSegments(forbidden);
+    o.removeForbiddenSegments(forbidden);
+    List<Vector> r = o.findRoute(s, e);
+
+    assertTrue(r.size() == 4);
+    assertEquals(new Vector(100, -1), r.get(1));
+    assertEquals(new Vector(200, -1), r.get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void removeUnknownObstacle() {
+    o.removeObstacles(Arrays.asList(new Rectangle(0, 0, 10, 10)));
+  }
+
   @Test
   public void startEqualsEnd() {
     Vector s = new Vector(0, 0);
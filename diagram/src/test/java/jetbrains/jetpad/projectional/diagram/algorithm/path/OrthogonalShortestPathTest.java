@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.path;
+
+import jetbrains.jetpad.geometry.Vector;
+import jetbrains.jetpad.projectional.diagram.algorithm.graph.OrthogonalGraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class OrthogonalShortestPathTest {
+  private List<Vector> points = new ArrayList<>();
+  private List<List<Integer>> edges = new ArrayList<>();
+  private OrthogonalGraph graph = new OrthogonalGraph() {
+    @Override
+    public int getEdgeCount(int node) {
+      return edges.get(node).size();
+    }
+
+    @Override
+    public int getEdge(int node, int index) {
+      return edges.get(node).get(index);
+    }
+
+    @Override
+    public int getEdgeWeight(int node, int index) {
+      Vector d = points.get(node).sub(points.get(getEdge(node, index)));
+      return Math.abs(d.x) + Math.abs(d.y);
+    }
+
+    @Override
+    public int getX(int node) {
+      return points.get(node).x;
+    }
+
+    @Override
+    public int getY(int node) {
+      return points.get(node).y;
+    }
+  };
+
+  @Test
+  public void fromEqualsTo() {
+    int a = point(0, 0);
+    assertArrayEquals(new int[] {a}, new OrthogonalShortestPath().findPath(graph, a, a));
+  }
+
+  @Test
+  public void noPath() {
+    int a = point(0, 0);
+    int b = point(0, 10);
+    int c = point(10, 10);
+    connect(a, b);
+    assertNull(new OrthogonalShortestPath().findPath(graph, a, c));
+  }
+
+  @Test
+  public void fewerBendsWin() {
+    int from = point(0, 0);
+    int to = point(100, 50);
+    int a = point(0, 50);
+    int b = point(0, 10);
+    int c = point(50, 10);
+    int d = point(50, 50);
+    connect(from, a);
+    connect(a, to);
+    connect(from, b);
+    connect(b, c);
+    connect(c, d);
+    connect(d, to);
+
+    assertArrayEquals(new int[] {from, a, to}, new OrthogonalShortestPath().findPath(graph, from, to));
+  }
+
+  @Test
+  public void shorterPathWithSameBends() {
+    int from = point(0, 0);
+    int to = point(100, 0);
+    int a = point(0, 100);
+    int b = point(100, 100);
+    int c = point(0, -10);
+    int d = point(100, -10);
+    connect(from, a);
+    connect(a, b);
+    connect(b, to);
+    connect(from, c);
+    connect(c, d);
+    connect(d, to);
+
+    assertArrayEquals(new int[] {from, c, d, to}, new OrthogonalShortestPath().findPath(graph, from, to));
+  }
+
+  @Test
+  public void reuse() {
+    OrthogonalShortestPath shortestPath = new OrthogonalShortestPath();
+    int a = point(0, 0);
+    int b = point(0, 10);
+    int c = point(10, 10);
+    connect(a, b);
+    connect(b, c);
+
+    assertArrayEquals(new int[] {a, b, c}, shortestPath.findPath(graph, a, c));
+    assertArrayEquals(new int[] {c, b}, shortestPath.findPath(graph, c, b));
+  }
+
+  private int point(int x, int y) {
+    points.add(new Vector(x, y));
+    edges.add(new ArrayList<Integer>());
+    return points.size() - 1;
+  }
+
+  private void connect(int n1, int n2) {
+    edges.get(n1).add(n2);
+    edges.get(n2).add(n1);
+  }
+}
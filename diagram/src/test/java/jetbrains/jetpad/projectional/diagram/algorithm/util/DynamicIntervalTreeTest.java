@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DynamicIntervalTreeTest {
+  private DynamicIntervalTree tree = new DynamicIntervalTree();
+
+  @Test
+  public void addedIntervalsFound() {
+    tree.add(0, 0, 10);
+    tree.add(1, 5, 15);
+    assertEquals(Arrays.asList(0, 1), stab(7));
+
+    tree.add(2, 6, 8);
+    assertEquals(Arrays.asList(0, 1, 2), stab(7));
+    assertEquals(Arrays.asList(1), stab(10));
+  }
+
+  @Test
+  public void removedIntervalsSkipped() {
+    tree.add(0, 0, 10);
+    tree.add(1, 5, 15);
+    stab(7);
+
+    tree.remove(0);
+    assertEquals(Arrays.asList(1), stab(7));
+    assertEquals(1, tree.size());
+  }
+
+  @Test
+  public void removedIdAddedAgain() {
+    tree.add(0, 0, 10);
+    tree.add(1, 5, 15);
+    stab(7);
+
+    tree.remove(0);
+    tree.add(0, 20, 30);
+    assertEquals(Arrays.asList(1), stab(7));
+    assertEquals(Arrays.asList(0), stab(25));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownId() {
+    tree.add(0, 0, 10);
+    tree.remove(1);
+  }
+
+  @Test
+  public void copyIsIndependent() {
+    tree.add(0, 0, 10);
+    DynamicIntervalTree copy = tree.copy();
+
+    tree.remove(0);
+    copy.add(1, 5, 15);
+
+    assertEquals(Collections.<Integer>emptyList(), stab(7));
+    List<Integer> result = new ArrayList<>();
+    copy.stab(7, result);
+    Collections.sort(result);
+    assertEquals(Arrays.asList(0, 1), result);
+  }
+
+  @Test
+  public void randomUpdates() {
+    Random random = new Random(0);
+    Map<Integer, int[]> intervals = new HashMap<>();
+    for (int step = 0; step < 2000; step++) {
+      int id = random.nextInt(100);
+      if (intervals.containsKey(id)) {
+        tree.remove(id);
+        intervals.remove(id);
+      } else {
+        int low = random.nextInt(1000);
+        int high = low + random.nextInt(100);
+        tree.add(id, low, high);
+        intervals.put(id, new int[] {low, high});
+      }
+
+      int point = random.nextInt(1100);
+      List<Integer> expected = new ArrayList<>();
+      for (Map.Entry<Integer, int[]> entry : intervals.entrySet()) {
+        if (entry.getValue()[0] < point && point < entry.getValue()[1]) {
+          expected.add(entry.getKey());
+        }
+      }
+      Collections.sort(expected);
+      assertEquals(expected, stab(point));
+    }
+  }
+
+  private List<Integer> stab(int point) {
+    List<Integer> result = new ArrayList<>();
+    tree.stab(point, result);
+    Collections.sort(result);
+    return result;
+  }
+}
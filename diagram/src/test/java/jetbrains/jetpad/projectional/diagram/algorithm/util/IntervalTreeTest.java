@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.algorithm.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntervalTreeTest {
+  private IntervalTree tree = new IntervalTree(new int[] {0, 5, 10, 3, 7}, new int[] {10, 5, 20, 6, 9});
+
+  @Test
+  public void intervalsAreOpen() {
+    assertEquals(Collections.<Integer>emptyList(), stab(0));
+    assertEquals(Arrays.asList(0), stab(3));
+    assertEquals(Collections.<Integer>emptyList(), stab(10));
+  }
+
+  @Test
+  public void overlappingIntervals() {
+    assertEquals(Arrays.asList(0, 4), stab(8));
+    assertEquals(Arrays.asList(2), stab(15));
+  }
+
+  @Test
+  public void emptyIntervalIsNeverFound() {
+    assertEquals(Arrays.asList(0, 3), stab(5));
+  }
+
+  @Test
+  public void sameHighs() {
+    tree = new IntervalTree(new int[] {0, 1, 2}, new int[] {5, 5, 5});
+    assertEquals(Arrays.asList(0, 1, 2), stab(4));
+    assertEquals(Arrays.asList(0), stab(1));
+  }
+
+  private List<Integer> stab(int point) {
+    List<Integer> result = new ArrayList<>();
+    tree.stab(point, result);
+    Collections.sort(result);
+    return result;
+  }
+}
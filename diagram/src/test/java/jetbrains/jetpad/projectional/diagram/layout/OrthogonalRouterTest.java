@@ -0,0 +1,227 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.diagram.layout;
+
+import jetbrains.jetpad.geometry.Segment;
+import jetbrains.jetpad.geometry.Vector;
+import jetbrains.jetpad.projectional.diagram.algorithm.orthogonal.OrthogonalRouteWithObstacles;
+import jetbrains.jetpad.projectional.diagram.view.DiagramView;
+import jetbrains.jetpad.projectional.diagram.view.PolyLineConnection;
+import jetbrains.jetpad.projectional.view.RectView;
+import jetbrains.jetpad.projectional.view.View;
+import jetbrains.jetpad.projectional.view.ViewContainer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrthogonalRouterTest {
+  private static final int BUDGET = 1;
+
+  private DiagramView view = createView();
+  private boolean slow;
+  private int routed;
+  private Set<PolyLineConnection> routedConnections = new HashSet<>();
+  private OrthogonalRouter router = new OrthogonalRouter() {
+    @Override
+    protected List<Vector> routeConnection(PolyLineConnection connection, OrthogonalRouteWithObstacles router) {
+      routed++;
+      routedConnections.add(connection);
+      if (slow) {
+        exhaustBudget();
+      }
+      return super.routeConnection(connection, router);
+    }
+  };
+
+  @Test
+  public void postponedConnectionsRoutedOneByOne() {
+    setBudget();
+    View input = addPort(view);
+    for (int i = 0; i < 5; i++) {
+      connect(view, input, new Vector(0, 100 * i), new Vector(200, 100 * i + 50));
+    }
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, routed);
+      findRoutes();
+    }
+
+    assertFalse(router.hasPostponedConnections());
+    assertEquals(5, routed);
+  }
+
+  @Test
+  public void changingConnectionDoesntStarvePostponed() {
+    setBudget();
+    PolyLineConnection changing = connect(view, addPort(view), new Vector(0, 0), new Vector(200, 50));
+    View input = addPort(view);
+    List<PolyLineConnection> postponed = new ArrayList<>();
+    for (int i = 1; i < 4; i++) {
+      postponed.add(connect(view, input, new Vector(0, 100 * i), new Vector(200, 100 * i + 50)));
+    }
+
+    for (int i = 0; i < 6; i++) {
+      changing.view().invalidate();
+      findRoutes();
+    }
+
+    assertTrue(routedConnections.containsAll(postponed));
+  }
+
+  @Test
+  public void executorGivesSameRoutesAsSequential() {
+    List<List<Segment>> sequential = routeRows(new OrthogonalRouter(), 16);
+
+    router.setExecutor(new RoutingExecutor() {
+      @Override
+      public int getParallelism() {
+        return 4;
+      }
+
+      @Override
+      public void runAll(List<? extends Runnable> tasks) {
+        for (Runnable task : tasks) {
+          task.run();
+        }
+      }
+    });
+    List<List<Segment>> concurrent = routeRows(router, 16);
+
+    assertEquals(sequential, concurrent);
+    assertEquals(4, routed);
+  }
+
+  @Test
+  public void forkJoinExecutorGivesSameRoutesAsSequential() {
+    List<List<Segment>> sequential = routeRows(new OrthogonalRouter(), 200);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      router.setExecutor(new ForkJoinRoutingExecutor(pool));
+      assertEquals(sequential, routeRows(router, 200));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void conflictWithNearParallelSegment() {
+    OrthogonalRouter.ForbiddenSegmentsIndex index = createIndex();
+
+    assertTrue(index.conflicts(path(50, 9, 150, 9)));
+    assertTrue(index.conflicts(path(150, 50, 195, 50, 195, 60)));
+  }
+
+  @Test
+  public void noConflictWithFarOrPerpendicularSegment() {
+    OrthogonalRouter.ForbiddenSegmentsIndex index = createIndex();
+
+    assertFalse(index.conflicts(path(50, 10, 150, 10)));
+    assertFalse(index.conflicts(path(50, -50, 50, 50)));
+  }
+
+  @Test
+  public void noConflictWithSegmentTouchingAtPoint() {
+    OrthogonalRouter.ForbiddenSegmentsIndex index = createIndex();
+
+    assertFalse(index.conflicts(path(100, 5, 150, 5)));
+  }
+
+  private void setBudget() {
+    slow = true;
+    router.setBudget(BUDGET);
+  }
+
+  private void exhaustBudget() {
+    try {
+      Thread.sleep(BUDGET + 1);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void findRoutes() {
+    router.findRoutes(view);
+    view.validate();
+  }
+
+  /**
+   * Straight connections in separate rows, which don't affect each other, and a quarter as many overlapping ones
+   * whose concurrently found routes conflict with the routes committed before them
+   */
+  private List<List<Segment>> routeRows(OrthogonalRouter rowsRouter, int rowCount) {
+    DiagramView rows = createView();
+    List<PolyLineConnection> connections = new ArrayList<>();
+    for (int i = 0; i < rowCount + rowCount / 4; i++) {
+      int y = 100 * (i % rowCount);
+      connections.add(connect(rows, addPort(rows), new Vector(0, y), new Vector(200, y)));
+    }
+
+    rowsRouter.findRoutes(rows);
+
+    List<List<Segment>> result = new ArrayList<>();
+    for (PolyLineConnection c : connections) {
+      result.add(c.getSegments());
+    }
+    return result;
+  }
+
+  private OrthogonalRouter.ForbiddenSegmentsIndex createIndex() {
+    OrthogonalRouter.ForbiddenSegmentsIndex index = new OrthogonalRouter.ForbiddenSegmentsIndex();
+    index.addAll(Arrays.asList(
+        new Segment(new Vector(0, 0), new Vector(100, 0)),
+        new Segment(new Vector(200, 0), new Vector(200, 100))));
+    return index;
+  }
+
+  private List<Vector> path(int... coords) {
+    List<Vector> result = new ArrayList<>();
+    for (int i = 0; i < coords.length; i += 2) {
+      result.add(new Vector(coords[i], coords[i + 1]));
+    }
+    return result;
+  }
+
+  private DiagramView createView() {
+    DiagramView result = new DiagramView();
+    new ViewContainer().root().children().add(result);
+    return result;
+  }
+
+  private View addPort(DiagramView diagramView) {
+    View port = new RectView();
+    diagramView.children().add(port);
+    return port;
+  }
+
+  private PolyLineConnection connect(DiagramView diagramView, View input, Vector from, Vector to) {
+    PolyLineConnection connection = new PolyLineConnection();
+    connection.fromView().set(input);
+    connection.toView().set(addPort(diagramView));
+    connection.update(from, to);
+    diagramView.connections.add(connection);
+    return connection;
+  }
+}
@@ -44,7 +44,7 @@ public final class Grammar {
     checkName(name);
 
     try {
-      Terminal result = new Terminal(this, name);
+      Terminal result = new Terminal(this, name, myTerminals.size());
       myTerminals.add(result);
       mySymbols.put(name, result);
       return result;
@@ -56,7 +56,7 @@ public final class Grammar {
   public NonTerminal newNonTerminal(String name) {
     checkName(name);
 
-    NonTerminal result = new NonTerminal(this, name);
+    NonTerminal result = new NonTerminal(this, name, myNonTerminals.size());
     myNonTerminals.add(result);
     mySymbols.put(name, result);
 
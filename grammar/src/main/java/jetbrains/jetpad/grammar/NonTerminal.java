@@ -19,9 +19,18 @@ import java.util.*;
 
 public class NonTerminal extends Symbol {
   private Set<Rule> myRules = new LinkedHashSet<>();
+  private int myIndex;
 
-  NonTerminal(Grammar grammar, String name) {
+  NonTerminal(Grammar grammar, String name, int index) {
     super(grammar, name);
+    myIndex = index;
+  }
+
+  /**
+   * Position of this non terminal in {@link Grammar#getNonTerminals()}
+   */
+  public int getIndex() {
+    return myIndex;
   }
 
   void addRule(Rule rule) {
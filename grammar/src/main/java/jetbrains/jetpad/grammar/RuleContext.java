@@ -18,6 +18,11 @@ package jetbrains.jetpad.grammar;
 
 import com.google.common.collect.Range;
 
+/**
+ * Values and range of a reduced rule. A context is valid only during the {@link RuleHandler#handle(RuleContext)} call:
+ * parsers reuse it for the following reductions, so a handler should copy the values it needs instead of keeping
+ * the context.
+ */
 public interface RuleContext {
   ParserParameters getParams();
   Object get(int index);
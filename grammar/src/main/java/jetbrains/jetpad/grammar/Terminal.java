@@ -16,7 +16,17 @@
 package jetbrains.jetpad.grammar;
 
 public class Terminal extends Symbol {
-  Terminal(Grammar grammar, String name) {
+  private int myIndex;
+
+  Terminal(Grammar grammar, String name, int index) {
     super(grammar, name);
+    myIndex = index;
+  }
+
+  /**
+   * Position of this terminal in {@link Grammar#getTerminals()}
+   */
+  public int getIndex() {
+    return myIndex;
   }
 }
\ No newline at end of file
@@ -22,11 +22,8 @@ import jetbrains.jetpad.grammar.parser.LRParserTable;
 
 import java.util.*;
 
-import static java.util.Collections.singleton;
-
 public abstract class BaseLRTableGenerator<ItemT extends LRItem<ItemT>> {
   private Grammar myGrammar;
-  private Map<Set<ItemT>, Set<ItemT>> myClosureCache = new HashMap<>();
 
   public BaseLRTableGenerator(Grammar grammar) {
     myGrammar = grammar;
@@ -38,42 +35,53 @@ public abstract class BaseLRTableGenerator<ItemT extends LRItem<ItemT>> {
 
   protected abstract void addFinal(LRState<ItemT> state, ItemT item);
 
+  protected void statesGenerated(List<LRState<ItemT>> states) {
+  }
+
   protected List<LRState<ItemT>> generateStates() {
     NonTerminal initial = grammar().getStart();
     if (initial.getRules().size() != 1) {
       throw new IllegalStateException("There should be one rule from inital non terminal");
     }
 
-    Map<Set<ItemT>, LRState<ItemT>> states = new LinkedHashMap<>();
-
-    int index = 0;
-    LRState<ItemT> init = new LRState<>(index++, closure(singleton(initialItem())));
-    Set<LRState<ItemT>> newItems = new LinkedHashSet<>();
-    newItems.add(init);
-    states.put(init.getItems(), init);
-
-    while (!newItems.isEmpty()) {
-      Set<LRState<ItemT>> items = newItems;
-      newItems = new LinkedHashSet<>();
-      for (LRState<ItemT> state : items) {
-        Set<ItemT> stateItems = state.getItems();
-        Map<Symbol, Set<ItemT>> splitSets = splitSet(stateItems);
-        for (Map.Entry<Symbol, Set<ItemT>> e : splitSets.entrySet()) {
-          Symbol s = e.getKey();
-          Set<ItemT> nextItems = getClosure(e.getValue());
-          LRState<ItemT> targetItem = states.get(nextItems);
-          if (targetItem == null) {
-            targetItem = new LRState<>(index++, nextItems);
-            states.put(nextItems, targetItem);
-            newItems.add(targetItem);
-          }
-          state.addTransition(new LRTransition<>(targetItem, s));
+    ItemIndex<ItemT> index = new ItemIndex<>(new ItemIndex.Closure<ItemT>() {
+      @Override
+      public void closure(Set<ItemT> result, ItemT item) {
+        BaseLRTableGenerator.this.closure(result, item);
+      }
+    });
+
+    Map<ItemIndex.ItemSet, LRState<ItemT>> statesByKernel = new HashMap<>();
+    List<LRState<ItemT>> states = new ArrayList<>();
+    List<int[]> stateItems = new ArrayList<>();
+
+    int[] initKernel = new int[] { index.id(initialItem()) };
+    int[] initItems = index.closure(initKernel);
+    LRState<ItemT> init = new LRState<>(0, index.toItems(initItems));
+    states.add(init);
+    stateItems.add(initItems);
+    statesByKernel.put(new ItemIndex.ItemSet(initKernel), init);
+
+    for (int i = 0; i < states.size(); i++) {
+      LRState<ItemT> state = states.get(i);
+      for (Map.Entry<Symbol, ItemIndex.IntList> e : splitSet(index, stateItems.get(i)).entrySet()) {
+        int[] kernel = e.getValue().toSortedArray();
+        ItemIndex.ItemSet key = new ItemIndex.ItemSet(kernel);
+        LRState<ItemT> target = statesByKernel.get(key);
+        if (target == null) {
+          int[] items = index.closure(kernel);
+          target = new LRState<>(states.size(), index.toItems(items));
+          states.add(target);
+          stateItems.add(items);
+          statesByKernel.put(key, target);
         }
-
+        state.addTransition(new LRTransition<>(target, e.getKey()));
       }
     }
 
-    for (LRState<ItemT> state : states.values()) {
+    statesGenerated(states);
+
+    for (LRState<ItemT> state : states) {
       for (ItemT item : state.getItems()) {
         if (item.isFinal()) {
           addFinal(state, item);
@@ -87,21 +95,22 @@ public abstract class BaseLRTableGenerator<ItemT extends LRItem<ItemT>> {
       }
     }
 
-    return new ArrayList<>(states.values());
+    return states;
   }
 
-  private Map<Symbol, Set<ItemT>> splitSet(Set<ItemT> items) {
-    Map<Symbol, Set<ItemT>> result = new HashMap<>();
-    for (ItemT item : items) {
+  private Map<Symbol, ItemIndex.IntList> splitSet(ItemIndex<ItemT> index, int[] items) {
+    Map<Symbol, ItemIndex.IntList> result = new LinkedHashMap<>();
+    for (int id : items) {
+      ItemT item = index.item(id);
       if (item.isFinal()) continue;
 
       Symbol symbol = item.getNextSymbol();
-      Set<ItemT> target = result.get(symbol);
+      ItemIndex.IntList target = result.get(symbol);
       if (target == null) {
-        target = new HashSet<>();
+        target = new ItemIndex.IntList();
         result.put(symbol, target);
       }
-      target.add(item.getNextItem());
+      target.add(index.next(id));
     }
     return result;
   }
@@ -161,31 +170,6 @@ public abstract class BaseLRTableGenerator<ItemT extends LRItem<ItemT>> {
     return result;
   }
 
-  private Set<ItemT> getClosure(Set<ItemT> items) {
-    Set<ItemT> result = myClosureCache.get(items);
-    if (result != null) {
-      return result;
-    }
-    result = closure(items);
-    myClosureCache.put(items, result);
-    return result;
-  }
-
-  private Set<ItemT> closure(Set<ItemT> items) {
-    Set<ItemT> result = new LinkedHashSet<>();
-    result.addAll(items);
-    boolean hasChanges = true;
-    while (hasChanges) {
-      hasChanges = false;
-      for (ItemT item : new ArrayList<>(result)) {
-        if (closure(result, item)) {
-          hasChanges = true;
-        }
-      }
-    }
-    return result;
-  }
-
   protected Grammar grammar() {
     return myGrammar;
   }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.base;
+
+import java.util.*;
+
+/**
+ * Interns items of a table generator and gives them dense ids in the order of discovery.
+ * Item sets are represented as sorted arrays of ids.
+ *
+ * Closure distributes over union, so the closure of an item set is the union of its items and the closures
+ * of the items directly derived from each of them. Many kernel items derive the same items (e.g. all the items
+ * with the dot before the same non terminal and the same lookahead), so these closures are computed once
+ * with a worklist and shared.
+ */
+class ItemIndex<ItemT extends LRItem<ItemT>> {
+  private static final int[] NOT_COMPUTED = new int[0];
+
+  private final Closure<ItemT> myClosure;
+  private final Map<ItemT, Integer> myIds = new HashMap<>();
+  private final List<ItemT> myItems = new ArrayList<>();
+  private final List<int[]> myDerived = new ArrayList<>();
+  private final Map<ItemSet, int[]> myDerivedClosures = new HashMap<>();
+  private int[] myNext = new int[16];
+
+  private int[] myMarks = new int[16];
+  private int myMark;
+
+  ItemIndex(Closure<ItemT> closure) {
+    myClosure = closure;
+  }
+
+  int id(ItemT item) {
+    Integer id = myIds.get(item);
+    if (id != null) return id;
+
+    int result = myItems.size();
+    myIds.put(item, result);
+    myItems.add(item);
+    myDerived.add(NOT_COMPUTED);
+    if (result == myNext.length) {
+      myNext = Arrays.copyOf(myNext, result * 2);
+      myMarks = Arrays.copyOf(myMarks, result * 2);
+    }
+    myNext[result] = -1;
+    return result;
+  }
+
+  ItemT item(int id) {
+    return myItems.get(id);
+  }
+
+  int next(int id) {
+    if (myNext[id] == -1) {
+      int next = id(myItems.get(id).getNextItem());
+      myNext[id] = next;
+    }
+    return myNext[id];
+  }
+
+  int[] closure(int[] kernel) {
+    List<int[]> parts = new ArrayList<>();
+    parts.add(kernel);
+    for (int k : kernel) {
+      int[] closure = derivedClosure(k);
+      if (closure.length > 0 && !parts.contains(closure)) {
+        parts.add(closure);
+      }
+    }
+
+    int mark = nextMark();
+    IntList result = new IntList();
+    for (int[] part : parts) {
+      for (int id : part) {
+        if (myMarks[id] != mark) {
+          myMarks[id] = mark;
+          result.add(id);
+        }
+      }
+    }
+    return result.toSortedArray();
+  }
+
+  Set<ItemT> toItems(int[] ids) {
+    Set<ItemT> result = new LinkedHashSet<>();
+    for (int id : ids) {
+      result.add(myItems.get(id));
+    }
+    return result;
+  }
+
+  private int[] derivedClosure(int id) {
+    int[] derived = derived(id);
+    if (derived.length == 0) return derived;
+
+    ItemSet key = new ItemSet(derived);
+    int[] result = myDerivedClosures.get(key);
+    if (result != null) return result;
+
+    int mark = nextMark();
+    IntList items = new IntList();
+    for (int d : derived) {
+      myMarks[d] = mark;
+      items.add(d);
+    }
+    for (int i = 0; i < items.size(); i++) {
+      for (int d : derived(items.get(i))) {
+        if (myMarks[d] != mark) {
+          myMarks[d] = mark;
+          items.add(d);
+        }
+      }
+    }
+
+    result = items.toSortedArray();
+    myDerivedClosures.put(key, result);
+    return result;
+  }
+
+  private int[] derived(int id) {
+    int[] result = myDerived.get(id);
+    if (result != NOT_COMPUTED) return result;
+
+    ItemT item = myItems.get(id);
+    Set<ItemT> items = new LinkedHashSet<>();
+    items.add(item);
+    myClosure.closure(items, item);
+
+    IntList ids = new IntList();
+    for (ItemT derived : items) {
+      if (derived != item) {
+        ids.add(id(derived));
+      }
+    }
+    result = ids.toSortedArray();
+    myDerived.set(id, result);
+    return result;
+  }
+
+  private int nextMark() {
+    return ++myMark;
+  }
+
+  interface Closure<ItemT> {
+    void closure(Set<ItemT> result, ItemT item);
+  }
+
+  static final class IntList {
+    private int[] myData = new int[8];
+    private int mySize;
+
+    void add(int value) {
+      if (mySize == myData.length) {
+        myData = Arrays.copyOf(myData, mySize * 2);
+      }
+      myData[mySize++] = value;
+    }
+
+    int get(int index) {
+      return myData[index];
+    }
+
+    int size() {
+      return mySize;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(myData, mySize);
+    }
+
+    int[] toSortedArray() {
+      int[] result = toArray();
+      Arrays.sort(result);
+      return result;
+    }
+  }
+
+  static final class ItemSet {
+    private final int[] myIds;
+    private final int myHashCode;
+
+    ItemSet(int[] ids) {
+      myIds = ids;
+      myHashCode = Arrays.hashCode(ids);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ItemSet)) return false;
+      return Arrays.equals(myIds, ((ItemSet) obj).myIds);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+}
@@ -28,6 +28,7 @@ public class LRState<ItemT extends LRItem<ItemT>> {
   private Map<Symbol, Set<LRActionRecord<ItemT>>> myActionRecords = new HashMap<>();
 
   private Set<LRTransition<ItemT>> myTransitions = new LinkedHashSet<>();
+  private Map<Symbol, LRState<ItemT>> myTargets = new HashMap<>();
 
   LRState(int number, Set<ItemT> items) {
     myNumber = number;
@@ -103,14 +104,13 @@ public class LRState<ItemT extends LRItem<ItemT>> {
   }
 
   public LRState<ItemT> getState(Symbol symbol) {
-    for (LRTransition<ItemT> t : myTransitions) {
-      if (t.getSymbol() == symbol) return t.getTarget();
-    }
-    return null;
+    return myTargets.get(symbol);
   }
 
   public void addTransition(LRTransition<ItemT> t) {
-    myTransitions.add(t);
+    if (myTransitions.add(t) && !myTargets.containsKey(t.getSymbol())) {
+      myTargets.put(t.getSymbol(), t.getTarget());
+    }
   }
 
   public void addRecord(Symbol s, LRActionRecord<ItemT> rec) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.io;
+
+import jetbrains.jetpad.grammar.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hash of a grammar which is stable between runs. It covers everything a parser table depends on:
+ * terminals and non terminals in the order of declaration, rules with their symbols, priorities and associativity.
+ * Rule handlers don't affect tables and are ignored.
+ */
+public class GrammarFingerprint {
+  public static String of(Grammar grammar) {
+    StringBuilder text = new StringBuilder();
+    for (Terminal t : grammar.getTerminals()) {
+      append(text.append('T'), t);
+    }
+    for (NonTerminal nt : grammar.getNonTerminals()) {
+      append(text.append('N'), nt);
+    }
+    for (Rule rule : grammar.getRules()) {
+      text.append('R').append(rule.getHead().getIndex());
+      for (Symbol s : rule.getSymbols()) {
+        if (s instanceof Terminal) {
+          text.append(" t").append(((Terminal) s).getIndex());
+        } else {
+          text.append(" n").append(((NonTerminal) s).getIndex());
+        }
+      }
+      text.append(" p").append(rule.getPriority()).append(" a").append(rule.getAssociativity()).append(';');
+    }
+
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    StringBuilder result = new StringBuilder();
+    for (byte b : hash) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  private static void append(StringBuilder text, Symbol symbol) {
+    String name = symbol.toString();
+    text.append(name.length()).append(':').append(name).append(';');
+  }
+
+  private GrammarFingerprint() {
+  }
+}
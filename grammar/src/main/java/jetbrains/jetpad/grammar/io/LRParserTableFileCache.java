@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.io;
+
+import jetbrains.jetpad.grammar.Grammar;
+import jetbrains.jetpad.grammar.parser.CompiledLRParserTable;
+import jetbrains.jetpad.grammar.parser.LRParserTableCache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps tables in {@link LRParserTableFiles} under a directory. A file is named after the generator and
+ * the {@link GrammarFingerprint} of the grammar, so a changed grammar never picks up a stale table.
+ *
+ * The cache is best effort: unreadable files are treated as missing and failed writes are ignored.
+ * Files are written to a temporary file and renamed, so concurrent processes never see a partially written table.
+ */
+public class LRParserTableFileCache implements LRParserTableCache {
+  private final File myDirectory;
+
+  public LRParserTableFileCache(File directory) {
+    myDirectory = directory;
+  }
+
+  @Override
+  public CompiledLRParserTable get(Grammar grammar, String generator) {
+    File file = file(grammar, generator);
+    if (!file.isFile()) return null;
+
+    try {
+      return LRParserTableFiles.read(grammar, file);
+    } catch (IOException e) {
+      file.delete();
+      return null;
+    }
+  }
+
+  @Override
+  public void put(Grammar grammar, String generator, CompiledLRParserTable table) {
+    File file = file(grammar, generator);
+    File temp = null;
+    try {
+      if (!myDirectory.isDirectory() && !myDirectory.mkdirs()) return;
+      temp = File.createTempFile(file.getName(), ".tmp", myDirectory);
+      LRParserTableFiles.write(table, temp);
+      if (!temp.renameTo(file)) {
+        file.delete();
+        temp.renameTo(file);
+      }
+    } catch (IOException e) {
+      // the table will be generated again next time
+    } finally {
+      if (temp != null) {
+        temp.delete();
+      }
+    }
+  }
+
+  private File file(Grammar grammar, String generator) {
+    return new File(myDirectory, generator + "-" + GrammarFingerprint.of(grammar) + ".lrt");
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.io;
+
+import jetbrains.jetpad.grammar.Grammar;
+import jetbrains.jetpad.grammar.parser.CompiledLRParserTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary files with compiled parser tables. A file is the magic number followed by
+ * {@link CompiledLRParserTable#toArray()} as big endian ints. Files are read through a memory mapping.
+ */
+public class LRParserTableFiles {
+  private static final int MAGIC = 0x4a4c5254;
+
+  public static void write(CompiledLRParserTable table, File file) throws IOException {
+    int[] data = table.toArray();
+    ByteBuffer buffer = ByteBuffer.allocate(4 * (data.length + 1));
+    buffer.putInt(MAGIC);
+    buffer.asIntBuffer().put(data);
+    buffer.rewind();
+
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      FileChannel channel = out.getChannel();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  public static CompiledLRParserTable read(Grammar grammar, File file) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size < 4 || size % 4 != 0 || size > Integer.MAX_VALUE) {
+        throw new IOException("Not a parser table file: " + file);
+      }
+
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a parser table file: " + file);
+      }
+      IntBuffer ints = buffer.asIntBuffer();
+      int[] data = new int[ints.remaining()];
+      ints.get(data);
+
+      try {
+        return CompiledLRParserTable.fromArray(grammar, data);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Can't load parser table from " + file, e);
+      }
+    }
+  }
+
+  private LRParserTableFiles() {
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.lalr;
+
+import com.google.common.base.Function;
+import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.base.BaseLRTableGenerator;
+import jetbrains.jetpad.grammar.base.LRActionRecord;
+import jetbrains.jetpad.grammar.base.LRState;
+import jetbrains.jetpad.grammar.parser.LRParserAction;
+
+import java.util.*;
+
+/**
+ * LALR(1) table generator. It builds the LR(0) automaton and computes lookaheads of reductions from it
+ * with the DeRemer-Pennello algorithm:
+ *
+ * Read(p, A) = DR(p, A) + U { Read(r, C) | (p, A) reads (r, C) }
+ * Follow(p, A) = Read(p, A) + U { Follow(p', B) | (p, A) includes (p', B) }
+ * LA(q, A -> w) = U { Follow(p, A) | (q, A -> w) lookback (p, A) }
+ *
+ * where (p, A) are non terminal transitions of the automaton. Both set equations are solved with a single
+ * traversal of the corresponding relation which merges strongly connected components.
+ */
+public class LALRTableGenerator extends BaseLRTableGenerator<LALRItem> {
+  private List<Map<Rule, Set<Terminal>>> myLookAheads;
+
+  public LALRTableGenerator(Grammar grammar) {
+    super(grammar);
+  }
+
+  @Override
+  protected LALRItem initialItem() {
+    NonTerminal initial = grammar().getStart();
+    return new LALRItem(initial.getFirstRule(), 0);
+  }
+
+  @Override
+  protected void statesGenerated(List<LRState<LALRItem>> states) {
+    List<Map<NonTerminal, Transition>> transitions = new ArrayList<>();
+    List<Transition> allTransitions = new ArrayList<>();
+    for (LRState<LALRItem> state : states) {
+      Map<NonTerminal, Transition> stateTransitions = new HashMap<>();
+      for (NonTerminal nt : grammar().getNonTerminals()) {
+        LRState<LALRItem> target = state.getState(nt);
+        if (target != null) {
+          Transition t = new Transition(state, nt, target);
+          stateTransitions.put(nt, t);
+          allTransitions.add(t);
+        }
+      }
+      transitions.add(stateTransitions);
+    }
+
+    Rule startRule = grammar().getStart().getFirstRule();
+    for (Transition t : allTransitions) {
+      for (Terminal terminal : grammar().getTerminals()) {
+        if (t.target.getState(terminal) != null) {
+          t.lookAheads.add(terminal);
+        }
+      }
+      if (t.source == states.get(0) && t.symbol == startRule.getSymbols().get(0)) {
+        t.lookAheads.add(grammar().getEnd());
+      }
+
+      Map<NonTerminal, Transition> targetTransitions = transitions.get(t.target.getNumber());
+      for (NonTerminal nt : targetTransitions.keySet()) {
+        if (nt.isNullable()) {
+          t.reads.add(targetTransitions.get(nt));
+        }
+      }
+    }
+
+    digraph(allTransitions, new Function<Transition, List<Transition>>() {
+      @Override
+      public List<Transition> apply(Transition t) {
+        return t.reads;
+      }
+    });
+
+    List<Map<Rule, List<Transition>>> lookbacks = new ArrayList<>();
+    for (int i = 0; i < states.size(); i++) {
+      lookbacks.add(new HashMap<Rule, List<Transition>>());
+    }
+    for (Transition t : allTransitions) {
+      for (Rule rule : t.symbol.getRules()) {
+        List<Symbol> symbols = rule.getSymbols();
+        LRState<LALRItem> state = t.source;
+        for (int i = 0; i < symbols.size(); i++) {
+          Symbol symbol = symbols.get(i);
+          if (symbol instanceof NonTerminal && isNullable(symbols.subList(i + 1, symbols.size()))) {
+            transitions.get(state.getNumber()).get(symbol).includes.add(t);
+          }
+          state = state.getState(symbol);
+        }
+
+        Map<Rule, List<Transition>> stateLookbacks = lookbacks.get(state.getNumber());
+        if (!stateLookbacks.containsKey(rule)) {
+          stateLookbacks.put(rule, new ArrayList<Transition>());
+        }
+        stateLookbacks.get(rule).add(t);
+      }
+    }
+
+    digraph(allTransitions, new Function<Transition, List<Transition>>() {
+      @Override
+      public List<Transition> apply(Transition t) {
+        return t.includes;
+      }
+    });
+
+    myLookAheads = new ArrayList<>();
+    for (Map<Rule, List<Transition>> stateLookbacks : lookbacks) {
+      Map<Rule, Set<Terminal>> stateLookAheads = new HashMap<>();
+      for (Map.Entry<Rule, List<Transition>> e : stateLookbacks.entrySet()) {
+        Set<Terminal> lookAheads = new LinkedHashSet<>();
+        for (Transition t : e.getValue()) {
+          lookAheads.addAll(t.lookAheads);
+        }
+        stateLookAheads.put(e.getKey(), lookAheads);
+      }
+      myLookAheads.add(stateLookAheads);
+    }
+  }
+
+  @Override
+  protected void addFinal(LRState<LALRItem> state, LALRItem item) {
+    if (item.getRule().getHead() == grammar().getStart()) {
+      state.addRecord(grammar().getEnd(), new LRActionRecord<>(item, LRParserAction.<LRState<LALRItem>>accept()));
+      return;
+    }
+
+    Set<Terminal> lookAheads = myLookAheads.get(state.getNumber()).get(item.getRule());
+    if (lookAheads == null) {
+      throw new IllegalStateException();
+    }
+    for (Terminal t : lookAheads) {
+      state.addRecord(t, new LRActionRecord<>(item, LRParserAction.<LRState<LALRItem>>reduce(item.getRule())));
+    }
+  }
+
+  @Override
+  protected boolean closure(Set<LALRItem> result, LALRItem item) {
+    if (item.isFinal()) return false;
+    if (!(item.getNextSymbol() instanceof NonTerminal)) return false;
+
+    boolean changed = false;
+    NonTerminal currentNonTerminal = (NonTerminal) item.getNextSymbol();
+    for (Rule rule : currentNonTerminal.getRules()) {
+      LALRItem newItem = new LALRItem(rule, 0);
+      if (result.add(newItem)) {
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private boolean isNullable(List<Symbol> symbols) {
+    for (Symbol s : symbols) {
+      if (!(s instanceof NonTerminal) || !((NonTerminal) s).isNullable()) return false;
+    }
+    return true;
+  }
+
+  private void digraph(List<Transition> transitions, Function<Transition, List<Transition>> relation) {
+    for (Transition t : transitions) {
+      t.lookAheads = new HashSet<>(t.lookAheads);
+      t.depth = 0;
+    }
+    Deque<Transition> stack = new ArrayDeque<>();
+    for (Transition t : transitions) {
+      if (t.depth == 0) {
+        traverse(t, stack, relation);
+      }
+    }
+  }
+
+  private void traverse(Transition t, Deque<Transition> stack, Function<Transition, List<Transition>> relation) {
+    stack.push(t);
+    int depth = stack.size();
+    t.depth = depth;
+    for (Transition related : relation.apply(t)) {
+      if (related.depth == 0) {
+        traverse(related, stack, relation);
+      }
+      t.depth = Math.min(t.depth, related.depth);
+      t.lookAheads.addAll(related.lookAheads);
+    }
+
+    if (t.depth == depth) {
+      Transition top;
+      do {
+        top = stack.pop();
+        top.depth = Integer.MAX_VALUE;
+        top.lookAheads = t.lookAheads;
+      } while (top != t);
+    }
+  }
+
+  private static class Transition {
+    final LRState<LALRItem> source;
+    final NonTerminal symbol;
+    final LRState<LALRItem> target;
+    final List<Transition> reads = new ArrayList<>();
+    final List<Transition> includes = new ArrayList<>();
+    Set<Terminal> lookAheads = new HashSet<>();
+    int depth;
+
+    Transition(LRState<LALRItem> source, NonTerminal symbol, LRState<LALRItem> target) {
+      this.source = source;
+      this.symbol = symbol;
+      this.target = target;
+    }
+  }
+}
\ No newline at end of file
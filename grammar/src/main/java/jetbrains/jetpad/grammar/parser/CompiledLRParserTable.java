@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import jetbrains.jetpad.grammar.Grammar;
+import jetbrains.jetpad.grammar.NonTerminal;
+import jetbrains.jetpad.grammar.Rule;
+import jetbrains.jetpad.grammar.Terminal;
+
+import java.util.*;
+
+/**
+ * Dense form of {@link LRParserTable}. States, terminals, non terminals and rules are numbered,
+ * actions and gotos are stored in int arrays indexed by state * symbolCount + symbol.
+ *
+ * An action is encoded as (target << 2 | kind), where target is a state for shift and a rule for reduce.
+ * A goto is a target state or -1.
+ *
+ * The table can be converted to a flat int array with {@link #toArray()} and restored with
+ * {@link #fromArray(Grammar, int[])} without running a table generator.
+ */
+public final class CompiledLRParserTable {
+  public static final int ERROR = 0;
+  public static final int SHIFT = 1;
+  public static final int REDUCE = 2;
+  public static final int ACCEPT = 3;
+
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 6;
+
+  public static int kind(int action) {
+    return action & 3;
+  }
+
+  public static int target(int action) {
+    return action >>> 2;
+  }
+
+  static CompiledLRParserTable compile(LRParserTable table) {
+    Grammar grammar = table.getGrammar();
+    List<Rule> rules = new ArrayList<>(grammar.getRules());
+    Map<Rule, Integer> ruleIndices = new HashMap<>();
+    for (int i = 0; i < rules.size(); i++) {
+      ruleIndices.put(rules.get(i), i);
+    }
+
+    List<LRParserState> states = new ArrayList<>();
+    states.add(table.getInitialState());
+    for (LRParserState state : table.getStates()) {
+      if (state != table.getInitialState()) {
+        states.add(state);
+      }
+    }
+    Map<LRParserState, Integer> stateIndices = new HashMap<>();
+    for (int i = 0; i < states.size(); i++) {
+      stateIndices.put(states.get(i), i);
+    }
+
+    int terminalCount = grammar.getTerminals().size();
+    int nonTerminalCount = grammar.getNonTerminals().size();
+    int[] actions = new int[states.size() * terminalCount];
+    int[] gotos = new int[states.size() * nonTerminalCount];
+    Arrays.fill(gotos, -1);
+
+    for (int i = 0; i < states.size(); i++) {
+      LRParserState state = states.get(i);
+      for (Map.Entry<Terminal, LRParserAction<LRParserState>> e : state.getActions().entrySet()) {
+        LRParserAction<LRParserState> action = e.getValue();
+        int encoded;
+        if (action instanceof LRParserAction.Shift) {
+          encoded = encode(SHIFT, stateIndices.get(((LRParserAction.Shift<LRParserState>) action).getState()));
+        } else if (action instanceof LRParserAction.Reduce) {
+          encoded = encode(REDUCE, ruleIndices.get(((LRParserAction.Reduce<LRParserState>) action).getRule()));
+        } else if (action instanceof LRParserAction.Accept) {
+          encoded = encode(ACCEPT, 0);
+        } else {
+          encoded = encode(ERROR, 0);
+        }
+        actions[i * terminalCount + e.getKey().getIndex()] = encoded;
+      }
+      for (Map.Entry<NonTerminal, LRParserState> e : state.getNextStates().entrySet()) {
+        gotos[i * nonTerminalCount + e.getKey().getIndex()] = stateIndices.get(e.getValue());
+      }
+    }
+
+    return new CompiledLRParserTable(grammar, states.size(), actions, gotos);
+  }
+
+  public static CompiledLRParserTable fromArray(Grammar grammar, int[] data) {
+    if (data.length < HEADER_SIZE || data[0] != FORMAT_VERSION) {
+      throw new IllegalArgumentException("Unsupported table format");
+    }
+
+    int terminalCount = data[1];
+    int nonTerminalCount = data[2];
+    int ruleCount = data[3];
+    int stateCount = data[4];
+    if (terminalCount != grammar.getTerminals().size() || nonTerminalCount != grammar.getNonTerminals().size()
+        || ruleCount != grammar.getRules().size()) {
+      throw new IllegalArgumentException("Table doesn't match the grammar");
+    }
+
+    long expectedLength = HEADER_SIZE + 2L * ruleCount + (long) stateCount * (terminalCount + nonTerminalCount);
+    if (stateCount < 1 || data.length != expectedLength || data[5] != data.length) {
+      throw new IllegalArgumentException("Table is corrupted");
+    }
+
+    int offset = HEADER_SIZE;
+    for (Rule rule : grammar.getRules()) {
+      if (data[offset++] != rule.getHead().getIndex() || data[offset++] != rule.getSymbols().size()) {
+        throw new IllegalArgumentException("Table doesn't match the grammar");
+      }
+    }
+
+    int[] actions = Arrays.copyOfRange(data, offset, offset + stateCount * terminalCount);
+    offset += actions.length;
+    int[] gotos = Arrays.copyOfRange(data, offset, offset + stateCount * nonTerminalCount);
+
+    for (int action : actions) {
+      int target = target(action);
+      boolean valid;
+      switch (kind(action)) {
+        case SHIFT:
+          valid = target < stateCount;
+          break;
+        case REDUCE:
+          valid = target < ruleCount;
+          break;
+        default:
+          valid = target == 0;
+      }
+      if (!valid) {
+        throw new IllegalArgumentException("Table is corrupted: invalid action " + action);
+      }
+    }
+    for (int target : gotos) {
+      if (target < -1 || target >= stateCount) {
+        throw new IllegalArgumentException("Table is corrupted: invalid goto " + target);
+      }
+    }
+
+    return new CompiledLRParserTable(grammar, stateCount, actions, gotos);
+  }
+
+  private static int encode(int kind, int target) {
+    return target << 2 | kind;
+  }
+
+  private final Grammar myGrammar;
+  private final int myStateCount;
+  private final int myTerminalCount;
+  private final int myNonTerminalCount;
+  private final int myEnd;
+  private final Rule[] myRules;
+  private final int[] myRuleHeads;
+  private final int[] myRuleLengths;
+  private final int[] myActions;
+  private final int[] myGotos;
+
+  private CompiledLRParserTable(Grammar grammar, int stateCount, int[] actions, int[] gotos) {
+    myGrammar = grammar;
+    myStateCount = stateCount;
+    myTerminalCount = grammar.getTerminals().size();
+    myNonTerminalCount = grammar.getNonTerminals().size();
+    myEnd = grammar.getEnd().getIndex();
+
+    myRules = grammar.getRules().toArray(new Rule[grammar.getRules().size()]);
+    myRuleHeads = new int[myRules.length];
+    myRuleLengths = new int[myRules.length];
+    for (int i = 0; i < myRules.length; i++) {
+      myRuleHeads[i] = myRules[i].getHead().getIndex();
+      myRuleLengths[i] = myRules[i].getSymbols().size();
+    }
+
+    myActions = actions;
+    myGotos = gotos;
+  }
+
+  public Grammar getGrammar() {
+    return myGrammar;
+  }
+
+  public int getInitialState() {
+    return 0;
+  }
+
+  public int getStateCount() {
+    return myStateCount;
+  }
+
+  public int getEnd() {
+    return myEnd;
+  }
+
+  public int getAction(int state, int terminal) {
+    return myActions[state * myTerminalCount + terminal];
+  }
+
+  public int getNextState(int state, int nonTerminal) {
+    int result = myGotos[state * myNonTerminalCount + nonTerminal];
+    if (result == -1) {
+      throw new IllegalStateException();
+    }
+    return result;
+  }
+
+  public Rule getRule(int rule) {
+    return myRules[rule];
+  }
+
+  public int getRuleHead(int rule) {
+    return myRuleHeads[rule];
+  }
+
+  public int getRuleLength(int rule) {
+    return myRuleLengths[rule];
+  }
+
+  public int[] toArray() {
+    int[] result = new int[HEADER_SIZE + 2 * myRules.length + myActions.length + myGotos.length];
+    result[0] = FORMAT_VERSION;
+    result[1] = myTerminalCount;
+    result[2] = myNonTerminalCount;
+    result[3] = myRules.length;
+    result[4] = myStateCount;
+    result[5] = result.length;
+
+    int offset = HEADER_SIZE;
+    for (int i = 0; i < myRules.length; i++) {
+      result[offset++] = myRuleHeads[i];
+      result[offset++] = myRuleLengths[i];
+    }
+    System.arraycopy(myActions, 0, result, offset, myActions.length);
+    offset += myActions.length;
+    System.arraycopy(myGotos, 0, result, offset, myGotos.length);
+    return result;
+  }
+}
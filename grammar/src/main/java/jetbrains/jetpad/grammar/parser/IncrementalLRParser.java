@@ -0,0 +1,341 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import jetbrains.jetpad.grammar.ParserParameters;
+import jetbrains.jetpad.grammar.Rule;
+import jetbrains.jetpad.grammar.RuleHandler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LR parser which remembers the parse tree of the previous input and reuses its subtrees when the next input
+ * differs from it only in a contiguous range of lexemes.
+ *
+ * A subtree of the previous parse is reused if it was started from the same LR state as the current one, and neither
+ * its lexemes nor the lookahead lexeme after it were changed. Under these conditions the parser would rebuild exactly
+ * the same subtree, so it's pushed onto the stack as a whole with a single goto. Only the subtrees which cover the
+ * damaged range are reduced again.
+ *
+ * If the input can't be parsed, the last successfully parsed tree is kept, so that typing through an invalid
+ * intermediate input doesn't lose it.
+ *
+ * By default rule handlers are invoked on every parse since their results may be mutable objects which can't be shared
+ * between parses. See {@link #setReuseValues(boolean)} for the handlers whose results can be shared.
+ */
+public class IncrementalLRParser {
+  private CompiledLRParserTable myTable;
+  private ParserParameters myParameters;
+
+  private int[] myTerminals = new int[0];
+  private Object[] myValues = new Object[0];
+  private TreeNode myTree;
+  private boolean myReuseValues;
+
+  public IncrementalLRParser(LRParserTable table) {
+    this(table, ParserParameters.EMPTY);
+  }
+
+  public IncrementalLRParser(LRParserTable table, ParserParameters params) {
+    this(table.compile(), params);
+  }
+
+  public IncrementalLRParser(CompiledLRParserTable table, ParserParameters params) {
+    myTable = table;
+    myParameters = params;
+  }
+
+  /**
+   * Makes the parser reuse the results of rule handlers for the subtrees whose lexemes are equal to the ones of
+   * the previous parse, so that the handlers are invoked only for the rules which cover the changed lexemes.
+   * It can be enabled only if the handlers return values which can be shared between parses, and which don't depend
+   * on the range of the rule context.
+   */
+  public void setReuseValues(boolean reuseValues) {
+    myReuseValues = reuseValues;
+  }
+
+  public Object parse(Lexeme... input) {
+    return parse(Arrays.asList(input));
+  }
+
+  public Object parse(List<Lexeme> input) {
+    return parse(input, new Function<Rule, RuleHandler>() {
+      @Override
+      public RuleHandler apply(Rule rule) {
+        return rule.getHandler();
+      }
+    });
+  }
+
+  public Object parse(List<Lexeme> input, Function<Rule, RuleHandler> handlerProvider) {
+    int[] terminals = new int[input.size()];
+    Object[] values = myReuseValues ? new Object[terminals.length] : null;
+    for (int i = 0; i < terminals.length; i++) {
+      Lexeme lexeme = input.get(i);
+      terminals[i] = lexeme.getTerminal().getIndex();
+      if (values != null) {
+        values[i] = lexeme.getValue();
+      }
+    }
+
+    TreeNode tree = parseTree(terminals);
+    if (tree == null) return null;
+
+    Evaluator evaluator = new Evaluator(input, handlerProvider);
+    if (values != null) {
+      evaluator.setUnchanged(myTerminals, myValues, terminals, values);
+    }
+    myTerminals = terminals;
+    myValues = values != null ? values : new Object[0];
+    myTree = tree;
+    return evaluator.evaluate(tree, 0);
+  }
+
+  public void reset() {
+    myTerminals = new int[0];
+    myValues = new Object[0];
+    myTree = null;
+  }
+
+  private TreeNode parseTree(int[] terminals) {
+    CompiledLRParserTable table = myTable;
+    Reuse reuse = myTree != null ? new Reuse(myTree, myTerminals, terminals) : null;
+
+    StackItem stack = new StackItem(table.getInitialState(), null, null);
+    int pos = 0;
+    while (true) {
+      int current = pos < terminals.length ? terminals[pos] : table.getEnd();
+      int state = stack.state;
+      int action = table.getAction(state, current);
+      switch (CompiledLRParserTable.kind(action)) {
+        case CompiledLRParserTable.SHIFT:
+          TreeNode reused = reuse != null ? reuse.find(pos, state) : null;
+          if (reused != null) {
+            stack = new StackItem(table.getNextState(state, table.getRuleHead(reused.rule)), reused, stack);
+            pos += reused.width;
+          } else {
+            stack = new StackItem(CompiledLRParserTable.target(action), new TreeNode(state), stack);
+            pos++;
+          }
+          break;
+
+        case CompiledLRParserTable.REDUCE:
+          int rule = CompiledLRParserTable.target(action);
+          TreeNode[] children = new TreeNode[table.getRuleLength(rule)];
+          for (int i = children.length - 1; i >= 0; i--) {
+            children[i] = stack.node;
+            stack = stack.next;
+          }
+          TreeNode node = new TreeNode(rule, children);
+          stack = new StackItem(table.getNextState(stack.state, table.getRuleHead(rule)), node, stack);
+          break;
+
+        case CompiledLRParserTable.ACCEPT:
+          return stack.node;
+
+        default:
+          return null;
+      }
+    }
+  }
+
+  private class Evaluator {
+    private final List<Lexeme> myInput;
+    private final Function<Rule, RuleHandler> myHandlerProvider;
+    private final LRRuleContext myRuleContext = new LRRuleContext(myParameters);
+    private Object[] myValues = new Object[32];
+    private int mySize;
+    private int myUnchangedPrefix;
+    private int myUnchangedSuffixStart = Integer.MAX_VALUE;
+
+    Evaluator(List<Lexeme> input, Function<Rule, RuleHandler> handlerProvider) {
+      myInput = input;
+      myHandlerProvider = handlerProvider;
+    }
+
+    /**
+     * Values of the subtrees which lie in the common prefix or suffix of the inputs are taken from the previous parse.
+     * Such subtrees were either reused by the parser or built anew and not evaluated yet.
+     */
+    void setUnchanged(int[] oldTerminals, Object[] oldValues, int[] newTerminals, Object[] newValues) {
+      if (oldValues.length != oldTerminals.length) return;
+
+      int maxCommon = Math.min(oldTerminals.length, newTerminals.length);
+      int prefix = 0;
+      while (prefix < maxCommon && isSame(oldTerminals, oldValues, prefix, newTerminals, newValues, prefix)) {
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < maxCommon - prefix && isSame(oldTerminals, oldValues, oldTerminals.length - 1 - suffix,
+          newTerminals, newValues, newTerminals.length - 1 - suffix)) {
+        suffix++;
+      }
+
+      myUnchangedPrefix = prefix;
+      myUnchangedSuffixStart = newTerminals.length - suffix;
+    }
+
+    private boolean isSame(int[] oldTerminals, Object[] oldValues, int oldIndex, int[] newTerminals, Object[] newValues, int newIndex) {
+      return oldTerminals[oldIndex] == newTerminals[newIndex] && Objects.equal(oldValues[oldIndex], newValues[newIndex]);
+    }
+
+    Object evaluate(TreeNode node, int start) {
+      if (node.isLeaf()) {
+        return myInput.get(start);
+      }
+      if (node.evaluated && node.width > 0
+          && (start + node.width <= myUnchangedPrefix || start >= myUnchangedSuffixStart)) {
+        return node.value;
+      }
+
+      int base = mySize;
+      int offset = start;
+      for (TreeNode child : node.children) {
+        Object value = evaluate(child, offset);
+        if (mySize == myValues.length) {
+          myValues = Arrays.copyOf(myValues, mySize * 2);
+        }
+        myValues[mySize++] = value;
+        offset += child.width;
+      }
+
+      myRuleContext.reset(myValues, base, node.children.length, start, start + node.width);
+      RuleHandler handler = myHandlerProvider.apply(myTable.getRule(node.rule));
+      Object result = handler != null ? handler.handle(myRuleContext) : myRuleContext.values();
+      mySize = base;
+      node.value = myReuseValues ? result : null;
+      node.evaluated = myReuseValues;
+      return result;
+    }
+  }
+
+  private static class TreeNode {
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+
+    final int rule;
+    final TreeNode[] children;
+    final int width;
+    final int startState;
+    Object value;
+    boolean evaluated;
+
+    TreeNode(int startState) {
+      rule = -1;
+      children = NO_CHILDREN;
+      width = 1;
+      this.startState = startState;
+    }
+
+    TreeNode(int rule, TreeNode[] children) {
+      this.rule = rule;
+      this.children = children;
+
+      int width = 0;
+      for (TreeNode child : children) {
+        width += child.width;
+      }
+      this.width = width;
+      startState = children.length > 0 ? children[0].startState : -1;
+    }
+
+    boolean isLeaf() {
+      return rule == -1;
+    }
+  }
+
+  private static class StackItem {
+    final int state;
+    final TreeNode node;
+    final StackItem next;
+
+    StackItem(int state, TreeNode node, StackItem next) {
+      this.state = state;
+      this.node = node;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Maps positions of the new input to the previous parse tree. The inputs are compared by terminals only,
+   * so the lexemes [0, prefix) and the last suffix lexemes together with the end of input are unchanged.
+   */
+  private static class Reuse {
+    private final TreeNode myTree;
+    private final int myPrefix;
+    private final int myOldSuffixStart;
+    private final int myNewSuffixStart;
+
+    Reuse(TreeNode tree, int[] oldInput, int[] newInput) {
+      myTree = tree;
+
+      int maxCommon = Math.min(oldInput.length, newInput.length);
+      int prefix = 0;
+      while (prefix < maxCommon && oldInput[prefix] == newInput[prefix]) {
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < maxCommon - prefix
+          && oldInput[oldInput.length - 1 - suffix] == newInput[newInput.length - 1 - suffix]) {
+        suffix++;
+      }
+
+      myPrefix = prefix;
+      myOldSuffixStart = oldInput.length - suffix;
+      myNewSuffixStart = newInput.length - suffix;
+    }
+
+    TreeNode find(int newPos, int state) {
+      int oldPos;
+      if (newPos < myPrefix) {
+        oldPos = newPos;
+      } else if (newPos >= myNewSuffixStart) {
+        oldPos = newPos - myNewSuffixStart + myOldSuffixStart;
+      } else {
+        return null;
+      }
+
+      TreeNode node = myTree;
+      int start = 0;
+      while (!node.isLeaf()) {
+        if (start == oldPos && node.startState == state && canReuse(start, node.width)) {
+          return node;
+        }
+
+        TreeNode next = null;
+        for (TreeNode child : node.children) {
+          if (start + child.width > oldPos) {
+            next = child;
+            break;
+          }
+          start += child.width;
+        }
+        if (next == null) return null;
+        node = next;
+      }
+      return null;
+    }
+
+    private boolean canReuse(int start, int width) {
+      if (width == 0) return false;
+      int lookahead = start + width;
+      return lookahead < myPrefix || start >= myOldSuffixStart;
+    }
+  }
+}
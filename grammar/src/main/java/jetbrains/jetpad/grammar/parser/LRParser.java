@@ -16,13 +16,19 @@
 package jetbrains.jetpad.grammar.parser;
 
 import com.google.common.base.Function;
-import com.google.common.collect.Range;
-import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.ParserParameters;
+import jetbrains.jetpad.grammar.Rule;
+import jetbrains.jetpad.grammar.RuleHandler;
+import jetbrains.jetpad.grammar.Terminal;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class LRParser {
-  private LRParserTable myTable;
+  private static final int INITIAL_STACK_SIZE = 32;
+
+  private CompiledLRParserTable myTable;
   private ParserParameters myParameters;
 
   public LRParser(LRParserTable table) {
@@ -30,6 +36,10 @@ public class LRParser {
   }
 
   public LRParser(LRParserTable table, ParserParameters params) {
+    this(table.compile(), params);
+  }
+
+  public LRParser(CompiledLRParserTable table, ParserParameters params) {
     myTable = table;
     myParameters = params;
   }
@@ -56,95 +66,60 @@ public class LRParser {
   }
 
   public Object parse(List<Lexeme> input, Function<Rule, RuleHandler> handlerProvider) {
-    Stack<ParseStackItem> stack = new Stack<>();
-    stack.push(new ParseStackItem(myTable.getInitialState(), -1, -1, null, null));
+    CompiledLRParserTable table = myTable;
+    LRRuleContext ruleContext = new LRRuleContext(myParameters);
+    ParseStack stack = new ParseStack();
+    stack.push(table.getInitialState(), -1, null);
+
+    int inputSize = input.size();
     int pos = 0;
     while (true) {
-      Lexeme lexeme = pos < input.size() ? input.get(pos) : null;
-      Terminal current = lexeme != null ? lexeme.getTerminal() : myTable.getGrammar().getEnd();
-      LRParserState state = stack.peek().state;
-      LRParserAction<LRParserState> action = state.getAction(current);
-      if (action instanceof LRParserAction.Shift) {
-        LRParserAction.Shift<LRParserState> shift = (LRParserAction.Shift<LRParserState>) action;
-        stack.push(new ParseStackItem(shift.getState(), pos, pos + 1, current, lexeme));
-        pos++;
-      } else if (action instanceof LRParserAction.Reduce) {
-        LRParserAction.Reduce<LRParserState> reduce = (LRParserAction.Reduce<LRParserState>) action;
-
-        List<Object> handlerInput = new ArrayList<>();
-        int startOffset = pos;
-        List<Symbol> symbols = reduce.getRule().getSymbols();
-        for (int i = 0; i < symbols.size(); i++) {
-          ParseStackItem top = stack.pop();
-          if (i == symbols.size() - 1) {
-            startOffset = top.start;
-          }
-          handlerInput.add(top.result);
-        }
-        Collections.reverse(handlerInput);
-
-        LRParserState nextState = stack.peek().state.getNextState(reduce.getRule().getHead());
-        RuleContext ruleContext = new MyRuleContext(Range.closed(startOffset, pos), handlerInput);
-        RuleHandler handler = handlerProvider.apply(reduce.getRule());
-        Object result = handler != null ? handler.handle(ruleContext) : handlerInput;
-
-        stack.push(new ParseStackItem(nextState, startOffset, pos, reduce.getRule().getHead(), result));
-      } else if (action instanceof LRParserAction.Accept) {
-        return stack.peek().result;
-      } else {
-        return null;
+      Lexeme lexeme = pos < inputSize ? input.get(pos) : null;
+      int current = lexeme != null ? lexeme.getTerminal().getIndex() : table.getEnd();
+      int action = table.getAction(stack.states[stack.top], current);
+      switch (CompiledLRParserTable.kind(action)) {
+        case CompiledLRParserTable.SHIFT:
+          stack.push(CompiledLRParserTable.target(action), pos, lexeme);
+          pos++;
+          break;
+
+        case CompiledLRParserTable.REDUCE:
+          int rule = CompiledLRParserTable.target(action);
+          int length = table.getRuleLength(rule);
+          stack.top -= length;
+          int startOffset = length > 0 ? stack.starts[stack.top + 1] : pos;
+
+          ruleContext.reset(stack.values, stack.top + 1, length, startOffset, pos);
+          RuleHandler handler = handlerProvider.apply(table.getRule(rule));
+          Object result = handler != null ? handler.handle(ruleContext) : ruleContext.values();
+
+          stack.push(table.getNextState(stack.states[stack.top], table.getRuleHead(rule)), startOffset, result);
+          break;
+
+        case CompiledLRParserTable.ACCEPT:
+          return stack.values[stack.top];
+
+        default:
+          return null;
       }
     }
   }
 
-  private class ParseStackItem {
-    final LRParserState state;
-    final int start;
-    final int end;
-    final Symbol symbol;
-    final Object result;
-
-    ParseStackItem(LRParserState state, int start, int end, Symbol symbol, Object result) {
-      this.state = state;
-      this.start = start;
-      this.end = end;
-      this.symbol = symbol;
-      this.result = result;
-    }
-  }
-
-  private class MyRuleContext implements RuleContext {
-    private List<Object> myValues;
-    private Range<Integer> myRange;
-
-    private MyRuleContext(Range<Integer> range, List<Object> values) {
-      myValues = values;
-      myRange = range;
-    }
-
-    @Override
-    public ParserParameters getParams() {
-      return myParameters;
-    }
-
-    @Override
-    public <ValueT> ValueT get(ParserParameter<ValueT> key) {
-      return myParameters.get(key);
-    }
-
-    @Override
-    public Object get(int index) {
-      return myValues.get(index);
-    }
-
-    @Override
-    public int getValueCount() {
-      return myValues.size();
-    }
-
-    @Override
-    public Range<Integer> getRange() {
-      return myRange;
+  private static class ParseStack {
+    int[] states = new int[INITIAL_STACK_SIZE];
+    int[] starts = new int[INITIAL_STACK_SIZE];
+    Object[] values = new Object[INITIAL_STACK_SIZE];
+    int top = -1;
+
+    void push(int state, int start, Object value) {
+      if (++top == states.length) {
+        states = Arrays.copyOf(states, top * 2);
+        starts = Arrays.copyOf(starts, top * 2);
+        values = Arrays.copyOf(values, top * 2);
+      }
+      states[top] = state;
+      starts[top] = start;
+      values[top] = value;
     }
   }
-}
\ No newline at end of file
+}
@@ -58,6 +58,14 @@ public class LRParserState {
     myNextStates.put(nonTerminal, state);
   }
 
+  Map<Terminal, LRParserAction<LRParserState>> getActions() {
+    return myActions;
+  }
+
+  Map<NonTerminal, LRParserState> getNextStates() {
+    return myNextStates;
+  }
+
   @Override
   public String toString() {
     return myName;
@@ -18,13 +18,14 @@ package jetbrains.jetpad.grammar.parser;
 import jetbrains.jetpad.grammar.Grammar;
 
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public final class LRParserTable {
   private Grammar myGrammar;
   private LRParserState myInitialState;
-  private Set<LRParserState> myStates = new HashSet<>();
+  private Set<LRParserState> myStates = new LinkedHashSet<>();
+  private CompiledLRParserTable myCompiled;
 
   public LRParserTable(Grammar grammar) {
     myGrammar = grammar;
@@ -46,6 +47,17 @@ public final class LRParserTable {
   public LRParserState newState(String name) {
     LRParserState result = new LRParserState(name);
     myStates.add(result);
+    myCompiled = null;
     return result;
   }
+
+  /**
+   * Compiled form is created once, so states shouldn't be modified after the table was compiled
+   */
+  public CompiledLRParserTable compile() {
+    if (myCompiled == null) {
+      myCompiled = CompiledLRParserTable.compile(this);
+    }
+    return myCompiled;
+  }
 }
\ No newline at end of file
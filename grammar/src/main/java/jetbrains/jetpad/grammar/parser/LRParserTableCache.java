@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import jetbrains.jetpad.grammar.Grammar;
+
+/**
+ * Storage for generated tables which outlives a grammar instance, so that tables of equal grammars are
+ * generated only once. Tables are looked up by grammar and the name of the generator which produced them.
+ */
+public interface LRParserTableCache {
+  /**
+   * @return table for an equal grammar or null if there is no such table
+   */
+  CompiledLRParserTable get(Grammar grammar, String generator);
+
+  void put(Grammar grammar, String generator, CompiledLRParserTable table);
+}
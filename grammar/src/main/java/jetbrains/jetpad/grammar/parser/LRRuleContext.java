@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import com.google.common.collect.Range;
+import jetbrains.jetpad.grammar.ParserParameter;
+import jetbrains.jetpad.grammar.ParserParameters;
+import jetbrains.jetpad.grammar.RuleContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rule context which is a window over a parser's value stack. It's reused between reductions,
+ * so a handler shouldn't keep it after it returns.
+ */
+class LRRuleContext implements RuleContext {
+  private ParserParameters myParameters;
+  private Object[] myValues;
+  private int myOffset;
+  private int myCount;
+  private int myStart;
+  private int myEnd;
+  private Range<Integer> myRange;
+
+  LRRuleContext(ParserParameters parameters) {
+    myParameters = parameters;
+  }
+
+  void reset(Object[] values, int offset, int count, int start, int end) {
+    myValues = values;
+    myOffset = offset;
+    myCount = count;
+    myStart = start;
+    myEnd = end;
+    myRange = null;
+  }
+
+  List<Object> values() {
+    List<Object> result = new ArrayList<>(myCount);
+    for (int i = 0; i < myCount; i++) {
+      result.add(myValues[myOffset + i]);
+    }
+    return result;
+  }
+
+  @Override
+  public ParserParameters getParams() {
+    return myParameters;
+  }
+
+  @Override
+  public <ValueT> ValueT get(ParserParameter<ValueT> key) {
+    return myParameters.get(key);
+  }
+
+  @Override
+  public Object get(int index) {
+    if (index < 0 || index >= myCount) {
+      throw new IndexOutOfBoundsException();
+    }
+    return myValues[myOffset + index];
+  }
+
+  @Override
+  public int getValueCount() {
+    return myCount;
+  }
+
+  @Override
+  public Range<Integer> getRange() {
+    if (myRange == null) {
+      myRange = Range.closed(myStart, myEnd);
+    }
+    return myRange;
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.base;
+
+import jetbrains.jetpad.grammar.Associativity;
+import jetbrains.jetpad.grammar.Grammar;
+import jetbrains.jetpad.grammar.NonTerminal;
+import jetbrains.jetpad.grammar.Symbol;
+import jetbrains.jetpad.grammar.Terminal;
+import jetbrains.jetpad.grammar.lalr.LALRTableGenerator;
+import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import jetbrains.jetpad.grammar.parser.LRParserAction;
+import jetbrains.jetpad.grammar.slr.SLRTableGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static jetbrains.jetpad.grammar.GrammarSugar.optional;
+import static jetbrains.jetpad.grammar.GrammarSugar.separated;
+import static jetbrains.jetpad.grammar.GrammarSugar.star;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares the states of BaseLRTableGenerator with the ones built by the straightforward algorithm
+ * which it replaced. Only the numbering of states may differ.
+ */
+public class BaseLRTableGeneratorTest {
+  @Test
+  public void grammarWithEmptyRules() {
+    Grammar g = new Grammar();
+    NonTerminal e = g.newNonTerminal("E");
+    NonTerminal ed = g.newNonTerminal("E'");
+    NonTerminal t = g.newNonTerminal("T");
+    NonTerminal td = g.newNonTerminal("T'");
+    NonTerminal f = g.newNonTerminal("F");
+
+    Terminal plus = g.newTerminal("+");
+    Terminal mul = g.newTerminal("*");
+    Terminal lp = g.newTerminal("(");
+    Terminal rp = g.newTerminal(")");
+    Terminal id = g.newTerminal("id");
+
+    g.newRule(g.getStart(), e);
+    g.newRule(e, t, ed);
+    g.newRule(ed, plus, t, ed);
+    g.newRule(ed);
+    g.newRule(t, f, td);
+    g.newRule(td, mul, f, td);
+    g.newRule(td);
+    g.newRule(f, lp, e, rp);
+    g.newRule(f, id);
+
+    assertSameAsReference(g);
+  }
+
+  @Test
+  public void grammarWithPriorities() {
+    Grammar g = new Grammar();
+    NonTerminal expr = g.newNonTerminal("E");
+    Terminal id = g.newTerminal("id");
+    Terminal number = g.newTerminal("int");
+    Terminal lp = g.newTerminal("(");
+    Terminal rp = g.newTerminal(")");
+
+    g.newRule(g.getStart(), expr);
+    g.newRule(expr, id);
+    g.newRule(expr, number);
+    g.newRule(expr, lp, expr, rp);
+
+    String[] binOps = { "+", "-", "*", "/", "^" };
+    for (int i = 0; i < binOps.length; i++) {
+      g.newRule(expr, expr, g.newTerminal(binOps[i]), expr)
+          .setPriority(i / 2)
+          .setAssociativity(i < 4 ? Associativity.LEFT : Associativity.RIGHT);
+    }
+    g.newRule(expr, g.newTerminal("!"), expr).setPriority(3);
+    g.newRule(expr, expr, g.newTerminal("++")).setPriority(4);
+
+    assertSameAsReference(g);
+  }
+
+  @Test
+  public void grammarWhichIsntSLR() {
+    Grammar g = new Grammar();
+    NonTerminal s = g.newNonTerminal("S");
+    NonTerminal l = g.newNonTerminal("L");
+    NonTerminal r = g.newNonTerminal("R");
+    Terminal eq = g.newTerminal("=");
+    Terminal deref = g.newTerminal("*");
+    Terminal id = g.newTerminal("id");
+
+    g.newRule(g.getStart(), s);
+    g.newRule(s, l, eq, r);
+    g.newRule(s, r);
+    g.newRule(l, deref, r);
+    g.newRule(l, id);
+    g.newRule(r, l);
+
+    assertSameAsReference(g);
+  }
+
+  @Test
+  public void grammarWithSugar() {
+    Grammar g = new Grammar();
+    NonTerminal statement = g.newNonTerminal("Statement");
+    NonTerminal expr = g.newNonTerminal("E");
+    Terminal id = g.newTerminal("id");
+    Terminal lp = g.newTerminal("(");
+    Terminal rp = g.newTerminal(")");
+    Terminal comma = g.newTerminal(",");
+    Terminal semicolon = g.newTerminal(";");
+    Terminal ret = g.newTerminal("return");
+
+    g.newRule(g.getStart(), star(statement));
+    g.newRule(statement, expr, semicolon);
+    g.newRule(statement, ret, optional(expr), semicolon);
+    g.newRule(expr, id);
+    g.newRule(expr, expr, lp, separated(expr, comma), rp);
+
+    assertSameAsReference(g);
+  }
+
+  private void assertSameAsReference(Grammar g) {
+    assertSameStates(new SLRTableGenerator(g));
+    assertSameStates(new LR1TableGenerator(g));
+    assertSameStates(new LALRTableGenerator(g));
+  }
+
+  private <ItemT extends LRItem<ItemT>> void assertSameStates(BaseLRTableGenerator<ItemT> generator) {
+    List<LRState<ItemT>> expected = referenceStates(generator);
+    List<LRState<ItemT>> actual = generator.generateStates();
+    assertEquals(expected.size(), actual.size());
+
+    Map<LRState<ItemT>, LRState<ItemT>> toActual = new LinkedHashMap<>();
+    toActual.put(expected.get(0), actual.get(0));
+    List<LRState<ItemT>> queue = new ArrayList<>(toActual.keySet());
+    for (int i = 0; i < queue.size(); i++) {
+      LRState<ItemT> state = queue.get(i);
+      LRState<ItemT> actualState = toActual.get(state);
+      assertEquals(state.getItems(), actualState.getItems());
+      assertEquals(state.getTransitions().size(), actualState.getTransitions().size());
+
+      for (LRTransition<ItemT> t : state.getTransitions()) {
+        LRState<ItemT> actualTarget = actualState.getState(t.getSymbol());
+        assertNotNull(actualTarget);
+        LRState<ItemT> mapped = toActual.get(t.getTarget());
+        if (mapped == null) {
+          toActual.put(t.getTarget(), actualTarget);
+          queue.add(t.getTarget());
+        } else {
+          assertSame(mapped, actualTarget);
+        }
+      }
+    }
+    assertEquals(expected.size(), new HashSet<>(toActual.values()).size());
+
+    for (Map.Entry<LRState<ItemT>, LRState<ItemT>> e : toActual.entrySet()) {
+      for (Symbol s : generator.grammar().getSymbols()) {
+        Set<LRParserAction<LRState<ItemT>>> expectedActions = new HashSet<>();
+        for (LRActionRecord<ItemT> rec : e.getKey().getRecords(s)) {
+          LRParserAction<LRState<ItemT>> action = rec.getAction();
+          if (action instanceof LRParserAction.Shift<?>) {
+            action = LRParserAction.shift(toActual.get(((LRParserAction.Shift<LRState<ItemT>>) action).getState()));
+          }
+          expectedActions.add(action);
+        }
+        assertEquals(expectedActions, actions(e.getValue(), s));
+      }
+    }
+  }
+
+  private <ItemT extends LRItem<ItemT>> Set<LRParserAction<LRState<ItemT>>> actions(LRState<ItemT> state, Symbol s) {
+    Set<LRParserAction<LRState<ItemT>>> result = new HashSet<>();
+    for (LRActionRecord<ItemT> rec : state.getRecords(s)) {
+      result.add(rec.getAction());
+    }
+    return result;
+  }
+
+  /**
+   * The state construction which BaseLRTableGenerator used before item ids and memoized closures
+   */
+  private <ItemT extends LRItem<ItemT>> List<LRState<ItemT>> referenceStates(BaseLRTableGenerator<ItemT> generator) {
+    Map<Set<ItemT>, LRState<ItemT>> states = new LinkedHashMap<>();
+
+    int index = 0;
+    Set<ItemT> initItems = new HashSet<>();
+    initItems.add(generator.initialItem());
+    LRState<ItemT> init = new LRState<>(index++, closure(generator, initItems));
+    Set<LRState<ItemT>> newItems = new LinkedHashSet<>();
+    newItems.add(init);
+    states.put(init.getItems(), init);
+
+    while (!newItems.isEmpty()) {
+      Set<LRState<ItemT>> items = newItems;
+      newItems = new LinkedHashSet<>();
+      for (LRState<ItemT> state : items) {
+        for (Map.Entry<Symbol, Set<ItemT>> e : splitSet(state.getItems()).entrySet()) {
+          Set<ItemT> nextItems = closure(generator, e.getValue());
+          LRState<ItemT> target = states.get(nextItems);
+          if (target == null) {
+            target = new LRState<>(index++, nextItems);
+            states.put(nextItems, target);
+            newItems.add(target);
+          }
+          state.addTransition(new LRTransition<>(target, e.getKey()));
+        }
+      }
+    }
+
+    List<LRState<ItemT>> result = new ArrayList<>(states.values());
+    generator.statesGenerated(result);
+
+    for (LRState<ItemT> state : result) {
+      for (ItemT item : state.getItems()) {
+        if (item.isFinal()) {
+          generator.addFinal(state, item);
+        } else {
+          Symbol s = item.getNextSymbol();
+          LRState<ItemT> nextState = state.getState(s);
+          if (nextState != null && s instanceof Terminal) {
+            state.addRecord(s, new LRActionRecord<>(item, LRParserAction.shift(nextState)));
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private <ItemT extends LRItem<ItemT>> Map<Symbol, Set<ItemT>> splitSet(Set<ItemT> items) {
+    Map<Symbol, Set<ItemT>> result = new HashMap<>();
+    for (ItemT item : items) {
+      if (item.isFinal()) continue;
+
+      Symbol symbol = item.getNextSymbol();
+      Set<ItemT> target = result.get(symbol);
+      if (target == null) {
+        target = new HashSet<>();
+        result.put(symbol, target);
+      }
+      target.add(item.getNextItem());
+    }
+    return result;
+  }
+
+  private <ItemT extends LRItem<ItemT>> Set<ItemT> closure(BaseLRTableGenerator<ItemT> generator, Set<ItemT> items) {
+    Set<ItemT> result = new LinkedHashSet<>();
+    result.addAll(items);
+    boolean hasChanges = true;
+    while (hasChanges) {
+      hasChanges = false;
+      for (ItemT item : new ArrayList<>(result)) {
+        if (generator.closure(result, item)) {
+          hasChanges = true;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.io;
+
+import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.parser.CompiledLRParserTable;
+import jetbrains.jetpad.grammar.slr.SLRTableGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LRParserTableFileCacheTest {
+  private static final String GENERATOR = "slr";
+
+  private static Grammar createGrammar(int plusPriority) {
+    Grammar g = new Grammar();
+    NonTerminal expr = g.newNonTerminal("E");
+    Terminal id = g.newTerminal("id");
+    Terminal plus = g.newTerminal("+");
+    Terminal mul = g.newTerminal("*");
+    g.newRule(g.getStart(), expr);
+    g.newRule(expr, expr, plus, expr).setPriority(plusPriority).setAssociativity(Associativity.LEFT);
+    g.newRule(expr, expr, mul, expr).setPriority(1).setAssociativity(Associativity.LEFT);
+    g.newRule(expr, id);
+    return g;
+  }
+
+  private File myDirectory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    myDirectory = File.createTempFile("tables", "");
+    myDirectory.delete();
+  }
+
+  @After
+  public void deleteDirectory() {
+    File[] files = myDirectory.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    myDirectory.delete();
+  }
+
+  @Test
+  public void fingerprintIsStable() {
+    assertEquals(GrammarFingerprint.of(createGrammar(0)), GrammarFingerprint.of(createGrammar(0)));
+    assertFalse(GrammarFingerprint.of(createGrammar(0)).equals(GrammarFingerprint.of(createGrammar(2))));
+
+    Grammar rightAssoc = createGrammar(0);
+    rightAssoc.getRules().toArray(new Rule[0])[1].setAssociativity(Associativity.RIGHT);
+    assertFalse(GrammarFingerprint.of(createGrammar(0)).equals(GrammarFingerprint.of(rightAssoc)));
+  }
+
+  @Test
+  public void tableReusedForEqualGrammar() {
+    Grammar grammar = createGrammar(0);
+    CompiledLRParserTable table = new SLRTableGenerator(grammar).generateTable().compile();
+    new LRParserTableFileCache(myDirectory).put(grammar, GENERATOR, table);
+
+    CompiledLRParserTable cached = new LRParserTableFileCache(myDirectory).get(createGrammar(0), GENERATOR);
+    assertNotNull(cached);
+    assertTrue(Arrays.equals(table.toArray(), cached.toArray()));
+  }
+
+  @Test
+  public void noTableForChangedGrammar() {
+    Grammar grammar = createGrammar(0);
+    LRParserTableFileCache cache = new LRParserTableFileCache(myDirectory);
+    cache.put(grammar, GENERATOR, new SLRTableGenerator(grammar).generateTable().compile());
+
+    assertNull(cache.get(createGrammar(2), GENERATOR));
+    assertNull(cache.get(grammar, "lr1"));
+  }
+
+  @Test
+  public void corruptedFileIgnored() throws IOException {
+    Grammar grammar = createGrammar(0);
+    LRParserTableFileCache cache = new LRParserTableFileCache(myDirectory);
+    cache.put(grammar, GENERATOR, new SLRTableGenerator(grammar).generateTable().compile());
+
+    File[] files = myDirectory.listFiles();
+    assertEquals(1, files.length);
+    try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+      file.setLength(file.length() - 4);
+    }
+
+    assertNull(cache.get(grammar, GENERATOR));
+    assertFalse(files[0].exists());
+  }
+}
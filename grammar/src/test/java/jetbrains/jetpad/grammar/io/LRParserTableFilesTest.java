@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.io;
+
+import jetbrains.jetpad.grammar.Grammar;
+import jetbrains.jetpad.grammar.NonTerminal;
+import jetbrains.jetpad.grammar.ParserParameters;
+import jetbrains.jetpad.grammar.Terminal;
+import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import jetbrains.jetpad.grammar.parser.CompiledLRParserTable;
+import jetbrains.jetpad.grammar.parser.LRParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LRParserTableFilesTest {
+  private static Grammar createGrammar() {
+    Grammar g = new Grammar();
+    NonTerminal list = g.newNonTerminal("L");
+    Terminal id = g.newTerminal("id");
+    Terminal comma = g.newTerminal(",");
+    g.newRule(g.getStart(), list);
+    g.newRule(list, list, comma, id);
+    g.newRule(list, id);
+    return g;
+  }
+
+  @Test
+  public void writeAndRead() throws IOException {
+    CompiledLRParserTable table = new LR1TableGenerator(createGrammar()).generateTable().compile();
+
+    File file = File.createTempFile("table", ".bin");
+    try {
+      LRParserTableFiles.write(table, file);
+
+      Grammar g = createGrammar();
+      CompiledLRParserTable restored = LRParserTableFiles.read(g, file);
+      assertTrue(Arrays.equals(table.toArray(), restored.toArray()));
+
+      Terminal id = g.getTerminals().toArray(new Terminal[0])[1];
+      Terminal comma = g.getTerminals().toArray(new Terminal[0])[2];
+      LRParser parser = new LRParser(restored, ParserParameters.EMPTY);
+      assertTrue(parser.parse(id, comma, id));
+      assertFalse(parser.parse(id, comma));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void tableForOtherGrammar() throws IOException {
+    File file = File.createTempFile("table", ".bin");
+    try {
+      LRParserTableFiles.write(new LR1TableGenerator(createGrammar()).generateTable().compile(), file);
+
+      Grammar other = createGrammar();
+      other.newTerminal("extra");
+      LRParserTableFiles.read(other, file);
+    } finally {
+      file.delete();
+    }
+  }
+}
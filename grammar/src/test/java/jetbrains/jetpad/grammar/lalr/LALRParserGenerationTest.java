@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.lalr;
+
+import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import jetbrains.jetpad.grammar.parser.LRParser;
+import jetbrains.jetpad.grammar.parser.LRParserTable;
+import jetbrains.jetpad.grammar.slr.SLRTableGenerator;
+import org.junit.Test;
+
+import static jetbrains.jetpad.grammar.GrammarSugar.star;
+import static jetbrains.jetpad.grammar.GrammarTestUtil.asTokens;
+import static org.junit.Assert.*;
+
+public class LALRParserGenerationTest extends BaseParserGenerationTest {
+  @Override
+  protected LRParserTable generateTable(Grammar g) {
+    return new LALRTableGenerator(g).generateTable();
+  }
+
+  @Test
+  public void grammarWhichIsNotSLR() {
+    Grammar g = new Grammar();
+    NonTerminal s = g.newNonTerminal("S");
+    NonTerminal l = g.newNonTerminal("L");
+    NonTerminal r = g.newNonTerminal("R");
+    Terminal eq = g.newTerminal("=");
+    Terminal deref = g.newTerminal("*");
+    Terminal id = g.newTerminal("id");
+
+    g.newRule(g.getStart(), s);
+    g.newRule(s, l, eq, r);
+    g.newRule(s, r);
+    g.newRule(l, deref, r);
+    g.newRule(l, id);
+    g.newRule(r, l);
+
+    try {
+      new SLRTableGenerator(g).generateTable();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    LRParser parser = new LRParser(generateTable(g));
+    assertTrue(parser.parse(id, eq, deref, id));
+    assertTrue(parser.parse(deref, deref, id));
+    assertFalse(parser.parse(id, eq, id, eq, id));
+  }
+
+  @Test
+  public void nullableSymbols() {
+    Grammar g = new Grammar();
+    NonTerminal list = g.newNonTerminal("L");
+    Terminal id = g.newTerminal("id");
+    Terminal comma = g.newTerminal(",");
+    g.newRule(g.getStart(), list);
+    g.newRule(list, star(id), comma, star(id));
+
+    LRParser lalr = new LRParser(generateTable(g));
+    LRParser lr1 = new LRParser(new LR1TableGenerator(g).generateTable());
+    Terminal[][] inputs = { {comma}, {id, comma}, {comma, id, id}, {id, id}, {id, comma, comma} };
+    for (Terminal[] input : inputs) {
+      assertEquals("" + lr1.parse(asTokens(input)), "" + lalr.parse(asTokens(input)));
+    }
+  }
+}
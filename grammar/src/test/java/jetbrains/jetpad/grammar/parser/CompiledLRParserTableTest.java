@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import org.junit.Test;
+
+import static jetbrains.jetpad.grammar.GrammarTestUtil.asTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompiledLRParserTableTest {
+  static Grammar createGrammar() {
+    Grammar g = new Grammar();
+    NonTerminal expr = g.newNonTerminal("E");
+    Terminal id = g.newTerminal("id");
+    Terminal plus = g.newTerminal("+");
+    Terminal mul = g.newTerminal("*");
+    g.newRule(g.getStart(), expr);
+    g.newRule(expr, expr, plus, expr).setPriority(0).setAssociativity(Associativity.LEFT);
+    g.newRule(expr, expr, mul, expr).setPriority(1).setAssociativity(Associativity.LEFT);
+    g.newRule(expr, id);
+    return g;
+  }
+
+  @Test
+  public void restoredFromArray() {
+    Grammar g = createGrammar();
+    CompiledLRParserTable table = new LR1TableGenerator(g).generateTable().compile();
+
+    Grammar other = createGrammar();
+    CompiledLRParserTable restored = CompiledLRParserTable.fromArray(other, table.toArray());
+    assertEquals(table.getStateCount(), restored.getStateCount());
+
+    Terminal id = terminal(other, "id");
+    Terminal plus = terminal(other, "+");
+    Terminal mul = terminal(other, "*");
+    LRParser parser = new LRParser(restored, ParserParameters.EMPTY);
+    assertEquals("[[id], +, [[id], *, [id]]]", "" + parser.parse(asTokens(id, plus, id, mul, id)));
+    assertNull(parser.parse(asTokens(id, plus)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void grammarMismatch() {
+    CompiledLRParserTable table = new LR1TableGenerator(createGrammar()).generateTable().compile();
+
+    Grammar other = createGrammar();
+    other.newRule(other.getStart(), other.newTerminal("extra"));
+    CompiledLRParserTable.fromArray(other, table.toArray());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidShiftTarget() {
+    Grammar g = createGrammar();
+    int[] data = new LR1TableGenerator(g).generateTable().compile().toArray();
+    int actionsStart = 6 + 2 * g.getRules().size();
+    for (int i = actionsStart; ; i++) {
+      if (CompiledLRParserTable.kind(data[i]) == CompiledLRParserTable.SHIFT) {
+        data[i] = 1000 << 2 | CompiledLRParserTable.SHIFT;
+        break;
+      }
+    }
+    CompiledLRParserTable.fromArray(createGrammar(), data);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidGoto() {
+    int[] data = new LR1TableGenerator(createGrammar()).generateTable().compile().toArray();
+    data[data.length - 1] = 1000;
+    CompiledLRParserTable.fromArray(createGrammar(), data);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncated() {
+    int[] data = new LR1TableGenerator(createGrammar()).generateTable().compile().toArray();
+    int[] truncated = new int[data.length - 1];
+    System.arraycopy(data, 0, truncated, 0, truncated.length);
+    truncated[5] = truncated.length;
+    CompiledLRParserTable.fromArray(createGrammar(), truncated);
+  }
+
+  static Terminal terminal(Grammar g, String name) {
+    for (Terminal t : g.getTerminals()) {
+      if (t.toString().equals(name)) return t;
+    }
+    throw new IllegalArgumentException(name);
+  }
+}
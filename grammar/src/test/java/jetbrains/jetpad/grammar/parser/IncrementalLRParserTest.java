@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.grammar.parser;
+
+import jetbrains.jetpad.grammar.*;
+import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import jetbrains.jetpad.grammar.slr.SLRTableGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static jetbrains.jetpad.grammar.GrammarSugar.star;
+import static jetbrains.jetpad.grammar.GrammarTestUtil.asTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalLRParserTest {
+  private final Grammar myGrammar = new Grammar();
+  private final NonTerminal myExpr = myGrammar.newNonTerminal("E");
+  private final Terminal myId = myGrammar.newTerminal("id");
+  private final Terminal myPlus = myGrammar.newTerminal("+");
+  private final Terminal myMul = myGrammar.newTerminal("*");
+  private final Terminal myLp = myGrammar.newTerminal("(");
+  private final Terminal myRp = myGrammar.newTerminal(")");
+
+  {
+    myGrammar.newRule(myGrammar.getStart(), myExpr);
+    myGrammar.newRule(myExpr, myExpr, myPlus, myExpr).setPriority(0).setAssociativity(Associativity.LEFT);
+    myGrammar.newRule(myExpr, myExpr, myMul, myExpr).setPriority(1).setAssociativity(Associativity.LEFT);
+    myGrammar.newRule(myExpr, myLp, myExpr, myRp);
+    myGrammar.newRule(myExpr, myId).setHandler(new RuleHandler() {
+      @Override
+      public Object handle(RuleContext ctx) {
+        return "id" + ctx.getRange().lowerEndpoint();
+      }
+    });
+  }
+
+  @Test
+  public void sameResultAsFullParse() {
+    LRParserTable table = new SLRTableGenerator(myGrammar).generateTable();
+    IncrementalLRParser incremental = new IncrementalLRParser(table);
+
+    List<Terminal> input = new ArrayList<>(Arrays.asList(myId, myPlus, myId, myMul, myId));
+    assertParsedAsFull(table, incremental, input);
+
+    input.addAll(Arrays.asList(myPlus, myId));
+    assertParsedAsFull(table, incremental, input);
+
+    input.addAll(0, Arrays.asList(myLp, myId, myPlus, myId, myRp, myMul));
+    assertParsedAsFull(table, incremental, input);
+
+    input.set(3, myMul);
+    assertParsedAsFull(table, incremental, input);
+
+    input.subList(0, 6).clear();
+    assertParsedAsFull(table, incremental, input);
+  }
+
+  @Test
+  public void lastValidTreeIsKept() {
+    LRParserTable table = new LR1TableGenerator(myGrammar).generateTable();
+    IncrementalLRParser incremental = new IncrementalLRParser(table);
+
+    assertParsedAsFull(table, incremental, Arrays.asList(myId, myPlus, myId));
+    assertNull(incremental.parse(asTokens(myId, myPlus)));
+    assertParsedAsFull(table, incremental, Arrays.asList(myId, myPlus, myId, myMul, myId));
+  }
+
+  @Test
+  public void randomEdits() {
+    for (LRParserTable table : Arrays.asList(
+        new SLRTableGenerator(myGrammar).generateTable(), new LR1TableGenerator(myGrammar).generateTable())) {
+      IncrementalLRParser incremental = new IncrementalLRParser(table);
+      Random random = new Random(239);
+      List<Terminal> alphabet = Arrays.asList(myId, myPlus, myMul, myLp, myRp);
+      List<Terminal> input = new ArrayList<>();
+      for (int i = 0; i < 500; i++) {
+        int pos = random.nextInt(input.size() + 1);
+        if (!input.isEmpty() && random.nextBoolean()) {
+          input.subList(pos == input.size() ? pos - 1 : pos, Math.min(input.size(), pos + 1 + random.nextInt(2))).clear();
+        } else {
+          input.add(pos, alphabet.get(random.nextInt(alphabet.size())));
+        }
+        assertParsedAsFull(table, incremental, input);
+      }
+    }
+  }
+
+  @Test
+  public void nullableRules() {
+    Grammar g = new Grammar();
+    NonTerminal list = g.newNonTerminal("L");
+    Terminal id = g.newTerminal("id");
+    Terminal comma = g.newTerminal(",");
+    g.newRule(g.getStart(), list);
+    g.newRule(list, star(id), comma, star(id));
+
+    LRParserTable table = new SLRTableGenerator(g).generateTable();
+    IncrementalLRParser incremental = new IncrementalLRParser(table);
+
+    assertParsedAsFull(table, incremental, Arrays.asList(id, id, comma, id));
+    assertParsedAsFull(table, incremental, Arrays.asList(comma, id));
+    assertParsedAsFull(table, incremental, Arrays.asList(id, comma, id, id));
+    assertParsedAsFull(table, incremental, Arrays.asList(id, comma));
+  }
+
+  @Test
+  public void valuesOfUnchangedSubtreesReused() {
+    Grammar g = new Grammar();
+    NonTerminal expr = g.newNonTerminal("E");
+    Terminal id = g.newTerminal("id");
+    Terminal plus = g.newTerminal("+");
+    final int[] handled = new int[1];
+    g.newRule(g.getStart(), expr);
+    g.newRule(expr, expr, plus, expr).setPriority(0).setAssociativity(Associativity.LEFT).setHandler(new RuleHandler() {
+      @Override
+      public Object handle(RuleContext ctx) {
+        handled[0]++;
+        return "(" + ctx.get(0) + "+" + ctx.get(2) + ")";
+      }
+    });
+    g.newRule(expr, id).setHandler(new RuleHandler() {
+      @Override
+      public Object handle(RuleContext ctx) {
+        handled[0]++;
+        return ((Lexeme) ctx.get(0)).getValue();
+      }
+    });
+
+    LRParserTable table = new SLRTableGenerator(g).generateTable();
+    IncrementalLRParser incremental = new IncrementalLRParser(table);
+    incremental.setReuseValues(true);
+
+    List<Lexeme> input = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      if (i > 0) {
+        input.add(new Lexeme(plus, "+"));
+      }
+      input.add(new Lexeme(id, "a" + i));
+    }
+    assertEquals(new LRParser(table).parse(input), incremental.parse(input));
+
+    input.set(input.size() - 1, new Lexeme(id, "b"));
+    Object expected = new LRParser(table).parse(input);
+    handled[0] = 0;
+    assertEquals(expected, incremental.parse(input));
+    assertEquals(2, handled[0]);
+
+    input.set(0, new Lexeme(id, "c"));
+    expected = new LRParser(table).parse(input);
+    handled[0] = 0;
+    assertEquals(expected, incremental.parse(input));
+    assertTrue(handled[0] < input.size());
+  }
+
+  private void assertParsedAsFull(LRParserTable table, IncrementalLRParser incremental, List<Terminal> input) {
+    Lexeme[] lexemes = asTokens(input.toArray(new Terminal[input.size()]));
+    assertEquals("" + input, "" + new LRParser(table).parse(lexemes), "" + incremental.parse(lexemes));
+  }
+}
@@ -511,9 +511,11 @@ abstract class BaseHybridSynchronizer<SourceT> implements Synchronizer, ToCellMa
       myValueCellToMapper.put(target, mapper);
 
       target.addTrait(new TokenCellTraits.TokenCellTrait(true) {
+        private final CellTrait[] myBaseTraits = new CellTrait[] { CompletionSupport.trait() };
+
         @Override
         protected CellTrait[] getBaseTraits(Cell cell) {
-          return new CellTrait[] { CompletionSupport.trait() };
+          return myBaseTraits;
         }
       });
 
@@ -75,13 +75,18 @@ class TextTokenCell extends TextCell {
 
   private CellTrait createTrait() {
     return new TokenCellTraits.TokenCellTrait(false) {
+      private CellTrait[] myBaseTraits;
+
       @Override
       protected CellTrait[] getBaseTraits(Cell cell) {
-        return new CellTrait[] {
-          new TokenCellTraits.LeftLeafTokenCellTrait(),
-          new TokenCellTraits.RightLeafTokenCellTrait(),
-          TextEditing.validTextEditing(myToken instanceof ErrorToken ? Predicates.<String>alwaysFalse() : Predicates.equalTo(myToken.text()), tokenTextColor(), false)
-        };
+        if (myBaseTraits == null) {
+          myBaseTraits = new CellTrait[] {
+            new TokenCellTraits.LeftLeafTokenCellTrait(),
+            new TokenCellTraits.RightLeafTokenCellTrait(),
+            TextEditing.validTextEditing(myToken instanceof ErrorToken ? Predicates.<String>alwaysFalse() : Predicates.equalTo(myToken.text()), tokenTextColor(), false)
+          };
+        }
+        return myBaseTraits;
       }
 
       @Override
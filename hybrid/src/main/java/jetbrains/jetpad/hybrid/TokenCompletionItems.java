@@ -20,7 +20,7 @@ import com.google.common.base.Predicate;
 import jetbrains.jetpad.base.Validators;
 import jetbrains.jetpad.completion.BaseCompletionItem;
 import jetbrains.jetpad.completion.CompletionItem;
-import jetbrains.jetpad.completion.SimpleCompletionItem;
+import jetbrains.jetpad.completion.KeyedSimpleCompletionItem;
 import jetbrains.jetpad.hybrid.parser.BoolValueToken;
 import jetbrains.jetpad.hybrid.parser.IdentifierToken;
 import jetbrains.jetpad.hybrid.parser.IntValueToken;
@@ -38,7 +38,7 @@ public class TokenCompletionItems {
   }
 
   public CompletionItem forToken(final Token token) {
-    return new SimpleCompletionItem(token.toString()) {
+    return new KeyedSimpleCompletionItem(token.toString()) {
       @Override
       public Runnable complete(String text) {
         return myTokenHandler.apply(token);
@@ -54,7 +54,7 @@ public class TokenCompletionItems {
   public List<CompletionItem> forToken(final Token token, String... matchingTexts) {
     List<CompletionItem> result = new ArrayList<>(Collections.singleton(forToken(token)));
     for (final String match : matchingTexts) {
-      result.add(new SimpleCompletionItem(match) {
+      result.add(new KeyedSimpleCompletionItem(match) {
         @Override
         public Runnable complete(String text) {
           return myTokenHandler.apply(token);
@@ -17,6 +17,8 @@ package jetbrains.jetpad.hybrid;
 
 import com.google.common.base.Objects;
 import jetbrains.jetpad.base.Registration;
+import jetbrains.jetpad.hybrid.parser.IncrementalParser;
+import jetbrains.jetpad.hybrid.parser.Parser;
 import jetbrains.jetpad.hybrid.parser.ParsingContext;
 import jetbrains.jetpad.hybrid.parser.Token;
 import jetbrains.jetpad.hybrid.parser.prettyprint.ParseNode;
@@ -40,6 +42,8 @@ class TokenListEditor<SourceT> {
   private List<Token> myPrintedTokens;
   private boolean myRestoringState;
   private Registration myChangeReg = Registration.EMPTY;
+  private Parser<SourceT> myParser;
+  private Parser<SourceT> myParserSession;
 
   final ObservableList<Token> tokens;
   final Property<SourceT> value = new ValueProperty<>();
@@ -134,12 +138,15 @@ class TokenListEditor<SourceT> {
       myChangeReg.remove();
       myChangeReg = Registration.EMPTY;
     } else {
+      //incremental parsing is limited to the LR parse tree of the session: parse results are model trees whose nodes
+      //belong to the previous value until it's replaced, so handlers build a new value from copied tokens, and it's
+      //reprinted as a whole to get the parse nodes and change sources of the new objects
       List<Token> toParse = new ArrayList<>();
       for (Token t : tokens) {
         toParse.add(t.copy());
       }
 
-      SourceT result = mySpec.get().getParser().parse(new ParsingContext(toParse));
+      SourceT result = parser().parse(new ParsingContext(toParse));
       if (result != null) {
         value.set(result);
         myValid.set(true);
@@ -155,6 +162,19 @@ class TokenListEditor<SourceT> {
     }
   }
 
+  private Parser<SourceT> parser() {
+    Parser<SourceT> parser = mySpec.get().getParser();
+    if (parser != myParser) {
+      myParser = parser;
+      if (parser instanceof IncrementalParser) {
+        myParserSession = ((IncrementalParser<SourceT>) parser).newSession();
+      } else {
+        myParserSession = parser;
+      }
+    }
+    return myParserSession;
+  }
+
   void reprintToTokens() {
     PrettyPrinterContext<? super SourceT> ctx = reprint();
     myValid.set(true);
@@ -226,5 +246,7 @@ class TokenListEditor<SourceT> {
   void dispose() {
     myChangeReg.remove();
     myChangeReg = Registration.EMPTY;
+    myParser = null;
+    myParserSession = null;
   }
 }
\ No newline at end of file
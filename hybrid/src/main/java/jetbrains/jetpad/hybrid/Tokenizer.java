@@ -104,7 +104,7 @@ class Tokenizer<SourceT> {
               }
             };
           }
-        }).get(CompletionParameters.EMPTY));
+        }).get(CompletionParameters.EMPTY), true);
 
     private TextMatchResult match(String text) {
       List<CompletionItem> basicMatches = completionItems.matches(text);
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.hybrid.parser;
+
+/**
+ * Parser which can reuse its previous parse when it's invoked on a slightly changed token list.
+ * Since it has to remember the previous parse, it creates a separate session for each client.
+ *
+ * Sessions reuse only the syntax structure of the previous parse. Each parse returns a new result, because results
+ * are usually model objects which can't be shared with the previous result while it's still in use.
+ */
+public interface IncrementalParser<ResultT> extends Parser<ResultT> {
+  Parser<ResultT> newSession();
+}
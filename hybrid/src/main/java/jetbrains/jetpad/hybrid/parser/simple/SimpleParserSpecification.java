@@ -21,8 +21,10 @@ import jetbrains.jetpad.base.Handler;
 import jetbrains.jetpad.grammar.*;
 import jetbrains.jetpad.grammar.base.BaseLRTableGenerator;
 import jetbrains.jetpad.grammar.lr1.LR1TableGenerator;
+import jetbrains.jetpad.grammar.parser.CompiledLRParserTable;
+import jetbrains.jetpad.grammar.parser.IncrementalLRParser;
 import jetbrains.jetpad.grammar.parser.LRParser;
-import jetbrains.jetpad.grammar.parser.LRParserTable;
+import jetbrains.jetpad.grammar.parser.LRParserTableCache;
 import jetbrains.jetpad.grammar.parser.Lexeme;
 import jetbrains.jetpad.grammar.slr.SLRTableGenerator;
 import jetbrains.jetpad.hybrid.parser.*;
@@ -44,6 +46,7 @@ public class SimpleParserSpecification<ExprT> {
   private Map<Predicate<Token>, Terminal> myCustomTokens = new HashMap<>();
 
   private boolean myUserFullLR;
+  private LRParserTableCache myTableCache;
 
   public SimpleParserSpecification() {
     this(false);
@@ -54,6 +57,11 @@ public class SimpleParserSpecification<ExprT> {
     myUserFullLR = userFullLR;
   }
 
+  public SimpleParserSpecification<ExprT> setTableCache(LRParserTableCache cache) {
+    myTableCache = cache;
+    return this;
+  }
+
   public SimpleParserSpecification<ExprT> addBinaryOperator(Token token, final BinaryExpressionFactory<ExprT> factory, int priority, boolean leftAssoc) {
     Terminal term = getOrDeclareTerminal(token);
     myGrammar.newRule(myExpr, myExpr, term, myExpr).setHandler(new RuleHandler() {
@@ -186,8 +194,19 @@ public class SimpleParserSpecification<ExprT> {
     return new Lexeme(terminal, token);
   }
 
-  private LRParserTable buildTable() {
-    return createGenerator().generateTable();
+  private CompiledLRParserTable buildTable() {
+    BaseLRTableGenerator<?> generator = createGenerator();
+    if (myTableCache == null) {
+      return generator.generateTable().compile();
+    }
+
+    String generatorName = generator.getClass().getName();
+    CompiledLRParserTable table = myTableCache.get(myGrammar, generatorName);
+    if (table == null) {
+      table = generator.generateTable().compile();
+      myTableCache.put(myGrammar, generatorName, table);
+    }
+    return table;
   }
 
   private BaseLRTableGenerator<?> createGenerator() {
@@ -205,16 +224,27 @@ public class SimpleParserSpecification<ExprT> {
   }
 
   public Function<ParserParameters, Parser<ExprT>> buildParameterizedParser() {
-    final LRParserTable table = buildTable();
+    final CompiledLRParserTable table = buildTable();
     return new Function<ParserParameters, Parser<ExprT>>() {
       @Override
       public Parser<ExprT> apply(final ParserParameters parserParameters) {
-        return new Parser<ExprT>() {
+        return new IncrementalParser<ExprT>() {
           @Override
           public ExprT parse(ParsingContext ctx) {
             LRParser parser = new LRParser(table, parserParameters);
             return (ExprT) parser.parse(toLexemes(ctx));
           }
+
+          @Override
+          public Parser<ExprT> newSession() {
+            final IncrementalLRParser parser = new IncrementalLRParser(table, parserParameters);
+            return new Parser<ExprT>() {
+              @Override
+              public ExprT parse(ParsingContext ctx) {
+                return (ExprT) parser.parse(toLexemes(ctx));
+              }
+            };
+          }
         };
       }
     };
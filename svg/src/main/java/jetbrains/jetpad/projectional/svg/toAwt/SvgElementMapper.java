@@ -58,8 +58,9 @@ class SvgElementMapper<SourceT extends SvgElement, TargetT extends SVGOMElement>
           public void onAttrSet(SvgAttributeEvent<Object> event) {
             if (event.getNewValue() == null) {
               getTarget().removeAttribute(event.getAttrSpec().toString());
+            } else {
+              getTarget().setAttribute(event.getAttrSpec().toString(), event.getNewValue().toString());
             }
-            getTarget().setAttribute(event.getAttrSpec().toString(), event.getNewValue().toString());
           }
         });
 
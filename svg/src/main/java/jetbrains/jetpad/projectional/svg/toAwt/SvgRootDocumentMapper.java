@@ -17,13 +17,20 @@ package jetbrains.jetpad.projectional.svg.toAwt;
 
 import jetbrains.jetpad.mapper.Mapper;
 import jetbrains.jetpad.mapper.MappingContext;
+import jetbrains.jetpad.projectional.svg.SvgAttributeSpec;
 import jetbrains.jetpad.projectional.svg.SvgSvgElement;
 import org.apache.batik.dom.svg.SVGDOMImplementation;
 import org.apache.batik.dom.svg.SVGOMDocument;
 import org.apache.batik.dom.svg.SVGOMSVGElement;
 import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.NamedNodeMap;
+
+import java.util.HashSet;
+import java.util.Set;
 
 public class SvgRootDocumentMapper extends Mapper<SvgSvgElement, SVGOMDocument> {
+  private static final String SHAPE_RENDERING = "shape-rendering";
+
   private static SVGOMDocument createDocument() {
     DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
     String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
@@ -34,7 +41,16 @@ public class SvgRootDocumentMapper extends Mapper<SvgSvgElement, SVGOMDocument>
   private SvgAwtPeer myPeer;
 
   public SvgRootDocumentMapper(SvgSvgElement source) {
-    super(source, createDocument());
+    this(source, createDocument());
+  }
+
+  /**
+   * Maps the element to a document of a detached mapper. Content of the previous root is replaced with
+   * DOM mutations, so that a dynamic Batik bridge built for the document updates its graphics nodes instead
+   * of building them again.
+   */
+  public SvgRootDocumentMapper(SvgSvgElement source, SVGOMDocument document) {
+    super(source, document);
   }
 
   @Override
@@ -47,11 +63,32 @@ public class SvgRootDocumentMapper extends Mapper<SvgSvgElement, SVGOMDocument>
     myPeer = new SvgAwtPeer();
     getSource().container().setPeer(myPeer);
 
-    myRootMapper = new SvgElementMapper<>(getSource(), (SVGOMSVGElement) getTarget().getDocumentElement(), getTarget(), myPeer);
-    getTarget().getDocumentElement().setAttribute("shape-rendering", "geometricPrecision");
+    SVGOMSVGElement root = (SVGOMSVGElement) getTarget().getDocumentElement();
+    clearPreviousRoot(root);
+    myRootMapper = new SvgElementMapper<>(getSource(), root, getTarget(), myPeer);
+    root.setAttribute(SHAPE_RENDERING, "geometricPrecision");
     myRootMapper.attachRoot();
   }
 
+  private void clearPreviousRoot(SVGOMSVGElement root) {
+    while (root.getFirstChild() != null) {
+      root.removeChild(root.getFirstChild());
+    }
+
+    Set<String> attributes = new HashSet<>();
+    for (SvgAttributeSpec<?> spec : getSource().getAttributeKeys()) {
+      attributes.add(spec.toString());
+    }
+    attributes.add(SHAPE_RENDERING);
+    NamedNodeMap targetAttributes = root.getAttributes();
+    for (int i = targetAttributes.getLength() - 1; i >= 0; i--) {
+      String name = targetAttributes.item(i).getNodeName();
+      if (!attributes.contains(name) && !name.startsWith("xmlns")) {
+        root.removeAttribute(name);
+      }
+    }
+  }
+
   @Override
   protected void onDetach() {
     myRootMapper.detachRoot();
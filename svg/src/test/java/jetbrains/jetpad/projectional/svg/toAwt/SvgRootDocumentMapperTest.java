@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.svg.toAwt;
+
+import jetbrains.jetpad.projectional.svg.SvgNodeContainer;
+import jetbrains.jetpad.projectional.svg.SvgRectElement;
+import jetbrains.jetpad.projectional.svg.SvgSvgElement;
+import org.apache.batik.dom.svg.SVGOMDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.*;
+
+public class SvgRootDocumentMapperTest {
+  private SvgSvgElement root;
+  private SvgNodeContainer container;
+  private SvgRootDocumentMapper mapper;
+
+  @Before
+  public void setUp() {
+    root = new SvgSvgElement(10, 20);
+    root.x().set(5.0);
+    root.children().add(new SvgRectElement(0, 0, 1, 1));
+    container = new SvgNodeContainer(root);
+    mapper = new SvgRootDocumentMapper(root);
+    mapper.attachRoot();
+  }
+
+  @Test
+  public void attributeRemoved() {
+    root.x().set(null);
+
+    assertFalse(documentElement().hasAttribute("x"));
+    assertEquals("10.0", documentElement().getAttribute("width"));
+  }
+
+  @Test
+  public void childrenUpdated() {
+    root.children().add(new SvgRectElement(1, 1, 1, 1));
+    assertEquals(2, documentElement().getChildNodes().getLength());
+
+    root.children().remove(0);
+    assertEquals(1, documentElement().getChildNodes().getLength());
+  }
+
+  @Test
+  public void documentReusedForNewRoot() {
+    SvgSvgElement newRoot = new SvgSvgElement(30, 40);
+    container.root().set(newRoot);
+
+    SVGOMDocument document = mapper.getTarget();
+    mapper.detachRoot();
+    mapper = new SvgRootDocumentMapper(newRoot, document);
+    mapper.attachRoot();
+
+    assertSame(document, mapper.getTarget());
+    assertEquals(0, documentElement().getChildNodes().getLength());
+    assertFalse(documentElement().hasAttribute("x"));
+    assertEquals("30.0", documentElement().getAttribute("width"));
+    assertEquals("geometricPrecision", documentElement().getAttribute("shape-rendering"));
+    assertNotNull(container.getPeer());
+  }
+
+  private Element documentElement() {
+    return mapper.getTarget().getDocumentElement();
+  }
+}
@@ -29,7 +29,7 @@ import jetbrains.jetpad.model.collections.list.ObservableList;
 import jetbrains.jetpad.model.composite.*;
 import jetbrains.jetpad.model.event.*;
 import jetbrains.jetpad.model.property.*;
-import jetbrains.jetpad.model.util.ListMap;
+import jetbrains.jetpad.projectional.base.OrdinalMap;
 import jetbrains.jetpad.values.Color;
 
 import java.util.*;
@@ -45,12 +45,15 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   public static final ViewPropertySpec<Color> BORDER_COLOR = new ViewPropertySpec<>("bordercolor", ViewPropertyKind.REPAINT, null);
   public static final ViewPropertySpec<Boolean> HAS_SHADOW = new ViewPropertySpec<>("hasShadow", ViewPropertyKind.REPAINT, false);
 
+  private static final int SPATIAL_INDEX_THRESHOLD = 64;
+
   private View myParent;
   private ObservableList<View> myChildren;
-  private ListMap<ViewPropertySpec<?>, Object> myProperties;
+  private OrdinalMap myProperties;
   private List<ViewTrait> myTraits;
   private Listeners<ViewListener> myListeners;
   private ViewContainer myContainer;
+  private ViewSpatialIndex mySpatialIndex;
 
   private boolean myValid;
   private int myBaseLine = 0;
@@ -62,6 +65,11 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   private int myDeltaX;
   private int myDeltaY;
   private int myDeltaListenersCount;
+  private int myRootDeltaX;
+  private int myRootDeltaY;
+  private boolean myRootDeltaValid;
+  private ReadableProperty<Vector> myToRootDelta;
+  private ReadableProperty<Rectangle> myBounds;
 
   public Property<Boolean> visible() {
     return getProp(VISIBLE);
@@ -271,8 +279,11 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   }
 
   <ValueT> ValueT get(ViewPropertySpec<ValueT> prop) {
-    if (myProperties != null && myProperties.containsKey(prop)) {
-      return (ValueT) myProperties.get(prop);
+    if (myProperties != null) {
+      int index = myProperties.indexOf(prop.ordinal());
+      if (index >= 0) {
+        return (ValueT) myProperties.valueAt(index);
+      }
     }
 
     if (myTraits != null) {
@@ -295,16 +306,16 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
 
     if (myProperties == null && value == null) return;
     if (myProperties == null) {
-      myProperties = new ListMap<>();
+      myProperties = new OrdinalMap();
     }
 
     if (value == null) {
-      myProperties.remove(prop);
+      myProperties.remove(prop.ordinal());
       if (myProperties.isEmpty()) {
         myProperties = null;
       }
     } else {
-      myProperties.put(prop, value);
+      myProperties.put(prop.ordinal(), value);
     }
 
     final ValueT newValue = get(prop);
@@ -466,6 +477,8 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
         localBounds(bounds.sub(toRootDelta().get()));
 
         if (!Objects.equal(oldBounds, bounds)) {
+          childBoundsChanged();
+
           final PropertyChangeEvent<Rectangle> event = new PropertyChangeEvent<>(oldBounds, bounds);
           fire(new ListenerCaller<ViewListener>() {
             @Override
@@ -500,18 +513,12 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   }
 
   protected ReadableProperty<Vector> toRootDelta() {
-    return new BaseReadableProperty<Vector>() {
+    if (myToRootDelta != null) return myToRootDelta;
+    return myToRootDelta = new BaseReadableProperty<Vector>() {
       @Override
       public Vector get() {
-        View current = View.this;
-        int x = 0;
-        int y = 0;
-        while (current != null) {
-          x += current.myDeltaX;
-          y += current.myDeltaY;
-          current = current.myParent;
-        }
-        return new Vector(x, y);
+        validateRootDelta();
+        return new Vector(myRootDeltaX, myRootDeltaY);
       }
 
       @Override
@@ -535,10 +542,11 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   }
 
   public ReadableProperty<Rectangle> bounds() {
-    return new BaseReadableProperty<Rectangle>() {
+    if (myBounds != null) return myBounds;
+    return myBounds = new BaseReadableProperty<Rectangle>() {
       @Override
       public Rectangle get() {
-        return localBounds().add(toRootDelta().get());
+        return new Rectangle(absX(), absY(), myWidth, myHeight);
       }
 
       @Override
@@ -563,10 +571,59 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
     };
   }
 
+  /**
+   * x coordinate of the origin of bounds(). Absolute position is cached, so unlike bounds() it doesn't allocate
+   */
+  public int absX() {
+    validateRootDelta();
+    return myX + myRootDeltaX;
+  }
+
+  /**
+   * y coordinate of the origin of bounds()
+   */
+  public int absY() {
+    validateRootDelta();
+    return myY + myRootDeltaY;
+  }
+
+  private void validateRootDelta() {
+    if (myRootDeltaValid) return;
+    if (myParent == null) {
+      myRootDeltaX = myDeltaX;
+      myRootDeltaY = myDeltaY;
+    } else {
+      myParent.validateRootDelta();
+      myRootDeltaX = myParent.myRootDeltaX + myDeltaX;
+      myRootDeltaY = myParent.myRootDeltaY + myDeltaY;
+    }
+    myRootDeltaValid = true;
+  }
+
+  // A view's root delta can be valid only if its parent's one is valid, so we stop at already invalid views
+  private void invalidateRootDelta() {
+    if (!myRootDeltaValid) return;
+    myRootDeltaValid = false;
+    if (myChildren == null) return;
+    for (View child : myChildren) {
+      child.invalidateRootDelta();
+    }
+  }
+
   private Rectangle localBounds() {
     return new Rectangle(myX, myY, myWidth, myHeight);
   }
 
+  Rectangle boundsInParent() {
+    return new Rectangle(myX + myDeltaX, myY + myDeltaY, myWidth, myHeight);
+  }
+
+  private void childBoundsChanged() {
+    if (myParent != null && myParent.mySpatialIndex != null) {
+      myParent.mySpatialIndex.update(this);
+    }
+  }
+
   private void localBounds(Rectangle r) {
     myX = r.origin.x;
     myY = r.origin.y;
@@ -579,7 +636,17 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
   }
 
   public View viewAt(Vector loc) {
-    List<View> children = children();
+    List<View> children;
+    if (myChildren != null && myChildren.size() >= SPATIAL_INDEX_THRESHOLD) {
+      if (mySpatialIndex == null) {
+        mySpatialIndex = new ViewSpatialIndex(this);
+      }
+      children = mySpatialIndex.candidates(loc);
+    } else {
+      mySpatialIndex = null;
+      children = children();
+    }
+
     for (int i = children.size() - 1; i >= 0; i--) {
       View child = children.get(i);
 
@@ -629,8 +696,7 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
    * This method should only be called during layout
    */
   public void moveTo(Vector to) {
-    Rectangle rect = bounds().get();
-    move(to.sub(rect.origin));
+    move(new Vector(to.x - absX(), to.y - absY()));
   }
 
   /**
@@ -641,6 +707,8 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
 
     myDeltaX += delta.x;
     myDeltaY += delta.y;
+    invalidateRootDelta();
+    childBoundsChanged();
 
     if (getParent() != null) {
       getParent().invalidate();
@@ -794,6 +862,10 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
     protected void beforeItemAdded(int index, View item) {
       invalidate();
       item.myParent = View.this;
+      item.invalidateRootDelta();
+      if (mySpatialIndex != null) {
+        mySpatialIndex.add(item);
+      }
       if (isAttached()) {
         item.attach(myContainer);
       }
@@ -816,8 +888,12 @@ public abstract class View implements NavComposite<View>, HasFocusability, HasVi
       if (isAttached()) {
         item.detach();
       }
+      if (mySpatialIndex != null) {
+        mySpatialIndex.remove(item);
+      }
       final View oldParent = item.myParent;
       item.myParent = null;
+      item.invalidateRootDelta();
       item.fire(new ListenerCaller<ViewListener>() {
         @Override
         public void call(ViewListener l) {
@@ -75,6 +75,18 @@ public class ViewContainer {
     return myPeer.visibleRect();
   }
 
+  /**
+   * Peers call this method when the area returned by visibleRect() changes, e.g. when the container is scrolled
+   */
+  public void visibleRectChanged() {
+    myListeners.fire(new ListenerCaller<ViewContainerListener>() {
+      @Override
+      public void call(ViewContainerListener l) {
+        l.onVisibleRectChanged();
+      }
+    });
+  }
+
   public void setPeer(ViewContainerPeer peer) {
     myPeer.detach();
     myPeer = peer;
@@ -311,10 +323,13 @@ public class ViewContainer {
     @Override
     public void validate() {
       super.validate();
-      for (Runnable r : myOnValidate) {
+      if (myOnValidate.isEmpty()) return;
+
+      List<Runnable> onValidate = new ArrayList<>(myOnValidate);
+      myOnValidate.clear();
+      for (Runnable r : onValidate) {
         r.run();
       }
-      myOnValidate.clear();
 
     }
 
@@ -37,4 +37,8 @@ public class ViewContainerAdapter implements ViewContainerListener {
   @Override
   public void onViewDetached(View view) {
   }
+
+  @Override
+  public void onVisibleRectChanged() {
+  }
 }
\ No newline at end of file
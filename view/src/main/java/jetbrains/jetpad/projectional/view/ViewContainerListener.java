@@ -24,4 +24,6 @@ public interface ViewContainerListener {
   void onPropertySet(View view, ViewPropertySpec<?> prop, PropertyChangeEvent<?> event);
   void onViewAttached(View view);
   void onViewDetached(View view);
+
+  void onVisibleRectChanged();
 }
\ No newline at end of file
@@ -16,6 +16,13 @@
 package jetbrains.jetpad.projectional.view;
 
 public class ViewPropertySpec<ValueT> {
+  private static int ourSpecCount;
+
+  private static synchronized int nextOrdinal() {
+    return ourSpecCount++;
+  }
+
+  private final int myOrdinal = nextOrdinal();
   private String myName;
   private ValueT myDefaultValue;
   private ViewPropertyKind myKind;
@@ -43,6 +50,13 @@ public class ViewPropertySpec<ValueT> {
     return myKind;
   }
 
+  /**
+   * Dense index of the spec among all created specs, views store their property values by it
+   */
+  int ordinal() {
+    return myOrdinal;
+  }
+
   @Override
   public String toString() {
     return myName;
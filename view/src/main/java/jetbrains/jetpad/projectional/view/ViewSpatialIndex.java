@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view;
+
+import jetbrains.jetpad.geometry.Rectangle;
+import jetbrains.jetpad.geometry.Vector;
+
+import java.util.*;
+
+/**
+ * Uniform grid over the children of a view which finds children that may contain a point without scanning
+ * all of them. Children are indexed by bounds relative to their parent's offset, so moving the parent or
+ * its ancestors doesn't change the index.
+ *
+ * Children which span too many cells are kept in a separate list and are always returned as candidates.
+ * Candidates are returned in the order of children, i.e. from bottom to top.
+ */
+class ViewSpatialIndex {
+  private static final int CELL_SIZE = 128;
+  private static final int MAX_CELLS = 64;
+
+  private static int cell(int coord) {
+    return coord >= 0 ? coord / CELL_SIZE : -((-coord - 1) / CELL_SIZE) - 1;
+  }
+
+  private static int key(int x, int y) {
+    return x * 73856093 ^ y * 19349663;
+  }
+
+  private final View myView;
+  private final Map<Integer, List<View>> myCells = new HashMap<>();
+  private final List<View> myLarge = new ArrayList<>();
+  private final Map<View, Entry> myEntries = new HashMap<>();
+  private boolean myOrderValid;
+
+  ViewSpatialIndex(View view) {
+    myView = view;
+    for (View child : view.children()) {
+      add(child);
+    }
+    updateOrder();
+  }
+
+  void add(View child) {
+    Entry entry = new Entry();
+    myEntries.put(child, entry);
+    put(child, entry);
+    myOrderValid = false;
+  }
+
+  void remove(View child) {
+    Entry entry = myEntries.remove(child);
+    if (entry == null) return;
+    takeOut(child, entry);
+  }
+
+  void update(View child) {
+    Entry entry = myEntries.get(child);
+    if (entry == null) return;
+    takeOut(child, entry);
+    put(child, entry);
+  }
+
+  List<View> candidates(Vector loc) {
+    if (!myOrderValid) {
+      updateOrder();
+    }
+
+    Vector local = loc.sub(myView.toRootDelta().get());
+    List<View> cell = myCells.get(key(cell(local.x), cell(local.y)));
+
+    List<View> result = new ArrayList<>(myLarge);
+    if (cell != null) {
+      result.addAll(cell);
+    }
+    Collections.sort(result, new Comparator<View>() {
+      @Override
+      public int compare(View v1, View v2) {
+        return myEntries.get(v1).order - myEntries.get(v2).order;
+      }
+    });
+    return result;
+  }
+
+  private void updateOrder() {
+    int order = 0;
+    for (View child : myView.children()) {
+      myEntries.get(child).order = order++;
+    }
+    myOrderValid = true;
+  }
+
+  private void put(View child, Entry entry) {
+    Rectangle bounds = child.boundsInParent();
+    entry.minX = cell(bounds.origin.x);
+    entry.minY = cell(bounds.origin.y);
+    entry.maxX = cell(bounds.origin.x + Math.max(0, bounds.dimension.x - 1));
+    entry.maxY = cell(bounds.origin.y + Math.max(0, bounds.dimension.y - 1));
+
+    if ((long) (entry.maxX - entry.minX + 1) * (entry.maxY - entry.minY + 1) > MAX_CELLS) {
+      entry.large = true;
+      myLarge.add(child);
+      return;
+    }
+
+    entry.large = false;
+    for (int x = entry.minX; x <= entry.maxX; x++) {
+      for (int y = entry.minY; y <= entry.maxY; y++) {
+        int key = key(x, y);
+        List<View> views = myCells.get(key);
+        if (views == null) {
+          views = new ArrayList<>(4);
+          myCells.put(key, views);
+        }
+        views.add(child);
+      }
+    }
+  }
+
+  private void takeOut(View child, Entry entry) {
+    if (entry.large) {
+      myLarge.remove(child);
+      return;
+    }
+
+    for (int x = entry.minX; x <= entry.maxX; x++) {
+      for (int y = entry.minY; y <= entry.maxY; y++) {
+        int key = key(x, y);
+        List<View> views = myCells.get(key);
+        views.remove(child);
+        if (views.isEmpty()) {
+          myCells.remove(key);
+        }
+      }
+    }
+  }
+
+  private static class Entry {
+    int minX;
+    int minY;
+    int maxX;
+    int maxY;
+    boolean large;
+    int order;
+  }
+}
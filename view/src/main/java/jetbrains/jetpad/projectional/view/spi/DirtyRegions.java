@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.spi;
+
+import jetbrains.jetpad.geometry.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Union of dirty rectangles which peers collect between frames. Intersecting and adjacent rectangles are merged
+ * on addition, and when there are more than maxCount of them, the pair whose union adds the least area is merged,
+ * so a frame is repainted with at most maxCount rectangles however many views were changed.
+ */
+public class DirtyRegions {
+  private final int myMaxCount;
+  private final List<Rectangle> myRegions = new ArrayList<>();
+
+  public DirtyRegions(int maxCount) {
+    if (maxCount < 1) {
+      throw new IllegalArgumentException("maxCount = " + maxCount);
+    }
+    myMaxCount = maxCount;
+  }
+
+  public void add(Rectangle rect) {
+    if (rect.dimension.x <= 0 || rect.dimension.y <= 0) return;
+
+    Rectangle current = rect;
+    boolean merged = true;
+    while (merged) {
+      merged = false;
+      for (int i = myRegions.size() - 1; i >= 0; i--) {
+        Rectangle region = myRegions.get(i);
+        if (touches(region, current)) {
+          current = union(region, current);
+          myRegions.remove(i);
+          merged = true;
+        }
+      }
+    }
+    myRegions.add(current);
+
+    if (myRegions.size() > myMaxCount) {
+      mergeCheapestPair();
+    }
+  }
+
+  public List<Rectangle> regions() {
+    return Collections.unmodifiableList(myRegions);
+  }
+
+  public boolean isEmpty() {
+    return myRegions.isEmpty();
+  }
+
+  public void clear() {
+    myRegions.clear();
+  }
+
+  private void mergeCheapestPair() {
+    int first = -1;
+    int second = -1;
+    long minGrowth = Long.MAX_VALUE;
+    for (int i = 0; i < myRegions.size(); i++) {
+      for (int j = i + 1; j < myRegions.size(); j++) {
+        Rectangle a = myRegions.get(i);
+        Rectangle b = myRegions.get(j);
+        long growth = area(union(a, b)) - area(a) - area(b);
+        if (growth < minGrowth) {
+          minGrowth = growth;
+          first = i;
+          second = j;
+        }
+      }
+    }
+
+    Rectangle merged = union(myRegions.get(first), myRegions.get(second));
+    myRegions.remove(second);
+    myRegions.remove(first);
+    add(merged);
+  }
+
+  private static boolean touches(Rectangle a, Rectangle b) {
+    return a.origin.x <= b.origin.x + b.dimension.x && b.origin.x <= a.origin.x + a.dimension.x
+        && a.origin.y <= b.origin.y + b.dimension.y && b.origin.y <= a.origin.y + a.dimension.y;
+  }
+
+  private static Rectangle union(Rectangle a, Rectangle b) {
+    int left = Math.min(a.origin.x, b.origin.x);
+    int top = Math.min(a.origin.y, b.origin.y);
+    int right = Math.max(a.origin.x + a.dimension.x, b.origin.x + b.dimension.x);
+    int bottom = Math.max(a.origin.y + a.dimension.y, b.origin.y + b.dimension.y);
+    return new Rectangle(left, top, right - left, bottom - top);
+  }
+
+  private static long area(Rectangle r) {
+    return (long) r.dimension.x * r.dimension.y;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.toAwt;
+
+import jetbrains.jetpad.base.base64.Base64Coder;
+import jetbrains.jetpad.projectional.base.ImageData;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Decoded images scaled to the size they are painted with. Images are looked up by the content of
+ * {@link ImageData}, which is computed once per ImageData instance, so repainting never touches the decoders.
+ *
+ * Least recently used images are evicted when the total number of cached pixels exceeds the budget.
+ */
+class ImageCache {
+  private static final String PNG_PREFIX = "data:image/png;base64,";
+  private static final String JPG_PREFIX = "data:image/jpeg;base64,";
+
+  private final long myPixelBudget;
+  private final Map<ImageData, Object> myContentKeys = new WeakHashMap<>();
+  private final LinkedHashMap<Key, BufferedImage> myImages = new LinkedHashMap<>(16, 0.75f, true);
+  private long myPixels;
+
+  ImageCache(long pixelBudget) {
+    myPixelBudget = pixelBudget;
+  }
+
+  /**
+   * @param config configuration the image is painted on, or null for a generic ARGB image
+   * @return image of the requested size or null if the data can't be decoded
+   */
+  BufferedImage get(ImageData data, int width, int height, GraphicsConfiguration config) throws IOException {
+    if (width <= 0 || height <= 0) return null;
+
+    Key key = new Key(contentKey(data), width, height);
+    BufferedImage result = myImages.get(key);
+    if (result != null) return result;
+
+    BufferedImage decoded = decode(data);
+    if (decoded == null) return null;
+    result = scale(decoded, width, height, config);
+
+    long pixels = (long) width * height;
+    if (pixels <= myPixelBudget) {
+      myImages.put(key, result);
+      myPixels += pixels;
+      evict();
+    }
+    return result;
+  }
+
+  long getPixels() {
+    return myPixels;
+  }
+
+  int size() {
+    return myImages.size();
+  }
+
+  void clear() {
+    myImages.clear();
+    myPixels = 0;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Key, BufferedImage>> it = myImages.entrySet().iterator();
+    while (myPixels > myPixelBudget && it.hasNext()) {
+      BufferedImage image = it.next().getValue();
+      myPixels -= (long) image.getWidth() * image.getHeight();
+      it.remove();
+    }
+  }
+
+  private Object contentKey(ImageData data) {
+    Object result = myContentKeys.get(data);
+    if (result != null) return result;
+
+    if (data instanceof ImageData.BinaryImageData) {
+      result = new BytesKey(((ImageData.BinaryImageData) data).getData());
+    } else if (data instanceof ImageData.UrlImageData) {
+      result = ((ImageData.UrlImageData) data).getUrl();
+    } else {
+      throw new UnsupportedOperationException("Unsupported Image : " + data);
+    }
+    myContentKeys.put(data, result);
+    return result;
+  }
+
+  private BufferedImage decode(ImageData imageData) throws IOException {
+    if (imageData instanceof ImageData.BinaryImageData) {
+      ImageData.BinaryImageData data = (ImageData.BinaryImageData) imageData;
+      return ImageIO.read(new ByteArrayInputStream(data.getData()));
+    }
+
+    String url = ((ImageData.UrlImageData) imageData).getUrl();
+    if (url.startsWith(PNG_PREFIX) || url.startsWith(JPG_PREFIX)) {
+      String base64;
+      if (url.startsWith(PNG_PREFIX)) {
+        base64 = url.substring(PNG_PREFIX.length());
+      } else {
+        base64 = url.substring(JPG_PREFIX.length());
+      }
+      byte[] data = Base64Coder.decodeBytes(base64);
+      return ImageIO.read(new ByteArrayInputStream(data));
+    }
+    return ImageIO.read(new URL(url));
+  }
+
+  private BufferedImage scale(BufferedImage image, int width, int height, GraphicsConfiguration config) {
+    BufferedImage result;
+    if (config != null) {
+      result = config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    } else {
+      result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    Graphics2D g = result.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g.dispose();
+    }
+    return result;
+  }
+
+  private static class Key {
+    private final Object myContent;
+    private final int myWidth;
+    private final int myHeight;
+
+    Key(Object content, int width, int height) {
+      myContent = content;
+      myWidth = width;
+      myHeight = height;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) return false;
+      Key key = (Key) obj;
+      return myContent.equals(key.myContent) && myWidth == key.myWidth && myHeight == key.myHeight;
+    }
+
+    @Override
+    public int hashCode() {
+      return (myContent.hashCode() * 31 + myWidth) * 31 + myHeight;
+    }
+  }
+
+  private static class BytesKey {
+    private final byte[] myBytes;
+    private final int myHashCode;
+
+    BytesKey(byte[] bytes) {
+      myBytes = bytes;
+      myHashCode = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof BytesKey)) return false;
+      return Arrays.equals(myBytes, ((BytesKey) obj).myBytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+}
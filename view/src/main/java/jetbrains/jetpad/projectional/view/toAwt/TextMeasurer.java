@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.toAwt;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interned fonts with their metrics and memoized text widths. Widths of the most recently measured strings are
+ * kept per font. For monospaced fonts widths of all the prefixes of a string are computed at once from cached
+ * character widths, so caret positions in the same text are taken from an array.
+ */
+class TextMeasurer {
+  private static final int MAX_WIDTHS = 4096;
+  private static final int MAX_PREFIXES = 256;
+  private static final int CHAR_WIDTHS = 256;
+
+  private final Map<FontKey, java.awt.Font> myFonts = new HashMap<>();
+  private final Map<java.awt.Font, FontEntry> myEntries = new HashMap<>();
+
+  java.awt.Font font(String name, int style, int size) {
+    FontKey key = new FontKey(name, style, size);
+    java.awt.Font result = myFonts.get(key);
+    if (result == null) {
+      result = new java.awt.Font(name, style, size);
+      myFonts.put(key, result);
+    }
+    return result;
+  }
+
+  FontMetrics metrics(java.awt.Font font) {
+    return entry(font).metrics;
+  }
+
+  int stringWidth(java.awt.Font font, String text) {
+    if (text.isEmpty()) return 0;
+    FontEntry entry = entry(font);
+    if (entry.monospaced && !hasSurrogates(text)) {
+      return entry.prefixWidths(text)[text.length()];
+    }
+    return entry.stringWidth(text);
+  }
+
+  /**
+   * Width of the first pos characters of the text
+   */
+  int prefixWidth(java.awt.Font font, String text, int pos) {
+    if (pos <= 0) return 0;
+    FontEntry entry = entry(font);
+    if (entry.monospaced && !hasSurrogates(text)) {
+      return entry.prefixWidths(text)[pos];
+    }
+    return entry.stringWidth(text.substring(0, pos));
+  }
+
+  void clear() {
+    myFonts.clear();
+    myEntries.clear();
+  }
+
+  private FontEntry entry(java.awt.Font font) {
+    FontEntry result = myEntries.get(font);
+    if (result == null) {
+      result = new FontEntry(Toolkit.getDefaultToolkit().getFontMetrics(font));
+      myEntries.put(font, result);
+    }
+    return result;
+  }
+
+  private static boolean hasSurrogates(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.isSurrogate(text.charAt(i))) return true;
+    }
+    return false;
+  }
+
+  private static class FontEntry {
+    final FontMetrics metrics;
+    final boolean monospaced;
+    private final int[] myCharWidths = new int[CHAR_WIDTHS];
+    private final Map<String, Integer> myWidths = new LruMap<>(MAX_WIDTHS);
+    private final Map<String, int[]> myPrefixWidths = new LruMap<>(MAX_PREFIXES);
+
+    FontEntry(FontMetrics metrics) {
+      this.metrics = metrics;
+      monospaced = java.awt.Font.MONOSPACED.equals(metrics.getFont().getName());
+      for (int i = 0; i < CHAR_WIDTHS; i++) {
+        myCharWidths[i] = -1;
+      }
+    }
+
+    int stringWidth(String text) {
+      Integer result = myWidths.get(text);
+      if (result == null) {
+        result = metrics.stringWidth(text);
+        myWidths.put(text, result);
+      }
+      return result;
+    }
+
+    int[] prefixWidths(String text) {
+      int[] result = myPrefixWidths.get(text);
+      if (result == null) {
+        result = new int[text.length() + 1];
+        for (int i = 0; i < text.length(); i++) {
+          result[i + 1] = result[i] + charWidth(text.charAt(i));
+        }
+        myPrefixWidths.put(text, result);
+      }
+      return result;
+    }
+
+    private int charWidth(char c) {
+      if (c >= CHAR_WIDTHS) return metrics.charWidth(c);
+      if (myCharWidths[c] == -1) {
+        myCharWidths[c] = metrics.charWidth(c);
+      }
+      return myCharWidths[c];
+    }
+  }
+
+  private static class LruMap<KeyT, ValueT> extends LinkedHashMap<KeyT, ValueT> {
+    private final int myMaxSize;
+
+    LruMap(int maxSize) {
+      super(16, 0.75f, true);
+      myMaxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<KeyT, ValueT> eldest) {
+      return size() > myMaxSize;
+    }
+  }
+
+  private static class FontKey {
+    private final String myName;
+    private final int myStyle;
+    private final int mySize;
+
+    FontKey(String name, int style, int size) {
+      myName = name;
+      myStyle = style;
+      mySize = size;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FontKey)) return false;
+      FontKey other = (FontKey) obj;
+      return myName.equals(other.myName) && myStyle == other.myStyle && mySize == other.mySize;
+    }
+
+    @Override
+    public int hashCode() {
+      return (myName.hashCode() * 31 + myStyle) * 31 + mySize;
+    }
+  }
+}
@@ -18,7 +18,6 @@ package jetbrains.jetpad.projectional.view.toAwt;
 import jetbrains.jetpad.base.Disposable;
 import jetbrains.jetpad.base.Handler;
 import jetbrains.jetpad.base.Registration;
-import jetbrains.jetpad.base.base64.Base64Coder;
 import jetbrains.jetpad.base.edt.AwtEventDispatchThread;
 import jetbrains.jetpad.base.edt.EventDispatchThread;
 import jetbrains.jetpad.event.*;
@@ -31,6 +30,7 @@ import jetbrains.jetpad.projectional.base.ImageData;
 import jetbrains.jetpad.projectional.svg.SvgSvgElement;
 import jetbrains.jetpad.projectional.svg.toAwt.SvgRootDocumentMapper;
 import jetbrains.jetpad.projectional.view.*;
+import jetbrains.jetpad.projectional.view.spi.DirtyRegions;
 import jetbrains.jetpad.projectional.view.spi.NullViewContainerPeer;
 import jetbrains.jetpad.projectional.view.spi.ViewContainerPeer;
 import jetbrains.jetpad.values.Color;
@@ -40,11 +40,11 @@ import org.apache.batik.bridge.BridgeContext;
 import org.apache.batik.bridge.GVTBuilder;
 import org.apache.batik.bridge.UserAgent;
 import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.dom.svg.SVGOMDocument;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.event.AWTEventDispatcher;
 import org.apache.batik.gvt.event.EventDispatcher;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.Timer;
 import java.awt.*;
@@ -55,9 +55,7 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.Arc2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.URL;
 import java.util.*;
 
 import static jetbrains.jetpad.projectional.view.toAwt.AwtConverters.toAwtColor;
@@ -76,12 +74,25 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
   static final Color SELECTION_COLOR = Color.DARK_BLUE;
 
+  /**
+   * Views with this property set are painted together with their subtrees into an image, which is reused
+   * until something in the subtree is repainted, changes its bounds or properties. Moving the view itself
+   * doesn't invalidate the image.
+   */
+  public static final ViewPropertySpec<Boolean> CACHED_LAYER = new ViewPropertySpec<>("cachedLayer", ViewPropertyKind.REPAINT, false);
+
+  private static final long IMAGE_CACHE_PIXELS = 16 * 1024 * 1024;
+  private static final long MAX_LAYER_PIXELS = 4 * 1024 * 1024;
+  private static final int MAX_DIRTY_REGIONS = 8;
+
   private ViewContainer myContainer;
   private Registration myContainerReg = Registration.EMPTY;
 
   private Set<View> myMovedViews = new LinkedHashSet<>();
-  private Set<jetbrains.jetpad.geometry.Rectangle> myDirtyAreas = new LinkedHashSet<>();
+  private DirtyRegions myDirtyRegions = new DirtyRegions(MAX_DIRTY_REGIONS);
   private Set<View> myDirtyViews = new LinkedHashSet<>();
+  private boolean myInCommand;
+  private boolean myFrameScheduled;
   private boolean myCaretVisible;
   private boolean myFocused;
   private Timer myTimer;
@@ -90,6 +101,9 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
   private MyViewContainerPeer myPeer = new MyViewContainerPeer();
 
   private Map<View, PaintHelper<? extends View>> myViewPaintHelpers = new HashMap<>();
+  private ImageCache myImageCache = new ImageCache(IMAGE_CACHE_PIXELS);
+  private Map<View, Layer> myLayers = new HashMap<>();
+  private TextMeasurer myTextMeasurer = new TextMeasurer();
 
   public ViewContainerComponent() {
     setFocusable(true);
@@ -332,6 +346,29 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
         repaintCarets();
       }
     });
+
+    addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentMoved(ComponentEvent e) {
+        visibleRectChanged();
+      }
+
+      @Override
+      public void componentResized(ComponentEvent e) {
+        visibleRectChanged();
+      }
+    });
+    addHierarchyBoundsListener(new HierarchyBoundsAdapter() {
+      @Override
+      public void ancestorResized(HierarchyEvent e) {
+        visibleRectChanged();
+      }
+    });
+  }
+
+  private void visibleRectChanged() {
+    if (myContainer == null) return;
+    myContainer.visibleRectChanged();
   }
 
 
@@ -363,6 +400,12 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
       myContainerReg.remove();
       myTimer.stop();
       myContainerReg = null;
+      myImageCache.clear();
+      myLayers.clear();
+      myDirtyViews.clear();
+      myMovedViews.clear();
+      myDirtyRegions.clear();
+      myInCommand = false;
     }
 
     myContainer = container;
@@ -380,17 +423,28 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
         myContainer.root().valid().addHandler(new EventHandler<PropertyChangeEvent<Boolean>>() {
           @Override
           public void onEvent(PropertyChangeEvent<Boolean> event) {
-            SwingUtilities.invokeLater(new Runnable() {
-              @Override
-              public void run() {
-                validateRoot();
-              }
-            });
+            scheduleFrame();
           }
         }),
         myContainer.addListener(new ViewContainerAdapter() {
+          @Override
+          public void onBeforeCommand() {
+            myInCommand = true;
+          }
+
+          @Override
+          public void onAfterCommand() {
+            myInCommand = false;
+            scheduleFrame();
+          }
+
           @Override
           public void onPropertySet(View view, ViewPropertySpec<?> prop, PropertyChangeEvent<?> event) {
+            invalidateLayers(view);
+            if (prop == CACHED_LAYER && !view.getProp(CACHED_LAYER).get()) {
+              myLayers.remove(view);
+            }
+
             if (view instanceof TextView && prop == TextView.CARET_VISIBLE) {
               TextView textView = (TextView) view;
               if (textView.caretVisible().get()) {
@@ -413,7 +467,11 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
           @Override
           public void onViewDetached(View view) {
-            myDirtyAreas.add(view.bounds().get());
+            myDirtyRegions.add(view.bounds().get());
+            myDirtyViews.remove(view);
+            myMovedViews.remove(view);
+            myLayers.remove(view);
+            invalidateLayers(view.getParent());
             if (view instanceof TextView) {
               TextView textView = (TextView) view;
               myWithCaretVisible.remove(textView);
@@ -430,23 +488,37 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
     }
   }
 
+  private void scheduleFrame() {
+    if (myFrameScheduled) return;
+    myFrameScheduled = true;
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        myFrameScheduled = false;
+        if (myContainer == null) return;
+        validateRoot();
+      }
+    });
+  }
+
   private void validateRoot() {
     try {
       myContainer.root().validate();
     } finally {
       for (View v : myDirtyViews) {
-        repaint(v.bounds().get());
+        myDirtyRegions.add(v.bounds().get());
       }
       myDirtyViews.clear();
 
       for (View v : myMovedViews) {
-        repaint(v.bounds().get());
+        myDirtyRegions.add(v.bounds().get());
       }
+      myMovedViews.clear();
 
-      for (jetbrains.jetpad.geometry.Rectangle r : myDirtyAreas) {
+      for (jetbrains.jetpad.geometry.Rectangle r : myDirtyRegions.regions()) {
         repaint(r);
       }
-      myMovedViews.clear();
+      myDirtyRegions.clear();
     }
   }
 
@@ -466,12 +538,11 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
     g.fillRect(0, 0, getWidth(), getHeight());
 
     myContainer.root().validate();
-    paint(g, myContainer.root());
+    paint((Graphics2D) g, myContainer.root());
   }
 
-  private void paint(Graphics graphics, View view) {
+  private void paint(Graphics2D g, View view) {
     if (!view.visible().get()) return;
-    Graphics2D g = (Graphics2D) graphics;
     java.awt.Rectangle clip = g.getClipBounds();
     jetbrains.jetpad.geometry.Rectangle bounds = view.bounds().get();
     if (clip != null) {
@@ -479,13 +550,63 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
       if (!rect.intersects(bounds)) return;
     }
+
+    Shape oldClip = g.getClip();
     g.clipRect(bounds.origin.x, bounds.origin.y, bounds.dimension.x, bounds.dimension.y);
 
+    if (!view.getProp(CACHED_LAYER).get() || !paintLayer(g, view)) {
+      paintSubtree(g, view);
+    }
+
+    g.setClip(oldClip);
+  }
 
-    paintContent(view, (Graphics2D) g.create());
+  private void paintSubtree(Graphics2D g, View view) {
+    Graphics2D contentGraphics = (Graphics2D) g.create();
+    try {
+      paintContent(view, contentGraphics);
+    } finally {
+      contentGraphics.dispose();
+    }
 
     for (View child : view.children()) {
-      paint(g.create(), child);
+      paint(g, child);
+    }
+  }
+
+  private boolean paintLayer(Graphics2D g, View view) {
+    jetbrains.jetpad.geometry.Rectangle bounds = view.bounds().get();
+    Vector dimension = bounds.dimension;
+    if (dimension.x <= 0 || dimension.y <= 0 || (long) dimension.x * dimension.y > MAX_LAYER_PIXELS) return false;
+
+    Layer layer = myLayers.get(view);
+    if (layer == null || !layer.valid || layer.image.getWidth() != dimension.x || layer.image.getHeight() != dimension.y) {
+      BufferedImage image = g.getDeviceConfiguration().createCompatibleImage(dimension.x, dimension.y, Transparency.TRANSLUCENT);
+      Graphics2D layerGraphics = image.createGraphics();
+      try {
+        layerGraphics.setRenderingHints(g.getRenderingHints());
+        layerGraphics.translate(-bounds.origin.x, -bounds.origin.y);
+        layerGraphics.clipRect(bounds.origin.x, bounds.origin.y, dimension.x, dimension.y);
+        paintSubtree(layerGraphics, view);
+      } finally {
+        layerGraphics.dispose();
+      }
+
+      layer = new Layer(image);
+      myLayers.put(view, layer);
+    }
+
+    g.drawImage(layer.image, bounds.origin.x, bounds.origin.y, null);
+    return true;
+  }
+
+  private void invalidateLayers(View view) {
+    if (myLayers.isEmpty()) return;
+    for (View current = view; current != null; current = current.getParent()) {
+      Layer layer = myLayers.get(current);
+      if (layer != null) {
+        layer.valid = false;
+      }
     }
   }
 
@@ -517,13 +638,7 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
       String text = textView.text().get();
       Vector origin = bounds.origin;
 
-      java.awt.Font font = new java.awt.Font(toFontName(textView.fontFamily().get()), java.awt.Font.PLAIN, textView.fontSize().get());
-      if (textView.bold().get()) {
-        font = font.deriveFont(java.awt.Font.BOLD, font.getSize());
-      }
-      if (textView.italic().get()) {
-        font = font.deriveFont(java.awt.Font.ITALIC, font.getSize());
-      }
+      java.awt.Font font = toAwtFont(textView.fontFamily().get(), textView.fontSize().get(), textView.bold().get(), textView.italic().get());
       g.setFont(font);
 
       g.setColor(toAwtColor(textView.textColor().get()));
@@ -534,9 +649,9 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
         int end = textView.caretPosition().get();
 
         int left = Math.min(start, end);
-        int xLeft = xOffset(g, text, left);
+        int xLeft = xOffset(font, text, left);
         int right = Math.max(start, end);
-        int xRight = xOffset(g, text, right);
+        int xRight = xOffset(font, text, right);
         g.setColor(toAwtColor(SELECTION_COLOR));
         g.fillRect(origin.x + xLeft, origin.y, xRight - xLeft - 1, bounds.dimension.y - 1);
 
@@ -545,7 +660,7 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
       }
 
       if (textView.caretVisible().get() && myCaretVisible && myFocused) {
-        int xOffset = xOffset(g, text, textView.caretPosition().get());
+        int xOffset = xOffset(font, text, textView.caretPosition().get());
         g.drawLine(origin.x + xOffset, origin.y, origin.x + xOffset, origin.y + bounds.dimension.y - 1);
       }
     }
@@ -599,26 +714,7 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
       } else if (imageData instanceof ImageData.BinaryImageData || imageData instanceof ImageData.UrlImageData) {
         BufferedImage image;
         try {
-          if (imageData instanceof ImageData.BinaryImageData) {
-            ImageData.BinaryImageData data = (ImageData.BinaryImageData) imageData;
-            image = ImageIO.read(new ByteArrayInputStream(data.getData()));
-          } else {
-            String url = ((ImageData.UrlImageData) imageData).getUrl();
-            String pngPrefix = "data:image/png;base64,";
-            String jpgPrefix = "data:image/jpeg;base64,";
-            if (url.startsWith(pngPrefix) || url.startsWith(jpgPrefix)) {
-              String base64;
-              if (url.startsWith(pngPrefix)) {
-                base64 = url.substring(pngPrefix.length());
-              } else {
-                base64 = url.substring(jpgPrefix.length());
-              }
-              byte[] data = Base64Coder.decodeBytes(base64);
-              image = ImageIO.read(new ByteArrayInputStream(data));
-            } else {
-              image = ImageIO.read(new URL(url));
-            }
-          }
+          image = myImageCache.get(imageData, bounds.dimension.x, bounds.dimension.y, g.getDeviceConfiguration());
         } catch (IOException e) {
           throw new RuntimeException(e);
         }
@@ -690,19 +786,27 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
     }
   }
 
-  private int xOffset(Graphics g, String text, int pos) {
-    return Math.max(0, g.getFontMetrics().stringWidth(text.substring(0, pos)));
+  private int xOffset(java.awt.Font font, String text, int pos) {
+    return Math.max(0, myTextMeasurer.prefixWidth(font, text, pos));
   }
 
-  private FontMetrics getFontMetrics(Font font) {
+  private java.awt.Font toAwtFont(Font font) {
+    return toAwtFont(font.getFamily(), font.getSize(), font.isBold(), font.isItalic());
+  }
+
+  private java.awt.Font toAwtFont(FontFamily family, int size, boolean bold, boolean italic) {
     int style = java.awt.Font.PLAIN;
-    if (font.isBold()) {
+    if (bold) {
       style |= java.awt.Font.BOLD;
     }
-    if (font.isItalic()) {
+    if (italic) {
       style |= java.awt.Font.ITALIC;
     }
-    return Toolkit.getDefaultToolkit().getFontMetrics(new java.awt.Font(toFontName(font.getFamily()), style, font.getSize()));
+    return myTextMeasurer.font(toFontName(family), style, size);
+  }
+
+  private FontMetrics getFontMetrics(Font font) {
+    return myTextMeasurer.metrics(toAwtFont(font));
   }
 
   @Override
@@ -765,12 +869,12 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
     @Override
     public void repaint(View view) {
+      invalidateLayers(view);
       if (!view.visible().get()) return;
 
-      if (myContainer.root().valid().get()) {
-        ViewContainerComponent.this.repaint(view.bounds().get());
-      } else {
-        myDirtyViews.add(view);
+      myDirtyViews.add(view);
+      if (!myInCommand) {
+        scheduleFrame();
       }
     }
 
@@ -801,12 +905,15 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
     @Override
     public void boundsChanged(View view, PropertyChangeEvent<jetbrains.jetpad.geometry.Rectangle> change) {
+      invalidateLayers(view.getParent());
       if (!view.visible().get()) return;
 
-      if (myMovedViews.contains(view)) return;
+      if (!myMovedViews.add(view)) return;
 
-      myMovedViews.add(view);
-      myDirtyAreas.add(change.getOldValue());
+      myDirtyRegions.add(change.getOldValue());
+      if (!myInCommand) {
+        scheduleFrame();
+      }
     }
 
     @Override
@@ -822,7 +929,7 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
     @Override
     public int textWidth(Font font, String text) {
-      return getFontMetrics(font).stringWidth(text);
+      return myTextMeasurer.stringWidth(toAwtFont(font), text);
     }
 
     @Override
@@ -841,6 +948,15 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
     }
   }
 
+  private static class Layer {
+    final BufferedImage image;
+    boolean valid = true;
+
+    Layer(BufferedImage image) {
+      this.image = image;
+    }
+  }
+
   private static interface PaintHelper<ViewT extends View> extends Disposable {
     void paint(ViewT view, Graphics2D g);
     void update(ViewT view);
@@ -894,8 +1010,10 @@ public class ViewContainerComponent extends JComponent implements Scrollable {
 
     @Override
     public void update(SvgView view) {
-      clear();
-      createGraphicsNode(view);
+      SVGOMDocument document = myMapper.getTarget();
+      myMapper.detachRoot();
+      myMapper = new SvgRootDocumentMapper(view.root().get(), document);
+      myMapper.attachRoot();
       view.invalidate();
     }
 
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view;
+
+import jetbrains.jetpad.geometry.Vector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+
+public class ViewSpatialIndexTest {
+  private ViewContainer container = new ViewContainer();
+  private GroupView parent = new GroupView();
+
+  @Before
+  public void init() {
+    container.contentRoot().children().add(parent);
+    for (int i = 0; i < 200; i++) {
+      RectView child = new RectView();
+      parent.children().add(child);
+      child.moveTo(new Vector((i % 20) * 20, (i / 20) * 20));
+    }
+    container.root().validate();
+  }
+
+  @Test
+  public void sameAsScan() {
+    assertSameAsScan();
+  }
+
+  @Test
+  public void movedChildren() {
+    assertSameAsScan();
+
+    Random random = new Random(1);
+    for (int i = 0; i < 50; i++) {
+      View child = parent.children().get(random.nextInt(parent.children().size()));
+      child.move(new Vector(random.nextInt(300) - 150, random.nextInt(300) - 150));
+    }
+    container.root().validate();
+
+    assertSameAsScan();
+  }
+
+  @Test
+  public void resizedChild() {
+    assertSameAsScan();
+
+    ((RectView) parent.children().get(0)).dimension().set(new Vector(1000, 30));
+    container.root().validate();
+
+    assertSameAsScan();
+  }
+
+  @Test
+  public void movedParent() {
+    assertSameAsScan();
+
+    parent.move(new Vector(35, 17));
+    container.root().validate();
+
+    assertSameAsScan();
+  }
+
+  @Test
+  public void topmostChildFound() {
+    assertSameAsScan();
+
+    RectView below = new RectView();
+    RectView above = new RectView();
+    parent.children().add(50, above);
+    parent.children().add(10, below);
+    below.moveTo(new Vector(25, 25));
+    above.moveTo(new Vector(25, 25));
+    container.root().validate();
+
+    assertSame(above, container.root().viewAt(new Vector(27, 27)));
+    assertSameAsScan();
+  }
+
+  @Test
+  public void removedChildren() {
+    assertSameAsScan();
+
+    for (int i = 0; i < 150; i++) {
+      parent.children().remove(parent.children().size() / 2);
+    }
+    container.root().validate();
+
+    assertSameAsScan();
+  }
+
+  @Test
+  public void invisibleChild() {
+    View child = parent.children().get(21);
+    child.visible().set(false);
+    container.root().validate();
+
+    assertSameAsScan();
+  }
+
+  private void assertSameAsScan() {
+    for (int x = -200; x < 500; x += 3) {
+      for (int y = -200; y < 300; y += 3) {
+        Vector loc = new Vector(x, y);
+        assertSame("" + loc, scanViewAt(container.root(), loc), container.root().viewAt(loc));
+      }
+    }
+  }
+
+  private View scanViewAt(View view, Vector loc) {
+    List<View> children = view.children();
+    for (int i = children.size() - 1; i >= 0; i--) {
+      View child = children.get(i);
+      if (!child.visible().get()) continue;
+
+      if (child.bounds().get().contains(loc)) {
+        View result = scanViewAt(child, loc);
+        if (result != null) return result;
+      }
+    }
+    if (view.contains(loc)) {
+      return view;
+    }
+    return null;
+  }
+}
@@ -248,6 +248,33 @@ public class ViewTest {
     assertEquals(Arrays.asList(new Vector(10, 10)), origins);
   }
 
+  @Test
+  public void absolutePositionFollowsMoves() {
+    View parent = newView();
+    View child = newView();
+    View grandChild = newView();
+    parent.children().add(child);
+    child.children().add(grandChild);
+
+    grandChild.move(new Vector(1, 2));
+    assertEquals(new Vector(1, 2), grandChild.bounds().get().origin);
+
+    parent.move(new Vector(10, 20));
+    assertEquals(11, grandChild.absX());
+    assertEquals(22, grandChild.absY());
+
+    child.move(new Vector(100, 200));
+    assertEquals(new Vector(111, 222), grandChild.bounds().get().origin);
+
+    grandChild.moveTo(new Vector(5, 5));
+    assertEquals(new Vector(5, 5), grandChild.bounds().get().origin);
+    assertEquals(new Vector(110, 220), child.bounds().get().origin);
+
+    parent.children().remove(child);
+    assertEquals(new Vector(100, 200), child.bounds().get().origin);
+    assertEquals(new Vector(5 - 110 + 100, 5 - 220 + 200), grandChild.bounds().get().origin);
+  }
+
   @Test
   public void containerMove() {
     View parent = newView();
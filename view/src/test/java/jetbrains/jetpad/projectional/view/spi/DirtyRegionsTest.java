@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.spi;
+
+import jetbrains.jetpad.geometry.Rectangle;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DirtyRegionsTest {
+  private DirtyRegions regions = new DirtyRegions(4);
+
+  @Test
+  public void intersectingRectanglesMerged() {
+    regions.add(new Rectangle(0, 0, 10, 10));
+    regions.add(new Rectangle(5, 5, 10, 10));
+
+    assertEquals(Arrays.asList(new Rectangle(0, 0, 15, 15)), regions.regions());
+  }
+
+  @Test
+  public void adjacentRectanglesMerged() {
+    regions.add(new Rectangle(0, 0, 10, 10));
+    regions.add(new Rectangle(10, 0, 10, 10));
+
+    assertEquals(Arrays.asList(new Rectangle(0, 0, 20, 10)), regions.regions());
+  }
+
+  @Test
+  public void mergeIsTransitive() {
+    regions.add(new Rectangle(0, 0, 10, 10));
+    regions.add(new Rectangle(20, 0, 10, 10));
+    regions.add(new Rectangle(5, 0, 20, 5));
+
+    assertEquals(Arrays.asList(new Rectangle(0, 0, 30, 10)), regions.regions());
+  }
+
+  @Test
+  public void distantRectanglesKept() {
+    regions.add(new Rectangle(0, 0, 10, 10));
+    regions.add(new Rectangle(100, 100, 10, 10));
+
+    assertEquals(2, regions.regions().size());
+  }
+
+  @Test
+  public void emptyRectanglesIgnored() {
+    regions.add(new Rectangle(0, 0, 0, 10));
+
+    assertTrue(regions.isEmpty());
+  }
+
+  @Test
+  public void countIsLimited() {
+    Random random = new Random(42);
+    Rectangle[] added = new Rectangle[1000];
+    for (int i = 0; i < added.length; i++) {
+      added[i] = new Rectangle(random.nextInt(10000), random.nextInt(10000), 1 + random.nextInt(20), 1 + random.nextInt(20));
+      regions.add(added[i]);
+    }
+
+    assertTrue(regions.regions().size() <= 4);
+    for (Rectangle rect : added) {
+      assertTrue(covered(rect));
+    }
+
+    regions.clear();
+    assertTrue(regions.isEmpty());
+  }
+
+  private boolean covered(Rectangle rect) {
+    for (Rectangle region : regions.regions()) {
+      if (region.contains(rect)) return true;
+    }
+    return false;
+  }
+}
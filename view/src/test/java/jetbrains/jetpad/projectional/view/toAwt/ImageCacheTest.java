@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.toAwt;
+
+import jetbrains.jetpad.geometry.Vector;
+import jetbrains.jetpad.projectional.base.ImageData;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ImageCacheTest {
+  private static ImageData createImage(int rgb) throws IOException {
+    BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, rgb);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return ImageData.binaryData(new Vector(4, 4), out.toByteArray());
+  }
+
+  @Test
+  public void imageDecodedOnce() throws IOException {
+    ImageCache cache = new ImageCache(1000);
+    ImageData data = createImage(0xff0000ff);
+
+    BufferedImage image = cache.get(data, 8, 8, null);
+    assertEquals(8, image.getWidth());
+    assertEquals(8, image.getHeight());
+    assertSame(image, cache.get(data, 8, 8, null));
+  }
+
+  @Test
+  public void equalContentShared() throws IOException {
+    ImageCache cache = new ImageCache(1000);
+    assertSame(cache.get(createImage(0xff00ff00), 8, 8, null), cache.get(createImage(0xff00ff00), 8, 8, null));
+    assertNotSame(cache.get(createImage(0xff00ff00), 8, 8, null), cache.get(createImage(0xffff0000), 8, 8, null));
+  }
+
+  @Test
+  public void scaledCopiesForDifferentSizes() throws IOException {
+    ImageCache cache = new ImageCache(1000);
+    ImageData data = createImage(0xff0000ff);
+
+    assertNotSame(cache.get(data, 8, 8, null), cache.get(data, 4, 4, null));
+    assertEquals(2, cache.size());
+    assertEquals(80, cache.getPixels());
+  }
+
+  @Test
+  public void leastRecentlyUsedEvicted() throws IOException {
+    ImageCache cache = new ImageCache(150);
+    ImageData first = createImage(1);
+    ImageData second = createImage(2);
+    ImageData third = createImage(3);
+
+    BufferedImage firstImage = cache.get(first, 8, 8, null);
+    BufferedImage secondImage = cache.get(second, 8, 8, null);
+    cache.get(first, 8, 8, null);
+    cache.get(third, 8, 8, null);
+
+    assertEquals(2, cache.size());
+    assertEquals(128, cache.getPixels());
+    assertSame(firstImage, cache.get(first, 8, 8, null));
+    assertNotSame(secondImage, cache.get(second, 8, 8, null));
+  }
+
+  @Test
+  public void imageOverBudgetNotCached() throws IOException {
+    ImageCache cache = new ImageCache(10);
+    assertNotNull(cache.get(createImage(1), 8, 8, null));
+    assertEquals(0, cache.size());
+  }
+}
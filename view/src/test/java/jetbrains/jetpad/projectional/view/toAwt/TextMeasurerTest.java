@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2016 JetBrains s.r.o
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.jetpad.projectional.view.toAwt;
+
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.*;
+
+public class TextMeasurerTest {
+  private TextMeasurer measurer = new TextMeasurer();
+
+  @Test
+  public void fontsAreInterned() {
+    assertSame(measurer.font(java.awt.Font.MONOSPACED, java.awt.Font.BOLD, 12), measurer.font(java.awt.Font.MONOSPACED, java.awt.Font.BOLD, 12));
+    assertSame(measurer.metrics(measurer.font(java.awt.Font.SERIF, java.awt.Font.PLAIN, 14)), measurer.metrics(new java.awt.Font(java.awt.Font.SERIF, java.awt.Font.PLAIN, 14)));
+  }
+
+  @Test
+  public void monospacedWidths() {
+    assertWidths(measurer.font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+  }
+
+  @Test
+  public void proportionalWidths() {
+    assertWidths(measurer.font(java.awt.Font.SERIF, java.awt.Font.ITALIC, 15));
+  }
+
+  private void assertWidths(java.awt.Font font) {
+    FontMetrics metrics = measurer.metrics(font);
+    String text = "public int x = 42; // \u00e9t\u00e9 \u0434\u0430";
+    for (int round = 0; round < 2; round++) {
+      assertEquals(0, measurer.prefixWidth(font, text, 0));
+      for (int i = 1; i <= text.length(); i++) {
+        assertEquals(metrics.stringWidth(text.substring(0, i)), measurer.prefixWidth(font, text, i));
+      }
+      assertEquals(metrics.stringWidth(text), measurer.stringWidth(font, text));
+      assertEquals(0, measurer.stringWidth(font, ""));
+    }
+  }
+}